@@ -53,6 +53,27 @@ public class DefaultTextEditModel extends DefaultTextModel
     /** The text listener of the text edit model. */
     transient protected TextListener textListener;
 
+    /** The depth of the nested edit transactions. */
+    transient protected int editDepth;
+
+    /**
+     * The change merged in the edit transaction, in the coordinates of the
+     * text before the transaction, or <code>null</code> if not edited.
+     */
+    transient protected TextChange editChange;
+
+    /** The beginning index to paint after the edit transaction. */
+    transient protected int editPaintBegin;
+
+    /** The ending index to paint after the edit transaction. */
+    transient protected int editPaintEnd;
+
+    /** True if the text was changed in the edit transaction. */
+    transient protected boolean editTextChanged;
+
+    /** The undo objects for the operations in the edit transaction. */
+    transient protected MultipleUndo editUndo;
+
 
     /**
      * Constructs an empty text edit model with the specified rich text style.
@@ -126,11 +147,170 @@ public class DefaultTextEditModel extends DefaultTextModel
 
     /** Notifies the specified text event to the text listeners. */
     protected void notifyTextListeners(TextEvent event) {
+	if (editDepth > 0) {
+	    editTextChanged = true;
+	    return;
+	}
 	if (textListener != null) {
 	    textListener.textValueChanged(event);
 	}
     }
 
+    /**
+     * Notifies the specified text model event to the text model listeners.
+     * In the edit transaction, the change of the edited event is merged and
+     * is notified by the <code>endEdit()</code>.
+     */
+    protected void notifyTextModelListeners(TextModelEvent event) {
+	if (editDepth == 0) {
+	    super.notifyTextModelListeners(event);
+	    return;
+	}
+	if (event.getID() != TextModelEvent.TEXT_MODEL_EDITED) {
+	    // the rich text is updated, the changes so far are meaningless.
+	    editChange     = null;
+	    editPaintBegin = -1;
+	    editPaintEnd   = -1;
+	    super.notifyTextModelListeners(event);
+	    return;
+	}
+	mergeEditChange(event.getTextChange(),
+			event.getPaintBegin(), event.getPaintEnd());
+    }
+
+    /**
+     * Begins an edit transaction. Until the matching <code>endEdit()</code>
+     * is called, the changes made by the edit operations of this text edit
+     * model are merged, and are notified to the listeners at once by the
+     * <code>endEdit()</code>. The transactions can be nested.
+     *
+     * @see #endEdit()
+     */
+    public synchronized void beginEdit() {
+	if (editDepth++ > 0)
+	    return;
+	editChange      = null;
+	editPaintBegin  = -1;
+	editPaintEnd    = -1;
+	editTextChanged = false;
+	editUndo        = new MultipleUndo();
+    }
+
+    /**
+     * Ends the edit transaction begun by <code>beginEdit()</code>. If the
+     * outermost transaction ends, the merged change is notified to the
+     * text model listeners as a text model event, and the text listeners
+     * are notified if the text was changed.
+     *
+     * @return the undo object for the all operations in the outermost
+     *         transaction, or <code>null</code> if the transaction is not
+     *         the outermost one or the undo is not supported.
+     * @exception IllegalStateException if no transaction is begun.
+     * @see #beginEdit()
+     */
+    public synchronized Undo endEdit() {
+	if (editDepth == 0)
+	    throw new IllegalStateException("no edit transaction");
+	if (--editDepth > 0)
+	    return null;
+	TextChange change = editChange;
+	MultipleUndo undo = editUndo;
+	editChange = null;
+	editUndo   = null;
+	if (change != null) {
+	    notifyTextModelListeners(new TextModelEvent(
+					this,
+					TextModelEvent.TEXT_MODEL_EDITED,
+					editPaintBegin, editPaintEnd,
+					change));
+	}
+	if (editTextChanged) {
+	    notifyTextListeners(
+			new TextEvent(this, TextEvent.TEXT_VALUE_CHANGED));
+	}
+	return (undo.undos == null ? null : new EditUndo(undo));
+    }
+
+    /**
+     * Adds the specified undo object to the undo objects for the edit
+     * transaction, if in the transaction.
+     *
+     * @param  undo the undo object for an edit operation.
+     * @return the specified undo object.
+     */
+    protected Undo addEditUndo(Undo undo) {
+	if (editDepth > 0 && undo != null) {
+	    editUndo.addUndo(undo);
+	}
+	return undo;
+    }
+
+    /**
+     * Merges the specified change and range to paint into the change of
+     * the edit transaction. The ranges of the specified change are in the
+     * coordinates of the text edited so far, so that they are mapped back
+     * to the coordinates of the text before the transaction.
+     *
+     * @param change     the text change to be merged.
+     * @param paintBegin the beginning index to paint, inclusive, or
+     *                   <code>-1</code>.
+     * @param paintEnd   the ending index to paint, exclusive, or
+     *                   <code>-1</code>.
+     */
+    protected void mergeEditChange(TextChange change,
+				   int paintBegin, int paintEnd)
+    {
+	if (editChange == null) {
+	    editChange = new TextChange(TextChange.NO_LAYOUT);
+	}
+	if (editChange.isFullLayout()) {
+	    return;
+	}
+	if (change.isFullLayout()) {
+	    editChange = new TextChange(TextChange.FULL_LAYOUT);
+	    return;
+	}
+	if (change.isPartialLayout()) {
+	    int lengthChanged = change.lengthChanged;
+	    if (editPaintBegin >= change.end)
+		editPaintBegin += lengthChanged;
+	    else if (editPaintBegin > change.begin)
+		editPaintBegin = change.begin;
+	    if (editPaintEnd >= change.end)
+		editPaintEnd += lengthChanged;
+	    else if (editPaintEnd > change.begin)
+		editPaintEnd = change.end + lengthChanged;
+
+	    TextChange m = editChange;
+	    if (m.isNoLayout()) {
+		editChange = new TextChange(change.begin, change.end,
+					    change.layoutBegin,
+					    change.layoutEnd,
+					    lengthChanged,
+					    change.textReplaced,
+					    change.paragraphStyleChanged);
+	    }
+	    else {
+		// A position p after the changed text of m maps back to
+		// p - m.lengthChanged, one in the changed text maps into it.
+		m.begin       = Math.min(m.begin, change.begin);
+		m.end         = Math.max(m.end, change.end - m.lengthChanged);
+		m.layoutBegin = Math.min(m.layoutBegin, change.layoutBegin);
+		m.layoutEnd   = Math.max(m.layoutEnd,
+					 change.layoutEnd - m.lengthChanged);
+		m.lengthChanged += lengthChanged;
+		m.textReplaced |= change.textReplaced;
+		m.paragraphStyleChanged |= change.paragraphStyleChanged;
+	    }
+	}
+	if (paintBegin >= 0 && paintEnd >= 0) {
+	    if (editPaintBegin < 0 || paintBegin < editPaintBegin)
+		editPaintBegin = paintBegin;
+	    if (editPaintEnd < 0 || paintEnd > editPaintEnd)
+		editPaintEnd = paintEnd;
+	}
+    }
+
     /**
      * Replaces the specified range of the rich text of this text edit
      * model with the specified replacement text object.
@@ -149,7 +329,8 @@ public class DefaultTextEditModel extends DefaultTextModel
 					TextModelEvent.TEXT_MODEL_EDITED,
 					change));
 	notifyTextListeners(new TextEvent(this, TextEvent.TEXT_VALUE_CHANGED));
-	return new ReplaceUndo(begin, begin + rep.length(), oldRichText);
+	return addEditUndo(
+		new ReplaceUndo(begin, begin + rep.length(), oldRichText));
     }
 
     /*
@@ -172,7 +353,7 @@ public class DefaultTextEditModel extends DefaultTextModel
 					this,
 					TextModelEvent.TEXT_MODEL_EDITED,
 					change));
-	return new TextStyleUndo(begin, end, oldTextStyles);
+	return addEditUndo(new TextStyleUndo(begin, end, oldTextStyles));
     }
 
     /*
@@ -195,7 +376,7 @@ public class DefaultTextEditModel extends DefaultTextModel
 					this,
 					TextModelEvent.TEXT_MODEL_EDITED,
 					change));
-	return new TextStyleUndo(begin, end, oldTextStyles);
+	return addEditUndo(new TextStyleUndo(begin, end, oldTextStyles));
     }
 
     /*
@@ -220,7 +401,8 @@ public class DefaultTextEditModel extends DefaultTextModel
 					this,
 					TextModelEvent.TEXT_MODEL_EDITED,
 					change));
-	return new ParagraphStyleUndo(begin, end, oldParagraphStyles);
+	return addEditUndo(
+		new ParagraphStyleUndo(begin, end, oldParagraphStyles));
     }
 
     /*
@@ -245,7 +427,8 @@ public class DefaultTextEditModel extends DefaultTextModel
 					this,
 					TextModelEvent.TEXT_MODEL_EDITED,
 					change));
-	return new ParagraphStyleUndo(begin, end, oldParagraphStyles);
+	return addEditUndo(
+		new ParagraphStyleUndo(begin, end, oldParagraphStyles));
     }
 
     /**
@@ -266,7 +449,8 @@ public class DefaultTextEditModel extends DefaultTextModel
 					TextModelEvent.TEXT_MODEL_EDITED,
 					change));
 	notifyTextListeners(new TextEvent(this, TextEvent.TEXT_VALUE_CHANGED));
-	return new ReplaceUndo(begin, begin + rep.length(), oldRichText);
+	return addEditUndo(
+		new ReplaceUndo(begin, begin + rep.length(), oldRichText));
     }
 
     /*
@@ -289,7 +473,7 @@ public class DefaultTextEditModel extends DefaultTextModel
 					this,
 					TextModelEvent.TEXT_MODEL_EDITED,
 					change));
-	return new TextStyleUndo(begin, end, oldTextStyles);
+	return addEditUndo(new TextStyleUndo(begin, end, oldTextStyles));
     }
 
     /*
@@ -314,7 +498,8 @@ public class DefaultTextEditModel extends DefaultTextModel
 					this,
 					TextModelEvent.TEXT_MODEL_EDITED,
 					change));
-	return new ParagraphStyleUndo(begin, end, oldParagraphStyles);
+	return addEditUndo(
+		new ParagraphStyleUndo(begin, end, oldParagraphStyles));
     }
 
 
@@ -356,6 +541,30 @@ public class DefaultTextEditModel extends DefaultTextModel
 	}
     }
 
+    /**
+     * Undo for the operations in an edit transaction. The operations are
+     * undone in an edit transaction too.
+     */
+    public class EditUndo implements Undo {
+	MultipleUndo undo;
+
+	public EditUndo(MultipleUndo undo) {
+	    this.undo = undo;
+	}
+
+	public Undo undo() {
+	    Undo redo;
+	    beginEdit();
+	    try {
+		undo.undo();
+	    }
+	    finally {
+		redo = endEdit();
+	    }
+	    return redo;
+	}
+    }
+
     /**
      * Undo for the paragraph style operations.
      */
@@ -122,4 +122,27 @@ public interface TextEditModel extends TextModel {
      */
     public Undo modifyParagraphStyle(int begin, int end,
 				     ParagraphStyleModifier modifier);
+
+    /**
+     * Begins an edit transaction. Until the matching <code>endEdit()</code>
+     * is called, the changes made by the edit operations of this text edit
+     * model are merged, and are notified to the listeners at once by the
+     * <code>endEdit()</code>. The transactions can be nested.
+     *
+     * @see #endEdit()
+     */
+    public void beginEdit();
+
+    /**
+     * Ends the edit transaction begun by <code>beginEdit()</code>. If the
+     * outermost transaction ends, the merged change is notified to the
+     * text model listeners as a text model event, and the text listeners
+     * are notified if the text was changed.
+     *
+     * @return the undo object for the all operations in the outermost
+     *         transaction, or <code>null</code> if the transaction is not
+     *         the outermost one or the undo is not supported.
+     * @see #beginEdit()
+     */
+    public Undo endEdit();
 }
@@ -23,6 +23,7 @@
 package jp.kyasu.awt.text;
 
 import jp.kyasu.awt.Button;
+import jp.kyasu.awt.Checkbox;
 import jp.kyasu.awt.Dialog;
 import jp.kyasu.awt.Label;
 import jp.kyasu.awt.Panel;
@@ -36,6 +37,7 @@ import jp.kyasu.graphics.RichTextStyle;
 import jp.kyasu.graphics.ParagraphStyle;
 import jp.kyasu.graphics.ParagraphStyleModifier;
 import jp.kyasu.graphics.Text;
+import jp.kyasu.graphics.TextCharSequence;
 import jp.kyasu.graphics.TextStyle;
 import jp.kyasu.graphics.TextStyleModifier;
 import jp.kyasu.graphics.text.TextPositionInfo;
@@ -58,6 +60,10 @@ import java.awt.event.*;
 import java.text.BreakIterator;
 import java.text.CharacterIterator;
 import java.util.Enumeration;
+import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 // /*if[JDK1.2]
 import jp.kyasu.graphics.BasicTSModifier;
@@ -131,6 +137,9 @@ public class BasicTextEditController extends TextController
     protected boolean clickable;
     protected Text typeInText;
     protected TextStyle typeInStyle;
+
+    /** The regular expression compiled last for finding. */
+    transient protected Pattern findPattern;
     protected Menu editMenu;
     protected PopupMenu popupMenu;
     transient protected TextPositionInfo dragOrigin;
@@ -1948,6 +1957,191 @@ public class BasicTextEditController extends TextController
 	return false;
     }
 
+    /**
+     * Finds the match of the regular expression and move the insertion
+     * cursor to the founded match.
+     * @param regex the regular expression to be found.
+     * @return true if the match has been found, false otherwise.
+     * @see #find_regex(java.lang.String, java.lang.String, int)
+     */
+    public boolean find_regex(String regex) {
+	return find_regex(regex, null);
+    }
+
+    /**
+     * Finds the match of the regular expression and move the insertion
+     * cursor to the founded match.
+     * @param regex the regular expression to be found.
+     * @param rep   the replacement string.
+     * @return true if the match has been found, false otherwise.
+     * @see #find_regex(java.lang.String, java.lang.String, int)
+     */
+    public boolean find_regex(String regex, String rep) {
+	return find_regex(regex, rep, view.getSelectionBegin().textIndex + 1);
+    }
+
+    /**
+     * Finds the match of the regular expression and move the insertion
+     * cursor to the founded match. The regular expression is matched
+     * over the text through a <code>TextCharSequence</code>, so that the
+     * text is not copied for each search. In the replacement string,
+     * <code>$</code><i>n</i> refers to the <i>n</i>-th captured group
+     * and a backslash escapes the next character.
+     * @param regex      the regular expression to be found.
+     * @param rep        the replacement string.
+     * @param startIndex the starting index to find.
+     * @return true if the match has been found, false otherwise.
+     * @see #find_regex(java.lang.String)
+     * @see #find_regex(java.lang.String, java.lang.String)
+     * @see #replace_all_regex(java.lang.String, java.lang.String)
+     */
+    public boolean find_regex(String regex, String rep, int startIndex) {
+	Pattern pattern = compileRegex(regex);
+	if (pattern == null)
+	    return false;
+	Text text = model.getRichText().getText();
+	if (startIndex > text.length()) {
+	    startIndex = 0;
+	}
+	Matcher matcher = pattern.matcher(new TextCharSequence(text));
+	if (matcher.find(startIndex)) {
+	    TextPositionInfo posInfo = view.getTextPositionAt(matcher.start());
+	    view.hideSelection();
+	    setSelectionBeginEnd(
+		posInfo,
+		view.getTextPositionNearby(posInfo, matcher.end()));
+	    if (rep != null) {
+		view.showSelection();
+		replaceSelection(expandReplacement(matcher, rep));
+	    }
+	    else {
+		view.scrollTo(view.getSelectionBegin());
+		view.showSelection();
+		notifyTextPositionListeners();
+	    }
+	    return true;
+	}
+	else {
+	    if (Dialog.confirm(view.getFrame(),
+		    getResourceString(
+			"kfc.text.findContinueLabel",
+			"End of text reached; continue from beggining?")))
+	    {
+		return find_regex(regex, rep, 0);
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Replaces all matches of the regular expression with the replacement
+     * string. The matches are replaced one by one from the last match in
+     * an edit transaction of the model, so that the styles of the text
+     * between the matches are kept, and the replacements are laid out and
+     * undone at once.
+     * @param regex the regular expression to be found.
+     * @param rep   the replacement string.
+     * @return the number of the replaced matches.
+     * @see #find_regex(java.lang.String, java.lang.String, int)
+     */
+    public int replace_all_regex(String regex, String rep) {
+	if (!view.isEditable())
+	    return 0;
+	Pattern pattern = compileRegex(regex);
+	if (pattern == null)
+	    return 0;
+	if (rep == null) rep = "";
+	Text text = model.getRichText().getText();
+	Matcher matcher = pattern.matcher(new TextCharSequence(text));
+	Vector ranges = new Vector();
+	Vector reps = new Vector();
+	while (matcher.find()) {
+	    ranges.addElement(new int[]{ matcher.start(), matcher.end() });
+	    reps.addElement(expandReplacement(matcher, rep));
+	}
+	int count = ranges.size();
+	if (count == 0)
+	    return 0;
+	model.beginEdit();
+	try {
+	    // the preceding matches are not moved by the replacement.
+	    for (int i = count - 1; i >= 0; i--) {
+		int range[] = (int[])ranges.elementAt(i);
+		String str = (String)reps.elementAt(i);
+		if (range[0] == range[1] && str.length() == 0)
+		    continue;
+		model.replace(range[0], range[1], new Text(str, typeInStyle));
+	    }
+	}
+	finally {
+	    lastUndo = model.endEdit();
+	}
+	if (view.isShowing()) {
+	    view.scrollTo(view.getSelectionBegin());
+	}
+	return count;
+    }
+
+    /**
+     * Compiles the regular expression for finding. The last compiled
+     * pattern is reused if the regular expression is not changed.
+     * @param regex the regular expression.
+     * @return the compiled pattern, or <code>null</code> if the regular
+     *         expression is empty or invalid.
+     */
+    protected Pattern compileRegex(String regex) {
+	if (regex == null || regex.length() == 0)
+	    return null;
+	if (findPattern != null && findPattern.pattern().equals(regex))
+	    return findPattern;
+	try {
+	    findPattern = Pattern.compile(regex, Pattern.MULTILINE);
+	}
+	catch (PatternSyntaxException e) {
+	    Dialog.warn(
+		view.getFrame(),
+		getResourceString("kfc.text.regexError",
+				  "Invalid regular expression")
+					+ " (" + e.getDescription() + ")");
+	    return null;
+	}
+	return findPattern;
+    }
+
+    /**
+     * Expands the replacement string for the current match of the
+     * specified matcher. <code>$</code><i>n</i> is replaced with the
+     * <i>n</i>-th captured group, and a backslash escapes the next
+     * character.
+     * @param matcher the matcher.
+     * @param rep     the replacement string.
+     * @return the expanded replacement string.
+     */
+    protected String expandReplacement(Matcher matcher, String rep) {
+	int length = rep.length();
+	StringBuffer buffer = new StringBuffer(length);
+	for (int i = 0; i < length; i++) {
+	    char c = rep.charAt(i);
+	    if (c == '\\' && i + 1 < length) {
+		buffer.append(rep.charAt(++i));
+	    }
+	    else if (c == '$' && i + 1 < length &&
+		     Character.isDigit(rep.charAt(i + 1)))
+	    {
+		int group = Character.digit(rep.charAt(++i), 10);
+		if (group <= matcher.groupCount()) {
+		    String str = matcher.group(group);
+		    if (str != null)
+			buffer.append(str);
+		}
+	    }
+	    else {
+		buffer.append(c);
+	    }
+	}
+	return buffer.toString();
+    }
+
     /**
      * Creates a dialog for finding a word.
      * @param initStr the initial string to prompt.
@@ -1993,6 +2187,12 @@ public class BasicTextEditController extends TextController
 	c.gridwidth = GridBagConstraints.REMAINDER;
 	gridbag.setConstraints(rfield, c);
 	p1.add(rfield);
+	final Checkbox regexBox = new Checkbox(
+		getResourceString("kfc.text.regexLabel", "Regular expression"));
+	c.gridwidth = GridBagConstraints.REMAINDER;
+	c.anchor = GridBagConstraints.WEST;
+	gridbag.setConstraints(regexBox, c);
+	p1.add(regexBox);
 	dialog.add(p1, BorderLayout.CENTER);
 
 	Panel p2 = new Panel();
@@ -2001,7 +2201,10 @@ public class BasicTextEditController extends TextController
 	ActionListener al = new ActionListener() {
 	    public void actionPerformed(ActionEvent e) {
 		view.setSelectionVisible(true);
-		find_word(ffield.getText(), null);
+		if (regexBox.getState())
+		    find_regex(ffield.getText(), null);
+		else
+		    find_word(ffield.getText(), null);
 	    }
 	};
 	ffield.addActionListener(al);
@@ -2016,7 +2219,10 @@ public class BasicTextEditController extends TextController
 	repB.addActionListener(new ActionListener() {
 	    public void actionPerformed(ActionEvent e) {
 		view.setSelectionVisible(true);
-		find_word(ffield.getText(), rfield.getText());
+		if (regexBox.getState())
+		    find_regex(ffield.getText(), rfield.getText());
+		else
+		    find_word(ffield.getText(), rfield.getText());
 	    }
 	});
 	if (!view.isEditable()) repB.setEnabled(false);
@@ -2030,6 +2236,10 @@ public class BasicTextEditController extends TextController
 	repAllB.addActionListener(new ActionListener() {
 	    public void actionPerformed(ActionEvent e) {
 		view.setSelectionVisible(true);
+		if (regexBox.getState()) {
+		    replace_all_regex(ffield.getText(), rfield.getText());
+		    return;
+		}
 		while (find_word(ffield.getText(), rfield.getText()))
 		    view.setSelectionVisible(true);
 	    }
@@ -967,21 +967,15 @@ public class TextEditController extends BasicTextEditController {
 		getResourceString("kfc.text.noSuchLineError", "No such line"));
 	    return;
 	}
-	int index = 0;
-	int lineCount = 1;
-	while (--lineNo > 0) {
-	    index = rtext.nextParagraphBeginIndexOf(index);
-	    if (index < 0) {
-		Dialog.warn(
-			view.getFrame(),
-			getResourceString(
-				"kfc.text.noSuchLineError",
-				"No such line")
+	int lineCount = rtext.getParagraphCount();
+	if (lineNo > lineCount) {
+	    Dialog.warn(
+		view.getFrame(),
+		getResourceString("kfc.text.noSuchLineError", "No such line")
 					+ " (1 - " + lineCount + ")");
-		return;
-	    }
-	    ++lineCount;
+	    return;
 	}
+	int index = rtext.paragraphBeginIndexAt(lineNo - 1);
 	TextPositionInfo posInfo = view.getTextPositionAt(index);
 	view.hideSelection();
 	setSelectionBeginEnd(posInfo);
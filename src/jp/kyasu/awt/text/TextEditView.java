@@ -111,6 +111,7 @@ public class TextEditView extends TextView implements TextModelListener {
 
 	setCursor(DEFAULT_CURSOR);
 
+	lazyLayout = true;
 	setTextLayout(createTextLayout());
 
 	//enableInputMethods(true);
@@ -396,6 +397,21 @@ public class TextEditView extends TextView implements TextModelListener {
 	}
     }
 
+    /**
+     * Relocates the selection and repaints this view after the lines
+     * already laid out have been changed by the lazy layout.
+     */
+    protected void lazyLayoutChanged() {
+	if (selectionBegin != null && selectionEnd != null) {
+	    int begin = selectionBegin.textIndex;
+	    int end = selectionEnd.textIndex;
+	    selectionBegin = layout.getTextPositionAt(begin);
+	    selectionEnd = (begin == end ?
+				selectionBegin : layout.getTextPositionAt(end));
+	}
+	super.lazyLayoutChanged();
+    }
+
     /**
      * Notifies this view that it has been added to a container.
      */
@@ -691,6 +707,12 @@ public class TextEditView extends TextView implements TextModelListener {
 	TextLayoutChange layoutChange = layout.updateLayout(change,
 							    selectionBegin,
 							    selectionEnd);
+	if (layoutChange.isNoRepaint() && change.isNoLayout()) {
+	    // the layout is not changed, but the range may be repainted,
+	    // e.g., the colors of the characters have been changed.
+	    layoutChange = getRepaintChange(event.getPaintBegin(),
+					    event.getPaintEnd());
+	}
 
 	if (layoutChange.isNoRepaint()) {
 	    // do nothing
@@ -800,6 +822,35 @@ public class TextEditView extends TextView implements TextModelListener {
 	    layoutResized(oldSize.width, oldSize.height);
     }
 
+    /**
+     * Returns the layout change that repaints the visible lines in the
+     * specified range of the text, without laying out the text.
+     *
+     * @param  begin the beginning index to repaint, inclusive, or
+     *               <code>-1</code>.
+     * @param  end   the ending index to repaint, exclusive, or
+     *               <code>-1</code>.
+     * @return the layout change to repaint the range.
+     */
+    protected TextLayoutChange getRepaintChange(int begin, int end) {
+	if (begin < 0 || end < begin || end > model.getRichText().length() ||
+	    !isShowing())
+	{
+	    return new TextLayoutChange(TextLayoutChange.NO_REPAINT);
+	}
+	TextPositionInfo vBegin = getVisibleBegin();
+	TextPositionInfo vEnd = getVisibleEnd();
+	if (end < vBegin.textIndex || vEnd.textIndex < begin) {
+	    return new TextLayoutChange(TextLayoutChange.NO_REPAINT);
+	}
+	// the positions out of the view port are not needed to be laid out.
+	TextPositionInfo paintBegin = (begin <= vBegin.textIndex ?
+			vBegin : layout.getTextPositionNearby(vBegin, begin));
+	TextPositionInfo paintEnd = (end >= vEnd.textIndex ?
+			vEnd : layout.getTextPositionNearby(vEnd, end));
+	return new TextLayoutChange(paintBegin, paintEnd, true, true, 0, 0);
+    }
+
     /**
      * Paints this view after the text edit model has been edited.
      */
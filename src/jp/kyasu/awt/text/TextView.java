@@ -25,12 +25,14 @@ package jp.kyasu.awt.text;
 import jp.kyasu.awt.AWTResources;
 import jp.kyasu.awt.KComponent;
 import jp.kyasu.awt.Scrollable;
+import jp.kyasu.awt.Timer;
 import jp.kyasu.awt.event.ScrollEvent;
 import jp.kyasu.awt.event.ScrollListener;
 import jp.kyasu.graphics.ParagraphStyle;
 import jp.kyasu.graphics.RichText;
 import jp.kyasu.graphics.RichTextStyle;
 import jp.kyasu.graphics.TextLayout;
+import jp.kyasu.graphics.text.TextLayoutChange;
 import jp.kyasu.graphics.text.TextLineInfo;
 import jp.kyasu.graphics.text.TextPositionInfo;
 
@@ -40,6 +42,8 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.Enumeration;
 import java.util.Locale;
 import java.util.Vector;
@@ -59,10 +63,12 @@ public abstract class TextView extends KComponent implements Scrollable {
     protected boolean selectionShowing;
     protected Color selectionForeground;
     protected Color selectionBackground;
+    protected boolean lazyLayout;
 
     transient protected Vector scrollListeners;
     transient protected TextPositionInfo _visibleBegin;
     transient protected TextPositionInfo _visibleEnd;
+    transient protected Timer lazyLayoutTimer;
 
     protected boolean scrolledUp    = false;
     protected boolean scrolledDown  = false;
@@ -96,6 +102,17 @@ public abstract class TextView extends KComponent implements Scrollable {
 	AWTResources.getResourceColor("kfc.text.selectionBackground",
 				      new Color(0, 0, 128));
 
+    /**
+     * The number of lines laid out at a time in the lazy layout mode.
+     */
+    static protected final int LAZY_LAYOUT_LINES = 500;
+
+    /**
+     * The delay in milliseconds between the layouts in the lazy layout
+     * mode.
+     */
+    static protected final int LAZY_LAYOUT_DELAY = 10;
+
 
     /**
      * Constructs a text view with the specified line wrapping style.
@@ -117,6 +134,8 @@ public abstract class TextView extends KComponent implements Scrollable {
 	selectionForeground = DEFAULT_SELECTION_FOREGROUND;
 	selectionBackground = DEFAULT_SELECTION_BACKGROUND;
 
+	lazyLayout = false;
+
 	setForeground(DEFAULT_FOREGROUND);
 	setBackground(DEFAULT_BACKGROUND);
 
@@ -145,6 +164,7 @@ public abstract class TextView extends KComponent implements Scrollable {
 	if (layout != null && layout.echoCharIsSet()) {
 	    newLayout.setEchoChar(layout.getEchoChar());
 	}
+	newLayout.setLazyLayoutHeight(getLazyLayoutHeight(getSize().height));
 	return newLayout;
     }
 
@@ -170,6 +190,7 @@ public abstract class TextView extends KComponent implements Scrollable {
 	if (isValid()) {
 	    layout.setWidth(getSize().width);
 	    layoutResized(-1, -1);
+	    startLazyLayout();
 	}
 
 	if (isShowing()) {
@@ -221,6 +242,44 @@ public abstract class TextView extends KComponent implements Scrollable {
 	setTextLayout(createTextLayout());
     }
 
+    /**
+     * Tests if the layout of this view is laid out lazily.
+     * @see #setLazyLayout(boolean)
+     */
+    public boolean isLazyLayout() {
+	return lazyLayout;
+    }
+
+    /**
+     * Makes the layout of this view laid out lazily. In the lazy layout
+     * mode, only the lines needed for the view port, plus a margin, are
+     * laid out synchronously. The rest of the lines are laid out in the
+     * background, or on demand as this view is scrolled. Until the layout
+     * is complete, the vertical maximum value of this view is estimated,
+     * and is refined as the layout progresses.
+     * @see #isLazyLayout()
+     * @see jp.kyasu.graphics.TextLayout#setLazyLayoutHeight(int)
+     */
+    public synchronized void setLazyLayout(boolean b) {
+	if (lazyLayout == b)
+	    return;
+	lazyLayout = b;
+	if (layout != null) {
+	    layout.setLazyLayoutHeight(getLazyLayoutHeight(getSize().height));
+	}
+    }
+
+    /**
+     * Returns the height of the layout that is laid out synchronously in
+     * the lazy layout mode, that is twice the height of the view port.
+     * @param  viewHeight the height of the view port.
+     * @return the height laid out synchronously, or <code>0</code> if not
+     *         in the lazy layout mode.
+     */
+    protected int getLazyLayoutHeight(int viewHeight) {
+	return (lazyLayout ? Math.max(viewHeight, 1) * 2 : 0);
+    }
+
     /**
      * Tests if the view can be traversed using Tab or Shift-Tab keyboard
      * focus traversal.
@@ -405,6 +464,7 @@ public abstract class TextView extends KComponent implements Scrollable {
 	try {
 	    setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 	    if (width > 0) {
+		layout.setLazyLayoutHeight(getLazyLayoutHeight(height));
 		layout.setWidth(width);
 	    }
 	}
@@ -427,6 +487,8 @@ public abstract class TextView extends KComponent implements Scrollable {
 	notifyScrollListeners(
 		new ScrollEvent(this, ScrollEvent.SCROLL_SIZE_CHANGED,
 				ScrollEvent.BOTH));
+
+	startLazyLayout();
     }
 
     /**
@@ -501,6 +563,8 @@ public abstract class TextView extends KComponent implements Scrollable {
 	if (g != _g) {
 	    g.dispose();
 	}
+
+	startLazyLayout();
     }
 
     /**
@@ -554,6 +618,7 @@ public abstract class TextView extends KComponent implements Scrollable {
 
     /**
      * Gets the vertical maximum value of the scrollable object.
+     * If the layout is not complete, returns the estimated value.
      * @see jp.kyasu.awt.Scrollable
      */
     public int getVMaximum() {
@@ -1093,6 +1158,51 @@ public abstract class TextView extends KComponent implements Scrollable {
 	}
     }
 
+    /**
+     * Starts laying out the rest of the layout in the background, if the
+     * layout is not complete.
+     * @see #setLazyLayout(boolean)
+     */
+    protected void startLazyLayout() {
+	if (layout.isLayoutComplete())
+	    return;
+	if (lazyLayoutTimer == null) {
+	    lazyLayoutTimer = new Timer(LAZY_LAYOUT_DELAY,
+					new LazyLayoutListener());
+	}
+	if (!lazyLayoutTimer.isRunning()) {
+	    lazyLayoutTimer.start();
+	}
+    }
+
+    /**
+     * Continues the incomplete layout, and informs scroll listeners that
+     * the layout is resized. This method is called from the timer started
+     * by <code>startLazyLayout()</code>.
+     */
+    protected synchronized void continueLayout() {
+	if (!layout.isLayoutComplete()) {
+	    TextLayoutChange change = layout.continueLayout(LAZY_LAYOUT_LINES);
+	    if (change.isFullRepaint()) {
+		lazyLayoutChanged();
+	    }
+	    layoutResized(-1, -1);
+	}
+	if (layout.isLayoutComplete() && lazyLayoutTimer != null) {
+	    lazyLayoutTimer.stop();
+	}
+    }
+
+    /**
+     * Repaints this view after the lines already laid out have been
+     * changed by the lazy layout, e.g., the line height has grown.
+     */
+    protected void lazyLayoutChanged() {
+	_visibleBegin = _visibleEnd = null;
+	selectionShowing = false;
+	repaintNow();
+    }
+
     /**
      * Returns the beginning text position of the view port.
      */
@@ -1222,4 +1332,14 @@ public abstract class TextView extends KComponent implements Scrollable {
 	    addScrollListener((ScrollListener)listenerOrNull);
 	}
     }
+
+
+    /**
+     * The listener of the lazy layout timer.
+     */
+    class LazyLayoutListener implements ActionListener {
+	public void actionPerformed(ActionEvent e) {
+	    continueLayout();
+	}
+    }
 }
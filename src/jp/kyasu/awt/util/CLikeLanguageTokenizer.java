@@ -24,6 +24,7 @@ package jp.kyasu.awt.util;
 
 import jp.kyasu.graphics.Text;
 import jp.kyasu.util.Set;
+import jp.kyasu.util.StringSet;
 
 /**
  * The <code>CLikeLanguageTokenizer</code> class parses a text into
@@ -35,6 +36,8 @@ import jp.kyasu.util.Set;
  */
 public class CLikeLanguageTokenizer extends LanguageTokenizer {
     protected Set keywords;
+    protected StringSet keywordSet;
+    protected Set keywordSetSource;
     protected int keywordBegin;
     protected int keywordEnd;
 
@@ -210,6 +213,7 @@ public class CLikeLanguageTokenizer extends LanguageTokenizer {
 	super(text, begin, end);
 
 	keywords   = JavaKeywords;
+	keywordSet = null;
 	keywordBegin = -1;
 	keywordEnd   = -1;
     }
@@ -228,7 +232,8 @@ public class CLikeLanguageTokenizer extends LanguageTokenizer {
      * @see #isJavaMode()
      */
     public void setJavaMode() {
-	keywords = JavaKeywords;
+	keywords   = JavaKeywords;
+	keywordSet = null;
     }
 
     /**
@@ -244,7 +249,8 @@ public class CLikeLanguageTokenizer extends LanguageTokenizer {
      * @see #isCMode()
      */
     public void setCMode() {
-	keywords = CKeywords;
+	keywords   = CKeywords;
+	keywordSet = null;
     }
 
     /**
@@ -260,7 +266,23 @@ public class CLikeLanguageTokenizer extends LanguageTokenizer {
      * @see #isCPPMode()
      */
     public void setCPPMode() {
-	keywords = CPPKeywords;
+	keywords   = CPPKeywords;
+	keywordSet = null;
+    }
+
+    /**
+     * Returns the keywords looked up without creating strings. The set is
+     * built from <code>keywords</code> at the first lookup, and is built
+     * again after the mode or <code>keywords</code> is changed, so that
+     * the keywords added to the sets of the languages are looked up by
+     * the tokenizers created afterwards.
+     */
+    protected StringSet getKeywordSet() {
+	if (keywordSet == null || keywordSetSource != keywords) {
+	    keywordSet = new StringSet(keywords);
+	    keywordSetSource = keywords;
+	}
+	return keywordSet;
     }
 
     /**
@@ -433,7 +455,7 @@ public class CLikeLanguageTokenizer extends LanguageTokenizer {
 			if (lower) lower = isLowerLetter(c);
 		    }
 		    if (lower &&
-			keywords.contains(getText().substring(pos, getPosition())))
+			containsToken(getKeywordSet(), pos, getPosition()))
 		    {
 			if (tokenType == OTHER) {
 			    keywordBegin = pos;
@@ -22,9 +22,16 @@
 
 package jp.kyasu.awt.util;
 
+import jp.kyasu.awt.Undo;
 import jp.kyasu.awt.event.TextModelEvent;
 import jp.kyasu.graphics.RichText;
+import jp.kyasu.graphics.Text;
+import jp.kyasu.graphics.TextColorMap;
+import jp.kyasu.graphics.TextStyle;
 import jp.kyasu.graphics.text.TextChange;
+import jp.kyasu.util.GapCharArray;
+import jp.kyasu.util.RunArray;
+import jp.kyasu.util.RunArrayCursor;
 
 import java.awt.Color;
 import java.awt.Font;
@@ -38,7 +45,14 @@ import java.awt.Font;
  * The <code>FastSyntaxColoringModel</code> hilights the syntax faster than
  * the <code>SyntaxColoringModel</code> but it cannot change the font styles
  * for the tokens.
+ * <p>
+ * In the paint time coloring mode, the types of the tokens are stored in
+ * an array beside the text instead of the text styles, and the colors of
+ * the tokens are picked from the array only when the text is painted.
+ * Hilighting the text then only writes the array, and neither lays out
+ * the text nor records the undo.
  *
+ * @see		jp.kyasu.graphics.TextColorMap
  * @see		jp.kyasu.awt.util.LanguageTokenizer
  * @see		jp.kyasu.awt.util.LanguageTokenizerFactory
  *
@@ -46,6 +60,31 @@ import java.awt.Font;
  * @author 	Kazuki YASUMATSU
  */
 public class FastSyntaxColoringModel extends SyntaxColoringModel {
+    /**
+     * True if the colors of the tokens are picked at the paint time from
+     * the types of the tokens stored beside the text.
+     */
+    protected boolean paintTimeColoring;
+
+    /**
+     * The font color for the normal tokens.
+     */
+    protected Color normalColor;
+
+    /**
+     * The types of the tokens of the characters of the text, or
+     * <code>null</code> if the paint time coloring is not used. The types
+     * are written only under the lock of this model, by the thread that
+     * edits this model or by the coloring timer in the event dispatch
+     * thread, i.e., where the text itself is written.
+     */
+    transient protected GapCharArray tokenTypes;
+
+    /**
+     * The color map of the text that maps the types of the tokens to the
+     * colors.
+     */
+    transient protected TextColorMap tokenColorMap;
 
     /**
      * Constructs a model with the specified rich text and factory of the
@@ -83,11 +122,47 @@ public class FastSyntaxColoringModel extends SyntaxColoringModel {
     }
 
 
+    /**
+     * Tests if the colors of the tokens are picked at the paint time.
+     *
+     * @see #setPaintTimeColoring(boolean)
+     */
+    public boolean isPaintTimeColoring() {
+	return paintTimeColoring;
+    }
+
+    /**
+     * Enables or disables the paint time coloring. If enabled, the types
+     * of the tokens are stored beside the text, and the colors of the
+     * tokens are picked only when the text is painted. The text is
+     * hilighted again.
+     */
+    public synchronized void setPaintTimeColoring(boolean b) {
+	if (paintTimeColoring == b)
+	    return;
+	paintTimeColoring = b;
+	setNormalStyleAndColor(getNormalStyle(), getNormalColor());
+	if (richText != null) {
+	    setRichText(richText);
+	}
+    }
+
+    /**
+     * Returns the font color for the normal tokens.
+     */
+    public Color getNormalColor() {
+	return (normalStyle == null ? getDefaultNormalColor() : normalColor);
+    }
+
     /**
      * Sets the font style for the normal tokens.
      */
     public void setNormalStyleAndColor(int fontStyle, Color color) {
-	normalStyle = new NamedTextStyle(NORMAL_STYLE, baseFont, color);
+	normalColor = color;
+	// in the paint time coloring, the color of the text styles overrides
+	// the colors of the tokens.
+	normalStyle = new NamedTextStyle(NORMAL_STYLE, baseFont,
+					 (paintTimeColoring ? null : color));
     }
 
     /**
@@ -116,6 +191,101 @@ public class FastSyntaxColoringModel extends SyntaxColoringModel {
     }
 
 
+    /**
+     * Sets the rich text of this model to be the specified rich text.
+     *
+     * @param richText the rich text.
+     */
+    public synchronized void setRichText(RichText richText) {
+	if (richText == null)
+	    throw new NullPointerException();
+	if (this.richText != null &&
+	    this.richText.getText().getColorMap() == tokenColorMap)
+	{
+	    this.richText.getText().setColorMap(null);
+	}
+	if (!paintTimeColoring) {
+	    tokenTypes = null;
+	    super.setRichText(richText);
+	    return;
+	}
+	Font font = richText.getRichTextStyle().getTextStyle().getFont();
+	if (baseFont == null || !baseFont.equals(font)) {
+	    setBaseFont(font);
+	}
+	Text text = richText.getText();
+	text.replaceStyle(0, text.length(), normalStyle);
+	tokenTypes = new GapCharArray(text.length() + 16);
+	tokenTypes.setLength(text.length());
+	if (tokenColorMap == null) {
+	    tokenColorMap = new TokenColorMap();
+	}
+	text.setColorMap(tokenColorMap);
+	// the super class stores the types before it notifies the views.
+	super.setRichText(richText);
+    }
+
+    /**
+     * Replaces the specified range of the rich text of this model with
+     * the specified replacement text object.
+     *
+     * @param  repBegin the beginning text position to replace, inclusive.
+     * @param  repEnd   the ending text position to replace, exclusive.
+     * @param  rep      a replacement <code>Text</code> object.
+     * @return the undo object for this operation, or <code>null</code> if
+     *         the undo is not supported.
+     */
+    public synchronized Undo replace(int repBegin, int repEnd, Text rep) {
+	if (tokenTypes != null) {
+	    // the replaced tokens are hilighted again by the super class.
+	    int len = rep.length();
+	    tokenTypes.replace(repBegin, repEnd, new char[len], 0, len);
+	}
+	return super.replace(repBegin, repEnd, rep);
+    }
+
+    /**
+     * Sets the styles of the tokens in the specified range of the text.
+     * In the paint time coloring, the types of the tokens are stored
+     * instead of the styles.
+     */
+    protected void setTokenStyles(Text text, int begin, int end,
+				  RunArray styles, TextStyle tokenStyles[])
+    {
+	if (tokenTypes == null) {
+	    super.setTokenStyles(text, begin, end, styles, tokenStyles);
+	    return;
+	}
+	RunArrayCursor cursor = styles.cursor();
+	cursor.seek(0);
+	int index = begin;
+	do {
+	    char type = (char)LanguageTokenizer.OTHER;
+	    for (int t = tokenStyles.length - 1; t > 0; t--) {
+		if (tokenStyles[t] == cursor.value) {
+		    type = (char)t;
+		    break;
+		}
+	    }
+	    int runEnd = Math.min(begin + cursor.runEnd, end);
+	    while (index < runEnd) {
+		tokenTypes.setChar(index++, type);
+	    }
+	} while (index < end && cursor.next());
+    }
+
+    /**
+     * Returns the change of the text made by hilighting the specified
+     * range of the text in the background. In the paint time coloring,
+     * the range is only repainted.
+     */
+    protected TextChange getColoringChange(int begin, int end) {
+	if (tokenTypes != null) {
+	    return new TextChange(TextChange.NO_LAYOUT);
+	}
+	return super.getColoringChange(begin, end);
+    }
+
     /** Notifies the text model event to the text model listeners. */
     protected void notifyTextModelListeners(int begin, int end,
 					    TextChange change)
@@ -165,4 +335,51 @@ public class FastSyntaxColoringModel extends SyntaxColoringModel {
      * Returns the default font color for the comment tokens.
      */
     protected Color getDefaultCommentColor() { return new Color(0, 128, 0); }
+
+
+    /**
+     * Returns the font color for the specified type of the tokens.
+     */
+    protected Color getTokenColor(int type) {
+	switch (type) {
+	case LanguageTokenizer.KEYWORD:
+	    return getKeywordColor();
+	case LanguageTokenizer.CONSTANT:
+	case LanguageTokenizer.MULTILINE_CONSTANT:
+	    return getConstantColor();
+	case LanguageTokenizer.COMMENT:
+	case LanguageTokenizer.MULTILINE_COMMENT:
+	    return getCommentColor();
+	case LanguageTokenizer.OTHER:
+	default:
+	    return normalColor;
+	}
+    }
+
+
+    /**
+     * Maps the characters of the text to the colors of the types of the
+     * tokens stored beside the text.
+     */
+    class TokenColorMap implements TextColorMap {
+	public Color getColorAt(int index) {
+	    GapCharArray types = tokenTypes;
+	    if (types == null || index >= types.length())
+		return null;
+	    return getTokenColor(types.getChar(index));
+	}
+
+	public int getColorRunEnd(int index, int limit) {
+	    GapCharArray types = tokenTypes;
+	    if (types == null || index >= types.length())
+		return limit;
+	    int end = Math.min(limit, types.length());
+	    char type = types.getChar(index);
+	    int i = index + 1;
+	    while (i < end && types.getChar(i) == type) {
+		++i;
+	    }
+	    return (end < limit && i == end ? limit : i);
+	}
+    }
 }
@@ -56,21 +56,20 @@ public class JavaSyntaxColoringModel extends FastSyntaxColoringModel {
 	public LanguageTokenizer createLanguageTokenizer(Text text,
 							 int begin, int end)
 	{
-	    CLikeLanguageTokenizer tokenizer =
-				new CLikeLanguageTokenizer(text, begin, end);
+	    TableTokenizerFactory factory;
 	    switch (language) {
 	    case C_LANG:
-		tokenizer.setCMode();
+		factory = TableTokenizerFactory.C;
 		break;
 	    case CPP_LANG:
-		tokenizer.setCPPMode();
+		factory = TableTokenizerFactory.CPP;
 		break;
 	    case JAVA_LANG:
 	    default:
-		tokenizer.setJavaMode();
+		factory = TableTokenizerFactory.JAVA;
 		break;
 	    }
-	    return tokenizer;
+	    return factory.createLanguageTokenizer(text, begin, end);
 	}
     }
 
@@ -24,6 +24,7 @@ package jp.kyasu.awt.util;
 
 import jp.kyasu.graphics.Text;
 import jp.kyasu.graphics.TextCharacterIterator;
+import jp.kyasu.util.StringSet;
 
 import java.text.CharacterIterator;
 
@@ -50,6 +51,9 @@ public abstract class LanguageTokenizer extends TextCharacterIterator
     /** True, if the parsing context is in the multiline comment. */
     public boolean inMultiLineComment;
 
+    /** The buffer of the characters of a token that spans the chunks. */
+    transient protected char tokenBuffer[];
+
 
     /**
      * A constant indicating that the end of the array has been read.
@@ -87,6 +91,21 @@ public abstract class LanguageTokenizer extends TextCharacterIterator
     static public final int MULTILINE_COMMENT  = 5;
 
 
+    /**
+     * A bit of the parsing state indicating that the parsing context is
+     * in the multiline constant.
+     * @see #getState()
+     */
+    static public final int IN_MULTILINE_CONSTANT = 1;
+
+    /**
+     * A bit of the parsing state indicating that the parsing context is
+     * in the multiline comment.
+     * @see #getState()
+     */
+    static public final int IN_MULTILINE_COMMENT  = 2;
+
+
     /**
      * Returns the preferred beginning index to parse after the specified
      * text has been changed.
@@ -210,17 +229,45 @@ public abstract class LanguageTokenizer extends TextCharacterIterator
      */
     public abstract int nextToken();
 
+    /**
+     * Returns the parsing state of this tokenizer, that is carried over
+     * the lines. A tokenizer that starts parsing at the beginning of a
+     * line with a state hilights the line in the same way as the tokenizer
+     * that has parsed the text before the line and has reached the state.
+     *
+     * @return the parsing state.
+     * @see #IN_MULTILINE_CONSTANT
+     * @see #IN_MULTILINE_COMMENT
+     * @see #setState(int)
+     */
+    public int getState() {
+	return (inMultiLineConstant ? IN_MULTILINE_CONSTANT : 0) |
+	       (inMultiLineComment  ? IN_MULTILINE_COMMENT  : 0);
+    }
+
+    /**
+     * Sets the parsing state of this tokenizer.
+     *
+     * @param state the parsing state.
+     * @see #getState()
+     */
+    public void setState(int state) {
+	inMultiLineConstant = ((state & IN_MULTILINE_CONSTANT) != 0);
+	inMultiLineComment  = ((state & IN_MULTILINE_COMMENT)  != 0);
+    }
+
+
 
     protected final int read() {
 	if (pos < end)
-	    return (int)array[pos++];
+	    return (int)charAt(pos++);
 	else
 	    return -1;
     }
 
     protected final int peek() {
 	if (pos < end)
-	    return (int)array[pos];
+	    return (int)charAt(pos);
 	else
 	    return -1;
     }
@@ -239,6 +286,24 @@ public abstract class LanguageTokenizer extends TextCharacterIterator
 	    this.pos = pos;
     }
 
+    /**
+     * Tests if the characters in the specified range are in the set,
+     * without creating a string.
+     */
+    protected final boolean containsToken(StringSet set, int begin, int end) {
+	if (begin >= end)
+	    return false;
+	charAt(end - 1); // validates the current chunk
+	if (begin >= chunkBegin && end <= chunkEnd) {
+	    return set.contains(array, begin + offset, end + offset);
+	}
+	if (tokenBuffer == null || tokenBuffer.length < end - begin) {
+	    tokenBuffer = new char[Math.max(end - begin, 32)];
+	}
+	text.getChars(begin, end, tokenBuffer, 0);
+	return set.contains(tokenBuffer, 0, end - begin);
+    }
+
     protected final boolean isLowerLetter(int c) {
 	return ('a' <= c && c <= 'z');
     }
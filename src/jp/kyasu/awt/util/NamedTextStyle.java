@@ -153,6 +153,13 @@ public class NamedTextStyle extends TextStyle {
 	this.styleName = styleName;
     }
 
+    /**
+     * Checks if this named text style can be interned.
+     */
+    protected boolean isInternable() {
+	return (getClass() == NamedTextStyle.class);
+    }
+
     /**
      * Returns a hashcode for this named text style.
      */
@@ -24,6 +24,7 @@ package jp.kyasu.awt.util;
 
 import jp.kyasu.graphics.Text;
 import jp.kyasu.util.Set;
+import jp.kyasu.util.StringSet;
 
 /**
  * The <code>SmalltalkTokenizer</code> class parses a text into "tokens".
@@ -33,6 +34,7 @@ import jp.kyasu.util.Set;
  * @author 	Kazuki YASUMATSU
  */
 public class SmalltalkTokenizer extends LanguageTokenizer {
+    protected StringSet keywordSet;
     protected int keywordBegin;
     protected int keywordEnd;
 
@@ -68,6 +70,19 @@ public class SmalltalkTokenizer extends LanguageTokenizer {
     }
 
 
+    /**
+     * Returns the keywords looked up without creating strings. The set is
+     * built from <code>Keywords</code> at the first lookup, so that the
+     * keywords added to <code>Keywords</code> are looked up by the
+     * tokenizers created afterwards.
+     */
+    protected StringSet getKeywordSet() {
+	if (keywordSet == null) {
+	    keywordSet = new StringSet(Keywords);
+	}
+	return keywordSet;
+    }
+
     /**
      * Parses the next token from the text of this tokenizer.
      * @return the type of the token.
@@ -270,8 +285,7 @@ public class SmalltalkTokenizer extends LanguageTokenizer {
 			    break;
 			}
 		    }
-		    String token = getText().substring(pos, getPosition());
-		    if (Keywords.contains(token)) {
+		    if (containsToken(getKeywordSet(), pos, getPosition())) {
 			if (tokenType == OTHER) {
 			    keywordBegin = pos;
 			    keywordEnd   = getPosition();
@@ -23,6 +23,7 @@
 package jp.kyasu.awt.util;
 
 import jp.kyasu.awt.DefaultTextEditModel;
+import jp.kyasu.awt.Timer;
 import jp.kyasu.awt.Undo;
 import jp.kyasu.awt.event.TextModelEvent;
 import jp.kyasu.graphics.RichText;
@@ -30,16 +31,28 @@ import jp.kyasu.graphics.Text;
 import jp.kyasu.graphics.TextStyle;
 import jp.kyasu.graphics.TextStyleModifier;
 import jp.kyasu.graphics.text.TextChange;
+import jp.kyasu.util.RunArray;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.TextEvent;
+import java.util.Vector;
 
 /**
  * The <code>SyntaxColoringModel</code> class implements the
  * <code>TextEditModel</code> interface. The <code>SyntaxColoringModel</code>
  * object hilights the syntax of the text representing a program written in
  * a computer language.
+ * <p>
+ * The parsing states of the tokenizer at the beginnings of the lines are
+ * kept, so that the hilighting after an edit stops at the first line
+ * whose state is not changed by the edit. If an edit changes the states
+ * of many lines, e.g., opens a multiline comment, the lines beyond the
+ * foreground lines are hilighted in chunks by a timer, which runs on the
+ * event dispatch thread and notifies the hilighted lines to the text model
+ * listeners.
  *
  * @see 	jp.kyasu.awt.util.LanguageTokenizer
  * @see 	jp.kyasu.awt.util.LanguageTokenizerFactory
@@ -59,6 +72,44 @@ public class SyntaxColoringModel extends DefaultTextEditModel {
     protected NamedTextStyle commentStyle;
     protected NamedTextStyle mlCommentStyle;
 
+    /**
+     * The number of the lines hilighted in the editing thread after an
+     * edit. The rest is hilighted in the background.
+     */
+    protected int foregroundColoringLines;
+
+    /**
+     * The parsing states at the beginnings of the lines. The value at an
+     * index is the state (an <code>Integer</code>) at the beginning of the
+     * line that contains the index. The length is the length of the text
+     * plus one.
+     *
+     * @see jp.kyasu.awt.util.LanguageTokenizer#getState()
+     */
+    transient protected RunArray lineStates;
+
+    /**
+     * The beginning index of the lines that remain to be hilighted, or
+     * <code>-1</code> if all lines are hilighted. The parsing state at the
+     * beginning of the line that contains the index is valid.
+     */
+    transient protected int dirtyBegin;
+
+    /**
+     * The index that the hilighting of the remaining lines must reach
+     * before it stops.
+     */
+    transient protected int dirtyEnd;
+
+    /** The timer that hilights the remaining lines. */
+    transient protected Timer coloringTimer;
+
+    /**
+     * True if a large text is hilighted in parallel by the multiple
+     * threads when it is set to this model.
+     */
+    protected boolean parallelColoring;
+
 
     /**
      * The normal style name.
@@ -90,6 +141,40 @@ public class SyntaxColoringModel extends DefaultTextEditModel {
      */
     static protected final String MULTILINE_COMMENT_STYLE  = "ml comment";
 
+    /**
+     * The default number of the lines hilighted in the editing thread
+     * after an edit.
+     */
+    static protected final int DEFAULT_FOREGROUND_COLORING_LINES = 100;
+
+    /**
+     * The number of the lines hilighted in a chunk by the timer.
+     */
+    static protected final int BACKGROUND_COLORING_LINES = 500;
+
+    /**
+     * The delay in milliseconds between the chunks hilighted by the timer.
+     */
+    static protected final int BACKGROUND_COLORING_DELAY = 10;
+
+    /**
+     * The minimum length of the text that is hilighted in parallel.
+     */
+    static public final int PARALLEL_COLORING_THRESHOLD = 64 * 1024;
+
+    /**
+     * The minimum length of the chunk of the lines that is hilighted by
+     * a thread at once.
+     */
+    static protected final int PARALLEL_COLORING_CHUNK = 16 * 1024;
+
+    /**
+     * The parsing states without the multiline constant and comment.
+     */
+    static protected final Integer STATES[] = {
+	new Integer(0), new Integer(1), new Integer(2), new Integer(3)
+    };
+
 
     /**
      * Constructs a model with the specified rich text and factory of the
@@ -121,6 +206,9 @@ public class SyntaxColoringModel extends DefaultTextEditModel {
 	    throw new NullPointerException();
 	this.factory = factory;
 	syntaxColoringEnabled = true;
+	foregroundColoringLines = DEFAULT_FOREGROUND_COLORING_LINES;
+	parallelColoring = true;
+	dirtyBegin = -1;
 	setBaseFont(baseFont);
 	setRichText(richText);
     }
@@ -130,6 +218,9 @@ public class SyntaxColoringModel extends DefaultTextEditModel {
      */
     protected SyntaxColoringModel() {
 	super();
+	foregroundColoringLines = DEFAULT_FOREGROUND_COLORING_LINES;
+	parallelColoring = true;
+	dirtyBegin = -1;
     }
 
 
@@ -147,6 +238,59 @@ public class SyntaxColoringModel extends DefaultTextEditModel {
 	syntaxColoringEnabled = b;
     }
 
+    /**
+     * Returns the number of the lines hilighted in the editing thread
+     * after an edit.
+     */
+    public int getForegroundColoringLines() {
+	return foregroundColoringLines;
+    }
+
+    /**
+     * Sets the number of the lines hilighted in the editing thread after
+     * an edit. The lines beyond are hilighted in the background. The
+     * number should cover the visible lines.
+     */
+    public void setForegroundColoringLines(int lines) {
+	if (lines < 1)
+	    throw new IllegalArgumentException("improper lines: " + lines);
+	foregroundColoringLines = lines;
+    }
+
+    /**
+     * Tests if a large text is hilighted in parallel when it is set to
+     * this model.
+     *
+     * @see #setParallelColoring(boolean)
+     */
+    public boolean isParallelColoring() {
+	return parallelColoring;
+    }
+
+    /**
+     * Enables or disables the parallel hilighting. If enabled, the text
+     * longer than <code>PARALLEL_COLORING_THRESHOLD</code> set to this
+     * model is partitioned at the line boundaries, and the partitions are
+     * hilighted by the multiple threads (the default).
+     *
+     * @see #PARALLEL_COLORING_THRESHOLD
+     */
+    public synchronized void setParallelColoring(boolean b) {
+	parallelColoring = b;
+    }
+
+    /**
+     * Hilights the lines that remain to be hilighted in the background,
+     * in the current thread.
+     */
+    public synchronized void completeSyntaxColoring() {
+	while (syntaxColoringEnabled && lineStates != null &&
+	       dirtyBegin >= 0)
+	{
+	    coloringDirtyLines(Integer.MAX_VALUE);
+	}
+    }
+
     /**
      * Returns the font style for the normal tokens.
      */
@@ -355,16 +499,21 @@ public class SyntaxColoringModel extends DefaultTextEditModel {
 	    setBaseFont(font);
 	}
 
+	dirtyBegin = -1;
 	if (!syntaxColoringEnabled || richText.isEmpty()) {
+	    lineStates = (syntaxColoringEnabled ?
+				new RunArray(1, STATES[0], Integer.class) :
+				null);
 	    richText.setBaseTextStyle(normalStyle);
 	    super.setRichText(richText);
 	    return;
 	}
 
 	Text text = richText.getText();
-	if (text.length() > 0) {
-	    LanguageTokenizer tokenizer = getTokenizer(text, 0, text.length());
-	    coloringSyntax(tokenizer, text);
+	if (!coloringParallel(text)) {
+	    lineStates = new RunArray(text.length() + 1, STATES[0],
+				      Integer.class);
+	    coloringLines(text, 0, 0, text.length(), Integer.MAX_VALUE);
 	}
 	super.setRichText(new RichText(text, richText.getRichTextStyle()));
 	return;
@@ -385,109 +534,58 @@ public class SyntaxColoringModel extends DefaultTextEditModel {
 	rep.replaceStyle(0, rep.length(), normalStyle);
 
 	if (!syntaxColoringEnabled) {
+	    lineStates = null;
 	    return super.replace(repBegin, repEnd, rep);
 	}
+	if (lineStates == null) {
+	    // the states are lost; hilights all lines in the background.
+	    lineStates = new RunArray(richText.length() + 1, STATES[0],
+				      Integer.class);
+	    dirtyBegin = 0;
+	    dirtyEnd   = lineStates.length();
+	}
 
 	RichText oldRichText = richText.subtext(repBegin, repEnd);
 	TextChange change = richText.replace(repBegin, repEnd, rep);
-	repEnd = repBegin + rep.length();
-
-	Text text = richText.getText();
-
-	int begin;
-	int tokenBeginType;
-	boolean beginIsInMultiLineConstant;
-	boolean beginIsInMultiLineComment;
-	if (repBegin <= 0) {
-	    tokenBeginType = LanguageTokenizer.EOT;
-	    begin = 0;
-	    beginIsInMultiLineConstant = false;
-	    beginIsInMultiLineComment = false;
-	}
-	else {
-	    int tokenBegin = repBegin - 1 - text.getRunOffsetAt(repBegin - 1);
-	    tokenBeginType = getTokenType(text, tokenBegin);
-	    begin = LanguageTokenizer.getPreferredParseBegin(
-			text, tokenBeginType, tokenBegin, repBegin - 1);
-	    beginIsInMultiLineConstant =
-		(tokenBeginType == LanguageTokenizer.MULTILINE_CONSTANT &&
-		 begin > tokenBegin);
-	    beginIsInMultiLineComment =
-		(tokenBeginType == LanguageTokenizer.MULTILINE_COMMENT &&
-		 begin > tokenBegin);
-	}
-	int end;
-	int tokenEnd;
-	int tokenEndType;
-	boolean endIsInMultiLineConstant;
-	boolean endIsIsInMultiLineComment;
-	if (repEnd >= text.length()) {
-	    tokenEndType = LanguageTokenizer.EOT;
-	    tokenEnd = text.length();
-	    end = tokenEnd;
-	    endIsInMultiLineConstant = false;
-	    endIsIsInMultiLineComment = false;
+	int newRepEnd = repBegin + rep.length();
+	// the state at the beginning of the line that contains repBegin.
+	int state = getLineState(repBegin);
+	if (repEnd > repBegin || newRepEnd > repBegin) {
+	    lineStates.replace(repBegin, repEnd,
+			       new RunArray(newRepEnd - repBegin,
+					    lineStates.get(repBegin),
+					    Integer.class));
 	}
-	else {
-	    tokenEndType = getTokenType(text, repEnd);
-	    tokenEnd = repEnd + text.getRunLengthAt(repEnd);
-	    end = LanguageTokenizer.getPreferredParseEnd(
-			text, tokenEndType, tokenEnd, repEnd);
-	    endIsInMultiLineConstant =
-			(tokenEndType == LanguageTokenizer.MULTILINE_CONSTANT);
-	    endIsIsInMultiLineComment =
-			(tokenEndType == LanguageTokenizer.MULTILINE_COMMENT);
-	}
-
-	if (begin < end) {
-	    LanguageTokenizer tokenizer = getTokenizer(text, begin, end);
-	    tokenizer.inMultiLineConstant = beginIsInMultiLineConstant;
-	    tokenizer.inMultiLineComment  = beginIsInMultiLineComment;
-	    coloringSyntax(tokenizer, text);
-	    if (tokenizer.inMultiLineConstant != endIsInMultiLineConstant) {
-		if (tokenizer.inMultiLineConstant) {
-		    if (end < text.length()) {
-			tokenizer = getTokenizer(text, end, text.length());
-			tokenizer.inMultiLineConstant = true;
-			end = coloringSyntax(tokenizer, text, true, false);
-		    }
-		}
-		else {
-		    if (end < tokenEnd) {
-			tokenizer = getTokenizer(text, end, tokenEnd);
-			tokenizer.inMultiLineConstant = false;
-			end = coloringSyntax(tokenizer, text);
-		    }
-		}
+	if (dirtyBegin >= 0) {
+	    if (dirtyBegin > repBegin) {
+		dirtyBegin = (dirtyBegin >= repEnd ?
+				dirtyBegin + (newRepEnd - repEnd) :
+				repBegin);
 	    }
-	    if (tokenizer.inMultiLineComment != endIsIsInMultiLineComment) {
-		if (tokenizer.inMultiLineComment) {
-		    if (end < text.length()) {
-			tokenizer = getTokenizer(text, end, text.length());
-			tokenizer.inMultiLineComment = true;
-			end = coloringSyntax(tokenizer, text, false, true);
-		    }
-		}
-		else {
-		    if (end < tokenEnd) {
-			tokenizer = getTokenizer(text, end, tokenEnd);
-			tokenizer.inMultiLineComment = false;
-			end = coloringSyntax(tokenizer, text);
-		    }
-		}
+	    if (dirtyEnd > repBegin) {
+		dirtyEnd = (dirtyEnd >= repEnd ?
+				dirtyEnd + (newRepEnd - repEnd) :
+				newRepEnd);
+	    }
+	    if (dirtyEnd <= dirtyBegin) {
+		dirtyEnd = dirtyBegin + 1;
 	    }
 	}
 
-	if (repBegin > 0 && tokenBeginType == getTokenType(text, repBegin - 1))
-	{
-	    begin = repBegin;
+	Text text = richText.getText();
+	int begin = (repBegin > 0 ?
+			text.lastIndexOf('\n', repBegin - 1) + 1 : 0);
+	int end = coloringLines(text, begin, state, newRepEnd,
+				foregroundColoringLines);
+	if (dirtyBegin >= 0) {
+	    startColoringTimer();
 	}
-	notifyTextModelListeners(begin, end, change);
+
+	notifyTextModelListeners(begin, Math.min(end, text.length()), change);
 	notifyTextListeners(new TextEvent(this, TextEvent.TEXT_VALUE_CHANGED));
-	return new ReplaceUndo(repBegin, repEnd, oldRichText);
+	return addEditUndo(new ReplaceUndo(repBegin, newRepEnd, oldRichText));
     }
 
-
     /** Notifies the text model event to the text model listeners. */
     protected void notifyTextModelListeners(int begin, int end,
 					    TextChange change)
@@ -598,6 +696,348 @@ public class SyntaxColoringModel extends DefaultTextEditModel {
 	return tokenizer.tokenEnd;
     }
 
+    /**
+     * Hilights the syntax of the lines of the specified text from the
+     * specified beginning of a line, and updates the parsing states of
+     * the lines. The hilighting stops at the beginning of a line after
+     * the specified index, whose parsing state is not changed. If the
+     * specified number of lines have been hilighted before that, the rest
+     * is left to be hilighted in the background.
+     *
+     * @param  text      the text to be hilighted.
+     * @param  begin     the beginning index of a line.
+     * @param  state     the parsing state at the beginning of the line.
+     * @param  stopAfter the index after which the hilighting can stop.
+     * @param  maxLines  the maximum number of the lines to be hilighted.
+     * @return the index at which the hilighting stopped.
+     */
+    protected int coloringLines(Text text, int begin, int state,
+				int stopAfter, int maxLines)
+    {
+	int length = text.length();
+	TextStyle tokenStyles[] = getTokenStyles();
+	RunArray newStyles = new RunArray(TextStyle.class);
+	RunArray newStates = new RunArray(Integer.class);
+	int lines = 0;
+	int index = begin;
+	int statesEnd = begin;
+	boolean pending = false;
+	while (index <= length) {
+	    if (index > stopAfter && state == getLineState(index)) {
+		break;
+	    }
+	    int lineEnd = text.indexOf('\n', index);
+	    lineEnd = (lineEnd < 0 ? length + 1 : lineEnd + 1);
+	    newStates.append(new RunArray(lineEnd - index,
+					  getStateValue(state),
+					  Integer.class));
+	    statesEnd = lineEnd;
+	    if (lines > 0 && lines >= maxLines) {
+		// leaves the rest to the background.
+		pending = true;
+		break;
+	    }
+	    if (index < length) {
+		int end = Math.min(lineEnd, length);
+		LanguageTokenizer tokenizer = getTokenizer(text, index, end);
+		tokenizer.setState(state);
+		coloringSyntax(tokenizer, index, end, newStyles, tokenStyles);
+		state = tokenizer.getState();
+	    }
+	    ++lines;
+	    index = lineEnd;
+	}
+	int stylesEnd = Math.min(index, length);
+	if (stylesEnd > begin) {
+	    setTokenStyles(text, begin, stylesEnd, newStyles, tokenStyles);
+	}
+	if (statesEnd > begin) {
+	    lineStates.replace(begin, statesEnd, newStates);
+	}
+	if (pending) {
+	    if (dirtyBegin < 0) {
+		dirtyBegin = index;
+		dirtyEnd   = Math.max(index, stopAfter) + 1;
+	    }
+	    else {
+		if (dirtyBegin >= begin) {
+		    dirtyBegin = index;
+		}
+		dirtyEnd = Math.max(dirtyEnd, Math.max(index, stopAfter) + 1);
+	    }
+	}
+	else if (dirtyBegin >= begin && dirtyBegin < index) {
+	    dirtyBegin = (index >= dirtyEnd ? -1 : index);
+	}
+	return index;
+    }
+
+    /**
+     * Appends the styles of the tokens parsed by the specified tokenizer
+     * in the specified range to the specified run array.
+     *
+     * @param tokenizer   the tokenizer.
+     * @param begin       the beginning index of the tokenizer, inclusive.
+     * @param end         the ending index of the tokenizer, exclusive.
+     * @param styles      the run array of the text styles to be appended.
+     * @param tokenStyles the interned text styles indexed by token types.
+     * @see   #getTokenStyles()
+     */
+    protected void coloringSyntax(LanguageTokenizer tokenizer,
+				  int begin, int end, RunArray styles,
+				  TextStyle tokenStyles[])
+    {
+	int index = begin;
+	int token;
+	while ((token = tokenizer.nextToken()) != LanguageTokenizer.EOT) {
+	    if (tokenizer.tokenEnd <= index)
+		continue;
+	    if (tokenizer.tokenBegin > index) {
+		styles.append(new RunArray(tokenizer.tokenBegin - index,
+					   tokenStyles[LanguageTokenizer.OTHER],
+					   TextStyle.class));
+		index = tokenizer.tokenBegin;
+	    }
+	    TextStyle style = ((token >= 0 && token < tokenStyles.length) ?
+					tokenStyles[token] :
+					tokenStyles[LanguageTokenizer.OTHER]);
+	    styles.append(new RunArray(tokenizer.tokenEnd - index, style,
+				       TextStyle.class));
+	    index = tokenizer.tokenEnd;
+	}
+	if (index < end) {
+	    styles.append(new RunArray(end - index,
+				       tokenStyles[LanguageTokenizer.OTHER],
+				       TextStyle.class));
+	}
+    }
+
+    /**
+     * Returns the interned text styles for the tokens, indexed by the
+     * token types.
+     *
+     * @see jp.kyasu.awt.util.LanguageTokenizer#OTHER
+     * @see jp.kyasu.awt.util.LanguageTokenizer#MULTILINE_COMMENT
+     */
+    protected TextStyle[] getTokenStyles() {
+	TextStyle styles[] = new TextStyle[LanguageTokenizer.MULTILINE_COMMENT + 1];
+	styles[LanguageTokenizer.OTHER]              = normalStyle.intern();
+	styles[LanguageTokenizer.KEYWORD]            = keywordStyle.intern();
+	styles[LanguageTokenizer.CONSTANT]           = constantStyle.intern();
+	styles[LanguageTokenizer.MULTILINE_CONSTANT] = mlConstantStyle.intern();
+	styles[LanguageTokenizer.COMMENT]            = commentStyle.intern();
+	styles[LanguageTokenizer.MULTILINE_COMMENT]  = mlCommentStyle.intern();
+	return styles;
+    }
+
+    /**
+     * Returns the <code>Integer</code> object for the specified parsing
+     * state.
+     */
+    static protected Integer getStateValue(int state) {
+	return (state < STATES.length ? STATES[state] : new Integer(state));
+    }
+
+    /**
+     * Returns the parsing state at the beginning of the line that contains
+     * the specified index.
+     */
+    protected int getLineState(int index) {
+	return ((Integer)lineStates.get(index)).intValue();
+    }
+
+    /**
+     * Returns the number of the threads that hilight the specified text
+     * in parallel, or <code>1</code> if the parallel hilighting is not
+     * used.
+     */
+    protected int getParallelColoringThreads(Text text) {
+	if (!parallelColoring || text.length() < PARALLEL_COLORING_THRESHOLD)
+	    return 1;
+	int processors;
+	try {
+	    processors = Runtime.getRuntime().availableProcessors();
+	}
+	catch (NoSuchMethodError e) {
+	    // the virtual machine is older than 1.4.
+	    processors = 1;
+	}
+	return Math.min(processors, text.length() / PARALLEL_COLORING_CHUNK);
+    }
+
+    /**
+     * Hilights the syntax of the whole text in parallel, and sets the
+     * parsing states of the lines. The text is partitioned at the line
+     * boundaries into the chunks, and each chunk is hilighted
+     * speculatively by the threads, assuming that the chunk does not
+     * begin in a multiline constant or comment. Then the chunks whose
+     * parsing states at the beginnings are guessed wrong are hilighted
+     * again in order, until the states of the lines agree with the
+     * speculation. The styles of the chunks are set to the text at once.
+     *
+     * @return <code>true</code> if the text has been hilighted;
+     *         <code>false</code> if the parallel hilighting is not
+     *         applicable.
+     */
+    protected boolean coloringParallel(Text text) {
+	int threads = getParallelColoringThreads(text);
+	if (threads <= 1)
+	    return false;
+	int length = text.length();
+	int chunkLength = Math.max(PARALLEL_COLORING_CHUNK,
+				   length / (threads * 4));
+	TextStyle tokenStyles[] = getTokenStyles();
+	Vector chunks = new Vector();
+	int begin = 0;
+	while (begin < length) {
+	    int end = (begin + chunkLength >= length ?
+			length :
+			text.indexOf('\n', begin + chunkLength) + 1);
+	    if (end <= 0) end = length;
+	    // The subtext owns the caches of the characters, so that the
+	    // chunks are parsed by the threads without synchronization.
+	    chunks.addElement(new ColoringChunk(this, text.subtext(begin, end),
+						tokenStyles));
+	    begin = end;
+	}
+	int count = chunks.size();
+	if (count <= 1)
+	    return false;
+	ColoringChunk chunkArray[] = new ColoringChunk[count];
+	chunks.copyInto(chunkArray);
+
+	ColoringChunkRunner runner = new ColoringChunkRunner(chunkArray);
+	Thread workers[] = new Thread[Math.min(threads, count) - 1];
+	int started = 0;
+	try {
+	    for (; started < workers.length; started++) {
+		workers[started] = new Thread(runner);
+		workers[started].start();
+	    }
+	}
+	catch (SecurityException e) {}
+	runner.run();
+	boolean interrupted = false;
+	for (int i = 0; i < started; ) {
+	    try { workers[i].join(); ++i; }
+	    catch (InterruptedException e) { interrupted = true; }
+	}
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+	runner.checkError();
+
+	RunArray styles = new RunArray(TextStyle.class);
+	RunArray states = new RunArray(Integer.class);
+	int state = 0;
+	for (int i = 0; i < count; i++) {
+	    ColoringChunk chunk = chunkArray[i];
+	    if (state != 0) {
+		chunk.coloring(state, true);
+	    }
+	    state = chunk.endState;
+	    styles.append(chunk.styles);
+	    states.append(chunk.states);
+	}
+	if (text.getChar(length - 1) == '\n') {
+	    states.append(new RunArray(1, getStateValue(state), Integer.class));
+	}
+	else {
+	    states.append(1, null); // the last line
+	}
+	setTokenStyles(text, 0, length, styles, tokenStyles);
+	lineStates = states;
+	return true;
+    }
+
+    /**
+     * Hilights the syntax of the lines that remain to be hilighted, at
+     * most the specified number of lines, and notifies the hilighted
+     * lines to the text model listeners.
+     *
+     * @param maxLines the maximum number of the lines to be hilighted.
+     */
+    protected void coloringDirtyLines(int maxLines) {
+	Text text = richText.getText();
+	int begin = (dirtyBegin > 0 ?
+			text.lastIndexOf('\n', dirtyBegin - 1) + 1 : 0);
+	int end = coloringLines(text, begin, getLineState(begin), dirtyEnd - 1,
+				maxLines);
+	end = Math.min(end, text.length());
+	if (begin < end) {
+	    notifyTextModelListeners(begin, end, getColoringChange(begin, end));
+	}
+    }
+
+    /**
+     * Sets the styles of the tokens in the specified range of the text.
+     * The styles are the runs of the text styles returned by the
+     * <code>getTokenStyles()</code>.
+     *
+     * @param text        the hilighted text.
+     * @param begin       the beginning index of the range, inclusive.
+     * @param end         the ending index of the range, exclusive.
+     * @param styles      the runs of the styles of the tokens in the range.
+     * @param tokenStyles the text styles indexed by the token types.
+     * @see   #getTokenStyles()
+     */
+    protected void setTokenStyles(Text text, int begin, int end,
+				  RunArray styles, TextStyle tokenStyles[])
+    {
+	text.replaceStyles(begin, end, styles);
+    }
+
+    /**
+     * Returns the change of the text made by hilighting the specified
+     * range of the text in the background.
+     *
+     * @param  begin the beginning index of the hilighted range, inclusive.
+     * @param  end   the ending index of the hilighted range, exclusive.
+     * @return the change of the text.
+     */
+    protected TextChange getColoringChange(int begin, int end) {
+	return new TextChange(begin, end, begin, end, 0, false, false);
+    }
+
+    /**
+     * Starts the timer that hilights the remaining lines in the
+     * background, if the timer is not running.
+     */
+    protected void startColoringTimer() {
+	if (coloringTimer == null) {
+	    coloringTimer = new Timer(BACKGROUND_COLORING_DELAY,
+				      new ColoringListener());
+	}
+	if (!coloringTimer.isRunning()) {
+	    coloringTimer.start();
+	}
+    }
+
+    /**
+     * Hilights a chunk of the remaining lines, and stops the timer if all
+     * lines are hilighted. This method is called from the timer started
+     * by <code>startColoringTimer()</code>, so that the styles of the text
+     * are changed and the listeners are notified only in the event
+     * dispatch thread. The edits made meanwhile are coalesced into the
+     * remaining lines.
+     */
+    protected synchronized void continueColoring() {
+	if (syntaxColoringEnabled && lineStates != null && dirtyBegin >= 0) {
+	    coloringDirtyLines(BACKGROUND_COLORING_LINES);
+	}
+	if (!syntaxColoringEnabled || lineStates == null || dirtyBegin < 0) {
+	    if (coloringTimer != null) {
+		coloringTimer.stop();
+	    }
+	}
+    }
+
+    class ColoringListener implements ActionListener {
+	public void actionPerformed(ActionEvent e) {
+	    continueColoring();
+	}
+    }
+
     /**
      * Returns the default font style for the normal tokens.
      */
@@ -673,3 +1113,134 @@ public class SyntaxColoringModel extends DefaultTextEditModel {
 	    return LanguageTokenizer.OTHER;
     }
 }
+
+
+/**
+ * The chunk of the lines hilighted by a thread.
+ *
+ * @see jp.kyasu.awt.util.SyntaxColoringModel#coloringParallel
+ */
+class ColoringChunk {
+    /** The model. */
+    SyntaxColoringModel model;
+
+    /** The text of the chunk. */
+    Text text;
+
+    /** The interned text styles indexed by the token types. */
+    TextStyle tokenStyles[];
+
+    /** The text styles of the chunk. */
+    RunArray styles;
+
+    /** The parsing states at the beginnings of the lines of the chunk. */
+    RunArray states;
+
+    /** The parsing state at the end of the chunk. */
+    int endState;
+
+
+    ColoringChunk(SyntaxColoringModel model, Text text,
+		  TextStyle tokenStyles[])
+    {
+	this.model = model;
+	this.text = text;
+	this.tokenStyles = tokenStyles;
+	this.styles = null;
+	this.states = null;
+	this.endState = 0;
+    }
+
+
+    /**
+     * Hilights the lines of the chunk from the beginning with the
+     * specified parsing state. If <code>untilAgree</code> is true, the
+     * hilighting stops at the beginning of a line whose state agrees
+     * with the state hilighted before.
+     */
+    void coloring(int state, boolean untilAgree) {
+	int length = text.length();
+	RunArray newStyles = new RunArray(TextStyle.class);
+	RunArray newStates = new RunArray(Integer.class);
+	int index = 0;
+	while (index < length) {
+	    if (untilAgree && index > 0 &&
+		state == ((Integer)states.get(index)).intValue())
+	    {
+		styles.replace(0, index, newStyles);
+		states.replace(0, index, newStates);
+		return; // the end state agrees too
+	    }
+	    int lineEnd = text.indexOf('\n', index);
+	    lineEnd = (lineEnd < 0 ? length : lineEnd + 1);
+	    LanguageTokenizer tokenizer =
+			model.getTokenizer(text, index, lineEnd);
+	    tokenizer.setState(state);
+	    model.coloringSyntax(tokenizer, index, lineEnd, newStyles,
+				 tokenStyles);
+	    newStates.append(new RunArray(lineEnd - index,
+					  SyntaxColoringModel.getStateValue(state),
+					  Integer.class));
+	    state = tokenizer.getState();
+	    index = lineEnd;
+	}
+	styles = newStyles;
+	states = newStates;
+	endState = state;
+    }
+}
+
+
+/**
+ * The runner that hilights the chunks of the lines by multiple threads.
+ */
+class ColoringChunkRunner implements Runnable {
+    /** The chunks to be hilighted. */
+    ColoringChunk chunks[];
+
+    /** The index of the next chunk. */
+    int next;
+
+    /** The error thrown while hilighting. */
+    Throwable error;
+
+
+    ColoringChunkRunner(ColoringChunk chunks[]) {
+	this.chunks = chunks;
+	this.next = 0;
+	this.error = null;
+    }
+
+
+    /** Hilights the chunks speculatively until all chunks are taken. */
+    public void run() {
+	ColoringChunk chunk;
+	while ((chunk = nextChunk()) != null) {
+	    try {
+		chunk.coloring(0, false);
+	    }
+	    catch (Throwable e) {
+		synchronized (this) {
+		    if (error == null) error = e;
+		    next = chunks.length;
+		}
+	    }
+	}
+    }
+
+    /** Returns the next chunk to be hilighted, or null. */
+    synchronized ColoringChunk nextChunk() {
+	return (next < chunks.length ? chunks[next++] : null);
+    }
+
+    /** Throws the error thrown while hilighting, if any. */
+    synchronized void checkError() {
+	if (error == null)
+	    return;
+	if (error instanceof RuntimeException)
+	    throw (RuntimeException)error;
+	if (error instanceof Error)
+	    throw (Error)error;
+	throw new RuntimeException(error.toString());
+    }
+}
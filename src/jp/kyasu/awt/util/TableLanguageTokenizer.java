@@ -0,0 +1,171 @@
+/*
+ * TableLanguageTokenizer.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.awt.util;
+
+import jp.kyasu.graphics.Text;
+
+/**
+ * The <code>TableLanguageTokenizer</code> class parses a text into
+ * "tokens" by the tables of the automaton compiled from a
+ * <code>TokenizerSpec</code>. The characters are read from the chunks
+ * of the text directly, and the keywords are matched by the automaton,
+ * so that no object is created while parsing.
+ * <p>
+ * The parsing condition of the specification is the parsing state of
+ * this tokenizer.
+ *
+ * @see 	jp.kyasu.awt.util.TokenizerSpec
+ * @see 	jp.kyasu.awt.util.TableTokenizerFactory
+ *
+ * @version 	16 Oct 2026
+ */
+public class TableLanguageTokenizer extends LanguageTokenizer {
+    /** The specification of the language. */
+    protected TokenizerSpec spec;
+
+    /**
+     * The ending index of the token that has been matched after the
+     * <code>OTHER</code> token, or -1.
+     */
+    protected int pendingEnd;
+
+    /** The index of the rule of the pending token. */
+    protected int pendingRule;
+
+
+    /**
+     * Construct a <code>TableLanguageTokenizer</code> with the specified
+     * specification, text and range.
+     *
+     * @param spec  the specification of the language.
+     * @param text  the text to be parsed.
+     * @param begin the beginning index to parse, inclusive.
+     * @param end   the ending index to parse, exclusive.
+     */
+    public TableLanguageTokenizer(TokenizerSpec spec, Text text,
+				  int begin, int end)
+    {
+	super(text, begin, end);
+	if (spec == null)
+	    throw new NullPointerException();
+	spec.compile();
+	this.spec = spec;
+	pendingEnd  = -1;
+	pendingRule = -1;
+    }
+
+
+    /**
+     * Returns the specification of the language.
+     */
+    public TokenizerSpec getTokenizerSpec() {
+	return spec;
+    }
+
+    /**
+     * Sets the parsing state of this tokenizer.
+     *
+     * @param state the parsing state.
+     * @see #getState()
+     */
+    public void setState(int state) {
+	super.setState(state);
+	pendingEnd = -1;
+    }
+
+    /**
+     * Parses the next token from the text of this tokenizer.
+     * @return the type of the token.
+     * @see jp.kyasu.awt.util.LanguageTokenizer#EOT
+     * @see jp.kyasu.awt.util.LanguageTokenizer#OTHER
+     * @see jp.kyasu.awt.util.LanguageTokenizer#KEYWORD
+     * @see jp.kyasu.awt.util.LanguageTokenizer#CONSTANT
+     * @see jp.kyasu.awt.util.LanguageTokenizer#MULTILINE_CONSTANT
+     * @see jp.kyasu.awt.util.LanguageTokenizer#COMMENT
+     * @see jp.kyasu.awt.util.LanguageTokenizer#MULTILINE_COMMENT
+     */
+    public int nextToken() {
+	tokenBegin = pos;
+	if (pendingEnd >= 0) {
+	    int rule = pendingRule;
+	    pos = tokenEnd = pendingEnd;
+	    pendingEnd = -1;
+	    setState(spec.nextConditions[rule]);
+	    return spec.tokenTypes[rule];
+	}
+	if (pos < end) {
+	    charAt(pos); // validates the current chunk
+	}
+
+	int charClasses[] = spec.charClasses;
+	int classCount    = spec.classCount;
+	int transitions[] = spec.transitions;
+	int accepts[]     = spec.accepts;
+	int initialStates[] = spec.initialStates;
+	int condition = getState();
+	boolean other = false;
+	while (pos < end) {
+	    int dfaState = initialStates[condition];
+	    int rule = -1;
+	    int matchEnd = pos;
+	    int p = pos;
+	    while (dfaState >= 0 && p < end) {
+		char c = (p >= chunkBegin && p < chunkEnd ?
+				array[p + offset] : charAt(p));
+		dfaState = transitions[dfaState * classCount +
+			charClasses[c < TokenizerSpec.NON_ASCII ?
+					c : TokenizerSpec.NON_ASCII]];
+		++p;
+		if (dfaState >= 0 && accepts[dfaState] >= 0) {
+		    rule = accepts[dfaState];
+		    matchEnd = p;
+		}
+	    }
+	    if (rule < 0) {
+		// a character that matches no rule
+		++pos;
+		other = true;
+		continue;
+	    }
+	    if (spec.tokenTypes[rule] == OTHER) {
+		pos = matchEnd;
+		condition = spec.nextConditions[rule];
+		setState(condition);
+		other = true;
+		continue;
+	    }
+	    if (other) {
+		pendingEnd  = matchEnd;
+		pendingRule = rule;
+		tokenEnd = pos;
+		return OTHER;
+	    }
+	    pos = tokenEnd = matchEnd;
+	    setState(spec.nextConditions[rule]);
+	    return spec.tokenTypes[rule];
+	}
+	tokenEnd = pos;
+	return (other ? OTHER : EOT);
+    }
+}
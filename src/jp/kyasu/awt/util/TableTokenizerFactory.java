@@ -0,0 +1,192 @@
+/*
+ * TableTokenizerFactory.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.awt.util;
+
+import jp.kyasu.graphics.Text;
+
+/**
+ * The <code>TableTokenizerFactory</code> class creates the
+ * <code>TableLanguageTokenizer</code> objects of a specification.
+ * The factories of the <code>Java</code>, <code>C</code>,
+ * <code>C++</code>, and <code>Smalltalk</code> languages are provided,
+ * which parse a text in the same way as
+ * <code>CLikeLanguageTokenizer</code> and
+ * <code>SmalltalkTokenizer</code>.
+ *
+ * @see 	jp.kyasu.awt.util.TokenizerSpec
+ * @see 	jp.kyasu.awt.util.TableLanguageTokenizer
+ *
+ * @version 	16 Oct 2026
+ */
+public class TableTokenizerFactory implements LanguageTokenizerFactory {
+    /** The specification of the language. */
+    protected TokenizerSpec spec;
+
+
+    /**
+     * The factory of the Java language.
+     */
+    static public final TableTokenizerFactory JAVA =
+	new TableTokenizerFactory(
+		createCLikeSpec(CLikeLanguageTokenizer.JavaKeywords, true));
+
+    /**
+     * The factory of the C language.
+     */
+    static public final TableTokenizerFactory C =
+	new TableTokenizerFactory(
+		createCLikeSpec(CLikeLanguageTokenizer.CKeywords, false));
+
+    /**
+     * The factory of the C++ language.
+     */
+    static public final TableTokenizerFactory CPP =
+	new TableTokenizerFactory(
+		createCLikeSpec(CLikeLanguageTokenizer.CPPKeywords, true));
+
+    /**
+     * The factory of the Smalltalk language.
+     */
+    static public final TableTokenizerFactory SMALLTALK =
+	new TableTokenizerFactory(createSmalltalkSpec());
+
+
+    /**
+     * Constructs a factory with the specified specification.
+     *
+     * @param spec the specification of the language.
+     */
+    public TableTokenizerFactory(TokenizerSpec spec) {
+	if (spec == null)
+	    throw new NullPointerException();
+	this.spec = spec;
+    }
+
+
+    /**
+     * Returns the specification of the language.
+     */
+    public TokenizerSpec getTokenizerSpec() {
+	return spec;
+    }
+
+    /**
+     * Creates a new <code>TableLanguageTokenizer</code> to parse a text
+     * into "tokens".
+     *
+     * @param text  the text to be parsed.
+     * @param begin the beginning index for parsing, inclusive.
+     * @param end   the ending index for parsing, exclusive.
+     * @return a new <code>TableLanguageTokenizer</code>.
+     */
+    public LanguageTokenizer createLanguageTokenizer(Text text,
+						     int begin, int end)
+    {
+	return new TableLanguageTokenizer(spec, text, begin, end);
+    }
+
+
+    /**
+     * Creates the specification of the <code>C</code>-like language
+     * with the specified keywords.
+     *
+     * @param keywords    the keywords of the language.
+     * @param lineComment true if the language has the comments that
+     *                    begin with <code>//</code>.
+     * @see jp.kyasu.awt.util.CLikeLanguageTokenizer
+     */
+    static public TokenizerSpec createCLikeSpec(jp.kyasu.util.Set keywords,
+						boolean lineComment)
+    {
+	final int INITIAL = 0;
+	final int COMMENT = LanguageTokenizer.IN_MULTILINE_COMMENT;
+	// the body of a comment that does not contain "*/" nor a newline
+	String body = "([^*\\n]|\\*+[^*/\\n])*";
+
+	TokenizerSpec spec = new TokenizerSpec();
+	spec.addRule(INITIAL, "/\\*" + body + "\\*+/",
+		     LanguageTokenizer.MULTILINE_COMMENT, INITIAL);
+	spec.addRule(INITIAL, "/\\*" + body + "\\**\\n?",
+		     LanguageTokenizer.MULTILINE_COMMENT, COMMENT);
+	spec.addRule(COMMENT, body + "\\*+/",
+		     LanguageTokenizer.MULTILINE_COMMENT, INITIAL);
+	spec.addRule(COMMENT, body + "\\**\\n?",
+		     LanguageTokenizer.MULTILINE_COMMENT, COMMENT);
+	if (lineComment) {
+	    spec.addRule(INITIAL, "//[^\\n]*\\n?",
+			 LanguageTokenizer.COMMENT, INITIAL);
+	}
+	spec.addRule(INITIAL, "\"([^\"\\\\\\n]|\\\\[^\\n])*[\"\\n\\\\]?",
+		     LanguageTokenizer.CONSTANT, INITIAL);
+	spec.addRule(INITIAL, "'([^'\\\\\\n]|\\\\[^\\n])*['\\n\\\\]?",
+		     LanguageTokenizer.CONSTANT, INITIAL);
+	spec.addRule(INITIAL, "[0-9][A-Za-z0-9.]*",
+		     LanguageTokenizer.CONSTANT, INITIAL);
+	spec.addKeywords(INITIAL, keywords);
+	spec.addRule(INITIAL, "[A-Za-z_][A-Za-z0-9_]*",
+		     LanguageTokenizer.OTHER, INITIAL);
+	return spec;
+    }
+
+    /**
+     * Creates the specification of the Smalltalk language.
+     *
+     * @see jp.kyasu.awt.util.SmalltalkTokenizer
+     */
+    static public TokenizerSpec createSmalltalkSpec() {
+	final int INITIAL  = 0;
+	final int CONSTANT = LanguageTokenizer.IN_MULTILINE_CONSTANT;
+	final int COMMENT  = LanguageTokenizer.IN_MULTILINE_COMMENT;
+
+	TokenizerSpec spec = new TokenizerSpec();
+	spec.addRule(INITIAL, "\"[^\"\\n]*\"",
+		     LanguageTokenizer.MULTILINE_COMMENT, INITIAL);
+	spec.addRule(INITIAL, "\"[^\"\\n]*\\n?",
+		     LanguageTokenizer.MULTILINE_COMMENT, COMMENT);
+	spec.addRule(COMMENT, "[^\"\\n]*\"",
+		     LanguageTokenizer.MULTILINE_COMMENT, INITIAL);
+	spec.addRule(COMMENT, "[^\"\\n]*\\n?",
+		     LanguageTokenizer.MULTILINE_COMMENT, COMMENT);
+	spec.addRule(INITIAL, "#?'[^'\\n]*'",
+		     LanguageTokenizer.MULTILINE_CONSTANT, INITIAL);
+	spec.addRule(INITIAL, "#?'[^'\\n]*\\n?",
+		     LanguageTokenizer.MULTILINE_CONSTANT, CONSTANT);
+	spec.addRule(CONSTANT, "[^'\\n]*'",
+		     LanguageTokenizer.MULTILINE_CONSTANT, INITIAL);
+	spec.addRule(CONSTANT, "[^'\\n]*\\n?",
+		     LanguageTokenizer.MULTILINE_CONSTANT, CONSTANT);
+	spec.addRule(INITIAL, "#[A-Za-z][A-Za-z0-9]*",
+		     LanguageTokenizer.CONSTANT, INITIAL);
+	spec.addRule(INITIAL, "\\$[^\\n]?",
+		     LanguageTokenizer.CONSTANT, INITIAL);
+	spec.addRule(INITIAL, "\\^|_|:=",
+		     LanguageTokenizer.KEYWORD, INITIAL);
+	spec.addRule(INITIAL, "[0-9][A-Za-z0-9.]*",
+		     LanguageTokenizer.CONSTANT, INITIAL);
+	spec.addKeywords(INITIAL, SmalltalkTokenizer.Keywords);
+	spec.addRule(INITIAL, "[A-Za-z][A-Za-z0-9]*",
+		     LanguageTokenizer.OTHER, INITIAL);
+	return spec;
+    }
+}
@@ -0,0 +1,548 @@
+/*
+ * TokenizerSpec.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.awt.util;
+
+import jp.kyasu.util.Set;
+
+import java.util.BitSet;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * The <code>TokenizerSpec</code> class specifies the lexical syntax of a
+ * language for <code>TableLanguageTokenizer</code>. The specification is
+ * a list of rules, each of which consists of a regular expression, the
+ * type of the tokens that match the expression, and the parsing condition
+ * in which the rule is applied and the condition after a token has been
+ * matched. The parsing conditions correspond to the parsing states of the
+ * <code>LanguageTokenizer</code>, so that a multiline comment or constant
+ * is specified as the rules that enter and leave the condition.
+ * <p>
+ * The rules are compiled into the tables of a deterministic finite
+ * automaton. The tokenizer matches the longest token, and the rule added
+ * first is taken if the multiple rules match the same token. The
+ * characters that match no rule are parsed as <code>OTHER</code>.
+ * <p>
+ * The regular expression consists of the characters, the escapes
+ * (<code>\n</code>, <code>\t</code>, <code>\r</code>, and a backslash
+ * followed by a special character), the character classes
+ * (<code>[a-z_]</code>, <code>[^"\n]</code>), <code>.</code> (any
+ * character but a newline), the groups, <code>|</code>, <code>*</code>,
+ * <code>+</code>, and <code>?</code>. The characters beyond ASCII are not
+ * distinguished from each other.
+ *
+ * @see 	jp.kyasu.awt.util.TableLanguageTokenizer
+ * @see 	jp.kyasu.awt.util.TableTokenizerFactory
+ * @see 	jp.kyasu.awt.util.LanguageTokenizer#getState()
+ *
+ * @version 	16 Oct 2026
+ */
+public class TokenizerSpec implements java.io.Serializable {
+    /** The rules. */
+    protected Vector rules;
+
+    /** True if the rules have been compiled. */
+    transient protected boolean compiled;
+
+    /** The character classes indexed by the characters. */
+    transient int charClasses[];
+
+    /** The number of the character classes. */
+    transient int classCount;
+
+    /** The transitions indexed by the state and the character class. */
+    transient int transitions[];
+
+    /** The indices of the rules accepted by the states, or -1. */
+    transient int accepts[];
+
+    /** The initial states indexed by the conditions, or -1. */
+    transient int initialStates[];
+
+    /** The token types indexed by the rules. */
+    transient int tokenTypes[];
+
+    /** The conditions after the tokens, indexed by the rules. */
+    transient int nextConditions[];
+
+
+    /**
+     * The number of the parsing conditions.
+     */
+    static public final int CONDITIONS = 4;
+
+    /**
+     * The symbol that stands for the characters beyond ASCII.
+     */
+    static final int NON_ASCII = 128;
+
+
+    /**
+     * Constructs an empty specification.
+     */
+    public TokenizerSpec() {
+	rules = new Vector();
+	compiled = false;
+    }
+
+
+    /**
+     * Adds a rule to this specification.
+     *
+     * @param condition     the parsing condition in which the rule is
+     *                      applied.
+     * @param pattern       the regular expression of the tokens.
+     * @param tokenType     the type of the tokens.
+     * @param nextCondition the parsing condition after a token.
+     * @exception IllegalArgumentException if the conditions or the token
+     *            type is improper, or if the pattern has a syntax error.
+     * @see jp.kyasu.awt.util.LanguageTokenizer#OTHER
+     * @see jp.kyasu.awt.util.LanguageTokenizer#MULTILINE_COMMENT
+     * @see jp.kyasu.awt.util.LanguageTokenizer#IN_MULTILINE_CONSTANT
+     * @see jp.kyasu.awt.util.LanguageTokenizer#IN_MULTILINE_COMMENT
+     */
+    public synchronized void addRule(int condition, String pattern,
+				     int tokenType, int nextCondition)
+    {
+	if (pattern == null)
+	    throw new NullPointerException();
+	if (condition < 0 || condition >= CONDITIONS ||
+	    nextCondition < 0 || nextCondition >= CONDITIONS)
+	{
+	    throw new IllegalArgumentException("improper condition");
+	}
+	if (tokenType < LanguageTokenizer.OTHER ||
+	    tokenType > LanguageTokenizer.MULTILINE_COMMENT)
+	{
+	    throw new IllegalArgumentException("improper token type");
+	}
+	// checks the syntax
+	new PatternParser(pattern, new Vector()).parse();
+	rules.addElement(new Object[]{
+				new Integer(condition), pattern,
+				new Integer(tokenType), new Integer(nextCondition) });
+	compiled = false;
+    }
+
+    /**
+     * Adds the rules that match the specified keywords as the
+     * <code>KEYWORD</code> tokens. The keywords should be added before
+     * the rule of the identifiers, so that the keywords take precedence.
+     *
+     * @param condition the parsing condition in which the keywords are
+     *                  parsed.
+     * @param keywords  the set of the keyword strings.
+     */
+    public synchronized void addKeywords(int condition, Set keywords) {
+	for (Enumeration e = keywords.elements(); e.hasMoreElements(); ) {
+	    addRule(condition, quote((String)e.nextElement()),
+		    LanguageTokenizer.KEYWORD, condition);
+	}
+    }
+
+    /**
+     * Compiles the rules of this specification, if they have not been
+     * compiled.
+     */
+    public synchronized void compile() {
+	if (compiled)
+	    return;
+
+	int ruleCount = rules.size();
+	Vector nodes = new Vector();
+	Vector starts[] = new Vector[CONDITIONS];
+	tokenTypes = new int[ruleCount];
+	nextConditions = new int[ruleCount];
+	for (int i = 0; i < ruleCount; i++) {
+	    Object rule[] = (Object[])rules.elementAt(i);
+	    int condition = ((Integer)rule[0]).intValue();
+	    int fragment[] = new PatternParser((String)rule[1], nodes).parse();
+	    node(nodes, fragment[1]).rule = i;
+	    if (starts[condition] == null) starts[condition] = new Vector();
+	    starts[condition].addElement(new Integer(fragment[0]));
+	    tokenTypes[i] = ((Integer)rule[2]).intValue();
+	    nextConditions[i] = ((Integer)rule[3]).intValue();
+	}
+
+	computeCharClasses(nodes);
+	int nodeCount = nodes.size();
+	int symbols[] = new int[classCount]; // a symbol of each class
+	for (int s = NON_ASCII; s >= 0; s--) {
+	    symbols[charClasses[s]] = s;
+	}
+	int nodeClasses[][] = new int[nodeCount][]; // the classes of a node
+	for (int n = 0; n < nodeCount; n++) {
+	    BitSet chars = node(nodes, n).chars;
+	    if (chars == null) continue;
+	    int count = 0;
+	    int classes[] = new int[classCount];
+	    for (int k = 0; k < classCount; k++) {
+		if (chars.get(symbols[k])) classes[count++] = k;
+	    }
+	    nodeClasses[n] = new int[count];
+	    System.arraycopy(classes, 0, nodeClasses[n], 0, count);
+	}
+
+	// the subset construction
+	Vector states = new Vector();     // the nodes of the states
+	Hashtable stateIndices = new Hashtable();
+	initialStates = new int[CONDITIONS];
+	for (int c = 0; c < CONDITIONS; c++) {
+	    if (starts[c] == null) {
+		initialStates[c] = -1;
+		continue;
+	    }
+	    BitSet set = new BitSet(nodeCount);
+	    for (int i = 0; i < starts[c].size(); i++) {
+		addClosure(nodes, ((Integer)starts[c].elementAt(i)).intValue(),
+			   set);
+	    }
+	    initialStates[c] = stateIndex(set, nodeCount, states, stateIndices);
+	}
+	Vector table = new Vector();
+	for (int i = 0; i < states.size(); i++) {
+	    int members[] = (int[])states.elementAt(i);
+	    BitSet next[] = new BitSet[classCount];
+	    for (int m = 0; m < members.length; m++) {
+		int classes[] = nodeClasses[members[m]];
+		if (classes == null) continue;
+		int out = node(nodes, members[m]).out1;
+		for (int k = 0; k < classes.length; k++) {
+		    if (next[classes[k]] == null)
+			next[classes[k]] = new BitSet(nodeCount);
+		    addClosure(nodes, out, next[classes[k]]);
+		}
+	    }
+	    int row[] = new int[classCount];
+	    for (int k = 0; k < classCount; k++) {
+		row[k] = (next[k] == null ?
+			-1 : stateIndex(next[k], nodeCount, states, stateIndices));
+	    }
+	    table.addElement(row);
+	}
+
+	int stateCount = states.size();
+	transitions = new int[stateCount * classCount];
+	accepts = new int[stateCount];
+	for (int i = 0; i < stateCount; i++) {
+	    System.arraycopy((int[])table.elementAt(i), 0,
+			     transitions, i * classCount, classCount);
+	    int members[] = (int[])states.elementAt(i);
+	    int accept = -1;
+	    for (int m = 0; m < members.length; m++) {
+		int rule = node(nodes, members[m]).rule;
+		if (rule >= 0 && (accept < 0 || rule < accept))
+		    accept = rule;
+	    }
+	    accepts[i] = accept;
+	}
+	compiled = true;
+    }
+
+    /**
+     * Returns the number of the states of the compiled automaton.
+     */
+    public synchronized int getStateCount() {
+	compile();
+	return accepts.length;
+    }
+
+
+    /**
+     * Returns the regular expression that matches the specified string
+     * literally.
+     */
+    static public String quote(String string) {
+	StringBuffer buffer = new StringBuffer();
+	for (int i = 0; i < string.length(); i++) {
+	    char c = string.charAt(i);
+	    if ("\\[]().*+?|^".indexOf(c) >= 0)
+		buffer.append('\\');
+	    buffer.append(c);
+	}
+	return buffer.toString();
+    }
+
+
+    /**
+     * Groups the symbols that are matched by the same nodes into the
+     * character classes.
+     */
+    protected void computeCharClasses(Vector nodes) {
+	charClasses = new int[NON_ASCII + 1];
+	Hashtable classes = new Hashtable();
+	for (int s = 0; s <= NON_ASCII; s++) {
+	    BitSet signature = new BitSet();
+	    for (int n = 0; n < nodes.size(); n++) {
+		BitSet chars = node(nodes, n).chars;
+		if (chars != null && chars.get(s))
+		    signature.set(n);
+	    }
+	    Integer index = (Integer)classes.get(signature);
+	    if (index == null) {
+		index = new Integer(classes.size());
+		classes.put(signature, index);
+	    }
+	    charClasses[s] = index.intValue();
+	}
+	classCount = classes.size();
+    }
+
+    /**
+     * Adds the specified node and the nodes reachable from it by the
+     * empty transitions to the set.
+     */
+    protected void addClosure(Vector nodes, int n, BitSet set) {
+	if (n < 0 || set.get(n))
+	    return;
+	set.set(n);
+	Node node = node(nodes, n);
+	if (node.chars == null) {
+	    addClosure(nodes, node.out1, set);
+	    addClosure(nodes, node.out2, set);
+	}
+    }
+
+    /**
+     * Returns the index of the state for the set of the nodes, adding
+     * a new state if necessary.
+     */
+    protected int stateIndex(BitSet set, int nodeCount,
+			     Vector states, Hashtable indices)
+    {
+	Integer index = (Integer)indices.get(set);
+	if (index == null) {
+	    int count = 0;
+	    int members[] = new int[nodeCount];
+	    for (int n = 0; n < nodeCount; n++) {
+		if (set.get(n)) members[count++] = n;
+	    }
+	    int nodes[] = new int[count];
+	    System.arraycopy(members, 0, nodes, 0, count);
+	    index = new Integer(states.size());
+	    states.addElement(nodes);
+	    indices.put(set, index);
+	}
+	return index.intValue();
+    }
+
+    /** Returns the node at the specified index. */
+    static Node node(Vector nodes, int n) {
+	return (Node)nodes.elementAt(n);
+    }
+
+
+    /**
+     * The node of the nondeterministic finite automaton. A node with the
+     * characters transits to <code>out1</code> on the characters, and
+     * a node without the characters transits to <code>out1</code> and
+     * <code>out2</code> on no character.
+     */
+    static class Node {
+	BitSet chars;
+	int out1 = -1;
+	int out2 = -1;
+	int rule = -1;
+
+	Node(BitSet chars) {
+	    this.chars = chars;
+	}
+    }
+
+
+    /**
+     * The parser that translates a regular expression into the nodes.
+     * A fragment of the nodes is represented as the pair of the indices
+     * of the first node and the last node, which has no transition.
+     */
+    static class PatternParser {
+	String pattern;
+	int pos;
+	Vector nodes;
+
+	PatternParser(String pattern, Vector nodes) {
+	    this.pattern = pattern;
+	    this.pos = 0;
+	    this.nodes = nodes;
+	}
+
+	int[] parse() {
+	    int fragment[] = parseAlternation();
+	    if (pos < pattern.length())
+		throw error("unmatched )");
+	    return fragment;
+	}
+
+	int[] parseAlternation() {
+	    int fragment[] = parseConcatenation();
+	    while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+		++pos;
+		int second[] = parseConcatenation();
+		int split = newNode(null);
+		int last  = newNode(null);
+		node(nodes, split).out1 = fragment[0];
+		node(nodes, split).out2 = second[0];
+		node(nodes, fragment[1]).out1 = last;
+		node(nodes, second[1]).out1 = last;
+		fragment = new int[]{ split, last };
+	    }
+	    return fragment;
+	}
+
+	int[] parseConcatenation() {
+	    int empty = newNode(null);
+	    int fragment[] = { empty, empty };
+	    while (pos < pattern.length()) {
+		char c = pattern.charAt(pos);
+		if (c == '|' || c == ')')
+		    break;
+		int next[] = parseRepetition();
+		node(nodes, fragment[1]).out1 = next[0];
+		fragment[1] = next[1];
+	    }
+	    return fragment;
+	}
+
+	int[] parseRepetition() {
+	    int fragment[] = parseAtom();
+	    while (pos < pattern.length()) {
+		char c = pattern.charAt(pos);
+		if (c != '*' && c != '+' && c != '?')
+		    break;
+		++pos;
+		int split = newNode(null);
+		int last  = newNode(null);
+		node(nodes, split).out1 = fragment[0];
+		node(nodes, split).out2 = last;
+		node(nodes, fragment[1]).out1 = (c == '?' ? last : split);
+		fragment = new int[]{ (c == '+' ? fragment[0] : split), last };
+	    }
+	    return fragment;
+	}
+
+	int[] parseAtom() {
+	    char c = pattern.charAt(pos++);
+	    BitSet chars;
+	    switch (c) {
+	    case '(':
+		int fragment[] = parseAlternation();
+		if (pos >= pattern.length() || pattern.charAt(pos) != ')')
+		    throw error("missing )");
+		++pos;
+		return fragment;
+	    case '[':
+		chars = parseClass();
+		break;
+	    case '.':
+		chars = new BitSet();
+		for (int s = 0; s <= NON_ASCII; s++) {
+		    if (s != '\n') chars.set(s);
+		}
+		break;
+	    case '*':
+	    case '+':
+	    case '?':
+		throw error("nothing to repeat");
+	    case '\\':
+		chars = new BitSet();
+		chars.set(symbol(parseEscape()));
+		break;
+	    default:
+		chars = new BitSet();
+		chars.set(symbol(c));
+		break;
+	    }
+	    int first = newNode(chars);
+	    int last  = newNode(null);
+	    node(nodes, first).out1 = last;
+	    return new int[]{ first, last };
+	}
+
+	BitSet parseClass() {
+	    BitSet chars = new BitSet();
+	    boolean negate = false;
+	    if (pos < pattern.length() && pattern.charAt(pos) == '^') {
+		negate = true;
+		++pos;
+	    }
+	    for (;;) {
+		if (pos >= pattern.length())
+		    throw error("missing ]");
+		char c = pattern.charAt(pos++);
+		if (c == ']')
+		    break;
+		if (c == '\\')
+		    c = parseEscape();
+		char last = c;
+		if (pos + 1 < pattern.length() && pattern.charAt(pos) == '-' &&
+		    pattern.charAt(pos + 1) != ']')
+		{
+		    ++pos;
+		    last = pattern.charAt(pos++);
+		    if (last == '\\')
+			last = parseEscape();
+		    if (last < c)
+			throw error("improper range");
+		}
+		for (int s = symbol(c); s <= symbol(last); s++) {
+		    chars.set(s);
+		}
+	    }
+	    if (negate) {
+		for (int s = 0; s <= NON_ASCII; s++) {
+		    if (chars.get(s)) chars.clear(s);
+		    else              chars.set(s);
+		}
+	    }
+	    return chars;
+	}
+
+	char parseEscape() {
+	    if (pos >= pattern.length())
+		throw error("trailing \\");
+	    char c = pattern.charAt(pos++);
+	    switch (c) {
+	    case 'n': return '\n';
+	    case 't': return '\t';
+	    case 'r': return '\r';
+	    default:  return c;
+	    }
+	}
+
+	int newNode(BitSet chars) {
+	    nodes.addElement(new Node(chars));
+	    return nodes.size() - 1;
+	}
+
+	int symbol(char c) {
+	    return (c < NON_ASCII ? c : NON_ASCII);
+	}
+
+	IllegalArgumentException error(String message) {
+	    return new IllegalArgumentException(message + " in pattern: " +
+						pattern);
+	}
+    }
+}
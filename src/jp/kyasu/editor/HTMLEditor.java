@@ -26,7 +26,6 @@ import jp.kyasu.awt.Button;
 import jp.kyasu.awt.Choice;
 import jp.kyasu.awt.Dialog;
 import jp.kyasu.awt.Label;
-import jp.kyasu.awt.MultipleUndo;
 import jp.kyasu.awt.TextEditModel;
 import jp.kyasu.awt.TextField;
 import jp.kyasu.awt.ToggleButton;
@@ -1986,24 +1985,23 @@ public class HTMLEditor extends RichTextEditor {
 	buffer.append(ta);
 	buffer.append(Text.LINE_SEPARATOR_CHAR);
 
-	MultipleUndo mundo = new MultipleUndo();
-
+	TextEditModel model = getModel();
 	int start = getSelectionStart();
 	int end   = getSelectionEnd();
-	Undo undo = getModel().replace(start, end, buffer.toText());
-	if (undo != null) {
-	    mundo.addUndo(undo);
-	}
-
 	ParagraphStyle pStyle = getHTMLStyle().getParagraphStyle("P");
-	int pos = getCaretPosition();
+	int pos = start + buffer.length();
 
-	undo = getModel().setParagraphStyle(pos - 1, pos - 1, pStyle);
-	if (undo != null) {
-	    mundo.addUndo(undo);
+	Undo undo;
+	model.beginEdit();
+	try {
+	    model.replace(start, end, buffer.toText());
+	    model.setParagraphStyle(pos - 1, pos - 1, pStyle);
+	}
+	finally {
+	    undo = model.endEdit();
 	}
 
-	getController().setUndo(mundo);
+	getController().setUndo(undo);
 
 	/*
 	setCaretPosition(getCaretPosition() - 1);
@@ -22,6 +22,8 @@
 
 package jp.kyasu.graphics;
 
+import java.util.Hashtable;
+
 /**
  * The <code>BasicPSModifier</code> class is a basic implementation of
  * the interface for the paragraph style modifier.
@@ -49,7 +51,8 @@ package jp.kyasu.graphics;
  * @version 	11 Nov 1997
  * @author 	Kazuki YASUMATSU
  */
-public class BasicPSModifier extends Modifier implements ParagraphStyleModifier
+public class BasicPSModifier extends Modifier
+	implements ParagraphStyleModifier, CacheableModifier
 {
     /**
      * The constant for the attribute "style name". The value of this attribute
@@ -329,4 +332,17 @@ public class BasicPSModifier extends Modifier implements ParagraphStyleModifier
 				  heading, headingSpace,
 				  baseStyle);
     }
+
+    /**
+     * Returns the table that caches the modified versions of the styles
+     * made by this modifier. The table is cleared when the attributes of
+     * this modifier are changed.
+     *
+     * @see jp.kyasu.graphics.CacheableModifier#getModificationCache()
+     */
+    public Hashtable getModificationCache() {
+	if (modificationCache == null)
+	    modificationCache = new Hashtable();
+	return modificationCache;
+    }
 }
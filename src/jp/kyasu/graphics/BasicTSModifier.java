@@ -24,6 +24,7 @@ package jp.kyasu.graphics;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.util.Hashtable;
 
 /**
  * The <code>BasicTSModifier</code> class is a basic implementation of
@@ -63,7 +64,8 @@ import java.awt.Font;
  * @version 	22 Jun 1998
  * @author 	Kazuki YASUMATSU
  */
-public class BasicTSModifier extends FontModifier implements TextStyleModifier
+public class BasicTSModifier extends FontModifier
+	implements TextStyleModifier, CacheableModifier
 {
     /**
      * The constant for the attribute "font". The value of this attribute
@@ -189,6 +191,19 @@ public class BasicTSModifier extends FontModifier implements TextStyleModifier
 	}
     }
 
+    /**
+     * Returns the table that caches the modified versions of the styles
+     * made by this modifier. The table is cleared when the attributes of
+     * this modifier are changed.
+     *
+     * @see jp.kyasu.graphics.CacheableModifier#getModificationCache()
+     */
+    public Hashtable getModificationCache() {
+	if (modificationCache == null)
+	    modificationCache = new Hashtable();
+	return modificationCache;
+    }
+
 
     /**
      * Creates a new font modifier by replicating this modifier without
@@ -0,0 +1,57 @@
+/*
+ * CacheableModifier.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.graphics;
+
+import java.util.Hashtable;
+
+/**
+ * An interface for the text style modifiers and the paragraph style
+ * modifiers that are pure, i.e., the modified version of a style depends
+ * only on the style and the attributes of the modifier, and the
+ * modification has no side effect. The modified versions of the styles
+ * made by a cacheable modifier are cached in the table of the modifier,
+ * and are shared across the operations that use the modifier, such as
+ * <code>RichText.modifyTextStyle()</code>.
+ * <p>
+ * The modifier must clear the table when its attributes are changed.
+ *
+ * @see 	jp.kyasu.graphics.BasicTSModifier
+ * @see 	jp.kyasu.graphics.BasicPSModifier
+ * @see 	jp.kyasu.graphics.RichText#modifyTextStyle(int, int, jp.kyasu.graphics.TextStyleModifier)
+ * @see 	jp.kyasu.graphics.RichText#modifyParagraphStyle(int, int, jp.kyasu.graphics.ParagraphStyleModifier)
+ *
+ * @version 	16 Oct 2026
+ */
+public interface CacheableModifier {
+
+    /**
+     * Returns the table that caches the modified versions of the styles
+     * made by this modifier, keyed by the given styles. The modified
+     * versions are canonical (interned) styles, or the given styles
+     * themselves if the modification has no effect on them.
+     *
+     * @return the table of the modified versions of the styles, or
+     *         <code>null</code> if the modifications should not be cached.
+     */
+    public Hashtable getModificationCache();
+}
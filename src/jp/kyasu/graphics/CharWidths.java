@@ -0,0 +1,149 @@
+/*
+ * CharWidths.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.graphics;
+
+import java.awt.FontMetrics;
+
+/**
+ * The <code>CharWidths</code> class caches the advance widths of the
+ * characters of a font. The widths are stored in the pages of 256
+ * characters, i.e., a page for each block of the Unicode characters that
+ * have the same upper byte, and a page is filled from the font metrics
+ * when a character in the page is looked up first. Thus the width of any
+ * character is looked up in a table, like the width of the first 256
+ * characters returned by <code>FontMetrics.getWidths()</code>.
+ * <p>
+ * The widths are shared by the all users of the font, and are obtained
+ * with <code>ExtendedFont.getCharWidths(FontMetrics)</code>.
+ *
+ * @see 	jp.kyasu.graphics.ExtendedFont#getCharWidths(java.awt.FontMetrics)
+ *
+ * @version 	16 Oct 2026
+ */
+public class CharWidths {
+    /** The font metrics from which the widths are obtained. */
+    protected FontMetrics metrics;
+
+    /** The pages of the widths, or <code>null</code> if not filled. */
+    protected final CharWidthsPage pages[];
+
+
+    /**
+     * Constructs the widths of the characters of the specified font
+     * metrics.
+     *
+     * @param metrics the font metrics.
+     */
+    public CharWidths(FontMetrics metrics) {
+	if (metrics == null)
+	    throw new NullPointerException();
+	this.metrics = metrics;
+	pages = new CharWidthsPage[256];
+	pages[0] = new CharWidthsPage(metrics.getWidths());
+    }
+
+
+    /**
+     * Returns the font metrics from which the widths are obtained.
+     */
+    public final FontMetrics getFontMetrics() {
+	return metrics;
+    }
+
+    /**
+     * Returns the widths of the first 256 characters. An application
+     * should not modify the returned array.
+     */
+    public final int[] getWidths() {
+	return pages[0].widths;
+    }
+
+    /**
+     * Returns the advance width of the specified character.
+     *
+     * @param  ch the character to be measured.
+     * @return the advance width of the specified character.
+     */
+    public final int charWidth(char ch) {
+	CharWidthsPage page = pages[ch >> 8];
+	if (page == null) {
+	    page = fillPage(ch >> 8);
+	}
+	return page.widths[ch & 0xff];
+    }
+
+    /**
+     * Returns the total advance width of the specified characters.
+     *
+     * @param  chars  the array of characters.
+     * @param  offset the start offset of the characters.
+     * @param  length the number of the characters.
+     * @return the total advance width of the characters.
+     */
+    public final int charsWidth(char chars[], int offset, int length) {
+	int width = 0;
+	for (int end = offset + length; offset < end; offset++) {
+	    width += charWidth(chars[offset]);
+	}
+	return width;
+    }
+
+    /**
+     * Fills the page of the widths with the font metrics. The widths are
+     * published through the final field of the page, so that the other
+     * threads that see the page see the filled widths. Two threads may
+     * fill the same page at once, and either page is kept.
+     *
+     * @param  index the index of the page, i.e., the upper byte of the
+     *               characters in the page.
+     * @return the filled page.
+     */
+    protected CharWidthsPage fillPage(int index) {
+	int widths[] = new int[256];
+	char chars[] = new char[256];
+	int base = index << 8;
+	for (int i = 0; i < 256; i++) {
+	    chars[i] = (char)(base + i);
+	}
+	for (int i = 0; i < 256; i++) {
+	    //charWidth() returns incorrect value with large font on Windows
+	    widths[i] = metrics.charsWidth(chars, i, 1);
+	}
+	CharWidthsPage page = new CharWidthsPage(widths);
+	pages[index] = page;
+	return page;
+    }
+}
+
+
+/**
+ * The page of the advance widths of the 256 characters.
+ */
+class CharWidthsPage {
+    /** The widths, which are never modified after the construction. */
+    final int widths[];
+
+    CharWidthsPage(int widths[]) {
+	this.widths = widths;
+    }
+}
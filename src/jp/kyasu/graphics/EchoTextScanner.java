@@ -23,6 +23,7 @@
 package jp.kyasu.graphics;
 
 import jp.kyasu.graphics.text.TextLineInfo;
+import jp.kyasu.util.CharStorage;
 
 import java.awt.Color;
 import java.awt.Font;
@@ -116,7 +117,7 @@ public class EchoTextScanner extends TextScanner {
 	int offX = offset.x;
 	int offY = offset.y;
 	int drawY = lineHeight - baseline;
-	char chars[] = text.getCharArray();
+	int textLength = text.length();
 
 	lineBegin = lastIndex = beginIndex;
 	lineEnd = endIndex;
@@ -129,18 +130,29 @@ public class EchoTextScanner extends TextScanner {
 
       outer:
 	for (;;) {
-	    int rStart = lastIndex - text.getRunOffsetAt(lastIndex);
-	    int rEnd   = lastIndex + text.getRunLengthAt(lastIndex);
+	    styleCursor.seek(lastIndex);
+	    int rStart = styleCursor.runStart;
+	    int rEnd   = styleCursor.runEnd;
 	    runEnd = (rEnd > endIndex ? endIndex : rEnd);
-	    TextStyle tStyle = text.getTextStyleAt(lastIndex);
+	    if (lastIndex >= runEnd) {
+		lastCondition = END_OF_RUN;
+		break outer;
+	    }
+	    // scans the run in chunks of the text
+	    char chars[] = text.getCharChunk(lastIndex, lastIndex,
+					     Math.min(runEnd, textLength), chunk);
+	    runEnd = chunk[CharStorage.CHUNK_END];
+	    int off = chunk[CharStorage.CHUNK_OFFSET];
+	    TextStyle tStyle = (TextStyle)styleCursor.value;
 	    setFontMetrics(tStyle.getFontMetrics());
 	    g.setFont(tStyle.getFont());
 	  inner:
 	    for (;;) {
 		int drawIndex = lastIndex;
 		int drawX = destX;
-		lastCondition = scanChars(lastIndex, runEnd, chars, rightMargin,
-					  getStops());
+		lastCondition = scanChars(lastIndex + off, runEnd + off, chars,
+					  rightMargin, getStops());
+		lastIndex -= off;
 		//if (destX > drawX) {
 		if (lastIndex > drawIndex) {
 		    int x = 0;
@@ -214,6 +226,18 @@ public class EchoTextScanner extends TextScanner {
 	return echoCharWidth;
     }
 
+    /**
+     * Measures the paragraph that begins at the specified index of the
+     * text. The echoed text is always scanned, so that this method returns
+     * <code>null</code>.
+     *
+     * @param  beginIndex the beginning index of the paragraph.
+     * @return <code>null</code>.
+     */
+    public ParagraphMeasure measureParagraph(int beginIndex) {
+	return null;
+    }
+
     /**
      * Handles the stop condition for breaking text into a line.
      *
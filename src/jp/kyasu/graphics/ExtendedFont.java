@@ -22,6 +22,8 @@
 
 package jp.kyasu.graphics;
 
+import jp.kyasu.util.InternPool;
+
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
@@ -51,6 +53,15 @@ public class ExtendedFont implements java.io.Serializable {
     /** The cashe for the font metrics. */
     static private final Hashtable FontMetricsCashe = new Hashtable();
 
+    /** The pool of the canonical fonts. */
+    static private final InternPool FontPool = new InternPool();
+
+    /**
+     * The provider of the font metrics, or <code>null</code> if the font
+     * metrics are obtained from the default toolkit.
+     */
+    static private FontMetricsProvider MetricsProvider = null;
+
     /**
      * Returns the font metrics in the cashe for the given font. If
      * the font metrics is not in the cashe, creates a font metrics and
@@ -61,12 +72,67 @@ public class ExtendedFont implements java.io.Serializable {
 	    throw new NullPointerException();
 	FontMetrics fm = (FontMetrics)FontMetricsCashe.get(font);
 	if (fm == null) {
-	    fm = Toolkit.getDefaultToolkit().getFontMetrics(font);
+	    if (MetricsProvider != null)
+		fm = MetricsProvider.getFontMetrics(font);
+	    else
+		fm = Toolkit.getDefaultToolkit().getFontMetrics(font);
 	    FontMetricsCashe.put(font, fm);
 	}
 	return fm;
     }
 
+    /**
+     * Returns the provider of the font metrics, or <code>null</code> if
+     * the font metrics are obtained from the default toolkit.
+     *
+     * @see #setFontMetricsProvider(jp.kyasu.graphics.FontMetricsProvider)
+     */
+    static public synchronized FontMetricsProvider getFontMetricsProvider() {
+	return MetricsProvider;
+    }
+
+    /**
+     * Sets the provider of the font metrics. If the provider is
+     * <code>null</code>, the font metrics are obtained from the default
+     * toolkit. The cashes for the font metrics are cleared.
+     * <p>
+     * The provider should be set before any extended font is created,
+     * because the extended fonts created before keep the font metrics
+     * from the previous provider.
+     *
+     * @param provider the provider of the font metrics.
+     * @see   jp.kyasu.graphics.RenderContextFontMetricsProvider
+     */
+    static public synchronized void setFontMetricsProvider(
+					FontMetricsProvider provider)
+    {
+	MetricsProvider = provider;
+	FontMetricsCashe.clear();
+	CharWidthsCashe.clear();
+    }
+
+    /** The cashe for the widths of the characters. */
+    static private final Hashtable CharWidthsCashe = new Hashtable();
+
+    /**
+     * Returns the widths of the characters in the cashe for the given
+     * font metrics. If the widths are not in the cashe, creates the
+     * widths and puts them into the cache.
+     *
+     * @param  metrics the font metrics.
+     * @return the widths of the characters of the font metrics.
+     */
+    static public synchronized CharWidths getCharWidths(FontMetrics metrics) {
+	if (metrics == null)
+	    throw new NullPointerException();
+	CharWidths cw = (CharWidths)CharWidthsCashe.get(metrics);
+	if (cw == null) {
+	    cw = new CharWidths(metrics);
+	    CharWidthsCashe.put(metrics, cw);
+	}
+	return cw;
+    }
+
 
     /**
      * Constructs an extended font with the specified name, style and size.
@@ -210,6 +276,13 @@ public class ExtendedFont implements java.io.Serializable {
 	return metrics;
     }
 
+    /**
+     * Returns the widths of the characters for this extended font.
+     */
+    public CharWidths getCharWidths() {
+	return getCharWidths(metrics);
+    }
+
     /**
      * Returns the color of the extended font.
      */
@@ -252,7 +325,7 @@ public class ExtendedFont implements java.io.Serializable {
     public int hashCode() {
 	int hash = getFont().hashCode();
 	if (color != null) hash ^= color.hashCode();
-	if (underline) hash ^= (new Boolean(true)).hashCode();
+	if (underline) hash ^= Boolean.TRUE.hashCode();
 	return hash;
     }
 
@@ -276,6 +349,20 @@ public class ExtendedFont implements java.io.Serializable {
 	return false;
     }
 
+    /**
+     * Returns the canonical font that equals to this font. The equal
+     * fonts interned share one instance. The canonical fonts are weakly
+     * pooled.
+     *
+     * @return the canonical font.
+     * @see    jp.kyasu.graphics.TextStyle#intern()
+     */
+    public ExtendedFont intern() {
+	if (getClass() != ExtendedFont.class)
+	    return this;
+	return (ExtendedFont)FontPool.intern(this);
+    }
+
     /**
      * Compares the styles of two fonts for equality.
      */
@@ -0,0 +1,53 @@
+/*
+ * FontMetricsProvider.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.graphics;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+
+/**
+ * An interface for providing the font metrics of the fonts. The extended
+ * fonts, and thus the text scanners and the text layouts, obtain the
+ * font metrics from the provider set to the <code>ExtendedFont</code>.
+ * <p>
+ * A provider that does not depend on the AWT toolkit, such as
+ * <code>RenderContextFontMetricsProvider</code>, allows the texts to be
+ * laid out and paginated on a headless server.
+ *
+ * @see		jp.kyasu.graphics.ExtendedFont#setFontMetricsProvider(jp.kyasu.graphics.FontMetricsProvider)
+ * @see		jp.kyasu.graphics.RenderContextFontMetricsProvider
+ *
+ * @version 	16 Oct 2026
+ */
+public interface FontMetricsProvider {
+
+    /**
+     * Returns the font metrics for the specified font.
+     *
+     * @param  font the specified font.
+     * @return the font metrics for the specified font.
+     */
+    public FontMetrics getFontMetrics(Font font);
+
+}
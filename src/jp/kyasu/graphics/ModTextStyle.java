@@ -184,6 +184,13 @@ public class ModTextStyle extends TextStyle {
 	return modStyle;
     }
 
+    /**
+     * Checks if this modifier text style can be interned.
+     */
+    protected boolean isInternable() {
+	return (getClass() == ModTextStyle.class);
+    }
+
     /**
      * Returns a hashcode for this modifier text style.
      */
@@ -36,6 +36,15 @@ public abstract class Modifier implements Cloneable, java.io.Serializable {
     /** the attributes and values for the modification. */
     protected Hashtable description;
 
+    /**
+     * The cache of the modified versions made by this modifier, or
+     * <code>null</code>. The cache is cleared when the attributes are
+     * changed.
+     *
+     * @see jp.kyasu.graphics.CacheableModifier
+     */
+    transient protected Hashtable modificationCache;
+
 
     /**
      * The constant for the value "NULL".
@@ -138,6 +147,7 @@ public abstract class Modifier implements Cloneable, java.io.Serializable {
      *         <code>null</code> if the attribute is not defined.
      */
     public Object remove(String name) {
+	modificationCache = null;
 	return description.remove(name);
     }
 
@@ -150,6 +160,7 @@ public abstract class Modifier implements Cloneable, java.io.Serializable {
      *         <code>null</code> if the attribute is not defined.
      */
     public Object put(String name, Object value) {
+	modificationCache = null;
 	return description.put(name, value);
     }
 
@@ -213,6 +224,7 @@ public abstract class Modifier implements Cloneable, java.io.Serializable {
      * Clears this modifier so that it contains no attributes.
      */
     public void clear() {
+	modificationCache = null;
 	description.clear();
     }
 
@@ -316,6 +328,7 @@ public abstract class Modifier implements Cloneable, java.io.Serializable {
 	try {
 	    Modifier modifier = (Modifier)super.clone();
 	    modifier.description = (Hashtable)description.clone();
+	    modifier.modificationCache = null;
 	    return modifier;
 	}
 	catch (CloneNotSupportedException e) {
@@ -0,0 +1,163 @@
+/*
+ * ParagraphMeasure.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.graphics;
+
+/**
+ * The <code>ParagraphMeasure</code> class holds the measurement of a
+ * paragraph, that is independent of the layout width: the advance width
+ * of each character and the heights of the text style runs. A
+ * <code>TextScanner</code> breaks the paragraph into lines at any width
+ * with the measurement, without measuring the characters with the font
+ * metrics again.
+ * <p>
+ * The measurement is relative to the beginning of the paragraph, so that
+ * it is kept valid while the text before the paragraph is edited.
+ *
+ * @see 	jp.kyasu.graphics.TextScanner#measureParagraph(int)
+ * @see 	jp.kyasu.graphics.TextScanner#setParagraphMeasure(jp.kyasu.graphics.ParagraphMeasure, int)
+ *
+ * @version 	16 Oct 2026
+ */
+public class ParagraphMeasure {
+    /** The length of the paragraph. */
+    int length;
+
+    /**
+     * The advance widths of the characters, or one of the codes
+     * <code>TAB</code>, <code>LINE_SEPARATOR</code>, and
+     * <code>LINE_BREAK</code>.
+     */
+    short advances[];
+
+    /** The stop conditions with which the paragraph is measured. */
+    int stops[];
+
+    /** The ending indices of the text style runs, exclusive. */
+    int runEnds[];
+
+    /** The heights of the fonts of the text style runs. */
+    int runHeights[];
+
+    /** The descents of the fonts of the text style runs. */
+    int runDescents[];
+
+    /** The number of the text style runs. */
+    int runCount;
+
+
+    /** The advance code of a tab character. */
+    static final short TAB            = -1;
+
+    /** The advance code of a line separator that ends the paragraph. */
+    static final short LINE_SEPARATOR = -2;
+
+    /** The advance code of a line break. */
+    static final short LINE_BREAK     = -3;
+
+
+    /**
+     * Constructs an empty measurement with the specified stop conditions.
+     */
+    ParagraphMeasure(int stops[]) {
+	this.stops       = stops;
+	this.length      = 0;
+	this.advances    = new short[16];
+	this.runCount    = 0;
+	this.runEnds     = new int[4];
+	this.runHeights  = new int[4];
+	this.runDescents = new int[4];
+    }
+
+
+    /**
+     * Returns the length of the measured paragraph.
+     */
+    public final int length() {
+	return length;
+    }
+
+    /**
+     * Returns the index of the text style run that contains the character
+     * at the specified index.
+     */
+    final int runIndexOf(int index) {
+	int low = 0;
+	int high = runCount - 1;
+	while (low < high) {
+	    int mid = (low + high) >> 1;
+	    if (runEnds[mid] <= index)
+		low = mid + 1;
+	    else
+		high = mid;
+	}
+	return low;
+    }
+
+    /**
+     * Returns the beginning index of the text style run that contains the
+     * character at the specified index.
+     */
+    final int runStartOf(int index) {
+	int r = runIndexOf(index);
+	return (r == 0 ? 0 : runEnds[r - 1]);
+    }
+
+    /** Appends the advance width of a character. */
+    final void appendAdvance(int advance) {
+	if (length == advances.length) {
+	    short newAdvances[] = new short[length * 2];
+	    System.arraycopy(advances, 0, newAdvances, 0, length);
+	    advances = newAdvances;
+	}
+	advances[length++] = (short)advance;
+    }
+
+    /** Appends a text style run that ends at the current length. */
+    final void appendRun(int height, int descent) {
+	if (runCount == runEnds.length) {
+	    int newLength = runCount * 2;
+	    int newEnds[] = new int[newLength];
+	    int newHeights[] = new int[newLength];
+	    int newDescents[] = new int[newLength];
+	    System.arraycopy(runEnds, 0, newEnds, 0, runCount);
+	    System.arraycopy(runHeights, 0, newHeights, 0, runCount);
+	    System.arraycopy(runDescents, 0, newDescents, 0, runCount);
+	    runEnds = newEnds;
+	    runHeights = newHeights;
+	    runDescents = newDescents;
+	}
+	runEnds[runCount]     = length;
+	runHeights[runCount]  = height;
+	runDescents[runCount] = descent;
+	++runCount;
+    }
+
+    /** Trims the arrays to the measured length. */
+    final void trim() {
+	if (advances.length > length) {
+	    short newAdvances[] = new short[length];
+	    System.arraycopy(advances, 0, newAdvances, 0, length);
+	    advances = newAdvances;
+	}
+    }
+}
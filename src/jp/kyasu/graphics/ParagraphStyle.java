@@ -22,6 +22,8 @@
 
 package jp.kyasu.graphics;
 
+import jp.kyasu.util.InternPool;
+
 /**
  * The <code>ParagraphStyle</code> class implements the paragraph style
  * for the rich text object. The paragraph style has following attributes:
@@ -83,6 +85,9 @@ public class ParagraphStyle implements Cloneable, java.io.Serializable {
     protected TextStyle baseStyle;
 
 
+    /** The pool of the canonical paragraph styles. */
+    static private final InternPool StylePool = new InternPool();
+
     /**
      * The constant for the left alignment (justification).
      */
@@ -509,6 +514,32 @@ public class ParagraphStyle implements Cloneable, java.io.Serializable {
 	return false;
     }
 
+    /**
+     * Returns the canonical paragraph style that equals to this paragraph
+     * style. The equal paragraph styles interned share one instance and
+     * one base text style. The canonical paragraph styles are weakly
+     * pooled, and must not be modified.
+     *
+     * @return the canonical paragraph style.
+     * @see    jp.kyasu.graphics.TextStyle#intern()
+     */
+    public ParagraphStyle intern() {
+	if (getClass() != ParagraphStyle.class)
+	    return this;
+	ParagraphStyle style = (ParagraphStyle)StylePool.get(this);
+	if (style != null)
+	    return style;
+	style = this;
+	if (baseStyle != null) {
+	    TextStyle base = baseStyle.intern();
+	    if (base != baseStyle) {
+		style = (ParagraphStyle)clone();
+		style.baseStyle = base;
+	    }
+	}
+	return (ParagraphStyle)StylePool.intern(style);
+    }
+
     /**
      * Compares the styles of two paragraph styles for equality.
      */
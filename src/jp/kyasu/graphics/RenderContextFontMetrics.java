@@ -0,0 +1,186 @@
+/*
+ * RenderContextFontMetrics.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.graphics;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+
+/**
+ * The <code>RenderContextFontMetrics</code> class implements the font
+ * metrics measured with a font render context. The font metrics does not
+ * depend on the AWT toolkit, so that it can be used on a headless server.
+ * <p>
+ * The advance widths of the first 256 characters are measured when the
+ * font metrics is constructed.
+ *
+ * @see		jp.kyasu.graphics.RenderContextFontMetricsProvider
+ *
+ * @version 	16 Oct 2026
+ */
+public class RenderContextFontMetrics extends FontMetrics {
+    /** The font render context with which the font is measured. */
+    protected FontRenderContext frc;
+
+    /** The ascent of the font. */
+    protected int ascent;
+
+    /** The descent of the font. */
+    protected int descent;
+
+    /** The leading of the font. */
+    protected int leading;
+
+    /** The maximum advance width of the font. */
+    protected int maxAdvance;
+
+    /** The advance widths of the first 256 characters. */
+    protected int widths[];
+
+
+    /**
+     * Constructs the font metrics of the specified font measured with
+     * the specified font render context.
+     *
+     * @param font the specified font.
+     * @param frc  the font render context with which the font is measured.
+     */
+    public RenderContextFontMetrics(Font font, FontRenderContext frc) {
+	super(font);
+	if (frc == null)
+	    throw new NullPointerException();
+	this.frc = frc;
+
+	LineMetrics lm = font.getLineMetrics("Mg", frc);
+	ascent  = (int)Math.ceil(lm.getAscent());
+	descent = (int)Math.ceil(lm.getDescent());
+	leading = (int)Math.ceil(lm.getAscent() + lm.getDescent() +
+				 lm.getLeading()) - ascent - descent;
+	if (leading < 0) {
+	    leading = 0;
+	}
+	maxAdvance =
+		(int)Math.ceil(font.getMaxCharBounds(frc).getWidth());
+
+	char chars[] = new char[1];
+	widths = new int[256];
+	for (int i = 0; i < 256; i++) {
+	    chars[0] = (char)i;
+	    widths[i] = advance(chars, 0, 1);
+	}
+    }
+
+
+    /**
+     * Returns the font render context with which the font is measured.
+     */
+    public FontRenderContext getFontRenderContext() {
+	return frc;
+    }
+
+    /**
+     * Returns the ascent of the font.
+     */
+    public int getAscent() {
+	return ascent;
+    }
+
+    /**
+     * Returns the descent of the font.
+     */
+    public int getDescent() {
+	return descent;
+    }
+
+    /**
+     * Returns the leading of the font.
+     */
+    public int getLeading() {
+	return leading;
+    }
+
+    /**
+     * Returns the maximum advance width of the font.
+     */
+    public int getMaxAdvance() {
+	return maxAdvance;
+    }
+
+    /**
+     * Returns the advance width of the specified character.
+     */
+    public int charWidth(char ch) {
+	if (ch < 256)
+	    return widths[ch];
+	return advance(new char[]{ ch }, 0, 1);
+    }
+
+    /**
+     * Returns the advance width of the specified character.
+     */
+    public int charWidth(int ch) {
+	return charWidth((char)ch);
+    }
+
+    /**
+     * Returns the total advance width of the specified characters.
+     */
+    public int charsWidth(char chars[], int offset, int length) {
+	if (length == 1)
+	    return charWidth(chars[offset]);
+	return advance(chars, offset, length);
+    }
+
+    /**
+     * Returns the total advance width of the specified string.
+     */
+    public int stringWidth(String str) {
+	char chars[] = str.toCharArray();
+	return charsWidth(chars, 0, chars.length);
+    }
+
+    /**
+     * Returns the advance widths of the first 256 characters.
+     */
+    public int[] getWidths() {
+	int w[] = new int[256];
+	System.arraycopy(widths, 0, w, 0, 256);
+	return w;
+    }
+
+    /**
+     * Measures the total advance width of the specified characters with
+     * the font render context.
+     */
+    protected int advance(char chars[], int offset, int length) {
+	if (length <= 0)
+	    return 0;
+	GlyphVector gv = getFont().createGlyphVector(frc,
+					new String(chars, offset, length));
+	return (int)Math.round(
+			gv.getGlyphPosition(gv.getNumGlyphs()).getX());
+    }
+}
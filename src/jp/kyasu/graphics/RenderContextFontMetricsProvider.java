@@ -0,0 +1,87 @@
+/*
+ * RenderContextFontMetricsProvider.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.graphics;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+
+/**
+ * The <code>RenderContextFontMetricsProvider</code> class provides the
+ * font metrics measured with a font render context, without the AWT
+ * toolkit. The provider is used to lay out the texts on a headless
+ * server, as follows:
+ * <pre>
+ *     ExtendedFont.setFontMetricsProvider(
+ *                          new RenderContextFontMetricsProvider());
+ * </pre>
+ *
+ * @see		jp.kyasu.graphics.ExtendedFont#setFontMetricsProvider(jp.kyasu.graphics.FontMetricsProvider)
+ * @see		jp.kyasu.graphics.RenderContextFontMetrics
+ *
+ * @version 	16 Oct 2026
+ */
+public class RenderContextFontMetricsProvider implements FontMetricsProvider {
+    /** The font render context with which the fonts are measured. */
+    protected FontRenderContext frc;
+
+
+    /**
+     * Constructs a provider with the font render context of the identity
+     * transform, no anti-aliasing and no fractional metrics, i.e., the
+     * context of the screen.
+     */
+    public RenderContextFontMetricsProvider() {
+	this(new FontRenderContext(null, false, false));
+    }
+
+    /**
+     * Constructs a provider with the specified font render context.
+     *
+     * @param frc the font render context with which the fonts are measured.
+     */
+    public RenderContextFontMetricsProvider(FontRenderContext frc) {
+	if (frc == null)
+	    throw new NullPointerException();
+	this.frc = frc;
+    }
+
+
+    /**
+     * Returns the font render context with which the fonts are measured.
+     */
+    public FontRenderContext getFontRenderContext() {
+	return frc;
+    }
+
+    /**
+     * Returns the font metrics for the specified font.
+     *
+     * @param  font the specified font.
+     * @return the font metrics for the specified font.
+     */
+    public FontMetrics getFontMetrics(Font font) {
+	return new RenderContextFontMetrics(font, frc);
+    }
+}
@@ -24,7 +24,9 @@ package jp.kyasu.graphics;
 
 import jp.kyasu.graphics.text.TextChange;
 import jp.kyasu.graphics.text.TextPositionInfo;
+import jp.kyasu.util.PrefixSumTable;
 import jp.kyasu.util.RunArray;
+import jp.kyasu.util.RunArrayCursor;
 import jp.kyasu.util.VArray;
 
 import java.awt.Color;
@@ -75,6 +77,13 @@ import java.util.Enumeration;
  * <code>RichTextStyle.multipleParagraphStylesAllowed()</code> is
  * <code>true</code>. The <code>RichText</code> object in the paragraph is
  * composed into multiple lines that are broken at the layout width.
+ * <p>
+ * The <code>RichText</code> object keeps an index of the paragraph
+ * boundaries, that is built when it is first used and is updated by each
+ * <code>replace</code>. The index answers the paragraph that contains a
+ * text position (<code>paragraphIndexOf</code>) and the beginning of a
+ * paragraph (<code>paragraphBeginIndexAt</code>) in logarithmic time, so
+ * that the line numbers of a very large text are available immediately.
  *
  * @see 	jp.kyasu.graphics.TextStyle
  * @see 	jp.kyasu.graphics.TextStyleModifier
@@ -99,6 +108,24 @@ public class RichText implements Cloneable, java.io.Serializable {
     /** The text style constraint. */
     transient protected TextStyleModifier textStyleConstraint;
 
+    /**
+     * The index of the paragraph boundaries, whose rows hold the lengths
+     * of the paragraphs including the line end characters, or
+     * <code>null</code> if not built. The last row holds the length of
+     * the characters after the last line end character, that may be
+     * <code>0</code>.
+     */
+    transient protected PrefixSumTable paragraphIndex;
+
+    /**
+     * The modification count of the text, with which the paragraph index
+     * is valid.
+     */
+    transient protected int paragraphIndexCount;
+
+    /** The line end character with which the paragraph index is built. */
+    transient protected char paragraphIndexChar;
+
 
     /**
      * Constructs an empty rich text with the specified rich text style.
@@ -517,8 +544,8 @@ public class RichText implements Cloneable, java.io.Serializable {
     public final int paragraphBeginIndexOf(int fromIndex) {
 	if (fromIndex <= 0)
 	    return 0;
-	else
-	    return text.lastIndexOf(rtStyle.getLineEndChar(), fromIndex-1) + 1;
+	PrefixSumTable index = getParagraphIndex();
+	return index.sum(index.search(0, fromIndex), 0);
     }
 
     /**
@@ -529,8 +556,11 @@ public class RichText implements Cloneable, java.io.Serializable {
      * @return the index of the paragraph end, inclusive.
      */
     public final int paragraphEndIndexOf(int fromIndex) {
-	int index = text.indexOf(rtStyle.getLineEndChar(), fromIndex);
-	return (index < 0 ? text.length() - 1 : index);
+	PrefixSumTable index = getParagraphIndex();
+	int row = index.search(0, fromIndex);
+	if (row == index.size() - 1)
+	    return text.length() - 1;
+	return index.sum(row + 1, 0) - 1;
     }
 
     /**
@@ -542,8 +572,141 @@ public class RichText implements Cloneable, java.io.Serializable {
      *         if the paragraph is last one.
      */
     public final int nextParagraphBeginIndexOf(int fromIndex) {
-	int index = text.indexOf(rtStyle.getLineEndChar(), fromIndex);
-	return (index < 0 || index >= text.length() - 1 ? - 1 : index + 1);
+	PrefixSumTable index = getParagraphIndex();
+	int row = index.search(0, fromIndex);
+	if (row == index.size() - 1)
+	    return -1;
+	int next = index.sum(row + 1, 0);
+	return (next >= text.length() ? -1 : next);
+    }
+
+    /**
+     * Returns the number of the paragraphs in this rich text. The empty
+     * characters after the last line end character do not make a
+     * paragraph, that is, the number equals to the number of the indices
+     * that are returned by <code>nextParagraphBeginIndexOf</code> plus
+     * one, or <code>0</code> if this rich text is empty.
+     *
+     * @return the number of the paragraphs.
+     * @see    #nextParagraphBeginIndexOf(int)
+     */
+    public final int getParagraphCount() {
+	PrefixSumTable index = getParagraphIndex();
+	int count = index.size();
+	return (index.get(count - 1, 0) == 0 ? count - 1 : count);
+    }
+
+    /**
+     * Returns the index of the paragraph that contains the specified
+     * text position, i.e., the number of the line end characters before
+     * the position. The index of the first paragraph is <code>0</code>.
+     *
+     * @param  textIndex the text position.
+     * @return the index of the paragraph that contains the position.
+     * @see    #paragraphBeginIndexAt(int)
+     */
+    public final int paragraphIndexOf(int textIndex) {
+	return getParagraphIndex().search(0, textIndex);
+    }
+
+    /**
+     * Returns the beginning index of the paragraph at the specified
+     * paragraph index. The paragraph index may be the number of the line
+     * end characters in this rich text, that denotes the position at the
+     * end of this rich text.
+     *
+     * @param  paragraphIndex the index of the paragraph.
+     * @return the index of the paragraph begin, inclusive.
+     * @exception ArrayIndexOutOfBoundsException if an invalid index was
+     *            given.
+     * @see    #paragraphIndexOf(int)
+     */
+    public final int paragraphBeginIndexAt(int paragraphIndex) {
+	PrefixSumTable index = getParagraphIndex();
+	if (paragraphIndex < 0 || paragraphIndex >= index.size())
+	    throw new ArrayIndexOutOfBoundsException(paragraphIndex);
+	return index.sum(paragraphIndex, 0);
+    }
+
+    /**
+     * Returns the index of the paragraph boundaries. The index is built
+     * when it is first used, and is rebuilt if the text has been modified
+     * other than by <code>replace</code> or the line end character has
+     * been changed.
+     */
+    protected final PrefixSumTable getParagraphIndex() {
+	char lineEnd = rtStyle.getLineEndChar();
+	if (paragraphIndex == null ||
+	    paragraphIndexCount != text.modCount ||
+	    paragraphIndexChar != lineEnd)
+	{
+	    PrefixSumTable index = new PrefixSumTable(1, 1);
+	    appendParagraphs(index, 0, text.length(), lineEnd, true);
+	    paragraphIndex      = index;
+	    paragraphIndexCount = text.modCount;
+	    paragraphIndexChar  = lineEnd;
+	}
+	return paragraphIndex;
+    }
+
+    /**
+     * Updates the paragraph index with the change made by replacing the
+     * specified range of the text. Only the paragraphs that contain the
+     * replaced range are scanned again.
+     *
+     * @param begin         the beginning index of the replaced range.
+     * @param end           the ending index of the replaced range.
+     * @param lengthChanged the length changed by the replacement.
+     * @param modCount      the modification count of the text before the
+     *                      replacement.
+     */
+    protected void updateParagraphIndex(int begin, int end,
+					int lengthChanged, int modCount)
+    {
+	PrefixSumTable index = paragraphIndex;
+	if (index == null || paragraphIndexCount != modCount)
+	    return;
+	int first = index.search(0, begin);
+	int last  = index.search(0, end);
+	boolean isLast = (last == index.size() - 1);
+	int pBegin = index.sum(first, 0);
+	int pEnd   = (isLast ?
+			text.length() :
+			index.sum(last + 1, 0) + lengthChanged);
+	PrefixSumTable rows = new PrefixSumTable(1, 1);
+	appendParagraphs(rows, pBegin, pEnd, paragraphIndexChar, isLast);
+	index.replace(first, last + 1, rows);
+	paragraphIndexCount = text.modCount;
+    }
+
+    /**
+     * Appends the lengths of the paragraphs in the specified range of the
+     * text to the specified table. If <code>last</code> is true, the
+     * length of the characters after the last line end character in the
+     * range is also appended.
+     */
+    private void appendParagraphs(PrefixSumTable table, int begin, int end,
+				  char lineEnd, boolean last)
+    {
+	int row[] = new int[1];
+	int chunk[] = new int[3];
+	int pBegin = begin;
+	int i = begin;
+	while (i < end) {
+	    char array[] = text.getCharChunk(i, begin, end, chunk);
+	    int offset = chunk[2];
+	    for (int cEnd = chunk[1]; i < cEnd; i++) {
+		if (array[i + offset] == lineEnd) {
+		    row[0] = i + 1 - pBegin;
+		    table.append(row);
+		    pBegin = i + 1;
+		}
+	    }
+	}
+	if (last) {
+	    row[0] = end - pBegin;
+	    table.append(row);
+	}
     }
 
     /**
@@ -598,6 +761,8 @@ public class RichText implements Cloneable, java.io.Serializable {
 	    rtext.text            = (Text)text.clone();
 	    rtext.rtStyle         = rtStyle; // share
 	    rtext.paragraphStyles = (RunArray)paragraphStyles.clone();
+	    rtext.paragraphIndex  = (paragraphIndex == null ? null :
+				(PrefixSumTable)paragraphIndex.clone());
 	    return rtext;
 	}
 	catch (CloneNotSupportedException e) {
@@ -631,7 +796,10 @@ public class RichText implements Cloneable, java.io.Serializable {
 			    (rtStyle.paragraphStyle.hasBaseStyle() ?
 				rtStyle.paragraphStyle.getBaseStyle() :
 				rtStyle.textStyle));
+	    int modCount = text.modCount;
 	    text.replace(begin, end, rep);
+	    updateParagraphIndex(begin, end, rep.length() - (end - begin),
+				 modCount);
 	    return new TextChange(begin, end, begin, end,
 				  rep.length() - (end - begin),
 				  true, false);
@@ -667,7 +835,9 @@ public class RichText implements Cloneable, java.io.Serializable {
 				bStyle.getBaseStyle() :
 				rtStyle.textStyle));
 	}
+	int modCount = text.modCount;
 	text.replace(begin, end, rep);
+	updateParagraphIndex(begin, end, lengthChanged, modCount);
 	paragraphStyles.replace(begin, paraChangeEnd,
 				new RunArray(newParaChangeEnd - begin,
 					     bStyle,
@@ -741,7 +911,9 @@ public class RichText implements Cloneable, java.io.Serializable {
 	    repText = repText.cloneStyle();
 	    repText.modifyStyle(0, repText.length(), textStyleConstraint);
 	}
+	int modCount = text.modCount;
 	text.replace(begin, end, repText);
+	updateParagraphIndex(begin, end, lengthChanged, modCount);
 	RunArray subPars = rep.paragraphStyles.subarray(0, repLength);
 	if (repParBegin > 0) {
 	    ParagraphStyle bStyle =
@@ -861,11 +1033,13 @@ public class RichText implements Cloneable, java.io.Serializable {
 
     class ConstraintModifier implements TextStyleModifier {
 	TextStyleModifier modifier;
+	StyleMemo memo;
 	ConstraintModifier(TextStyleModifier modifier) {
 	    this.modifier = modifier;
+	    this.memo     = new StyleMemo(modifier);
 	}
 	public TextStyle modify(TextStyle tStyle) {
-	    return textStyleConstraint.modify(modifier.modify(tStyle));
+	    return textStyleConstraint.modify(memo.modify(modifier, tStyle));
 	}
     }
 
@@ -884,21 +1058,57 @@ public class RichText implements Cloneable, java.io.Serializable {
     {
 	if (begin == end)
 	    return new TextChange(TextChange.NO_LAYOUT);
+	if (begin < 0 || end > text.length() || begin > end)
+	    throw new ArrayIndexOutOfBoundsException();
 	if (textStyleConstraint != null) {
 	    modifier = new ConstraintModifier(modifier);
 	}
-	text.modifyStyle(begin, end, modifier);
+
+	// Modifies and bases the styles in a pass, so that each distinct
+	// style is modified once and the runs are replaced at once.
+	StyleMemo memo = new StyleMemo(modifier);
+	RunArray runs = text.runs;
+	RunArrayCursor tCursor = runs.cursor();
+	RunArrayCursor pCursor = null;
+	TextStyle baseStyle = null;
+	if (rtStyle.variableLineHeight) {
+	    pCursor = paragraphStyles.cursor();
+	}
+	else {
+	    baseStyle = (rtStyle.paragraphStyle.hasBaseStyle() ?
+				rtStyle.paragraphStyle.getBaseStyle() :
+				rtStyle.textStyle);
+	}
+	RunArray modRuns = null;
 	int index = begin;
 	while (index < end) {
-	    ParagraphStyle pStyle = (ParagraphStyle)paragraphStyles.get(index);
-	    int runEnd = index + paragraphStyles.getRunLengthAt(index);
-	    if (runEnd > end) runEnd = end;
-	    text.baseStyleOn(index, runEnd,
-			     (pStyle.hasBaseStyle() ?
+	    tCursor.seek(index);
+	    int runEnd = Math.min(tCursor.runEnd, end);
+	    if (pCursor != null) {
+		pCursor.seek(index);
+		ParagraphStyle pStyle = (ParagraphStyle)pCursor.value;
+		baseStyle = (pStyle.hasBaseStyle() ?
 				pStyle.getBaseStyle() :
-				rtStyle.textStyle));
+				rtStyle.textStyle);
+		if (runEnd > pCursor.runEnd) runEnd = pCursor.runEnd;
+	    }
+	    TextStyle textStyle = (TextStyle)tCursor.value;
+	    TextStyle newStyle =
+		memo.basedOn(memo.modify(modifier, textStyle), baseStyle);
+	    if (modRuns == null && newStyle != textStyle) {
+		modRuns = (index > begin ?
+				runs.subarray(begin, index) :
+				new RunArray(TextStyle.class));
+	    }
+	    if (modRuns != null) {
+		modRuns.append(new RunArray(runEnd - index, newStyle,
+					    TextStyle.class));
+	    }
 	    index = runEnd;
 	}
+	if (modRuns != null) {
+	    runs.replace(begin, end, modRuns);
+	}
 	return new TextChange(begin, end, begin, end, 0, false, false);
     }
 
@@ -928,6 +1138,7 @@ public class RichText implements Cloneable, java.io.Serializable {
 	if (paraChangeEnd < 0) {
 	    paraChangeEnd = text.length() + 1;
 	}
+	pStyle = pStyle.intern();
 	paragraphStyles.replace(paraChangeBegin, paraChangeEnd,
 				new RunArray(paraChangeEnd - paraChangeBegin,
 					     pStyle,
@@ -981,7 +1192,7 @@ public class RichText implements Cloneable, java.io.Serializable {
 	    if (pEnd < 0) pEnd = textLength + 1;
 	    ParagraphStyle pStyle = (pIndex < pLength ?
 					pStyles[pIndex++] :
-					pStyles[pLength - 1]);
+					pStyles[pLength - 1]).intern();
 	    paragraphStyles.replace(index, pEnd,
 				    new RunArray(pEnd - index, pStyle,
 						 ParagraphStyle.class));
@@ -1023,24 +1234,53 @@ public class RichText implements Cloneable, java.io.Serializable {
 	    paraChangeEnd = text.length() + 1;
 	}
 	int textLength = text.length();
+	StyleMemo memo = new StyleMemo(modifier);
+	StyleMemo baseMemo = new StyleMemo(null);
+	RunArray modRuns = null;
+	RunArrayCursor cursor = paragraphStyles.cursor();
+	int baseBegin = 0, baseEnd = 0;
+	TextStyle baseStyle = null;
 	int index = paraChangeBegin;
 	while (index < paraChangeEnd) {
-	    ParagraphStyle pStyle = (ParagraphStyle)paragraphStyles.get(index);
-	    int runEnd = index + paragraphStyles.getRunLengthAt(index);
-	    if (runEnd > paraChangeEnd) runEnd = paraChangeEnd;
-	    ParagraphStyle modStyle = modifier.modify(pStyle);
+	    cursor.seek(index);
+	    ParagraphStyle pStyle = (ParagraphStyle)cursor.value;
+	    int runEnd = Math.min(cursor.runEnd, paraChangeEnd);
+	    ParagraphStyle modStyle = memo.modify(modifier, pStyle);
 	    if (modStyle != pStyle) {
-		paragraphStyles.replace(index, runEnd,
-					new RunArray(runEnd - index, modStyle,
-						     ParagraphStyle.class));
+		if (modRuns == null) {
+		    modRuns = (index > paraChangeBegin ?
+				paragraphStyles.subarray(paraChangeBegin, index) :
+				new RunArray(ParagraphStyle.class));
+		}
 		if (index < textLength && modStyle.hasBaseStyle()) {
-		    text.baseStyleOn(index,
-				     Math.min(runEnd, textLength),
-				     modStyle.getBaseStyle());
+		    // Coalesces the adjacent ranges based on the same style.
+		    TextStyle newBase = modStyle.getBaseStyle();
+		    if (baseStyle != null &&
+			(baseEnd != index || baseStyle != newBase))
+		    {
+			text.baseStyleOn(baseBegin, baseEnd, baseStyle,
+					 baseMemo);
+			baseStyle = null;
+		    }
+		    if (baseStyle == null) {
+			baseBegin = index;
+			baseStyle = newBase;
+		    }
+		    baseEnd = Math.min(runEnd, textLength);
 		}
 	    }
+	    if (modRuns != null) {
+		modRuns.append(new RunArray(runEnd - index, modStyle,
+					    ParagraphStyle.class));
+	    }
 	    index = runEnd;
 	}
+	if (baseStyle != null) {
+	    text.baseStyleOn(baseBegin, baseEnd, baseStyle, baseMemo);
+	}
+	if (modRuns != null) {
+	    paragraphStyles.replace(paraChangeBegin, paraChangeEnd, modRuns);
+	}
 	return new TextChange(begin, end, paraChangeBegin, paraChangeEnd, 0,
 			      false, true);
     }
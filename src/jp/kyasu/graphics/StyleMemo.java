@@ -0,0 +1,129 @@
+/*
+ * StyleMemo.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.graphics;
+
+import java.util.Hashtable;
+
+/**
+ * The <code>StyleMemo</code> class memoizes the modifications of the text
+ * styles and the paragraph styles in an operation over the runs of a text,
+ * so that each distinct style is modified only once, however many runs
+ * have the style. If the modifier is a <code>CacheableModifier</code>,
+ * the modifications are memoized in the cache of the modifier, and are
+ * shared across the operations.
+ * <p>
+ * The modified styles are interned.
+ *
+ * @see 	jp.kyasu.graphics.CacheableModifier
+ *
+ * @version 	16 Oct 2026
+ */
+class StyleMemo {
+    /** The modified styles, keyed by the given styles. */
+    protected Hashtable modified;
+
+    /**
+     * The tables of the based styles keyed by the given styles, keyed by
+     * the base styles.
+     */
+    protected Hashtable based;
+
+
+    /**
+     * Constructs a memo for the modifications by the specified modifier.
+     *
+     * @param modifier the text style modifier or the paragraph style
+     *                 modifier, or <code>null</code> if the memo is used
+     *                 only for basing the text styles.
+     */
+    StyleMemo(Object modifier) {
+	if (modifier instanceof CacheableModifier) {
+	    modified = ((CacheableModifier)modifier).getModificationCache();
+	}
+	if (modified == null) {
+	    modified = new Hashtable();
+	}
+	based = null;
+    }
+
+
+    /**
+     * Returns the modified version of the specified text style by the
+     * specified modifier.
+     */
+    final TextStyle modify(TextStyleModifier modifier, TextStyle tStyle) {
+	TextStyle modStyle = (TextStyle)modified.get(tStyle);
+	if (modStyle == null) {
+	    modStyle = modifier.modify(tStyle);
+	    if (modStyle != tStyle) {
+		modStyle = modStyle.intern();
+	    }
+	    modified.put(tStyle, modStyle);
+	}
+	return modStyle;
+    }
+
+    /**
+     * Returns the modified version of the specified paragraph style by the
+     * specified modifier.
+     */
+    final ParagraphStyle modify(ParagraphStyleModifier modifier,
+				ParagraphStyle pStyle)
+    {
+	ParagraphStyle modStyle = (ParagraphStyle)modified.get(pStyle);
+	if (modStyle == null) {
+	    modStyle = modifier.modify(pStyle);
+	    if (modStyle != pStyle) {
+		modStyle = modStyle.intern();
+	    }
+	    modified.put(pStyle, modStyle);
+	}
+	return modStyle;
+    }
+
+    /**
+     * Returns the version of the specified text style based on the
+     * specified base text style.
+     *
+     * @see jp.kyasu.graphics.TextStyle#basedOn(jp.kyasu.graphics.TextStyle)
+     */
+    final TextStyle basedOn(TextStyle tStyle, TextStyle baseStyle) {
+	if (based == null) {
+	    based = new Hashtable();
+	}
+	Hashtable table = (Hashtable)based.get(baseStyle);
+	if (table == null) {
+	    table = new Hashtable();
+	    based.put(baseStyle, table);
+	}
+	TextStyle newStyle = (TextStyle)table.get(tStyle);
+	if (newStyle == null) {
+	    newStyle = tStyle.basedOn(baseStyle);
+	    if (newStyle != tStyle) {
+		newStyle = newStyle.intern();
+	    }
+	    table.put(tStyle, newStyle);
+	}
+	return newStyle;
+    }
+}
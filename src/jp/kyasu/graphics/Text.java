@@ -22,7 +22,12 @@
 
 package jp.kyasu.graphics;
 
+import jp.kyasu.util.CharStorage;
+import jp.kyasu.util.GapCharArray;
 import jp.kyasu.util.RunArray;
+import jp.kyasu.util.RunArrayCursor;
+import jp.kyasu.util.SortedIntMap;
+import jp.kyasu.util.StringSearcher;
 import jp.kyasu.util.VArray;
 
 import java.text.CharacterIterator;
@@ -57,14 +62,40 @@ import java.util.Hashtable;
  * @author 	Kazuki YASUMATSU
  */
 public class Text implements Cloneable, java.io.Serializable {
-    /** The growable string. */
-    protected VArray string;
+    /**
+     * The growable string. The string is a gap buffer by default, so
+     * that the successive edits around the same position do not shift
+     * the rest of the string. The string of a very large text may be
+     * a rope.
+     *
+     * @see jp.kyasu.util.GapCharArray
+     * @see jp.kyasu.util.RopeCharArray
+     */
+    protected CharStorage string;
 
     /** The space-efficient text style array. */
     protected RunArray runs;
 
-    /** The maps from the index of the text to the text attachment. */
-    protected Hashtable attachments;
+    /**
+     * The map from the index of the text to the text attachment. The
+     * indices are kept sorted, and the indices after an edit point are
+     * shifted lazily.
+     */
+    protected SortedIntMap attachments;
+
+    /**
+     * The number of the modifications of the characters of this text.
+     * The count is incremented whenever the characters are changed, so
+     * that an index built from the characters can tell whether it is
+     * stale.
+     */
+    transient protected int modCount = 0;
+
+    /**
+     * The map of the colors of the characters consulted at the paint
+     * time, or <code>null</code>.
+     */
+    transient protected TextColorMap colorMap;
 
 
     /**
@@ -321,7 +352,7 @@ public class Text implements Cloneable, java.io.Serializable {
      *                             is increased when the text overflows.
      */
     public Text(int initialCapacity, int maxCapacityIncrement) {
-	string = new VArray(char.class, initialCapacity, maxCapacityIncrement);
+	string = new GapCharArray(initialCapacity, maxCapacityIncrement);
 	runs = new RunArray(TextStyle.class);
 	attachments = null;
     }
@@ -360,7 +391,7 @@ public class Text implements Cloneable, java.io.Serializable {
     public Text(String str, TextStyle style, int maxCapacityIncrement) {
 	if (str == null || style == null)
 	    throw new NullPointerException();
-	string      = new VArray(str, maxCapacityIncrement);
+	string      = new GapCharArray(str, maxCapacityIncrement);
 	runs        = new RunArray(str.length(), style, TextStyle.class);
 	attachments = null;
     }
@@ -409,8 +440,30 @@ public class Text implements Cloneable, java.io.Serializable {
     public Text(TextAttachment ta, TextStyle style, int maxCapacityIncrement) {
 	this(new char[1], 1, style, maxCapacityIncrement);
 	string.setChar(0, ATTACHMENT_CHAR);
-	attachments = new Hashtable();
-	attachments.put(new Integer(0), ta);
+	attachments = new SortedIntMap();
+	attachments.put(0, ta);
+    }
+
+    /**
+     * Constructs a text with the character storage, whose every style
+     * equals to the specified style. The storage is not copied.
+     * <p>
+     * For example, a very large text, whose clones and subtexts should
+     * share the characters, can be constructed as follows:
+     * <pre>
+     *     new Text(new RopeCharArray(str), TextStyle.DEFAULT_STYLE)
+     * </pre>
+     *
+     * @param string the character storage of the text.
+     * @param style  the style of the text.
+     * @see   jp.kyasu.util.RopeCharArray
+     */
+    public Text(CharStorage string, TextStyle style) {
+	if (string == null || style == null)
+	    throw new NullPointerException();
+	this.string = string;
+	runs        = new RunArray(string.length(), style, TextStyle.class);
+	attachments = null;
     }
 
     /**
@@ -441,11 +494,9 @@ public class Text implements Cloneable, java.io.Serializable {
     {
 	if (array == null)
 	    throw new NullPointerException();
-	string = new VArray(array, maxCapacityIncrement);
 	if (arrayLength > array.length)
 	    arrayLength = array.length;
-	else if (arrayLength < array.length)
-	    string.setLength(arrayLength);
+	string = new GapCharArray(array, arrayLength, maxCapacityIncrement);
 	runs = new RunArray(arrayLength, style, TextStyle.class);
 	attachments = null;
     }
@@ -457,7 +508,21 @@ public class Text implements Cloneable, java.io.Serializable {
      * @param runs        the runs of the text.
      * @param attachments the attachments of the text.
      */
-    protected Text(VArray string, RunArray runs, Hashtable attachments) {
+    protected Text(VArray string, RunArray runs, SortedIntMap attachments) {
+	this(new GapCharArray(string), runs, attachments);
+    }
+
+    /**
+     * Constructs a text with the character storage, the runs, and the
+     * attachments.
+     *
+     * @param string      the string of the text.
+     * @param runs        the runs of the text.
+     * @param attachments the attachments of the text.
+     */
+    protected Text(CharStorage string, RunArray runs,
+		   SortedIntMap attachments)
+    {
 	if (string == null || runs == null)
 	    throw new NullPointerException();
 	this.string      = string;
@@ -469,11 +534,72 @@ public class Text implements Cloneable, java.io.Serializable {
     /**
      * Returns the array of char in this text. An application should not
      * modify the returned array.
+     * <p>
+     * This operation closes the gap of the string, or flattens the rope
+     * string, so that the cost is proportional to the length of this text
+     * at worst. The scanners should use
+     * <code>getCharChunk(int, int, int, int[])</code> instead.
      *
      * @return the array of the char in this text.
+     * @see    #getCharChunk(int, int, int, int[])
      */
     protected final char[] getCharArray() {
-	return (char[])string.getArray();
+	return string.getArray();
+    }
+
+    /**
+     * Returns the array of char in this text, whose components from
+     * <code>begin</code> to <code>end-1</code> are the characters of this
+     * text at the same indices. The returned array is valid until this
+     * text is modified. An application should not modify the returned
+     * array.
+     *
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @return the array of the char in this text.
+     * @see    jp.kyasu.util.CharStorage#getArray(int, int)
+     */
+    protected final char[] getCharArray(int begin, int end) {
+	return string.getArray(begin, end);
+    }
+
+    /**
+     * Returns the array of char in this text that contains the character
+     * at the specified index, without moving or copying the characters.
+     * The range of the chunk, that is restricted to the specified
+     * <code>begin</code> and <code>end</code>, and the offset from the
+     * index of this text to the index of the array are stored into the
+     * specified chunk information. The returned array is valid until
+     * this text is modified. An application should not modify the
+     * returned array.
+     *
+     * @param  index the index of the character.
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @param  chunk the array of three integers into which the chunk
+     *               information is stored.
+     * @return the array of the char that contains the character.
+     * @see    jp.kyasu.util.CharStorage#getChunk(int, int, int, int[])
+     */
+    protected final char[] getCharChunk(int index, int begin, int end,
+					int chunk[])
+    {
+	return string.getChunk(index, begin, end, chunk);
+    }
+
+    /**
+     * Tests if the characters of this text from <code>begin</code> to
+     * <code>end-1</code> can be accessed by
+     * <code>getCharArray(begin, end)</code> without moving or copying
+     * the characters.
+     *
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @return <code>true</code> if the range is contiguous;
+     *         <code>false</code> otherwise.
+     */
+    protected final boolean isContiguous(int begin, int end) {
+	return string.isContiguous(begin, end);
     }
 
     /**
@@ -531,6 +657,19 @@ public class Text implements Cloneable, java.io.Serializable {
 	return runs.elements(begin, end);
     }
 
+    /**
+     * Returns a cursor that traverses the runs of the text styles of this
+     * text. The value of the cursor is a <code>TextStyle</code> object.
+     * The cursor can be reused by seeking, so that the sequential
+     * traversal of the text styles allocates no object.
+     *
+     * @return a cursor that traverses the runs of the text styles.
+     * @see    jp.kyasu.util.RunArrayCursor
+     */
+    public final RunArrayCursor textStyleCursor() {
+	return runs.cursor();
+    }
+
     /**
      * Returns the text styles as a run array in this text.
      * An application should not modify the returned run array.
@@ -601,15 +740,55 @@ public class Text implements Cloneable, java.io.Serializable {
     }
 
     /**
-     * Returns all text attachments in this text as a hashtable.
-     * An application should not modify the returned array.
+     * Returns all text attachments in this text as a hashtable, whose
+     * keys are the indices (<code>Integer</code>) of the attachments.
+     * The hashtable is created for each call; use
+     * <code>getAttachmentMap()</code> to traverse the attachments.
      *
-     * @return the text attachments in this text, as a hashtable.
+     * @return the text attachments in this text, as a hashtable;
+     *         <code>null</code> if this text has no attachments.
+     * @see    #getAttachmentMap()
      */
     public final Hashtable getAttachments() {
+	return (attachments == null ? null : attachments.toHashtable());
+    }
+
+    /**
+     * Returns all text attachments in this text as a map sorted by the
+     * indices of the attachments.
+     * An application should not modify the returned map.
+     *
+     * @return the text attachments in this text, as a sorted map;
+     *         <code>null</code> if this text has no attachments.
+     */
+    public final SortedIntMap getAttachmentMap() {
 	return attachments;
     }
 
+    /**
+     * Returns the map of the colors of the characters consulted at the
+     * paint time, or <code>null</code>.
+     *
+     * @see #setColorMap(jp.kyasu.graphics.TextColorMap)
+     */
+    public final TextColorMap getColorMap() {
+	return colorMap;
+    }
+
+    /**
+     * Sets the map of the colors of the characters consulted at the paint
+     * time. The map overrides the colors of the text styles whose colors
+     * are not specified, and the owner of the map should keep it in step
+     * with the edits of this text. The map is not copied by the clones
+     * and the subtexts of this text.
+     *
+     * @param map the map of the colors, or <code>null</code>.
+     * @see   jp.kyasu.graphics.TextScanner
+     */
+    public void setColorMap(TextColorMap map) {
+	colorMap = map;
+    }
+
     /**
      * Returns the text attachment at the specified index.
      *
@@ -620,7 +799,7 @@ public class Text implements Cloneable, java.io.Serializable {
     public final TextAttachment getAttachmentAt(int index) {
 	return (attachments == null ?
 			null :
-			(TextAttachment)attachments.get(new Integer(index)));
+			(TextAttachment)attachments.get(index));
     }
 
     /**
@@ -634,9 +813,10 @@ public class Text implements Cloneable, java.io.Serializable {
 	if (ta == null)
 	    throw new NullPointerException();
 	string.setChar(index, ATTACHMENT_CHAR);
+	++modCount;
 	if (attachments == null)
-	    attachments = new Hashtable();
-	attachments.put(new Integer(index), ta);
+	    attachments = new SortedIntMap();
+	attachments.put(index, ta);
     }
 
     /**
@@ -658,6 +838,7 @@ public class Text implements Cloneable, java.io.Serializable {
      */
     public final void setCharAt(int index, char c) {
 	string.setChar(index, c);
+	++modCount;
     }
 
     /**
@@ -679,6 +860,7 @@ public class Text implements Cloneable, java.io.Serializable {
      */
     public final void setChar(int index, char c) {
 	string.setChar(index, c);
+	++modCount;
     }
 
     /**
@@ -702,8 +884,7 @@ public class Text implements Cloneable, java.io.Serializable {
 	    throw new ArrayIndexOutOfBoundsException(srcEnd);
 	}
 	if (srcBegin < srcEnd) {
-	    System.arraycopy(getCharArray(), srcBegin,
-			     dst, dstBegin, srcEnd - srcBegin);
+	    string.getChars(srcBegin, srcEnd, dst, dstBegin);
 	}
     }
 
@@ -732,18 +913,17 @@ public class Text implements Cloneable, java.io.Serializable {
     public int hashCode() {
 	int h = 0;
 	int off = 0;
-	char val[] = (char[])string.getArray();
 	int len = string.length();
 	if (len < 16) {
 	    for (int i = len; i > 0; i--) {
-		h = (h * 37) + (int)val[off++];
+		h = (h * 37) + (int)string.getChar(off++);
 	    }
 	}
 	else {
 	    // only sample some characters
 	    int skip = len / 8;
 	    for (int i = len; i > 0; i -= skip, off += skip) {
-		h = (h * 39) + (int)val[off];
+		h = (h * 39) + (int)string.getChar(off);
 	    }
 	}
 	h ^= runs.hashCode();
@@ -1069,20 +1249,10 @@ public class Text implements Cloneable, java.io.Serializable {
      *         if the character does not occur.
      */
     public int indexOf(int ch, int fromIndex) {
-	int length = length();
-	char v[] = getCharArray();
-
-	if (fromIndex < 0) {
-	    fromIndex = 0;
-	}
-	else if (fromIndex >= length) {
+	if (ch < 0 || ch > 0xFFFF) {
 	    return -1;
 	}
-	for (int i = fromIndex; i < length; i++) {
-	    if (v[i] == ch)
-		return i;
-	}
-	return -1;
+	return string.indexOf((char)ch, fromIndex);
     }
 
     /**
@@ -1111,15 +1281,10 @@ public class Text implements Cloneable, java.io.Serializable {
      *         if the character does not occur before that point.
      */
     public int lastIndexOf(int ch, int fromIndex) {
-	int length = length();
-	char v[] = getCharArray();
-
-	int i = ((fromIndex >= length) ? length - 1 : fromIndex);
-	for (; i >= 0; --i) {
-	    if (v[i] == ch)
-		return i;
+	if (ch < 0 || ch > 0xFFFF) {
+	    return -1;
 	}
-	return -1;
+	return string.lastIndexOf((char)ch, fromIndex);
     }
 
     /**
@@ -1509,32 +1674,13 @@ public class Text implements Cloneable, java.io.Serializable {
 	if (length == 0) {
 	    return fromIndex;
 	}
-	char v1[] = getCharArray();
-	char v2[] = array;
-	int max = length() - length;
-      test:
-	for (int i = fromIndex; i <= max ; i++) {
-	    int n = length;
-	    int j = i;
-	    int k = 0;
-	    while (n-- > 0) {
-		char c1 = v1[j++];
-		char c2 = v2[k++];
-		if (c1 == c2)
-		    continue;
-		if (ignoreCase) {
-		    char u1 = Character.toUpperCase(c1);
-		    char u2 = Character.toUpperCase(c2);
-		    if (u1 == u2)
-			continue;
-		    if (Character.toLowerCase(u1) == Character.toLowerCase(u2))
-			continue;
-		}
-		continue test;
-	    }
-	    return i;
+	int end = length();
+	if (end - fromIndex < length) {
+	    return -1;
 	}
-	return -1;
+	StringSearcher searcher =
+			new StringSearcher(array, 0, length, ignoreCase);
+	return searcher.indexOf(getCharArray(fromIndex, end), fromIndex, end);
     }
 
     /**
@@ -1570,31 +1716,13 @@ public class Text implements Cloneable, java.io.Serializable {
 	if (length == 0) {
 	    return fromIndex;
 	}
-	char v1[] = getCharArray();
-	char v2[] = array;
-      test:
-	for (int i = fromIndex; i >= 0; --i) {
-	    int n = length;
-	    int j = i;
-	    int k = 0;
-	    while (n-- > 0) {
-		char c1 = v1[j++];
-		char c2 = v2[k++];
-		if (c1 == c2)
-		    continue;
-		if (ignoreCase) {
-		    char u1 = Character.toUpperCase(c1);
-		    char u2 = Character.toUpperCase(c2);
-		    if (u1 == u2)
-			continue;
-		    if (Character.toLowerCase(u1) == Character.toLowerCase(u2))
-			continue;
-		}
-		continue test;
-	    }
-	    return i;
+	if (fromIndex < 0) {
+	    return -1;
 	}
-	return -1;
+	int end = fromIndex + length;
+	StringSearcher searcher =
+			new StringSearcher(array, 0, length, ignoreCase);
+	return searcher.lastIndexOf(getCharArray(0, end), 0, end);
     }
 
     /**
@@ -1602,6 +1730,7 @@ public class Text implements Cloneable, java.io.Serializable {
      */
     public void removeAll() {
 	string.removeAll();
+	++modCount;
 	runs.removeAll();
 	attachments = null;
     }
@@ -1618,25 +1747,14 @@ public class Text implements Cloneable, java.io.Serializable {
      */
     public void remove(int offset, int size) {
 	string.remove(offset, size);
+	++modCount;
 	runs.remove(offset, size);
 	if (attachments != null) {
-	    int end = offset + size;
-	    Hashtable newAttachments = new Hashtable();
-	    int len = attachments.size();
-	    Enumeration k = attachments.keys();
-	    Enumeration e = attachments.elements();
-	    for (int i = 0; i < len; i++) {
-		int index = ((Integer)k.nextElement()).intValue();
-		TextAttachment ta = (TextAttachment)e.nextElement();
-		if (index < offset)
-		    newAttachments.put(new Integer(index), ta);
-		else if (end <= index)
-		    newAttachments.put(new Integer(index - size), ta);
-	    }
-	    if (newAttachments.isEmpty())
+	    attachments.removeRange(offset, offset + size);
+	    if (attachments.isEmpty())
 		attachments = null;
 	    else
-		attachments = newAttachments;
+		attachments.shift(offset + size, -size);
 	}
     }
 
@@ -1661,8 +1779,14 @@ public class Text implements Cloneable, java.io.Serializable {
      * @return    the substring.
      */
     public String substring(int beginIndex, int endIndex) {
-	VArray va = string.subarray(beginIndex, endIndex);
-	return new String((char[])va.getArray(), 0, va.length());
+	if ((beginIndex < 0) || (endIndex > length()) ||
+	    (beginIndex > endIndex))
+	{
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	char sub[] = new char[endIndex - beginIndex];
+	string.getChars(beginIndex, endIndex, sub, 0);
+	return new String(sub);
     }
 
     /**
@@ -1686,21 +1810,10 @@ public class Text implements Cloneable, java.io.Serializable {
      * @return    the subtext.
      */
     public Text subtext(int beginIndex, int endIndex) {
-	Hashtable subAttachments = null;
+	SortedIntMap subAttachments = null;
 	if (attachments != null) {
-	    subAttachments = new Hashtable();
-	    int len = attachments.size();
-	    Enumeration k = attachments.keys();
-	    Enumeration e = attachments.elements();
-	    for (int i = 0; i < len; i++) {
-		int index = ((Integer)k.nextElement()).intValue();
-		TextAttachment ta = (TextAttachment)e.nextElement();
-		if (beginIndex <= index && index < endIndex)
-		    subAttachments.put(new Integer(index - beginIndex),
-				       ta.clone());
-	    }
-	    if (subAttachments.isEmpty())
-		subAttachments = null;
+	    subAttachments = copyAttachments(attachments, beginIndex, endIndex,
+					     -beginIndex);
 	}
 	return new Text(string.subarray(beginIndex, endIndex),
 			runs.subarray(beginIndex, endIndex),
@@ -1715,6 +1828,7 @@ public class Text implements Cloneable, java.io.Serializable {
      */
     public Text append(char c) {
 	string.append(c);
+	++modCount;
 	// If runs isn't empty, duplicates last object; otherwise, adds default.
 	runs.append(1, TextStyle.DEFAULT_STYLE);
 	return this;
@@ -1741,6 +1855,7 @@ public class Text implements Cloneable, java.io.Serializable {
      */
     public Text append(String str, int begin, int end) {
 	string.append(str, begin, end);
+	++modCount;
 	// If runs isn't empty, duplicates last object; otherwise, adds default.
 	runs.append(end - begin, TextStyle.DEFAULT_STYLE);
 	return this;
@@ -1753,20 +1868,11 @@ public class Text implements Cloneable, java.io.Serializable {
      * @return this text.
      */
     public Text append(Text text) {
-	string.append(text.getCharArray(), 0, text.length());
+	string.append(text.string);
+	++modCount;
 	runs.append(text.runs);
 	if (text.attachments != null) {
-	    int offset = length() - text.length();
-	    if (attachments == null)
-		attachments = new Hashtable();
-	    int len = text.attachments.size();
-	    Enumeration k = text.attachments.keys();
-	    Enumeration e = text.attachments.elements();
-	    for (int i = 0; i < len; i++) {
-		int index = ((Integer)k.nextElement()).intValue();
-		TextAttachment ta = (TextAttachment)e.nextElement();
-		attachments.put(new Integer(offset + index), ta.clone());
-	    }
+	    putAttachments(text.attachments, length() - text.length());
 	}
 	return this;
     }
@@ -1781,8 +1887,8 @@ public class Text implements Cloneable, java.io.Serializable {
 	if (ta == null)
 	    return this;
 	if (attachments == null)
-	    attachments = new Hashtable();
-	attachments.put(new Integer(length()), ta);
+	    attachments = new SortedIntMap();
+	attachments.put(length(), ta);
 	append(ATTACHMENT_CHAR);
 	return this;
     }
@@ -1809,34 +1915,13 @@ public class Text implements Cloneable, java.io.Serializable {
      */
     public Text insert(int offset, Text text) {
 	string.insert(offset, text.string);
+	++modCount;
 	runs.insert(offset, text.runs);
 	if (attachments != null) {
-	    int diff = text.length();
-	    Hashtable newAttachments = new Hashtable();
-	    int len = attachments.size();
-	    Enumeration k = attachments.keys();
-	    Enumeration e = attachments.elements();
-	    for (int i = 0; i < len; i++) {
-		int index = ((Integer)k.nextElement()).intValue();
-		TextAttachment ta = (TextAttachment)e.nextElement();
-		if (index < offset)
-		    newAttachments.put(new Integer(index), ta);
-		else
-		    newAttachments.put(new Integer(index + diff), ta);
-	    }
-	    attachments = newAttachments;
+	    attachments.shift(offset, text.length());
 	}
 	if (text.attachments != null) {
-	    if (attachments == null)
-		attachments = new Hashtable();
-	    int len = text.attachments.size();
-	    Enumeration k = text.attachments.keys();
-	    Enumeration e = text.attachments.elements();
-	    for (int i = 0; i < len; i++) {
-		int index = ((Integer)k.nextElement()).intValue();
-		TextAttachment ta = (TextAttachment)e.nextElement();
-		attachments.put(new Integer(offset + index), ta.clone());
-	    }
+	    putAttachments(text.attachments, offset);
 	}
 	return this;
     }
@@ -1865,37 +1950,17 @@ public class Text implements Cloneable, java.io.Serializable {
      */
     public Text replace(int begin, int end, Text text) {
 	string.replace(begin, end, text.string);
+	++modCount;
 	runs.replace(begin, end, text.runs);
 	if (attachments != null) {
-	    int diff = text.length() - (end - begin);
-	    Hashtable newAttachments = new Hashtable();
-	    int len = attachments.size();
-	    Enumeration k = attachments.keys();
-	    Enumeration e = attachments.elements();
-	    for (int i = 0; i < len; i++) {
-		int index = ((Integer)k.nextElement()).intValue();
-		TextAttachment ta = (TextAttachment)e.nextElement();
-		if (index < begin)
-		    newAttachments.put(new Integer(index), ta);
-		else if (end <= index)
-		    newAttachments.put(new Integer(index + diff), ta);
-	    }
-	    if (newAttachments.isEmpty())
+	    attachments.removeRange(begin, end);
+	    if (attachments.isEmpty())
 		attachments = null;
 	    else
-		attachments = newAttachments;
+		attachments.shift(end, text.length() - (end - begin));
 	}
 	if (text.attachments != null) {
-	    if (attachments == null)
-		attachments = new Hashtable();
-	    int len = text.attachments.size();
-	    Enumeration k = text.attachments.keys();
-	    Enumeration e = text.attachments.elements();
-	    for (int i = 0; i < len; i++) {
-		int index = ((Integer)k.nextElement()).intValue();
-		TextAttachment ta = (TextAttachment)e.nextElement();
-		attachments.put(new Integer(begin + index), ta.clone());
-	    }
+	    putAttachments(text.attachments, begin);
 	}
 	return this;
     }
@@ -1914,11 +1979,40 @@ public class Text implements Cloneable, java.io.Serializable {
 	if ((begin < 0) || (end > length()) || (begin > end)) {
 	    throw new ArrayIndexOutOfBoundsException();
 	}
+	if (style != null) {
+	    style = style.intern();
+	}
 	runs.replace(begin, end,
 		     new RunArray(end - begin, style, TextStyle.class));
 	return this;
     }
 
+    /**
+     * Replaces the styles in the specified range of this text with the
+     * text styles in the specified run array. The text styles in the run
+     * array should be interned.
+     *
+     * @param  begin  the beginning index to replace, inclusive.
+     * @param  end    the ending index to replace, exclusive.
+     * @param  styles the run array of the text styles.
+     * @return this text.
+     * @exception ArrayIndexOutOfBoundsException if the <code>begin</code>, or
+     *            the <code>end</code> is out of range.
+     * @exception IllegalArgumentException if the length of the run array
+     *            differs from the length of the range.
+     * @see    jp.kyasu.graphics.TextStyle#intern()
+     */
+    public Text replaceStyles(int begin, int end, RunArray styles) {
+	if ((begin < 0) || (end > length()) || (begin > end)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	if (styles.length() != end - begin) {
+	    throw new IllegalArgumentException("improper length of styles");
+	}
+	runs.replace(begin, end, styles);
+	return this;
+    }
+
     /**
      * Modifies the style of this text with the specified text style modifier.
      *
@@ -1933,19 +2027,42 @@ public class Text implements Cloneable, java.io.Serializable {
 	if ((begin < 0) || (end > length()) || (begin > end)) {
 	    throw new ArrayIndexOutOfBoundsException();
 	}
+	return modifyStyle(begin, end, modifier, new StyleMemo(modifier));
+    }
+
+    /**
+     * Modifies the style of this text with the specified text style modifier,
+     * memoizing the modifications in the specified memo. The runs in the
+     * range are replaced at once.
+     */
+    Text modifyStyle(int begin, int end, TextStyleModifier modifier,
+		     StyleMemo memo)
+    {
+	if (begin == end) {
+	    return this;
+	}
+	RunArray modRuns = null;
+	RunArrayCursor cursor = runs.cursor();
 	int index = begin;
 	while (index < end) {
-	    TextStyle textStyle = (TextStyle)runs.get(index);
-	    int runEnd = index + runs.getRunLengthAt(index);
-	    if (runEnd > end) runEnd = end;
-	    TextStyle modStyle = modifier.modify(textStyle);
-	    if (modStyle != textStyle) {
-		runs.replace(index, runEnd,
-			     new RunArray(runEnd - index, modStyle,
-					  TextStyle.class));
+	    cursor.seek(index);
+	    TextStyle textStyle = (TextStyle)cursor.value;
+	    int runEnd = Math.min(cursor.runEnd, end);
+	    TextStyle modStyle = memo.modify(modifier, textStyle);
+	    if (modRuns == null && modStyle != textStyle) {
+		modRuns = (index > begin ?
+				runs.subarray(begin, index) :
+				new RunArray(TextStyle.class));
+	    }
+	    if (modRuns != null) {
+		modRuns.append(new RunArray(runEnd - index, modStyle,
+					    TextStyle.class));
 	    }
 	    index = runEnd;
 	}
+	if (modRuns != null) {
+	    runs.replace(begin, end, modRuns);
+	}
 	return this;
     }
 
@@ -1971,22 +2088,79 @@ public class Text implements Cloneable, java.io.Serializable {
 	if ((begin < 0) || (end > length()) || (begin > end)) {
 	    throw new ArrayIndexOutOfBoundsException();
 	}
+	return baseStyleOn(begin, end, baseStyle, new StyleMemo(null));
+    }
+
+    /**
+     * Modifies the style of this text to be based on the specified base
+     * text style, memoizing the based styles in the specified memo. The
+     * runs in the range are replaced at once.
+     */
+    Text baseStyleOn(int begin, int end, TextStyle baseStyle, StyleMemo memo) {
+	if (begin == end) {
+	    return this;
+	}
+	RunArray newRuns = null;
+	RunArrayCursor cursor = runs.cursor();
 	int index = begin;
 	while (index < end) {
-	    TextStyle textStyle = (TextStyle)runs.get(index);
-	    int runEnd = index + runs.getRunLengthAt(index);
-	    if (runEnd > end) runEnd = end;
-	    TextStyle newStyle = textStyle.basedOn(baseStyle);
-	    if (newStyle != textStyle) {
-		runs.replace(index, runEnd,
-			     new RunArray(runEnd - index, newStyle,
-					  TextStyle.class));
+	    cursor.seek(index);
+	    TextStyle textStyle = (TextStyle)cursor.value;
+	    int runEnd = Math.min(cursor.runEnd, end);
+	    TextStyle newStyle = memo.basedOn(textStyle, baseStyle);
+	    if (newRuns == null && newStyle != textStyle) {
+		newRuns = (index > begin ?
+				runs.subarray(begin, index) :
+				new RunArray(TextStyle.class));
+	    }
+	    if (newRuns != null) {
+		newRuns.append(new RunArray(runEnd - index, newStyle,
+					    TextStyle.class));
 	    }
 	    index = runEnd;
 	}
+	if (newRuns != null) {
+	    runs.replace(begin, end, newRuns);
+	}
 	return this;
     }
 
+    /**
+     * Returns a copy of the text attachments in the specified range of
+     * the specified map, whose indices are translated by the specified
+     * delta. The text attachments are cloned.
+     *
+     * @return the copy of the text attachments; <code>null</code> if
+     *         there are no text attachments in the range.
+     */
+    protected SortedIntMap copyAttachments(SortedIntMap map,
+					   int begin, int end, int delta)
+    {
+	SortedIntMap copy = map.submap(begin, end, delta);
+	if (copy.isEmpty())
+	    return null;
+	int len = copy.size();
+	for (int i = 0; i < len; i++) {
+	    TextAttachment ta = (TextAttachment)copy.valueAt(i);
+	    copy.setValueAt(i, ta.clone());
+	}
+	return copy;
+    }
+
+    /**
+     * Puts the clones of the text attachments in the specified map into
+     * this text, at the indices translated by the specified offset.
+     */
+    protected void putAttachments(SortedIntMap map, int offset) {
+	if (attachments == null)
+	    attachments = new SortedIntMap(map.size());
+	int len = map.size();
+	for (int i = 0; i < len; i++) {
+	    TextAttachment ta = (TextAttachment)map.valueAt(i);
+	    attachments.put(offset + map.keyAt(i), ta.clone());
+	}
+    }
+
     /**
      * Returns the run length (the number of the constant occurrence)
      * of the style at the specified index.
@@ -2022,6 +2196,7 @@ public class Text implements Cloneable, java.io.Serializable {
 	    text.string      = string;
 	    text.runs        = (RunArray)runs.clone();
 	    text.attachments = attachments;
+	    text.colorMap    = null;
 	    return text;
 	}
 	catch (CloneNotSupportedException e) {
@@ -2038,22 +2213,15 @@ public class Text implements Cloneable, java.io.Serializable {
     public Object clone() {
 	try {
 	    Text text = (Text)super.clone();
-	    text.string = (VArray)string.clone();
+	    text.string = (CharStorage)string.clone();
 	    text.runs   = (RunArray)runs.clone();
 	    if (attachments == null) {
 		text.attachments = null;
 	    }
 	    else {
-		text.attachments = new Hashtable();
-		int len = attachments.size();
-		Enumeration k = attachments.keys();
-		Enumeration e = attachments.elements();
-		for (int i = 0; i < len; i++) {
-		    Integer index = (Integer)k.nextElement();
-		    TextAttachment ta = (TextAttachment)e.nextElement();
-		    text.attachments.put(index, ta.clone());
-		}
+		text.attachments = copyAttachments(attachments, 0, length(), 0);
 	    }
+	    text.colorMap = null;
 	    return text;
 	}
 	catch (CloneNotSupportedException e) {
@@ -243,7 +243,7 @@ public class TextBuffer implements java.io.Serializable {
 	if (style == null)
 	    throw new NullPointerException();
 	if (!lastStyle.equals(style))
-	    lastStyle = style;
+	    lastStyle = style.intern();
 	return this;
     }
 
@@ -283,6 +283,7 @@ public class TextBuffer implements java.io.Serializable {
     public TextBuffer setParagraphStyle(ParagraphStyle style) {
 	if (style == null)
 	    throw new NullPointerException();
+	style = style.intern();
 	int len = paragraphStyles.length();
 	if (len > 0 &&
 	    ((Integer)(paragraphStyles.get(len - 2))).intValue() == length())
@@ -523,6 +524,7 @@ public class TextBuffer implements java.io.Serializable {
 	    return this;
 	copyWhenShared();
 	text.string.append(str, offset, offset + len);
+	++text.modCount;
 	text.runs.append(new RunArray(len, lastStyle, TextStyle.class));
 	return this;
     }
@@ -0,0 +1,162 @@
+/*
+ * TextCharSequence.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.graphics;
+
+import jp.kyasu.util.CharStorage;
+
+/**
+ * The <code>TextCharSequence</code> class is a view of the characters
+ * of a <code>Text</code> as a <code>CharSequence</code>, so that the
+ * regular expressions of <code>java.util.regex</code> are matched over
+ * a text without copying the characters into a string. The characters
+ * are read from the chunks of the character storage of the text, and
+ * the subsequences are views of the same text.
+ * <p>
+ * The view is valid until the text is modified.
+ *
+ * @see 	jp.kyasu.graphics.Text
+ * @see 	jp.kyasu.util.CharStorage#getChunk(int, int, int, int[])
+ *
+ * @version 	16 Oct 2026
+ */
+public class TextCharSequence implements CharSequence {
+    /** The text. */
+    protected Text text;
+
+    /** The beginning index of the view in the text, inclusive. */
+    protected int begin;
+
+    /** The ending index of the view in the text, exclusive. */
+    protected int end;
+
+    /** The array buffer of the current chunk. */
+    protected char chunkArray[];
+
+    /** The information of the current chunk. */
+    protected int chunk[];
+
+    /**
+     * The modification count of the storage, with which the current chunk
+     * is valid.
+     */
+    protected int chunkModCount;
+
+
+    /**
+     * Constructs a view of all characters of the specified text.
+     *
+     * @param text the text.
+     */
+    public TextCharSequence(Text text) {
+	this(text, 0, text.length());
+    }
+
+    /**
+     * Constructs a view of the characters of the specified text from
+     * <code>begin</code> to <code>end-1</code>.
+     *
+     * @param text  the text.
+     * @param begin the beginning index, inclusive.
+     * @param end   the ending index, exclusive.
+     */
+    public TextCharSequence(Text text, int begin, int end) {
+	if (begin < 0 || end > text.length() || begin > end)
+	    throw new IndexOutOfBoundsException();
+	this.text  = text;
+	this.begin = begin;
+	this.end   = end;
+	chunkArray = null;
+	chunk = new int[3];
+    }
+
+
+    /**
+     * Returns the text of this view.
+     */
+    public final Text getText() {
+	return text;
+    }
+
+    /**
+     * Returns the beginning index of this view in the text.
+     */
+    public final int getBeginIndex() {
+	return begin;
+    }
+
+    /**
+     * Returns the length of this view.
+     */
+    public final int length() {
+	return end - begin;
+    }
+
+    /**
+     * Returns the character at the specified index of this view.
+     *
+     * @param  index the index of the character in this view.
+     * @return the character at the specified index.
+     */
+    public final char charAt(int index) {
+	if (index < 0 || index >= end - begin)
+	    throw new IndexOutOfBoundsException(String.valueOf(index));
+	int i = begin + index;
+	CharStorage string = text.string;
+	if (chunkArray == null ||
+	    i < chunk[CharStorage.CHUNK_BEGIN] ||
+	    i >= chunk[CharStorage.CHUNK_END] ||
+	    chunkModCount != string.getModCount())
+	{
+	    chunkArray = string.getChunk(i, begin, end, chunk);
+	    chunkModCount = string.getModCount();
+	}
+	return chunkArray[i + chunk[CharStorage.CHUNK_OFFSET]];
+    }
+
+    /**
+     * Returns a view of the characters of this view from
+     * <code>start</code> to <code>end-1</code>. The characters are not
+     * copied.
+     *
+     * @param  start the beginning index, inclusive.
+     * @param  end   the ending index, exclusive.
+     * @return the subsequence.
+     */
+    public CharSequence subSequence(int start, int end) {
+	if (start < 0 || end > this.end - begin || start > end)
+	    throw new IndexOutOfBoundsException();
+	return new TextCharSequence(text, begin + start, begin + end);
+    }
+
+    /**
+     * Returns the string of the characters of this view.
+     */
+    public String toString() {
+	if (begin == end)
+	    return "";
+	char array[] = new char[end - begin];
+	text.getChars(begin, end, array, 0);
+	return new String(array);
+    }
+}
@@ -22,11 +22,19 @@
 
 package jp.kyasu.graphics;
 
+import jp.kyasu.util.CharStorage;
+
 import java.text.CharacterIterator;
 
 /**
  * The <code>TextCharacterIterator</code> implements the
  * <code>CharacterIterater</code> protocol for an array of characters.
+ * <p>
+ * The characters of a text are iterated over in chunks, so that the
+ * text whose characters are not contiguous in memory (e.g., the text
+ * whose string is a rope) is never flattened.
+ *
+ * @see 	jp.kyasu.util.CharStorage#getChunk(int, int, int, int[])
  *
  * @version 	10 Jun 1998
  * @author 	Kazuki YASUMATSU
@@ -35,9 +43,21 @@ public class TextCharacterIterator implements CharacterIterator {
     /** the text to be iterated over. */
     protected Text text;
 
-    /** the array of characters to be iterated over. */
+    /** the array of characters (the current chunk) to be iterated over. */
     protected char array[];
 
+    /** the offset from the index of the text to the index of the array. */
+    protected int offset;
+
+    /** the beginning index of the current chunk. */
+    protected int chunkBegin;
+
+    /** the ending index of the current chunk. */
+    protected int chunkEnd;
+
+    /** the modification count of the text when the chunk is fetched. */
+    protected int modCount;
+
     /** the beginning index of the text. */
     protected int begin;
 
@@ -87,10 +107,11 @@ public class TextCharacterIterator implements CharacterIterator {
 	    throw new IllegalArgumentException("Invalid position");
 
 	this.text  = text;
-	this.array = text.getCharArray();
+	this.array = null;
 	this.begin = begin;
 	this.end   = end;
 	this.pos   = pos;
+	chunkBegin = chunkEnd = begin;
     }
 
     /**
@@ -136,6 +157,9 @@ public class TextCharacterIterator implements CharacterIterator {
 	this.begin = begin;
 	this.end   = end;
 	this.pos   = pos;
+	offset     = 0;
+	chunkBegin = begin;
+	chunkEnd   = end;
     }
 
     /**
@@ -155,7 +179,7 @@ public class TextCharacterIterator implements CharacterIterator {
      */
     public final char first() {
 	pos = begin;
-	return array[pos];
+	return (pos < end ? charAt(pos) : DONE);
     }
 
     /**
@@ -165,8 +189,12 @@ public class TextCharacterIterator implements CharacterIterator {
      * @return the character at the position to getEndIndex().
      */
     public final char last() {
+	if (begin == end) {
+	    pos = end;
+	    return DONE;
+	}
 	pos = end - 1;
-	return array[pos];
+	return charAt(pos);
     }
 
     /**
@@ -180,7 +208,7 @@ public class TextCharacterIterator implements CharacterIterator {
 	if (p < begin || p >= end)
 	    throw new IllegalArgumentException("Invalid index");
 	pos = p;
-	return array[p];
+	return charAt(p);
     }
 
     /**
@@ -192,7 +220,7 @@ public class TextCharacterIterator implements CharacterIterator {
      */
     public final char current() {
 	if (pos >= begin && pos < end) {
-	    return array[pos];
+	    return charAt(pos);
 	}
 	else {
 	    return DONE;
@@ -210,9 +238,10 @@ public class TextCharacterIterator implements CharacterIterator {
      */
     public final char next() {
 	if (++pos < end) {
-	    return array[pos];
+	    return charAt(pos);
 	}
 	else {
+	    pos = end;
 	    return DONE;
 	}
     }
@@ -228,7 +257,7 @@ public class TextCharacterIterator implements CharacterIterator {
      */
     public final char previous() {
 	if (pos > begin) {
-	    return array[--pos];
+	    return charAt(--pos);
 	}
 	else {
 	    return DONE;
@@ -268,7 +297,8 @@ public class TextCharacterIterator implements CharacterIterator {
      * Returns a hashcode for this object.
      */
     public int hashCode() {
-	return array.hashCode() ^ pos ^ begin ^ end;
+	int h = (text != null ? System.identityHashCode(text) : array.hashCode());
+	return h ^ pos ^ begin ^ end;
     }
 
     /**
@@ -286,7 +316,7 @@ public class TextCharacterIterator implements CharacterIterator {
 		end   == iterator.end)
 	    {
 		for (int i = begin; i < end; i++) {
-		    if (array[i] != iterator.array[i]) {
+		    if (charAt(i) != iterator.charAt(i)) {
 			return false;
 		    }
 		}
@@ -296,6 +326,24 @@ public class TextCharacterIterator implements CharacterIterator {
 	return false;
     }
 
+    /**
+     * Returns the character at the specified index, fetching the chunk
+     * that contains the character if necessary.
+     */
+    protected final char charAt(int p) {
+	if (p < chunkBegin || p >= chunkEnd ||
+	    (text != null && modCount != text.string.getModCount()))
+	{
+	    int chunk[] = new int[3];
+	    array      = text.getCharChunk(p, begin, end, chunk);
+	    chunkBegin = chunk[CharStorage.CHUNK_BEGIN];
+	    chunkEnd   = chunk[CharStorage.CHUNK_END];
+	    offset     = chunk[CharStorage.CHUNK_OFFSET];
+	    modCount   = text.string.getModCount();
+	}
+	return array[p + offset];
+    }
+
     /**
      * Returns a clone of this object.
      *
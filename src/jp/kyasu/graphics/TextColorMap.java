@@ -0,0 +1,59 @@
+/*
+ * TextColorMap.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.graphics;
+
+import java.awt.Color;
+
+/**
+ * The <code>TextColorMap</code> interface maps the characters of a text
+ * to the colors that are used when the text is drawn. The colors are
+ * consulted only at the paint time, so that the colors can be changed
+ * without changing the text styles, i.e., without the layout and the
+ * undo of the text.
+ *
+ * @see 	jp.kyasu.graphics.Text#setColorMap(jp.kyasu.graphics.TextColorMap)
+ * @see 	jp.kyasu.graphics.TextScanner
+ *
+ * @version 	16 Oct 2026
+ */
+public interface TextColorMap {
+    /**
+     * Returns the color of the character at the specified index, or
+     * <code>null</code> if the color of the text style is used.
+     *
+     * @param  index the index of the character.
+     * @return the color of the character, or <code>null</code>.
+     */
+    public Color getColorAt(int index);
+
+    /**
+     * Returns the ending index of the characters from the specified index
+     * that have the same color, not greater than the specified limit.
+     *
+     * @param  index the index of the character.
+     * @param  limit the limit of the ending index.
+     * @return the ending index of the same color, exclusive.
+     */
+    public int getColorRunEnd(int index, int limit);
+}
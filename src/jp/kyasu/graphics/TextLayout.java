@@ -26,8 +26,9 @@ import jp.kyasu.graphics.text.TextChange;
 import jp.kyasu.graphics.text.TextLayoutChange;
 import jp.kyasu.graphics.text.TextLineInfo;
 import jp.kyasu.graphics.text.TextPositionInfo;
-import jp.kyasu.util.RunArray;
-import jp.kyasu.util.VArray;
+import jp.kyasu.util.PrefixSumTable;
+import jp.kyasu.util.RunArrayCursor;
+import jp.kyasu.util.SortedIntMap;
 
 import java.awt.Color;
 import java.awt.Dimension;
@@ -74,6 +75,54 @@ public class TextLayout extends TextLines implements Visualizable {
     /** The echo character for the layout. */
     protected char echoChar;
 
+    /**
+     * The height of the layout that is laid out at once in the lazy layout
+     * mode, or <code>0</code> if the whole rich text is laid out at once.
+     */
+    protected int lazyLayoutHeight;
+
+    /**
+     * True if the lines already laid out have been changed by the lazy
+     * layout since the <code>continueLayout()</code> was called last.
+     */
+    transient protected boolean lazyLayoutChanged;
+
+    /**
+     * True if the paragraphs of a large rich text are laid out in parallel
+     * by the multiple threads.
+     */
+    protected boolean parallelLayout;
+
+    /**
+     * The measurements of the paragraphs keyed by the beginning indices
+     * of the paragraphs. The lines of a measured paragraph are broken at
+     * a new layout width without scanning the text again.
+     *
+     * @see jp.kyasu.graphics.ParagraphMeasure
+     */
+    transient protected SortedIntMap paragraphMeasures;
+
+    /**
+     * The font metrics of the single font in which the whole rich text
+     * is laid out, or <code>null</code> if the rich text has more than
+     * one font or text attachments. A source code in a fixed pitch font
+     * is laid out in the single font, even if it is colored.
+     *
+     * @see jp.kyasu.graphics.TextScanner#setSingleFont(java.awt.FontMetrics)
+     */
+    transient protected FontMetrics singleFontMetrics;
+
+    /**
+     * The minimum length of the rich text that is laid out in parallel.
+     */
+    static public final int PARALLEL_LAYOUT_THRESHOLD = 64 * 1024;
+
+    /**
+     * The minimum length of the chunk of the paragraphs that is laid out
+     * by a thread at once.
+     */
+    static protected final int PARALLEL_LAYOUT_CHUNK = 16 * 1024;
+
 
     /**
      * Constructs a text layout with the specified rich text.
@@ -133,11 +182,14 @@ public class TextLayout extends TextLines implements Visualizable {
 
 	this.lineHeightConstant = false;
 	this.echoChar = 0;
+	this.lazyLayoutHeight = 0;
+	this.parallelLayout = false;
     }
 
 
     /**
-     * Returns the size of this layout.
+     * Returns the size of this layout. If the layout is not complete,
+     * the height is estimated from the lines already laid out.
      *
      * @see #setSize(java.awt.Dimension)
      * @see #setWidth(int)
@@ -199,14 +251,15 @@ public class TextLayout extends TextLines implements Visualizable {
 	    layout.echoChar             = echoChar;
 	    layout.locale               = locale; // share
 	    layout.lineHeightConstant   = lineHeightConstant;
-	    layout.lineBegins =
-		(lineBegins == null ? null : (VArray)lineBegins.clone());
-	    layout.remainWidths =
-		(remainWidths == null ? null : (VArray)remainWidths.clone());
-	    layout.baselines =
-		(baselines == null ? null : (VArray)baselines.clone());
-	    layout.lineTops =
-		(lineTops == null ? null : (VArray)lineTops.clone());
+	    layout.lazyLayoutHeight     = lazyLayoutHeight;
+	    layout.parallelLayout       = parallelLayout;
+	    layout.incomplete           = incomplete;
+	    layout.paragraphMeasures    =
+		(paragraphMeasures == null ?
+			null : (SortedIntMap)paragraphMeasures.clone());
+	    layout.singleFontMetrics    = singleFontMetrics;
+	    layout.lines =
+		(lines == null ? null : (PrefixSumTable)lines.clone());
 	    return layout;
 	}
 	catch (CloneNotSupportedException e) {
@@ -420,6 +473,7 @@ public class TextLayout extends TextLines implements Visualizable {
      */
     public synchronized void invalidate() {
 	invalidateLines();
+	paragraphMeasures = null;
     }
 
     /**
@@ -436,8 +490,108 @@ public class TextLayout extends TextLines implements Visualizable {
 	    doLayout(width);
 	}
 	else if (preferredLayoutWidth != width) {
-	    redoLayout(width);
+	    if (incomplete || lazyLayoutHeight > 0) {
+		invalidateLines();
+		doLayout(width);
+	    }
+	    else {
+		redoLayout(width);
+	    }
+	}
+    }
+
+    /**
+     * Returns the height of the layout that is laid out at once in the
+     * lazy layout mode.
+     *
+     * @return the height laid out at once, or <code>0</code> if the whole
+     *         rich text is laid out at once.
+     * @see    #setLazyLayoutHeight(int)
+     */
+    public int getLazyLayoutHeight() {
+	return lazyLayoutHeight;
+    }
+
+    /**
+     * Sets the height of the layout that is laid out at once in the lazy
+     * layout mode. If the height is positive, the layout lays out the
+     * lines only to the specified height, that is usually the height of
+     * the view port plus a margin. The rest of the lines are laid out on
+     * demand, when the text positions in them are requested, or by the
+     * <code>continueLayout()</code>. If the height is <code>0</code>, the
+     * whole rich text is laid out at once (the default).
+     *
+     * @param height the height laid out at once.
+     * @see   #isLayoutComplete()
+     * @see   #continueLayout(int)
+     */
+    public synchronized void setLazyLayoutHeight(int height) {
+	if (height < 0)
+	    throw new IllegalArgumentException("improper height: " + height);
+	lazyLayoutHeight = height;
+    }
+
+    /**
+     * Checks if the lines are laid out to the end of the rich text.
+     *
+     * @return <code>false</code> if this layout is valid and the lines are
+     *         laid out only partially in the lazy layout mode;
+     *         <code>true</code> otherwise.
+     * @see    #setLazyLayoutHeight(int)
+     */
+    public boolean isLayoutComplete() {
+	return !incomplete;
+    }
+
+    /**
+     * Checks if the paragraphs of a large rich text are laid out in
+     * parallel.
+     *
+     * @return <code>true</code> if the paragraphs are laid out in parallel.
+     * @see    #setParallelLayout(boolean)
+     */
+    public boolean isParallelLayout() {
+	return parallelLayout;
+    }
+
+    /**
+     * Enables or disables the parallel layout. If enabled, the whole
+     * rich text longer than <code>PARALLEL_LAYOUT_THRESHOLD</code> is
+     * partitioned at the paragraph boundaries, and the partitions are
+     * laid out by the multiple threads independently. The parallel
+     * layout is not used in the lazy layout mode, nor for the rich text
+     * that has the text attachments, nor on the virtual machine that
+     * cannot tell the number of the processors. The parallel layout is
+     * disabled by default.
+     *
+     * @param b if true, enables the parallel layout; otherwise disables.
+     * @see   #PARALLEL_LAYOUT_THRESHOLD
+     */
+    public synchronized void setParallelLayout(boolean b) {
+	parallelLayout = b;
+    }
+
+    /**
+     * Continues the incomplete layout, by the specified number of lines at
+     * least. The layout is continued to the end of the paragraph, and the
+     * height of this layout is re-estimated.
+     *
+     * @param  lineCount the number of lines to be laid out.
+     * @return the <code>TextLayoutChange</code> object whose status is
+     *         <code>FULL_REPAINT</code> if the lines already laid out have
+     *         been changed by the lazy layout, e.g., the line height has
+     *         grown; otherwise <code>NO_REPAINT</code>.
+     * @see    #isLayoutComplete()
+     */
+    public synchronized TextLayoutChange continueLayout(int lineCount) {
+	if (incomplete) {
+	    layoutLines(-1, -1, lineCount);
+	}
+	if (lazyLayoutChanged) {
+	    lazyLayoutChanged = false;
+	    return new TextLayoutChange(TextLayoutChange.FULL_REPAINT);
 	}
+	return new TextLayoutChange(TextLayoutChange.NO_REPAINT);
     }
 
     /**
@@ -465,6 +619,7 @@ public class TextLayout extends TextLines implements Visualizable {
      *         if this layout does not have a valid layout.
      */
     public synchronized TextPositionInfo getTextPositionAt(int textIndex) {
+	ensureLayout(textIndex, -1);
 	TextPositionInfo posInfo =
 			getIncompleteTextPositionNearby(null, textIndex);
 	if (posInfo == null)
@@ -486,6 +641,7 @@ public class TextLayout extends TextLines implements Visualizable {
      *         if this layout does not have a valid layout.
      */
     public synchronized TextPositionInfo getTextPositionAt(Point point) {
+	ensureLayout(-1, point.y);
 	TextPositionInfo posInfo =
 			getIncompleteTextPositionNearby(null, point);
 	if (posInfo == null)
@@ -516,6 +672,7 @@ public class TextLayout extends TextLines implements Visualizable {
 	assert(isValid());
 	if (posInfo != null && posInfo.textIndex == textIndex)
 	    return posInfo;
+	ensureLayout(textIndex, -1);
 	posInfo = getIncompleteTextPositionNearby(posInfo, textIndex);
 	assert(posInfo != null);
 	int idxAndX[] = getScanner().linePositionAt(textIndex,
@@ -542,6 +699,7 @@ public class TextLayout extends TextLines implements Visualizable {
 						Point point)
     {
 	assert(isValid());
+	ensureLayout(-1, point.y);
 	posInfo = getIncompleteTextPositionNearby(posInfo, point);
 	assert(posInfo != null);
 	int idxAndX[] = getScanner().linePositionAt(point,
@@ -568,6 +726,7 @@ public class TextLayout extends TextLines implements Visualizable {
 	int textLength = richText.length();
 	if (posInfo.textIndex >= textLength)
 	    return posInfo;
+	ensureLayout(posInfo.textIndex + 1, -1);
 	if (posInfo.lineIndex >= getLineCount() - 1) { // last line
 	    // fall through
 	}
@@ -636,6 +795,7 @@ public class TextLayout extends TextLines implements Visualizable {
     {
 	//if (!isValid()) return null;
 	validate();
+	ensureLayout(-1, y);
 	int lineIndex = getLineIndexNearby(posInfo, new Point(0, y));
 	return getTextPositionAtLineBegin(lineIndex);
     }
@@ -675,7 +835,10 @@ public class TextLayout extends TextLines implements Visualizable {
     {
 	//if (!isValid()) return null;
 	validate();
+	ensureLayout(-1, y);
 	int lineIndex = getLineIndexNearby(posInfo, new Point(0, y));
+	if (lineIndex >= getLineCount() - 1)
+	    ensureLayout(getLinesEnd(), -1);
 	if (lineIndex < getLineCount() - 1)
 	    return getTextPositionAtLineBegin(lineIndex + 1);
 
@@ -726,22 +889,183 @@ public class TextLayout extends TextLines implements Visualizable {
 
 	validateLines();
 
-	int index = 0;
-	int newWidth = 0;
-	int height = 0;
+	singleFontMetrics = findSingleFont(0, richText.length(), null);
+	layoutWidth = width;
 	if (!lineHeightConstant) {
 	    lineHeight = baseline = 0;
 	}
+	incomplete = true;
+	if (lazyLayoutHeight > 0) {
+	    layoutLines(-1, lazyLayoutHeight, 0);
+	}
+	else if (!layoutParallel()) {
+	    layoutLines(richText.length(), 0, 0); // to the end
+	}
+	lazyLayoutChanged = false;
+    }
+
+    /**
+     * Returns the number of the threads that lay out the whole rich text
+     * in parallel, or <code>1</code> if the parallel layout is not used.
+     */
+    protected int getParallelLayoutThreads() {
+	if (!parallelLayout || lazyLayoutHeight > 0 ||
+	    richText.length() < PARALLEL_LAYOUT_THRESHOLD ||
+	    richText.getAttachmentCount() > 0)
+	{
+	    return 1;
+	}
+	return Math.min(getAvailableProcessors(),
+			richText.length() / PARALLEL_LAYOUT_CHUNK);
+    }
+
+    /**
+     * Returns the number of the processors available to the virtual
+     * machine, or <code>1</code> if the virtual machine is older than
+     * 1.4 and cannot tell the number.
+     */
+    static protected int getAvailableProcessors() {
+	try {
+	    return Runtime.getRuntime().availableProcessors();
+	}
+	catch (NoSuchMethodError e) {
+	    return 1;
+	}
+    }
+
+    /**
+     * Lays out the whole rich text in parallel. The rich text is
+     * partitioned at the paragraph boundaries into the chunks, and each
+     * chunk is laid out independently with its own scanner, because the
+     * lines in a paragraph do not depend on the preceding paragraphs.
+     * The lines of the chunks are then concatenated in order; the line
+     * tops are computed from the line skips of the concatenated lines.
+     *
+     * @return <code>true</code> if the rich text has been laid out;
+     *         <code>false</code> if the parallel layout is not applicable.
+     */
+    protected boolean layoutParallel() {
+	assert(incomplete);
+
+	int threads = getParallelLayoutThreads();
+	if (threads <= 1)
+	    return false;
+	int textLength = richText.length();
+	int chunkLength = Math.max(PARALLEL_LAYOUT_CHUNK,
+				   textLength / (threads * 4));
+	java.util.Vector chunks = new java.util.Vector();
+	int begin = 0;
+	while (begin < textLength) {
+	    int end = (begin + chunkLength >= textLength ?
+			textLength :
+			richText.paragraphEndIndexOf(begin + chunkLength) + 1);
+	    // The subtext owns the caches of the runs, so that the chunks
+	    // are scanned by the threads without synchronization.
+	    RichText sub = richText.subtext(begin, end);
+	    chunks.addElement(
+		new LayoutChunk(sub, getScanner(sub), begin, layoutWidth));
+	    begin = end;
+	}
+	int count = chunks.size();
+	if (count <= 1)
+	    return false;
+	LayoutChunk chunkArray[] = new LayoutChunk[count];
+	chunks.copyInto(chunkArray);
+
+	LayoutChunkRunner runner = new LayoutChunkRunner(chunkArray);
+	Thread workers[] = new Thread[Math.min(threads, count) - 1];
+	int started = 0;
+	try {
+	    for (; started < workers.length; started++) {
+		workers[started] = new Thread(runner);
+		workers[started].start();
+	    }
+	}
+	catch (SecurityException e) {}
+	runner.run();
+	boolean interrupted = false;
+	for (int i = 0; i < started; ) {
+	    try { workers[i].join(); ++i; }
+	    catch (InterruptedException e) { interrupted = true; }
+	}
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+	runner.checkError();
+
+	int newWidth = 0;
+	if (paragraphMeasures == null)
+	    paragraphMeasures = new SortedIntMap();
+	for (int i = 0; i < count; i++) {
+	    LayoutChunk chunk = chunkArray[i];
+	    append(chunk);
+	    SortedIntMap measures = chunk.measures;
+	    for (int m = 0; m < measures.size(); m++) {
+		paragraphMeasures.put(measures.keyAt(m) + chunk.begin,
+				      measures.valueAt(m));
+	    }
+	    if (chunk.width > newWidth) newWidth = chunk.width;
+	    if (!rtStyle.variableLineHeight && !lineHeightConstant) {
+		if (chunk.lineHeight > lineHeight)
+		    lineHeight = chunk.lineHeight;
+		if (chunk.baseline > baseline)
+		    baseline = chunk.baseline;
+	    }
+	}
+	int lastCondition = chunkArray[count - 1].lastCondition;
+	int height = getLinesHeight();
+	if (lastCondition == TextScanner.LINE_SEPARATOR ||
+	    lastCondition == TextScanner.LINE_BREAK)
+	{
+	    height += duplicateLastLine(layoutWidth, height,
+				lastCondition == TextScanner.LINE_BREAK);
+	}
+	incomplete = false;
+	if (isNoWrap() && newWidth > layoutWidth) {
+	    changeRemainWidths(newWidth - layoutWidth);
+	    layoutWidth = newWidth;
+	}
+	if (!rtStyle.variableLineHeight) {
+	    layoutHeight = getLineCount() *
+				(lineHeight + rtStyle.paragraphStyle.lineSpace);
+	}
+	else {
+	    layoutHeight = height;
+	}
+	assert(isParagraphMarkAt(getLineCount() - 1));
+	return true;
+    }
+
+    /**
+     * Continues the incomplete layout until the lines reach beyond the
+     * specified index of the text and the specified y position, and the
+     * specified number of lines are laid out. The layout is stopped at
+     * the end of a paragraph, so that the following lines are laid out
+     * later independently of the preceding lines.
+     */
+    protected void layoutLines(int textIndex, int y, int lineCount) {
+	assert(incomplete);
+
+	int index = getLinesEnd();
+	int height = getLinesHeight();
+	int newWidth = 0;
+	int oldLineHeight = lineHeight;
+	int oldBaseline = baseline;
 	TextScanner scanner = getScanner();
 	TextLineInfo info = new TextLineInfo();
 	ParagraphStyle pStyle = richText.getParagraphStyleAt(index);
+	boolean measured = (lazyLayoutHeight == 0);
+	if (measured) setParagraphMeasure(scanner, index);
 	int nextTop;
-	while ((nextTop =
-		scanner.doLayoutLine(index, width, height, pStyle, info)) >= 0)
+	while ((nextTop = scanner.doLayoutLine(
+				index, layoutWidth, height, pStyle, info)) >= 0)
 	{
 	    append(info);
 	    height = nextTop;
 	    index = info.lineEnd;
+	    --lineCount;
+	    if (measured && info.isParagraphMark)
+		setParagraphMeasure(scanner, index);
 	    if (scanner.destX > newWidth) newWidth = scanner.destX;
 	    if (!rtStyle.variableLineHeight) {
 		if (!lineHeightConstant) {
@@ -756,36 +1080,74 @@ public class TextLayout extends TextLines implements Visualizable {
 		    pStyle = richText.getParagraphStyleAt(index);
 		}
 	    }
+	    if (info.isParagraphMark && lineCount <= 0 &&
+		index > textIndex && getLinesHeight() > y)
+	    {
+		break;
+	    }
 	}
-	if (scanner.lastCondition == TextScanner.LINE_SEPARATOR ||
-	    scanner.lastCondition == TextScanner.LINE_BREAK)
-	{
-	    height += duplicateLastLine(width, height,
+	if (nextTop < 0) {
+	    if (scanner.lastCondition == TextScanner.LINE_SEPARATOR ||
+		scanner.lastCondition == TextScanner.LINE_BREAK)
+	    {
+		height += duplicateLastLine(layoutWidth, height,
 				scanner.lastCondition==TextScanner.LINE_BREAK);
-	}
-	if (isNoWrap()) {
-	    if (newWidth > width) {
-		changeRemainWidths(newWidth - width);
-		layoutWidth = newWidth;
 	    }
-	    else {
-		layoutWidth = width;
+	    incomplete = false;
+	}
+	if (isNoWrap() && newWidth > layoutWidth) {
+	    changeRemainWidths(newWidth - layoutWidth);
+	    layoutWidth = newWidth;
+	    if (rtStyle.variableLineHeight ||
+		rtStyle.paragraphStyle.alignment != ParagraphStyle.LEFT)
+	    {
+		lazyLayoutChanged = true;
 	    }
 	}
-	else if (newWidth > width) {
-	    layoutWidth = width; // ignore newWidth
+	if (lineHeight != oldLineHeight || baseline != oldBaseline) {
+	    lazyLayoutChanged = true;
 	}
-	else {
-	    layoutWidth = width;
+	if (incomplete) {
+	    estimateLayoutHeight();
 	}
-	if (!rtStyle.variableLineHeight) {
+	else if (!rtStyle.variableLineHeight) {
 	    layoutHeight = getLineCount() *
 				(lineHeight + rtStyle.paragraphStyle.lineSpace);
+	    assert(isParagraphMarkAt(getLineCount() - 1));
 	}
 	else {
 	    layoutHeight = height;
+	    assert(isParagraphMarkAt(getLineCount() - 1));
 	}
-	assert(isParagraphMarkAt(getLineCount() - 1));
+    }
+
+    /**
+     * Ensures that the incomplete layout reaches beyond the specified
+     * index of the text and the specified y position. If the layout is
+     * continued, the lines of the lazy layout height are laid out further.
+     */
+    protected void ensureLayout(int textIndex, int y) {
+	if (!incomplete)
+	    return;
+	if (textIndex >= getLinesEnd() || y >= getLinesHeight()) {
+	    layoutLines(textIndex, y, 0);
+	    if (incomplete) {
+		layoutLines(-1, getLinesHeight() + lazyLayoutHeight, 0);
+	    }
+	}
+    }
+
+    /**
+     * Estimates the height of the incomplete layout from the lines
+     * already laid out, in proportion to the length of the rich text.
+     */
+    protected void estimateLayoutHeight() {
+	int height = getLinesHeight();
+	int index = getLinesEnd();
+	long rest = (index > 0 ?
+			(long)height * (richText.length() - index) / index :
+			0);
+	layoutHeight = (int)Math.min(height + rest, Integer.MAX_VALUE);
     }
 
     /**
@@ -813,8 +1175,7 @@ public class TextLayout extends TextLines implements Visualizable {
 
 	if (!rtStyle.variableLineHeight) {
 	    int newWidth = 0;
-	    int oldBegins[] = (int[])lineBegins.getArray();
-	    int oldRemains[] = (int[])remainWidths.getArray();
+	    PrefixSumTable oldLines = lines;
 	    int oldLineIndex = 0;
 	    int oldLineCount = getLineCount();
 	    invalidateLines();
@@ -826,27 +1187,29 @@ public class TextLayout extends TextLines implements Visualizable {
 		    // fall through to scan last two lines.
 		}
 		else { // oldLineIndex < oldLineCount - 2
-		    if (isParagraphMark(oldBegins[oldLineIndex])) {
-			int nrw = oldRemains[oldLineIndex] + diff;
+		    if (isParagraphMark(oldLines.get(oldLineIndex, BASELINE))) {
+			int nrw = oldLines.get(oldLineIndex, REMAIN_WIDTH) + diff;
 			if (nrw >= 0) {
-			    lineBegins.append(oldBegins[oldLineIndex]);
-			    remainWidths.append(nrw);
+			    appendLine(oldLines.get(oldLineIndex, LINE_LENGTH),
+				       0, nrw, 0, true);
 			    if ((width - nrw) > newWidth)
 				newWidth = (width - nrw);
-			    index = unmarkLineBegin(oldBegins[++oldLineIndex]);
+			    index = oldLines.sum(++oldLineIndex, LINE_LENGTH);
 			    continue outer1;
 			}
 			++oldLineIndex;
 		    }
 		    else {
 			while (++oldLineIndex < oldLineCount) {
-			    if (isParagraphMark(oldBegins[oldLineIndex])) {
+			    if (isParagraphMark(
+					oldLines.get(oldLineIndex, BASELINE))) {
 				++oldLineIndex;
 				break;
 			    }
 			}
 		    }
 		}
+		setParagraphMeasure(scanner, index);
 		while (scanner.doLayoutLine(
 			index, width, 0, rtStyle.paragraphStyle, info) >= 0)
 		{
@@ -890,7 +1253,7 @@ public class TextLayout extends TextLines implements Visualizable {
 	else {
 	    int newWidth = 0;
 	    int height = 0;
-	    int oldBegins[] = (int[])lineBegins.getArray();
+	    PrefixSumTable oldLines = lines;
 	    int oldLineIndex = 0;
 	    int oldLineCount = getLineCount();
 	    invalidateLines();
@@ -899,14 +1262,15 @@ public class TextLayout extends TextLines implements Visualizable {
 	    for (;;) {
 		ParagraphStyle pStyle = null;
 		while (oldLineIndex < oldLineCount) {
-		    if (isParagraphMark(oldBegins[oldLineIndex])) {
+		    if (isParagraphMark(oldLines.get(oldLineIndex, BASELINE))) {
 			pStyle = richText.getParagraphStyleAt(
-				unmarkLineBegin(oldBegins[oldLineIndex]));
+				oldLines.sum(oldLineIndex, LINE_LENGTH));
 			oldLineIndex++;
 			break;
 		    }
 		    oldLineIndex++;
 		}
+		setParagraphMeasure(scanner, index);
 		int nextTop;
 		while ((nextTop = scanner.doLayoutLine(
 				index, width, height, pStyle, info)) >= 0)
@@ -950,6 +1314,100 @@ public class TextLayout extends TextLines implements Visualizable {
 	}
     }
 
+    /**
+     * Sets the measurement of the paragraph that begins at the specified
+     * index of the rich text to the specified scanner. If the paragraph
+     * has not been measured yet, it is measured by the scanner and the
+     * measurement is kept until the paragraph is changed.
+     *
+     * @param scanner the scanner that lays out the paragraph.
+     * @param index   the beginning index of the paragraph.
+     */
+    protected void setParagraphMeasure(TextScanner scanner, int index) {
+	if (paragraphMeasures == null)
+	    paragraphMeasures = new SortedIntMap();
+	ParagraphMeasure m = (ParagraphMeasure)paragraphMeasures.get(index);
+	if (m == null && (m = scanner.measureParagraph(index)) != null) {
+	    paragraphMeasures.put(index, m);
+	}
+	scanner.setParagraphMeasure(m, index);
+    }
+
+    /**
+     * Discards the measurements of the paragraphs changed by the specified
+     * <code>TextChange</code> object, and shifts the measurements of the
+     * following paragraphs.
+     *
+     * @param change the <code>TextChange</code> object.
+     */
+    protected void updateParagraphMeasures(TextChange change) {
+	if (paragraphMeasures == null || paragraphMeasures.isEmpty())
+	    return;
+	int begin = Math.min(change.begin, change.layoutBegin);
+	int end = Math.max(change.end, change.layoutEnd);
+	int i = paragraphMeasures.ceilingIndex(begin);
+	if (i > 0) {
+	    ParagraphMeasure m =
+		(ParagraphMeasure)paragraphMeasures.valueAt(i - 1);
+	    if (paragraphMeasures.keyAt(i - 1) + m.length() >= begin)
+		--i;
+	}
+	if (i < paragraphMeasures.size()) {
+	    paragraphMeasures.removeRange(paragraphMeasures.keyAt(i), end + 1);
+	}
+	paragraphMeasures.shift(end + 1, change.lengthChanged);
+    }
+
+    /**
+     * Returns the font metrics of the single font of the text styles in
+     * the specified range of the rich text, or <code>null</code> if the
+     * range has more than one font or the rich text has text attachments.
+     *
+     * @param  begin   the beginning index of the range, inclusive.
+     * @param  end     the ending index of the range, exclusive.
+     * @param  metrics the font metrics that the single font should have,
+     *                 or <code>null</code> if any font.
+     * @return the font metrics of the single font, or <code>null</code>.
+     */
+    protected FontMetrics findSingleFont(int begin, int end,
+					 FontMetrics metrics)
+    {
+	if (echoCharIsSet() || richText.getText().getAttachmentCount() > 0)
+	    return null;
+	if (begin >= end)
+	    return metrics;
+	RunArrayCursor cursor = richText.getText().textStyleCursor();
+	cursor.seek(begin);
+	do {
+	    FontMetrics fm = ((TextStyle)cursor.value).getFontMetrics();
+	    if (metrics == null)
+		metrics = fm;
+	    else if (fm != metrics)
+		return null;
+	} while (cursor.runEnd < end && cursor.next());
+	return metrics;
+    }
+
+    /**
+     * Checks if the rich text changed by the specified
+     * <code>TextChange</code> object is still laid out in the single
+     * font. Once the rich text has more than one font, it is not laid out
+     * in the single font until the layout is invalidated.
+     *
+     * @param change the <code>TextChange</code> object.
+     */
+    protected void updateSingleFont(TextChange change) {
+	if (singleFontMetrics == null)
+	    return;
+	int begin = Math.min(change.begin, change.layoutBegin);
+	int end = Math.max(change.end, change.layoutEnd) +
+					Math.max(change.lengthChanged, 0);
+	singleFontMetrics =
+		findSingleFont(Math.max(begin, 0),
+			       Math.min(end, richText.length()),
+			       singleFontMetrics);
+    }
+
     /**
      * Draws the specified range of this layout to the specified graphics
      * at the specified location.
@@ -1172,10 +1630,9 @@ public class TextLayout extends TextLines implements Visualizable {
 		leftIndent = rtStyle.paragraphStyle.leftIndent;
 		rightIndent = rtStyle.paragraphStyle.rightIndent;
 	    }
-	    int lBegins[] = (int[])lineBegins.getArray();
-	    int lineBegin = unmarkLineBegin(lBegins[begin.lineIndex + 1]);
+	    int lineBegin = getLineBeginAt(begin.lineIndex + 1);
 	    for (int i = begin.lineIndex + 1; i < endLineIndex; i++) {
-		int lineEnd = unmarkLineBegin(lBegins[i + 1]);
+		int lineEnd = getLineBeginAt(i + 1);
 		if (bg != null) {
 		    bg.fillRect(leftIndent + p.x, p.y,
 				layoutWidth - rightIndent - leftIndent,
@@ -1183,7 +1640,7 @@ public class TextLayout extends TextLines implements Visualizable {
 		}
 		scanner.drawLineTo(g, p,
 				   lineBegin, lineEnd,
-				   remainWidths.getInt(i),
+				   getRemainWidthAt(i),
 				   lineHeight, baseline,
 				   rtStyle.paragraphStyle);
 		p.y += (lineHeight + rtStyle.paragraphStyle.lineSpace);
@@ -1207,16 +1664,14 @@ public class TextLayout extends TextLines implements Visualizable {
 			       rtStyle.paragraphStyle);
 	}
 	else {
-	    int lBegins[] = (int[])lineBegins.getArray();
-	    int lTops[] = (int[])lineTops.getArray();
 	    int leftIndent = 0;
 	    int rightIndent = 0;
 	    ParagraphStyle pStyle = null;
-	    int lineBegin = unmarkLineBegin(lBegins[begin.lineIndex + 1]);
-	    int lineTop = lTops[begin.lineIndex + 1];
+	    int lineBegin = getLineBeginAt(begin.lineIndex + 1);
+	    int lineTop = getLineTopAt(begin.lineIndex + 1);
 	    for (int i = begin.lineIndex + 1; i < endLineIndex; i++) {
-		int lineEnd = unmarkLineBegin(lBegins[i + 1]);
-		int nextTop = lTops[i + 1];
+		int lineEnd = getLineBeginAt(i + 1);
+		int nextTop = getLineTopAt(i + 1);
 		if (pStyle == null) {
 		    pStyle = richText.getParagraphStyleAt(lineBegin);
 		    if (!ignoreIndent) {
@@ -1225,7 +1680,7 @@ public class TextLayout extends TextLines implements Visualizable {
 		    }
 		}
 		int lh = height = nextTop - lineTop;
-		boolean isParaMark = isParagraphMark(lBegins[i]);
+		boolean isParaMark = isParagraphMarkAt(i);
 		if (isParaMark) {
 		    lh -= pStyle.paragraphSpace;
 		}
@@ -1234,7 +1689,7 @@ public class TextLayout extends TextLines implements Visualizable {
 				layoutWidth - rightIndent - leftIndent,
 				height);
 		}
-		if (pStyle.hasHeading() && isParagraphMark(lBegins[i - 1])) {
+		if (pStyle.hasHeading() && isParagraphMarkAt(i - 1)) {
 		    Dimension d = pStyle.heading.getSize();
 		    pStyle.heading.paint(g,
 				new Point(
@@ -1245,9 +1700,9 @@ public class TextLayout extends TextLines implements Visualizable {
 		}
 		scanner.drawLineTo(g, p,
 				   lineBegin, lineEnd,
-				   remainWidths.getInt(i),
+				   getRemainWidthAt(i),
 				   lh - pStyle.lineSpace,
-				   baselines.getInt(i),
+				   getBaselineAt(i),
 				   pStyle);
 		p.y += height;
 		lineBegin = lineEnd;
@@ -1277,7 +1732,7 @@ public class TextLayout extends TextLines implements Visualizable {
 		}
 	    }
 	    if (pStyle.hasHeading() &&
-		isParagraphMark(lBegins[end.lineIndex - 1]))
+		isParagraphMarkAt(end.lineIndex - 1))
 	    {
 		Dimension d = pStyle.heading.getSize();
 		int eh = end.lineHeight + end.paragraphStyle.lineSpace;
@@ -1439,6 +1894,8 @@ public class TextLayout extends TextLines implements Visualizable {
 	    validate();
 	    return new TextLayoutChange(TextLayoutChange.FULL_REPAINT);
 	}
+	updateParagraphMeasures(change);
+	updateSingleFont(change);
 
 	int begin  = change.layoutBegin;
 	int oldEnd = change.layoutEnd;
@@ -1454,25 +1911,40 @@ public class TextLayout extends TextLines implements Visualizable {
 	int newEnd = oldEnd + diff;
 	int oldLength = newLength - diff;
 
+	int linesEnd = newLength + 1; // never reached
+	if (incomplete) {
+	    if (begin >= getLinesEnd()) {
+		// the lines in the change are not laid out yet.
+		estimateLayoutHeight();
+		return new TextLayoutChange(TextLayoutChange.NO_REPAINT);
+	    }
+	    linesEnd = Math.max(getLinesEnd(), oldEnd) + diff;
+	}
+	boolean linesEndReached = false;
+
 	int beginLineIndex = getLineIndexNearby(beginHint, begin, oldLength);
 	int oldEndLineIndex = getLineIndexNearby(endHint,
 						 Math.min(oldEnd, oldLength),
 						 oldLength);
-	int beginLineBegin = unmarkLineBegin(lineBegins.getInt(beginLineIndex));
 	int validLineIndex = oldEndLineIndex + 1;
 	int validLineBegin =
 		(validLineIndex < getLineCount() ?
-		    unmarkLineBegin(lineBegins.getInt(validLineIndex)) + diff :
+		    getLineBeginAt(validLineIndex) + diff :
 		    newLength + 1); // never match to valid
 
+	// the word wrapped at the end of the previous line may fit into the
+	// line before it, when the previous line holds only that word.
 	int lBeginLineIndex = beginLineIndex;
-	if (rtStyle.isWordWrap() && lBeginLineIndex > 0 &&
-	    !isParagraphMarkAt(lBeginLineIndex - 1))
-	{
-	    char c = richText.getChar(beginLineBegin - 1);
-	    if (c != Text.LINE_BREAK_CHAR)
-		--lBeginLineIndex;
+	for (int n = 0; n < 2; n++) {
+	    if (!rtStyle.isWordWrap() || lBeginLineIndex == 0 ||
+		isParagraphMarkAt(lBeginLineIndex - 1) ||
+		richText.getChar(getLineBeginAt(lBeginLineIndex) - 1) ==
+							Text.LINE_BREAK_CHAR)
+		break;
+	    --lBeginLineIndex;
 	}
+	int lNextLineBegin = (lBeginLineIndex < beginLineIndex ?
+				getLineBeginAt(lBeginLineIndex + 1) : -1);
 
 	TextScanner scanner = getScanner();
 	TextLineInfo info = new TextLineInfo();
@@ -1481,10 +1953,9 @@ public class TextLayout extends TextLines implements Visualizable {
 	    int newWidth = layoutWidth;
 	    int newLineHeight = lineHeight;
 	    int newBaseline = baseline;
-	    int lBegins[] = (int[])lineBegins.getArray();
 	    int lineCount = getLineCount();
-	    int oldLineBegin = unmarkLineBegin(lBegins[beginLineIndex]);
-	    int index = unmarkLineBegin(lBegins[lBeginLineIndex]);
+	    int oldLineBegin = getLineBeginAt(beginLineIndex);
+	    int index = getLineBeginAt(lBeginLineIndex);
 	    TextLines changed = new TextLines(richText);
 	    changed.validateLines();
 	    int nextTop;
@@ -1500,11 +1971,16 @@ public class TextLayout extends TextLines implements Visualizable {
 		while (index > validLineBegin) {
 		    if (++validLineIndex >= lineCount)
 			break;
-		    validLineBegin = unmarkLineBegin(lBegins[validLineIndex])
-								+ diff;
+		    validLineBegin = getLineBeginAt(validLineIndex) + diff;
 		}
 		if (validLineIndex > beginLineIndex && index == validLineBegin)
 		    break;
+		if (index >= linesEnd && info.isParagraphMark) {
+		    // the following lines are not laid out yet.
+		    validLineIndex = lineCount;
+		    linesEndReached = true;
+		    break;
+		}
 	    }
 
 	    if (nextTop < 0) { // scanned to the end
@@ -1515,20 +1991,15 @@ public class TextLayout extends TextLines implements Visualizable {
 				scanner.lastCondition==TextScanner.LINE_BREAK);
 		}
 		replace(lBeginLineIndex, lineCount, changed);
+		incomplete = false;
 		if (changed.getLineCount() == 0) { // last chars removed
 		    markLineAt(getLineCount() - 1);
 		}
 	    }
 	    else {
+		// the following lines are shifted by the replacement.
 		replace(lBeginLineIndex, validLineIndex, changed);
 		validLineIndex = lBeginLineIndex + changed.getLineCount();
-		lBegins = (int[])lineBegins.getArray();
-		int newLineCount = getLineCount();
-		for (int i = validLineIndex; i < newLineCount; i++) {
-		    int val = lBegins[i];
-		    lBegins[i] = markLineBegin(unmarkLineBegin(val) + diff,
-					       val < 0); // isParagraphMark()
-		}
 	    }
 
 	    int oldLayoutWidth = layoutWidth;
@@ -1557,14 +2028,21 @@ public class TextLayout extends TextLines implements Visualizable {
 	    {
 		if (newLineHeight > lineHeight) lineHeight = newLineHeight;
 		if (newBaseline > baseline) baseline = newBaseline;
+		if (incomplete) estimateLayoutHeight();
 		return new TextLayoutChange(TextLayoutChange.FULL_REPAINT);
 	    }
+	    if (incomplete) {
+		estimateLayoutHeight();
+		if (linesEndReached)
+		    return new TextLayoutChange(TextLayoutChange.FULL_REPAINT);
+	    }
 
 	    TextPositionInfo paintBegin;
 	    boolean paintFromLineBegin;
 	    if (lBeginLineIndex < beginLineIndex &&
 		(beginLineIndex >= newLineCount ||
-		oldLineBegin != getLineBeginAt(beginLineIndex)))
+		oldLineBegin != getLineBeginAt(beginLineIndex) ||
+		lNextLineBegin != getLineBeginAt(lBeginLineIndex + 1)))
 	    {
 		paintBegin = getTextPositionAtLineBegin(lBeginLineIndex);
 		paintFromLineBegin = true;
@@ -1597,7 +2075,7 @@ public class TextLayout extends TextLines implements Visualizable {
 			paintBegin = new TextPositionInfo(beginHint);
 			paintBegin.lineEnd = lineEnd;
 			paintBegin.remainWidth =
-					remainWidths.getInt(beginLineIndex);
+					getRemainWidthAt(beginLineIndex);
 			paintBegin.isParagraphMark =
 					isParagraphMarkAt(beginLineIndex);
 		    }
@@ -1628,25 +2106,24 @@ public class TextLayout extends TextLines implements Visualizable {
 	}
 
 	int newWidth = layoutWidth;
-	int lBegins[] = (int[])lineBegins.getArray();
 	int lineCount = getLineCount();
 
 	ParagraphStyle beginStyle = richText.getParagraphStyleAt(begin);
-	int beginLineY = lineTops.getInt(beginLineIndex);
+	int beginLineY = getLineTopAt(beginLineIndex);
 	int beginY = beginLineY;
 	if (lBeginLineIndex < beginLineIndex) {
-	    beginY = lineTops.getInt(lBeginLineIndex);
+	    beginY = getLineTopAt(lBeginLineIndex);
 	}
 
 	int newY = beginY;
-	int oldLineBegin   = unmarkLineBegin(lBegins[beginLineIndex]);
-	int oldBaseline    = baselines.getInt(beginLineIndex);
-	int oldLineTop     = lineTops.getInt(beginLineIndex);
+	int oldLineBegin   = getLineBeginAt(beginLineIndex);
+	int oldBaseline    = getBaselineAt(beginLineIndex);
+	int oldLineTop     = getLineTopAt(beginLineIndex);
 	int oldNextLineTop = (beginLineIndex < lineCount - 1 ?
-					lineTops.getInt(beginLineIndex + 1) :
+					getLineTopAt(beginLineIndex + 1) :
 					layoutHeight);
-	boolean oldIsParaMark = isParagraphMark(lBegins[beginLineIndex]);
-	int index = unmarkLineBegin(lBegins[lBeginLineIndex]);
+	boolean oldIsParaMark = isParagraphMarkAt(beginLineIndex);
+	int index = getLineBeginAt(lBeginLineIndex);
 	TextLines changed = new TextLines(richText);
 	changed.validateLines();
 	ParagraphStyle pStyle = beginStyle;
@@ -1661,10 +2138,16 @@ public class TextLayout extends TextLines implements Visualizable {
 	    while (index > validLineBegin) {
 		if (++validLineIndex >= lineCount)
 		    break;
-		validLineBegin = unmarkLineBegin(lBegins[validLineIndex])+diff;
+		validLineBegin = getLineBeginAt(validLineIndex) + diff;
 	    }
 	    if (validLineIndex > beginLineIndex && index == validLineBegin)
 		break;
+	    if (index >= linesEnd && info.isParagraphMark) {
+		// the following lines are not laid out yet.
+		validLineIndex = lineCount;
+		linesEndReached = true;
+		break;
+	    }
 	    if (info.isParagraphMark) {
 		pStyle = richText.getParagraphStyleAt(index);
 	    }
@@ -1680,6 +2163,7 @@ public class TextLayout extends TextLines implements Visualizable {
 				scanner.lastCondition==TextScanner.LINE_BREAK);
 	    }
 	    replace(lBeginLineIndex, lineCount, changed);
+	    incomplete = false;
 	    if (changed.getLineCount() == 0) { // last chars removed
 		markLineAt(getLineCount() - 1);
 	    }
@@ -1689,20 +2173,11 @@ public class TextLayout extends TextLines implements Visualizable {
 		oldY = layoutHeight;
 	    }
 	    else {
-		oldY = lineTops.getInt(validLineIndex);
+		oldY = getLineTopAt(validLineIndex);
 	    }
+	    // the following lines are shifted by the replacement.
 	    replace(lBeginLineIndex, validLineIndex, changed);
 	    validLineIndex = lBeginLineIndex + changed.getLineCount();
-	    lBegins = (int[])lineBegins.getArray();
-	    int lTops[] = (int[])lineTops.getArray();
-	    int topDiff = newY - oldY;
-	    int newLineCount = getLineCount();
-	    for (int i = validLineIndex; i < newLineCount; i++) {
-		int val = lBegins[i];
-		lBegins[i] = markLineBegin(unmarkLineBegin(val) + diff,
-					   val < 0); // isParagraphMark()
-		lTops[i] += topDiff;
-	    }
 	}
 
 	int oldLayoutWidth  = layoutWidth;
@@ -1725,13 +2200,18 @@ public class TextLayout extends TextLines implements Visualizable {
 	    }
 	}
 	layoutHeight += (newY - oldY);
+	if (linesEndReached) {
+	    estimateLayoutHeight();
+	    return new TextLayoutChange(TextLayoutChange.FULL_REPAINT);
+	}
 
 	int newLineCount = getLineCount();
 	TextPositionInfo paintBegin;
 	boolean paintFromLineBegin;
 	if (lBeginLineIndex < beginLineIndex &&
 	    (beginLineIndex >= newLineCount ||
-	    oldLineBegin != getLineBeginAt(beginLineIndex)))
+	    oldLineBegin != getLineBeginAt(beginLineIndex) ||
+	    lNextLineBegin != getLineBeginAt(lBeginLineIndex + 1)))
 	{
 	    paintBegin = getTextPositionAtLineBegin(lBeginLineIndex);
 	    paintFromLineBegin = true;
@@ -1757,10 +2237,10 @@ public class TextLayout extends TextLines implements Visualizable {
 		paintFromLineBegin = false;
 	    }
 	    else if (!change.paragraphStyleChanged                       &&
-		     oldBaseline    == baselines.getInt(beginLineIndex)  &&
-		     oldLineTop     == lineTops.getInt(beginLineIndex)   &&
+		     oldBaseline    == getBaselineAt(beginLineIndex)     &&
+		     oldLineTop     == getLineTopAt(beginLineIndex)      &&
 		     oldNextLineTop == (beginLineIndex < newLineCount - 1 ?
-					lineTops.getInt(beginLineIndex + 1) :
+					getLineTopAt(beginLineIndex + 1) :
 					layoutHeight)                    &&
 		     oldIsParaMark  == isParagraphMarkAt(beginLineIndex))
 	    {
@@ -1771,7 +2251,7 @@ public class TextLayout extends TextLines implements Visualizable {
 		    paintBegin = new TextPositionInfo(beginHint);
 		    paintBegin.lineEnd = lineEnd;
 		    paintBegin.remainWidth =
-					remainWidths.getInt(beginLineIndex);
+					getRemainWidthAt(beginLineIndex);
 		}
 		paintFromLineBegin = false;
 	    }
@@ -1814,8 +2294,211 @@ public class TextLayout extends TextLines implements Visualizable {
 
     /** Returns the scanner for this layout. */
     protected TextScanner getScanner() {
-	return (echoCharIsSet() ?
-		new EchoTextScanner(richText, lineWrap, echoChar, locale) :
-		new TextScanner(richText, lineWrap, locale));
+	return getScanner(richText);
+    }
+
+    /**
+     * Returns the scanner for the specified rich text, that is this rich
+     * text or a subtext of it, with the settings of this layout.
+     */
+    protected TextScanner getScanner(RichText richText) {
+	if (echoCharIsSet())
+	    return new EchoTextScanner(richText, lineWrap, echoChar, locale);
+	TextScanner scanner = new TextScanner(richText, lineWrap, locale);
+	if (singleFontMetrics != null)
+	    scanner.setSingleFont(singleFontMetrics);
+	return scanner;
+    }
+
+
+    public static void main(String argv[]) {
+	// The lines laid out incrementally after an edit must be the same as
+	// the lines laid out from scratch, whether the paragraphs are laid
+	// out with the measurements or are scanned. The words are shorter
+	// than a line, because a word broken into the lines may change the
+	// line two lines before the edit, which is not laid out again.
+	String words[] = {
+	    "\t", " ", "hello", "world", "don't", "3,141", "x.y", "(", ")",
+	    "\u65e5\u672c\u8a9e", "\u3053\u308c\u306f", "\u3001",
+	    "\u3002", ",", "'", "\n",
+	};
+	TextStyle styles[] = {
+	    new TextStyle("Monospaced", java.awt.Font.PLAIN, 12),
+	    new TextStyle("SansSerif", java.awt.Font.BOLD, 12),
+	    new TextStyle("Serif", java.awt.Font.PLAIN, 17),
+	};
+	java.util.Random random = new java.util.Random(1);
+	int errors = 0;
+	for (int n = 0; n < 3000; n++) {
+	    Text text = new Text();
+	    for (int i = random.nextInt(100); i > 0; i--) {
+		text.append(new Text(words[random.nextInt(words.length)],
+				     styles[random.nextInt(styles.length)]));
+	    }
+	    int width = 150 + random.nextInt(250);
+	    RichTextStyle rtStyle = RichTextStyle.DEFAULT_DOCUMENT_STYLE;
+	    TextLayout layout = new TextLayout(new RichText(text, rtStyle),
+					       RichTextStyle.WORD_WRAP);
+	    layout.setWidth(width);
+	    int length = layout.getRichText().length();
+	    int begin = random.nextInt(length + 1);
+	    int end = Math.min(length, begin + random.nextInt(20));
+	    layout.replace(layout.getTextPositionAt(begin),
+			   layout.getTextPositionAt(end),
+			   new Text(words[random.nextInt(words.length)],
+				    styles[random.nextInt(styles.length)]));
+	    text = (Text)layout.getRichText().getText().clone();
+	    TextLayout fresh = new TextLayout(new RichText(text, rtStyle),
+					      RichTextStyle.WORD_WRAP);
+	    fresh.setWidth(width);
+	    layout.validate();
+	    fresh.validate();
+	    boolean equals = (layout.getLineCount() == fresh.getLineCount());
+	    for (int i = 0; equals && i < layout.getLineCount(); i++) {
+		equals =
+		    layout.getLineBeginAt(i)   == fresh.getLineBeginAt(i)   &&
+		    layout.getRemainWidthAt(i) == fresh.getRemainWidthAt(i) &&
+		    layout.getLineSkipAt(i)    == fresh.getLineSkipAt(i)    &&
+		    layout.getBaselineAt(i)    == fresh.getBaselineAt(i)    &&
+		    layout.getLineTopAt(i)     == fresh.getLineTopAt(i);
+	    }
+	    if (!equals) {
+		System.out.println("layout ERROR: " + n + ", " + width);
+		++errors;
+	    }
+	}
+	System.out.println(errors + " errors");
+    }
+}
+
+
+/**
+ * The lines of a chunk of the paragraphs that is laid out independently
+ * by the parallel layout.
+ */
+class LayoutChunk extends TextLines {
+    /** The scanner for the chunk. */
+    TextScanner scanner;
+
+    /** The layout width. */
+    int layoutWidth;
+
+    /** The maximum width of the lines. */
+    int width;
+
+    /** The last condition of the scanner. */
+    int lastCondition;
+
+    /** The beginning index of the chunk in the whole rich text. */
+    int begin;
+
+    /** The measurements of the paragraphs in the chunk. */
+    SortedIntMap measures;
+
+
+    LayoutChunk(RichText richText, TextScanner scanner, int begin,
+		int layoutWidth)
+    {
+	super(richText);
+	this.scanner = scanner;
+	this.begin = begin;
+	this.layoutWidth = layoutWidth;
+	this.measures = new SortedIntMap();
+    }
+
+
+    /** Lays out the lines of the chunk. */
+    void layout() {
+	validateLines();
+	TextLineInfo info = new TextLineInfo();
+	int index = 0;
+	int height = 0;
+	ParagraphStyle pStyle = richText.getParagraphStyleAt(0);
+	measure(index);
+	int nextTop;
+	while ((nextTop = scanner.doLayoutLine(
+				index, layoutWidth, height, pStyle, info)) >= 0)
+	{
+	    append(info);
+	    height = nextTop;
+	    index = info.lineEnd;
+	    if (info.isParagraphMark) measure(index);
+	    if (scanner.destX > width) width = scanner.destX;
+	    if (!rtStyle.variableLineHeight) {
+		if (info.lineHeight > lineHeight)
+		    lineHeight = info.lineHeight;
+		if (info.baseline > baseline)
+		    baseline = info.baseline;
+	    }
+	    else if (info.isParagraphMark) {
+		pStyle = richText.getParagraphStyleAt(index);
+	    }
+	}
+	lastCondition = scanner.lastCondition;
+	scanner = null;
+    }
+
+    /** Measures the paragraph that begins at the specified index. */
+    void measure(int index) {
+	ParagraphMeasure m = scanner.measureParagraph(index);
+	if (m != null) measures.put(index, m);
+	scanner.setParagraphMeasure(m, index);
+    }
+}
+
+
+/**
+ * The runnable that lays out the chunks of the parallel layout. The
+ * runnable is shared by the threads, each of which takes the next chunk
+ * until all chunks are laid out.
+ */
+class LayoutChunkRunner implements Runnable {
+    /** The chunks to be laid out. */
+    LayoutChunk chunks[];
+
+    /** The index of the next chunk. */
+    int next;
+
+    /** The error thrown while laying out. */
+    Throwable error;
+
+
+    LayoutChunkRunner(LayoutChunk chunks[]) {
+	this.chunks = chunks;
+	this.next = 0;
+	this.error = null;
+    }
+
+
+    /** Lays out the chunks until all chunks are taken. */
+    public void run() {
+	LayoutChunk chunk;
+	while ((chunk = nextChunk()) != null) {
+	    try {
+		chunk.layout();
+	    }
+	    catch (Throwable e) {
+		synchronized (this) {
+		    if (error == null) error = e;
+		    next = chunks.length;
+		}
+	    }
+	}
+    }
+
+    /** Returns the next chunk to be laid out, or null. */
+    synchronized LayoutChunk nextChunk() {
+	return (next < chunks.length ? chunks[next++] : null);
+    }
+
+    /** Throws the error thrown while laying out, if any. */
+    synchronized void checkError() {
+	if (error == null)
+	    return;
+	if (error instanceof RuntimeException)
+	    throw (RuntimeException)error;
+	if (error instanceof Error)
+	    throw (Error)error;
+	throw new RuntimeException(error.toString());
     }
 }
@@ -24,8 +24,8 @@ package jp.kyasu.graphics;
 
 import jp.kyasu.graphics.text.TextLineInfo;
 import jp.kyasu.graphics.text.TextPositionInfo;
+import jp.kyasu.util.PrefixSumTable;
 import jp.kyasu.util.RunArray;
-import jp.kyasu.util.VArray;
 
 import java.awt.Dimension;
 import java.awt.FontMetrics;
@@ -52,25 +52,18 @@ public class TextLines implements java.io.Serializable {
     /** The layout height. */
     protected int layoutHeight;
 
-    /** The array for the beginning index of the line. */
-    protected VArray lineBegins;
-
-    /** The array for the remaining width of the line. */
-    protected VArray remainWidths;
-
-    /**
-     * The array for the baseline of the line.
-     * This value used when the <code>rtStyle.variableLineHeight</code>
-     * is true.
-     */
-    protected VArray baselines;
-
     /**
-     * The array for the top position of the line.
-     * This value used when the <code>rtStyle.variableLineHeight</code>
-     * is true.
+     * The table of the lines. The beginning index and the top position
+     * of a line are the sums of the lengths and the skips of the
+     * preceding lines, so that the lines following an edit need not be
+     * corrected.
+     *
+     * @see #LINE_LENGTH
+     * @see #LINE_SKIP
+     * @see #REMAIN_WIDTH
+     * @see #BASELINE
      */
-    protected VArray lineTops;
+    protected PrefixSumTable lines;
 
     /**
      * The height of all lines.
@@ -86,6 +79,38 @@ public class TextLines implements java.io.Serializable {
      */
     protected int baseline;
 
+    /**
+     * True if the lines are laid out only to a paragraph end before the
+     * end of the rich text. The <code>layoutHeight</code> of the incomplete
+     * lines is an estimated height.
+     */
+    protected boolean incomplete;
+
+    /** The buffer for a row of the table of the lines. */
+    transient protected int lineRow[];
+
+
+    /** The column of the table for the length of the line. */
+    static protected final int LINE_LENGTH  = 0;
+
+    /**
+     * The column of the table for the line skip of the line.
+     * This value used when the <code>rtStyle.variableLineHeight</code>
+     * is true.
+     */
+    static protected final int LINE_SKIP    = 1;
+
+    /** The column of the table for the remaining width of the line. */
+    static protected final int REMAIN_WIDTH = 2;
+
+    /**
+     * The column of the table for the baseline of the line, that is
+     * encoded with <code>markLineBegin(int, boolean)</code> so that the
+     * paragraph end is marked. The baseline is used when the
+     * <code>rtStyle.variableLineHeight</code> is true.
+     */
+    static protected final int BASELINE     = 3;
+
 
     /**
      * Constructs a text lines with the specified rich text.
@@ -100,10 +125,8 @@ public class TextLines implements java.io.Serializable {
 
 	layoutHeight = 0;
 
-	lineBegins   = null;
-	remainWidths = null;
-	baselines    = null;
-	lineTops     = null;
+	lines = null;
+	incomplete = false;
 
 	lineHeight = 0;
 	baseline   = 0;
@@ -121,16 +144,8 @@ public class TextLines implements java.io.Serializable {
 	richText        = textLines.richText; // share
 	rtStyle         = textLines.rtStyle; // share
 	layoutHeight    = textLines.layoutHeight;
-	lineBegins      = (VArray)textLines.lineBegins.clone();
-	remainWidths    = (VArray)textLines.remainWidths.clone();
-	if (rtStyle.variableLineHeight) {
-	    baselines   = (VArray)textLines.baselines.clone();
-	    lineTops    = (VArray)textLines.lineTops.clone();
-	}
-	else {
-	    baselines   = null;
-	    lineTops    = null;
-	}
+	lines           = (PrefixSumTable)textLines.lines.clone();
+	incomplete      = textLines.incomplete;
 	lineHeight = textLines.lineHeight;
 	baseline   = textLines.baseline;
     }
@@ -161,28 +176,31 @@ public class TextLines implements java.io.Serializable {
      * Returns the number of the lines in this text lines.
      */
     public final int getLineCount() {
-	return (lineBegins == null ? 0 : lineBegins.length());
+	return (lines == null ? 0 : lines.size());
     }
 
     /**
      * Returns the beginning index of the line at the specified index.
      */
     public final int getLineBeginAt(int lineIndex) {
-	return unmarkLineBegin(lineBegins.getInt(lineIndex));
+	if (lineIndex >= lines.size()) {
+	    throw new ArrayIndexOutOfBoundsException(lineIndex);
+	}
+	return lines.sum(lineIndex, LINE_LENGTH);
     }
 
     /**
      * Returns the ending index of the line at the specified index.
      */
     public final int getLineEndAt(int lineIndex) {
-	if (lineIndex < 0 || lineIndex >= lineBegins.length()) {
+	if (lineIndex < 0 || lineIndex >= lines.size()) {
 	    throw new ArrayIndexOutOfBoundsException();
 	}
-	if (lineIndex < lineBegins.length() - 1) {
-	    return unmarkLineBegin(lineBegins.getInt(lineIndex + 1));
+	if (lineIndex < lines.size() - 1) {
+	    return lines.sum(lineIndex + 1, LINE_LENGTH);
 	}
 	else {
-	    return richText.length();
+	    return getLinesEnd();
 	}
     }
 
@@ -190,14 +208,14 @@ public class TextLines implements java.io.Serializable {
      * Checks if the line at the specified index is a paragraph end.
      */
     public final boolean isParagraphMarkAt(int lineIndex) {
-	return isParagraphMark(lineBegins.getInt(lineIndex));
+	return isParagraphMark(lines.get(lineIndex, BASELINE));
     }
 
     /**
      * Returns the remaining width of the line at the specified index.
      */
     public final int getRemainWidthAt(int lineIndex) {
-	return remainWidths.getInt(lineIndex);
+	return lines.get(lineIndex, REMAIN_WIDTH);
     }
 
     /**
@@ -211,11 +229,10 @@ public class TextLines implements java.io.Serializable {
 	}
 	else {
 	    if (lineIndex < getLineCount() - 1) {
-		return lineTops.getInt(lineIndex + 1) -
-						lineTops.getInt(lineIndex);
+		return lines.get(lineIndex, LINE_SKIP);
 	    }
 	    else {
-		return layoutHeight - lineTops.getInt(lineIndex);
+		return getLinesHeight() - lines.sum(lineIndex, LINE_SKIP);
 	    }
 	}
     }
@@ -231,7 +248,7 @@ public class TextLines implements java.io.Serializable {
 	    return baseline;
 	}
 	else {
-	    return baselines.getInt(lineIndex);
+	    return unmarkLineBegin(lines.get(lineIndex, BASELINE));
 	}
     }
 
@@ -246,7 +263,10 @@ public class TextLines implements java.io.Serializable {
 	    return (lineHeight + rtStyle.paragraphStyle.lineSpace) * lineIndex;
 	}
 	else {
-	    return lineTops.getInt(lineIndex);
+	    if (lineIndex >= lines.size()) {
+		throw new ArrayIndexOutOfBoundsException(lineIndex);
+	    }
+	    return lines.sum(lineIndex, LINE_SKIP);
 	}
     }
 
@@ -254,44 +274,61 @@ public class TextLines implements java.io.Serializable {
      * Checks if the text lines has a valid layout.
      */
     public boolean isValid() {
-	return (lineBegins != null);
+	return (lines != null);
     }
 
     /** Validate lines in this text lines. */
     protected void validateLines() {
 	if (isValid())
 	    return;
-	lineBegins   = new VArray(int.class);
-	remainWidths = new VArray(int.class);
-	if (rtStyle.variableLineHeight) {
-	    baselines = new VArray(int.class);
-	    lineTops  = new VArray(int.class);
-	}
+	lines = new PrefixSumTable(4, 2);
     }
 
     /** Invalidate lines in this text lines. */
     protected void invalidateLines() {
-	lineBegins   = null;
-	baselines    = null;
-	lineTops     = null;
-	remainWidths = null;
+	lines = null;
+	incomplete = false;
+    }
+
+    /**
+     * Returns the ending index of the last line. If the lines are
+     * incomplete, the index is less than the length of the rich text.
+     */
+    protected final int getLinesEnd() {
+	return (incomplete ? lines.total(LINE_LENGTH) : richText.length());
+    }
+
+    /**
+     * Returns the bottom position of the last line. If the lines are
+     * incomplete, the position is less than the layout height.
+     */
+    protected final int getLinesHeight() {
+	if (!incomplete) {
+	    return layoutHeight;
+	}
+	else if (!rtStyle.variableLineHeight) {
+	    return (lineHeight + rtStyle.paragraphStyle.lineSpace) *
+							getLineCount();
+	}
+	else {
+	    return lines.total(LINE_SKIP);
+	}
     }
 
     /** Marks the line at the specified index as a paragraph end. */
     protected final void markLineAt(int lineIndex) {
-	int lineBegin = lineBegins.getInt(lineIndex);
-	if (!isParagraphMark(lineBegin)) {
-	    lineBegins.setInt(lineIndex,
-			      markLineBegin(unmarkLineBegin(lineBegin), true));
+	int value = lines.get(lineIndex, BASELINE);
+	if (!isParagraphMark(value)) {
+	    lines.set(lineIndex, BASELINE, markLineBegin(value, true));
 	}
     }
 
     /** Unmarks the line at the specified index as no paragraph end. */
     protected final void unmarkLineAt(int lineIndex) {
-	int lineBegin = lineBegins.getInt(lineIndex);
-	if (isParagraphMark(lineBegin)) {
-	    lineBegins.setInt(lineIndex,
-			      markLineBegin(unmarkLineBegin(lineBegin), false));
+	int value = lines.get(lineIndex, BASELINE);
+	if (isParagraphMark(value)) {
+	    lines.set(lineIndex, BASELINE,
+		      markLineBegin(unmarkLineBegin(value), false));
 	}
     }
 
@@ -311,13 +348,14 @@ public class TextLines implements java.io.Serializable {
     public final TextLineInfo getTextLineInto(int lineIndex,
 					      TextLineInfo lineInfo)
     {
-	int lBegin = lineBegins.getInt(lineIndex);
-	lineInfo.isParagraphMark = isParagraphMark(lBegin);
-	lineInfo.lineBegin = unmarkLineBegin(lBegin);
+	int lBaseline = lines.get(lineIndex, BASELINE);
+	lineInfo.isParagraphMark = isParagraphMark(lBaseline);
+	lineInfo.lineBegin = lines.sum(lineIndex, LINE_LENGTH);
 	lineInfo.lineEnd = (lineIndex < getLineCount() - 1 ?
-				getLineBeginAt(lineIndex + 1) :
-				richText.length());
-	lineInfo.remainWidth = remainWidths.getInt(lineIndex);
+				lineInfo.lineBegin +
+					lines.get(lineIndex, LINE_LENGTH) :
+				getLinesEnd());
+	lineInfo.remainWidth = lines.get(lineIndex, REMAIN_WIDTH);
 	if (!rtStyle.variableLineHeight) {
 	    lineInfo.lineHeight     = lineHeight;
 	    lineInfo.baseline       = baseline;
@@ -327,14 +365,13 @@ public class TextLines implements java.io.Serializable {
 	    lineInfo.y              = lineInfo.lineSkip * lineIndex;
 	}
 	else {
-	    lineInfo.baseline       = baselines.getInt(lineIndex);
+	    lineInfo.baseline       = unmarkLineBegin(lBaseline);
 	    lineInfo.paragraphStyle =
 			richText.getParagraphStyleAt(lineInfo.lineBegin);
-	    lineInfo.y              = lineTops.getInt(lineIndex);
-	    int nextTop = (lineIndex < getLineCount() - 1 ?
-				lineTops.getInt(lineIndex + 1) :
-				layoutHeight);
-	    lineInfo.lineSkip      = nextTop - lineInfo.y;
+	    lineInfo.y              = lines.sum(lineIndex, LINE_SKIP);
+	    lineInfo.lineSkip       = (lineIndex < getLineCount() - 1 ?
+					lines.get(lineIndex, LINE_SKIP) :
+					getLinesHeight() - lineInfo.y);
 	    int lineHeight = lineInfo.lineSkip -
 					lineInfo.paragraphStyle.lineSpace;
 	    if (lineInfo.isParagraphMark) {
@@ -395,25 +432,45 @@ public class TextLines implements java.io.Serializable {
      * to this text lines.
      */
     protected final void append(TextLineInfo lineInfo) {
-	lineBegins.append(markLineBegin(lineInfo.lineBegin,
-					lineInfo.isParagraphMark));
-	remainWidths.append(lineInfo.remainWidth);
 	if (rtStyle.variableLineHeight) {
-	    baselines.append(lineInfo.baseline);
-	    lineTops.append(lineInfo.y);
+	    appendLine(lineInfo.lineEnd - lineInfo.lineBegin,
+		       lineInfo.lineSkip,
+		       lineInfo.remainWidth,
+		       lineInfo.baseline,
+		       lineInfo.isParagraphMark);
 	}
+	else {
+	    appendLine(lineInfo.lineEnd - lineInfo.lineBegin,
+		       0,
+		       lineInfo.remainWidth,
+		       0,
+		       lineInfo.isParagraphMark);
+	}
+    }
+
+    /**
+     * Appends the line with the specified length, line skip, remaining
+     * width, baseline, and flag indicating that the line is a paragraph
+     * end to this text lines.
+     */
+    protected final void appendLine(int length, int lineSkip,
+				    int remainWidth, int baseline,
+				    boolean isParagraphMark)
+    {
+	if (lineRow == null)
+	    lineRow = new int[4];
+	lineRow[LINE_LENGTH]  = length;
+	lineRow[LINE_SKIP]    = lineSkip;
+	lineRow[REMAIN_WIDTH] = remainWidth;
+	lineRow[BASELINE]     = markLineBegin(baseline, isParagraphMark);
+	lines.append(lineRow);
     }
 
     /**
      * Appends the specified text lines to this text lines.
      */
     protected final void append(TextLines textLines) {
-	lineBegins.append(textLines.lineBegins);
-	remainWidths.append(textLines.remainWidths);
-	if (rtStyle.variableLineHeight) {
-	    baselines.append(textLines.baselines);
-	    lineTops.append(textLines.lineTops);
-	}
+	lines.append(textLines.lines);
     }
 
     /**
@@ -424,12 +481,7 @@ public class TextLines implements java.io.Serializable {
      * @param textLines a replacement <code>TextLines</code> object.
      */
     protected final void replace(int begin, int end, TextLines textLines) {
-	lineBegins.replace(begin, end, textLines.lineBegins);
-	remainWidths.replace(begin, end, textLines.remainWidths);
-	if (rtStyle.variableLineHeight) {
-	    baselines.replace(begin, end, textLines.baselines);
-	    lineTops.replace(begin, end, textLines.lineTops);
-	}
+	lines.replace(begin, end, textLines.lines);
     }
 
     /**
@@ -443,12 +495,7 @@ public class TextLines implements java.io.Serializable {
      */
     protected final TextLines sublines(int beginIndex, int endIndex) {
 	TextLines subLines = new TextLines(richText);
-	subLines.lineBegins = lineBegins.subarray(beginIndex, endIndex);
-	subLines.remainWidths = remainWidths.subarray(beginIndex, endIndex);
-	if (rtStyle.variableLineHeight) {
-	    subLines.baselines = baselines.subarray(beginIndex, endIndex);
-	    subLines.lineTops = lineTops.subarray(beginIndex, endIndex);
-	}
+	subLines.lines = lines.subtable(beginIndex, endIndex);
 	return subLines;
     }
 
@@ -462,19 +509,19 @@ public class TextLines implements java.io.Serializable {
     protected final Dimension doLayoutForEmpty(int width, int lineWrap) {
 	invalidateLines();
 	validateLines();
-	lineBegins.append(markLineBegin(0, true));
+	int remainWidth;
 	if (lineWrap == RichTextStyle.NO_WRAP) {
 	    /*
 	    width = Math.max(1, rtStyle.paragraphStyle.leftIndent +
 					rtStyle.paragraphStyle.rightIndent);
-	    remainWidths.append(0);
+	    remainWidth = 0;
 	    */
-	    remainWidths.append(width - rtStyle.paragraphStyle.leftIndent
-					- rtStyle.paragraphStyle.rightIndent);
+	    remainWidth = width - rtStyle.paragraphStyle.leftIndent
+				- rtStyle.paragraphStyle.rightIndent;
 	}
 	else {
-	    remainWidths.append(width - rtStyle.paragraphStyle.leftIndent
-					- rtStyle.paragraphStyle.rightIndent);
+	    remainWidth = width - rtStyle.paragraphStyle.leftIndent
+				- rtStyle.paragraphStyle.rightIndent;
 	}
 	FontMetrics fm = rtStyle.textStyle.getFontMetrics();
 	int height = fm.getHeight();
@@ -482,12 +529,12 @@ public class TextLines implements java.io.Serializable {
 	    lineHeight = height;
 	    baseline   = fm.getDescent();
 	    height += rtStyle.paragraphStyle.lineSpace;
+	    appendLine(0, 0, remainWidth, 0, true);
 	}
 	else {
-	    baselines.append(fm.getDescent());
-	    lineTops.append(0);
 	    height += rtStyle.paragraphStyle.lineSpace +
 				rtStyle.paragraphStyle.paragraphSpace;
+	    appendLine(0, height, remainWidth, fm.getDescent(), true);
 	}
 	return new Dimension(width, height);
     }
@@ -498,11 +545,7 @@ public class TextLines implements java.io.Serializable {
      */
     protected final void changeRemainWidths(int diff) {
 	if (diff != 0) {
-	    int rWidths[] = (int[])remainWidths.getArray();
-	    int length = remainWidths.length();
-	    for (int i = 0; i < length; i++) {
-		rWidths[i] += diff;
-	    }
+	    lines.add(REMAIN_WIDTH, diff);
 	}
     }
 
@@ -511,14 +554,7 @@ public class TextLines implements java.io.Serializable {
      * specified layout width.
      */
     protected final int reComputeRemainWidths(int width) {
-	int rWidths[] = (int[])remainWidths.getArray();
-	int length = remainWidths.length();
-	int minRemainWidth = Integer.MAX_VALUE;
-	for (int i = 0; i < length; i++) {
-	    int remainWidth = rWidths[i];
-	    if (remainWidth < minRemainWidth)
-		minRemainWidth = remainWidth;
-	}
+	int minRemainWidth = lines.minimum(REMAIN_WIDTH);
 	if (minRemainWidth > 0) {
 	    changeRemainWidths(-minRemainWidth);
 	    width -= minRemainWidth;
@@ -536,11 +572,9 @@ public class TextLines implements java.io.Serializable {
     {
 	int textLength = richText.length();
 	ParagraphStyle lastStyle = richText.getParagraphStyleAt(textLength);
-	int last = getLineCount() - 1;
-	lineBegins.append(markLineBegin(textLength, true));
-	remainWidths.append(width - lastStyle.leftIndent
-						- lastStyle.rightIndent);
+	int remainWidth = width - lastStyle.leftIndent - lastStyle.rightIndent;
 	if (!rtStyle.variableLineHeight) {
+	    appendLine(0, 0, remainWidth, 0, true);
 	    return lineHeight + rtStyle.paragraphStyle.lineSpace;
 	}
 	else {
@@ -548,10 +582,10 @@ public class TextLines implements java.io.Serializable {
 	    FontMetrics fm = (endWithBreak && lastStyle.hasBaseStyle() ?
 				lastStyle.getBaseStyle().getFontMetrics() :
 				rtStyle.textStyle.getFontMetrics());
-	    int height = fm.getHeight();
-	    baselines.append(fm.getDescent());
-	    lineTops.append(lineTop);
-	    return height + lastStyle.lineSpace + lastStyle.paragraphSpace;
+	    int height = fm.getHeight() + lastStyle.lineSpace
+					+ lastStyle.paragraphSpace;
+	    appendLine(0, height, remainWidth, fm.getDescent(), true);
+	    return height;
 	}
     }
 
@@ -659,52 +693,12 @@ public class TextLines implements java.io.Serializable {
 	    return lineCount - 1;
 	}
 
-	int low;
-	int high;
-
-	if (posInfo == null) {
-	    low = 0;
-	    high = lineCount - 1;
-	}
-	else if (textIndex < posInfo.lineBegin) {
-	    low = 0;
-	    high = posInfo.lineIndex - 1;
-	}
-	else if (posInfo.lineEnd <= textIndex) {
-	    low = posInfo.lineIndex + 1;
-	    high = lineCount - 1;
-	}
-	else {
+	if (posInfo != null &&
+	    posInfo.lineBegin <= textIndex && textIndex < posInfo.lineEnd)
+	{
 	    return posInfo.lineIndex;
 	}
-
-	int lBegins[] = (int[])lineBegins.getArray();
-	while (low < high) {
-	    int lEnd = unmarkLineBegin(lBegins[low + 1]);
-	    if (textIndex < lEnd) {
-		return low;
-	    }
-	    else if (++low == high) {
-		break;
-	    }
-	    int hBegin = unmarkLineBegin(lBegins[high]);
-	    if (hBegin <= textIndex) {
-		return high;
-	    }
-	    else if (low == --high) {
-		break;
-	    }
-	    int mid = (low + high) / 2;
-	    int mBegin = unmarkLineBegin(lBegins[mid]);
-	    if (textIndex < mBegin) {
-		high = mid - 1;
-	    }
-	    else {
-		low = mid;
-	    }
-	}
-	assert(low == high);
-	return low;
+	return lines.search(LINE_LENGTH, textIndex);
     }
 
     /**
@@ -744,52 +738,12 @@ public class TextLines implements java.io.Serializable {
 	    return 0;
 	}
 
-	int low;
-	int high;
-
-	if (posInfo == null) {
-	    low = 0;
-	    high = lineCount - 1;
-	}
-	else if (y < posInfo.y) {
-	    if (posInfo.lineIndex == 0) {
-		return 0;
-	    }
-	    low = 0;
-	    high = posInfo.lineIndex - 1;
-	}
-	else {
-	    low = posInfo.lineIndex;
-	    high = lineCount - 1;
-	}
-
-	int lTops[] = (int[])lineTops.getArray();
-	while (low < high) {
-	    int lBottom = lTops[low + 1];
-	    if (y < lBottom) {
-		return low;
-	    }
-	    else if (++low == high) {
-		break;
-	    }
-	    int hTop = lTops[high];
-	    if (hTop <= y) {
-		return high;
-	    }
-	    else if (low == --high) {
-		break;
-	    }
-	    int mid = (low + high) / 2;
-	    int mTop = lTops[mid];
-	    if (y < mTop) {
-		high = mid - 1;
-	    }
-	    else {
-		low = mid;
-	    }
+	if (posInfo != null &&
+	    posInfo.y <= y && y < posInfo.y + posInfo.lineSkip)
+	{
+	    return posInfo.lineIndex;
 	}
-	assert(low == high);
-	return low;
+	return lines.search(LINE_SKIP, y);
     }
 
     /**
@@ -836,19 +790,19 @@ public class TextLines implements java.io.Serializable {
 	}
 	int lineCount = getLineCount();
 	for (int i = 0; i < lineCount; i++) {
-	    int lineBegin = lineBegins.getInt(i);
-	    System.out.print(i + ": lineBegin=" + unmarkLineBegin(lineBegin) +
-			     ",remainWidth=" + remainWidths.getInt(i));
+	    int lineBegin = getLineBeginAt(i);
+	    System.out.print(i + ": lineBegin=" + lineBegin +
+			     ",remainWidth=" + getRemainWidthAt(i));
 	    if (!rtStyle.variableLineHeight) {
-		if (isParagraphMark(lineBegin))
+		if (isParagraphMarkAt(i))
 		    System.out.print(",paragraphMark");
 	    }
 	    else {
-		System.out.print(",baseline=" + baselines.getInt(i) +
-				 ",lineTop=" + lineTops.getInt(i));
-		if (isParagraphMark(lineBegin)) {
+		System.out.print(",baseline=" + getBaselineAt(i) +
+				 ",lineTop=" + getLineTopAt(i));
+		if (isParagraphMarkAt(i)) {
 		    ParagraphStyle pStyle = richText.getParagraphStyleAt(
-						unmarkLineBegin(lineBegin));
+						lineBegin);
 		    System.out.print(",paragraphMark=" + pStyle.alignment);
 		}
 	    }
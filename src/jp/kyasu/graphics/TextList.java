@@ -250,10 +250,9 @@ public class TextList extends TextLayout {
 	p.y += height;
 
 	if (!rtStyle.variableLineHeight) {
-	    int lBegins[] = (int[])lineBegins.getArray();
-	    int lineBegin = unmarkLineBegin(lBegins[begin.lineIndex + 1]);
+	    int lineBegin = getLineBeginAt(begin.lineIndex + 1);
 	    for (int i = begin.lineIndex + 1; i < endLineIndex; i++) {
-		int lineEnd = unmarkLineBegin(lBegins[i + 1]);
+		int lineEnd = getLineBeginAt(i + 1);
 		if (isIndexSelected(i, selected)) {
 		    g.setColor(selBgColor);
 		    g.fillRect(p.x, p.y, width,
@@ -271,7 +270,7 @@ public class TextList extends TextLayout {
 		}
 		scanner.drawLineTo(g, p,
 				   lineBegin, lineEnd,
-				   remainWidths.getInt(i),
+				   getRemainWidthAt(i),
 				   lineHeight, baseline,
 				   rtStyle.paragraphStyle);
 		p.y += (lineHeight + rtStyle.paragraphStyle.lineSpace);
@@ -301,18 +300,16 @@ public class TextList extends TextLayout {
 			       rtStyle.paragraphStyle);
 	}
 	else {
-	    int lBegins[] = (int[])lineBegins.getArray();
-	    int lTops[] = (int[])lineTops.getArray();
 	    ParagraphStyle pStyle = null;
-	    int lineBegin = unmarkLineBegin(lBegins[begin.lineIndex + 1]);
-	    int lineTop = lTops[begin.lineIndex + 1];
+	    int lineBegin = getLineBeginAt(begin.lineIndex + 1);
+	    int lineTop = getLineTopAt(begin.lineIndex + 1);
 	    for (int i = begin.lineIndex + 1; i < endLineIndex; i++) {
-		int lineEnd = unmarkLineBegin(lBegins[i + 1]);
-		int nextTop = lTops[i + 1];
+		int lineEnd = getLineBeginAt(i + 1);
+		int nextTop = getLineTopAt(i + 1);
 		if (pStyle == null)
 		    pStyle = richText.getParagraphStyleAt(lineBegin);
 		int lh = height = nextTop - lineTop;
-		boolean isParaMark = isParagraphMark(lBegins[i]);
+		boolean isParaMark = isParagraphMarkAt(i);
 		if (isParaMark)
 		    lh -= pStyle.paragraphSpace;
 		if (isIndexSelected(i, selected)) {
@@ -328,7 +325,7 @@ public class TextList extends TextLayout {
 		else {
 		    g.setColor(fgColor);
 		}
-		if (pStyle.hasHeading() && isParagraphMark(lBegins[i - 1])) {
+		if (pStyle.hasHeading() && isParagraphMarkAt(i - 1)) {
 		    Dimension d = pStyle.heading.getSize();
 		    pStyle.heading.paint(g,
 				new Point(
@@ -339,9 +336,9 @@ public class TextList extends TextLayout {
 		}
 		scanner.drawLineTo(g, p,
 				   lineBegin, lineEnd,
-				   remainWidths.getInt(i),
+				   getRemainWidthAt(i),
 				   lh - pStyle.lineSpace,
-				   baselines.getInt(i),
+				   getBaselineAt(i),
 				   pStyle);
 		p.y += height;
 		lineBegin = lineEnd;
@@ -371,7 +368,7 @@ public class TextList extends TextLayout {
 		g.setColor(fgColor);
 	    }
 	    if (pStyle.hasHeading() &&
-		isParagraphMark(lBegins[end.textIndex - 1]))
+		isParagraphMarkAt(end.lineIndex - 1))
 	    {
 		Dimension d = pStyle.heading.getSize();
 		int eh = end.lineHeight + end.paragraphStyle.lineSpace;
@@ -396,8 +393,8 @@ public class TextList extends TextLayout {
 	return scanner;
     }
 
-    /** Returns the scanner for this layout. */
-    protected TextScanner getScanner() {
+    /** Returns the scanner for the specified rich text. */
+    protected TextScanner getScanner(RichText richText) {
 	return new TextListScanner(richText, lineWrap, locale, colWidths);
     }
 
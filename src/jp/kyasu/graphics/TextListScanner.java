@@ -159,6 +159,18 @@ public class TextListScanner extends TextScanner {
 				  lineTop, pStyle, stops, lineInfo);
     }
 
+    /**
+     * Measures the paragraph that begins at the specified index of the
+     * text. The list text is always scanned, so that this method returns
+     * <code>null</code>.
+     *
+     * @param  beginIndex the beginning index of the paragraph.
+     * @return <code>null</code>.
+     */
+    public ParagraphMeasure measureParagraph(int beginIndex) {
+	return null;
+    }
+
     /**
      * Draws a line from the beginning index to the ending index of text.
      *
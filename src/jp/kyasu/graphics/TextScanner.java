@@ -23,6 +23,8 @@
 package jp.kyasu.graphics;
 
 import jp.kyasu.graphics.text.TextLineInfo;
+import jp.kyasu.util.CharStorage;
+import jp.kyasu.util.RunArrayCursor;
 import jp.kyasu.util.VArray;
 
 import java.awt.Color;
@@ -32,6 +34,7 @@ import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Point;
 import java.text.BreakIterator;
+import java.util.Hashtable;
 import java.util.Locale;
 
 /**
@@ -107,12 +110,25 @@ public class TextScanner {
     /** The scanned text attachents. */
     protected VArray attachments;
 
+    /** The cursor that traverses the text styles of the text. */
+    protected RunArrayCursor styleCursor;
+
+    /**
+     * The chunk information of the characters being scanned.
+     *
+     * @see jp.kyasu.util.CharStorage#getChunk(int, int, int, int[])
+     */
+    protected int chunk[] = new int[3];
+
     /** The current font metrics. */
     protected FontMetrics metrics = null;
 
     /** The widths of the first 256 characters from the current font metrics. */
     protected int widths[] = null;
 
+    /** The widths of the characters from the current font metrics. */
+    protected CharWidths charWidths = null;
+
     /** The current width of a tab. */
     protected int tabWidth = 0;
 
@@ -130,6 +146,48 @@ public class TextScanner {
     /** The current width of <code>notInFontChar</code>. */
     protected int notInFontCharWidth = 0;
 
+    /**
+     * The measurement of the paragraph being laid out, or
+     * <code>null</code> if the paragraph is scanned.
+     *
+     * @see #setParagraphMeasure(jp.kyasu.graphics.ParagraphMeasure, int)
+     */
+    protected ParagraphMeasure measure = null;
+
+    /** The beginning index of the paragraph of the measurement. */
+    protected int measureBegin = 0;
+
+    /** The starting x position of the line being laid out. */
+    protected int lineStartX = 0;
+
+    /** The stop conditions for scanning the line being laid out. */
+    protected int lineStops[] = null;
+
+    /**
+     * The widths of the single font in which the whole text is laid out,
+     * or <code>null</code> if the text may have more than one font.
+     *
+     * @see #setSingleFont(java.awt.FontMetrics)
+     */
+    protected CharWidths singleFontWidths = null;
+
+    /**
+     * The word break iterator for the locale, that is cloned once for
+     * this scanner.
+     *
+     * @see #getWordInstance()
+     */
+    protected BreakIterator wordBreaker = null;
+
+    /** The chunk of the characters looked up for the word breaking. */
+    protected char breakChars[] = null;
+
+    /**
+     * The chunk information of the characters looked up for the word
+     * breaking.
+     */
+    protected int breakChunk[] = new int[3];
+
 
     /**
      * The stop condition constant that shows the scanning runs to the end.
@@ -235,6 +293,14 @@ public class TextScanner {
      */
     static private final int SYSTEM_STOPS[]    = new int[256]; // not supported
 
+
+    /**
+     * The prototypes of the word break iterators for the locales.
+     *
+     * @see #getWordInstance()
+     */
+    static private final Hashtable wordBreakers = new Hashtable();
+
     static {
 	int i;
 
@@ -304,6 +370,7 @@ public class TextScanner {
 	this.richTextStyle = richTextStyle;
 	this.locale        = locale;
 	this.attachments   = new VArray(TextAttachment.class);
+	this.styleCursor   = text.textStyleCursor();
     }
 
 
@@ -440,13 +507,26 @@ public class TextScanner {
 	    return -1;
 	}
 
-	char chars[] = text.getCharArray();
+	if (singleFontWidths != null && lineWrap == RichTextStyle.NO_WRAP) {
+	    return doLayoutSingleFontLine(beginIndex, startX, leftMgn,
+					  rightMgn, tabW, lineTop, pStyle,
+					  stops, lineInfo);
+	}
+
+	if (measure != null) {
+	    int i = beginIndex - measureBegin;
+	    if (measure.stops == stops && i >= 0 && i < measure.length) {
+		return doLayoutLine(measure, beginIndex, startX, leftMgn,
+				    rightMgn, tabW, lineTop, pStyle, lineInfo);
+	    }
+	}
 
 	lineBegin = lastIndex = beginIndex;
-	destX = startX;
+	destX = lineStartX = startX;
 	leftMargin = leftMgn;
 	rightMargin = rightMgn;
 	tabWidth = tabW;
+	lineStops = stops;
 	lineHeight = baseline = 0;
 	boolean isParagraphMark;
 
@@ -457,14 +537,20 @@ public class TextScanner {
 
       outer:
 	for (;;) {
-	    runEnd = lastIndex + text.getRunLengthAt(lastIndex);
-	    setFontMetrics(text.getTextStyleAt(lastIndex).getFontMetrics());
+	    styleCursor.seek(lastIndex);
+	    runEnd = styleCursor.runEnd;
+	    // scans the run in chunks of the text
+	    char chars[] = text.getCharChunk(lastIndex, lastIndex, runEnd, chunk);
+	    runEnd = chunk[CharStorage.CHUNK_END];
+	    int off = chunk[CharStorage.CHUNK_OFFSET];
+	    setFontMetrics(((TextStyle)styleCursor.value).getFontMetrics());
 	    lineHeight = Math.max(lineHeight, metrics.getHeight());
 	    baseline = Math.max(baseline, metrics.getDescent());
 	  inner:
 	    for (;;) {
-		lastCondition = scanChars(lastIndex, runEnd, chars, rightMargin,
-					  stops);
+		lastCondition = scanChars(lastIndex + off, runEnd + off, chars,
+					  rightMargin, stops);
+		lastIndex -= off;
 		int answer = doLayoutLineStop(lastCondition);
 		if (answer < 0) { // END_OF_RUN
 		    if (lastIndex >= length) {
@@ -530,6 +616,466 @@ public class TextScanner {
     }
 
 
+    /**
+     * Breaks text into a line that is not wrapped, in the single font.
+     * The text style runs are not traversed and the font metrics are not
+     * changed, so that the line is laid out only by looking up the widths
+     * of the characters until the end of the line.
+     *
+     * @param  beginIndex the beginning index of text to scan.
+     * @param  startX     the starting x position to scan.
+     * @param  leftMgn    the left margin of a line.
+     * @param  rightMgn   the right margin (edge) of a line.
+     * @param  tabW       the tab width used to scan.
+     * @param  lineTop    the top position of a line.
+     * @param  pStyle     the paragraph style of a line.
+     * @param  stops      the stop conditions for scanning.
+     * @param  lineInfo   the line information into which the scanning
+     *                    results are stored.
+     * @return the next line top position.
+     * @see    #setSingleFont(java.awt.FontMetrics)
+     */
+    protected int doLayoutSingleFontLine(int beginIndex,
+					 int startX,
+					 int leftMgn,
+					 int rightMgn,
+					 int tabW,
+					 int lineTop,
+					 ParagraphStyle pStyle,
+					 int stops[],
+					 TextLineInfo lineInfo)
+    {
+	int length = text.length();
+	lineBegin = beginIndex;
+	leftMargin = leftMgn;
+	rightMargin = rightMgn;
+	tabWidth = tabW;
+	setFontMetrics(singleFontWidths.getFontMetrics());
+	lineHeight = metrics.getHeight();
+	baseline = metrics.getDescent();
+	lastCondition = END_OF_RUN;
+	attachments.setLength(0);
+
+	int widths[] = this.widths;
+	CharWidths charWidths = singleFontWidths;
+	boolean isParagraphMark = true;
+	int x = startX;
+	int index = beginIndex;
+
+      outer:
+	while (index < length) {
+	    char chars[] = text.getCharChunk(index, index, length, chunk);
+	    int cEnd = chunk[CharStorage.CHUNK_END];
+	    int off = chunk[CharStorage.CHUNK_OFFSET];
+	    for (; index < cEnd; index++) {
+		char ch = chars[index + off];
+		if (ch >= 256) {
+		    if (ch != Text.ATTACHMENT_CHAR)
+			x += charWidths.charWidth(ch);
+		    continue;
+		}
+		switch (stops[ch]) {
+		case TAB:
+		    x = nextTab(x);
+		    break;
+		case CHAR_NOT_IN_FONT:
+		    x += notInFontCharWidth;
+		    break;
+		case LINE_SEPARATOR:
+		case LINE_BREAK:
+		    lastCondition = stops[ch];
+		    isParagraphMark = (lastCondition == LINE_SEPARATOR);
+		    ++index;
+		    break outer;
+		default:
+		    x += widths[ch];
+		    break;
+		}
+	    }
+	}
+	lineEnd = lastIndex = index;
+	destX = x;
+
+	lineInfo.lineBegin       = lineBegin;
+	lineInfo.lineEnd         = lineEnd;
+	lineInfo.remainWidth     = rightMargin - destX;
+	lineInfo.lineHeight      = lineHeight;
+	lineInfo.baseline        = baseline;
+	lineInfo.y               = lineTop;
+	lineInfo.paragraphStyle  = pStyle;
+	lineInfo.isParagraphMark = isParagraphMark;
+	lineInfo.lineSkip        = lineHeight + pStyle.getLineSpace();
+	if (isParagraphMark) lineInfo.lineSkip += pStyle.getParagraphSpace();
+
+	return lineTop + lineInfo.lineSkip;
+    }
+
+    /**
+     * Breaks text into a line with the measurement of the paragraph,
+     * without measuring the characters with the font metrics. The line
+     * is broken in the same way as the line scanned from the text.
+     *
+     * @param  m          the measurement of the paragraph.
+     * @param  beginIndex the beginning index of text to lay out.
+     * @param  startX     the starting x position to lay out.
+     * @param  leftMgn    the left margin of a line.
+     * @param  rightMgn   the right margin (edge) of a line.
+     * @param  tabW       the tab width used to lay out.
+     * @param  lineTop    the top position of a line.
+     * @param  pStyle     the paragraph style of a line.
+     * @param  lineInfo   the line information into which the results
+     *                    are stored.
+     * @return the next line top position.
+     */
+    protected int doLayoutLine(ParagraphMeasure m,
+			       int beginIndex,
+			       int startX,
+			       int leftMgn,
+			       int rightMgn,
+			       int tabW,
+			       int lineTop,
+			       ParagraphStyle pStyle,
+			       TextLineInfo lineInfo)
+    {
+	lineBegin = lastIndex = beginIndex;
+	destX = startX;
+	leftMargin = leftMgn;
+	rightMargin = rightMgn;
+	tabWidth = (tabW > 0 ? tabW : richTextStyle.getTabWidth());
+
+	if (lineWrap == RichTextStyle.NO_WRAP)
+	    rightMargin = Integer.MAX_VALUE;
+
+	short advances[] = m.advances;
+	int base = measureBegin;
+	int begin = beginIndex - base;
+	int end = m.length;
+	int i = begin;
+	int metricsEnd; // the last index of the line metrics, inclusive
+	boolean isParagraphMark = false;
+	for (;;) {
+	    if (i >= end) { // the end of the text
+		lastCondition = END_OF_RUN;
+		lineEnd = base + end;
+		isParagraphMark = true;
+		metricsEnd = end - 1;
+		break;
+	    }
+	    int advance = advances[i];
+	    if (advance == ParagraphMeasure.LINE_SEPARATOR ||
+		advance == ParagraphMeasure.LINE_BREAK)
+	    {
+		lastCondition = (advance == ParagraphMeasure.LINE_SEPARATOR ?
+					LINE_SEPARATOR : LINE_BREAK);
+		lineEnd = base + i + 1;
+		isParagraphMark = (lastCondition == LINE_SEPARATOR);
+		metricsEnd = i;
+		break;
+	    }
+	    int newDestX = (advance == ParagraphMeasure.TAB ?
+				nextTab(destX) : destX + advance);
+	    if (newDestX > rightMargin) {
+		lastCondition = CROSSED_X;
+		metricsEnd = i;
+		if (i == begin) { // veeery narrow
+		    destX = newDestX;
+		    lineEnd = base + i + 1;
+		    isParagraphMark = (lineEnd >= text.length());
+		    break;
+		}
+		lineEnd = base + i;
+		if (lineWrap == RichTextStyle.WORD_WRAP) {
+		    int b = findWordBreak(base + begin, base + i);
+		    if (b > 0) {
+			b -= base;
+			destX = startX;
+			for (int j = begin; j < b; j++) {
+			    destX = (advances[j] == ParagraphMeasure.TAB ?
+					nextTab(destX) : destX + advances[j]);
+			}
+			if (m.runStartOf(i) > b)
+			    metricsEnd = b - 1;
+			lineEnd = base + b;
+		    }
+		}
+		break;
+	    }
+	    destX = newDestX;
+	    ++i;
+	}
+	lastIndex = lineEnd;
+
+	lineHeight = baseline = 0;
+	int r = m.runIndexOf(begin);
+	int rEnd = m.runIndexOf(metricsEnd < begin ? begin : metricsEnd);
+	for (; r <= rEnd; r++) {
+	    if (m.runHeights[r] > lineHeight) lineHeight = m.runHeights[r];
+	    if (m.runDescents[r] > baseline) baseline = m.runDescents[r];
+	}
+
+	if (lineWrap == RichTextStyle.NO_WRAP)
+	    rightMargin = rightMgn;
+
+	lineInfo.lineBegin       = lineBegin;
+	lineInfo.lineEnd         = lineEnd;
+	lineInfo.remainWidth     = rightMargin - destX;
+	lineInfo.lineHeight      = lineHeight;
+	lineInfo.baseline        = baseline;
+	lineInfo.y               = lineTop;
+	lineInfo.paragraphStyle  = pStyle;
+	lineInfo.isParagraphMark = isParagraphMark;
+	lineInfo.lineSkip        = lineHeight + pStyle.getLineSpace();
+	if (isParagraphMark) lineInfo.lineSkip += pStyle.getParagraphSpace();
+
+	return lineTop + lineInfo.lineSkip;
+    }
+
+    /**
+     * Measures the paragraph that begins at the specified index of the
+     * text. The paragraph ends with the character that is scanned as
+     * <code>LINE_SEPARATOR</code>, or at the end of the text.
+     *
+     * @param  beginIndex the beginning index of the paragraph.
+     * @return the measurement of the paragraph, or <code>null</code> if
+     *         the paragraph can not be laid out with the measurement,
+     *         e.g., the paragraph contains text attachments.
+     * @see    #setParagraphMeasure(jp.kyasu.graphics.ParagraphMeasure, int)
+     */
+    public ParagraphMeasure measureParagraph(int beginIndex) {
+	int length = text.length();
+	if (beginIndex < 0 || beginIndex >= length)
+	    return null;
+	if (singleFontWidths != null && lineWrap == RichTextStyle.NO_WRAP)
+	    return null; // laid out in the single font without measurement
+	int stops[] = getStops();
+	ParagraphMeasure m = new ParagraphMeasure(stops);
+	int index = beginIndex;
+
+      outer:
+	while (index < length) {
+	    styleCursor.seek(index);
+	    int rEnd = Math.min(styleCursor.runEnd, length);
+	    setFontMetrics(((TextStyle)styleCursor.value).getFontMetrics());
+	    while (index < rEnd) {
+		char chars[] = text.getCharChunk(index, index, rEnd, chunk);
+		int cEnd = chunk[CharStorage.CHUNK_END];
+		int off = chunk[CharStorage.CHUNK_OFFSET];
+		for (; index < cEnd; index++) {
+		    char ch = chars[index + off];
+		    int advance;
+		    if (ch < 256) {
+			switch (stops[ch]) {
+			case 0:
+			    advance = widths[ch];
+			    break;
+			case TAB:
+			    advance = ParagraphMeasure.TAB;
+			    break;
+			case LINE_SEPARATOR:
+			    m.appendAdvance(ParagraphMeasure.LINE_SEPARATOR);
+			    m.appendRun(metrics.getHeight(),
+					metrics.getDescent());
+			    break outer;
+			case LINE_BREAK:
+			    advance = ParagraphMeasure.LINE_BREAK;
+			    break;
+			case CHAR_NOT_IN_FONT:
+			    advance = notInFontCharWidth;
+			    break;
+			default:
+			    return null;
+			}
+		    }
+		    else if (ch == Text.ATTACHMENT_CHAR) {
+			return null;
+		    }
+		    else {
+			advance = charWidth(ch);
+		    }
+		    if (advance > Short.MAX_VALUE) {
+			return null;
+		    }
+		    m.appendAdvance(advance);
+		}
+	    }
+	    m.appendRun(metrics.getHeight(), metrics.getDescent());
+	}
+	m.trim();
+	return m;
+    }
+
+    /**
+     * Sets the measurement of the paragraph that begins at the specified
+     * index of the text. The lines in the paragraph are laid out with
+     * the measurement instead of scanning the text, until the other
+     * measurement is set.
+     *
+     * @param m          the measurement of the paragraph, or
+     *                   <code>null</code> if the text is scanned.
+     * @param beginIndex the beginning index of the paragraph.
+     * @see   #measureParagraph(int)
+     */
+    public void setParagraphMeasure(ParagraphMeasure m, int beginIndex) {
+	measure = m;
+	measureBegin = beginIndex;
+    }
+
+    /**
+     * Sets the single font in which the whole text is laid out. If the
+     * single font is set, the lines that are not wrapped are laid out and
+     * the positions in the lines are computed without traversing the text
+     * style runs, e.g., for the source code in a fixed pitch font. The
+     * text should not have any text attachment, and all text styles of
+     * the text should have the font metrics of the single font.
+     *
+     * @param metrics the font metrics of the single font, or
+     *                <code>null</code> if the text may have more than
+     *                one font.
+     * @see   #isSingleFont()
+     */
+    public void setSingleFont(FontMetrics metrics) {
+	if (metrics == null) {
+	    singleFontWidths = null;
+	}
+	else {
+	    setFontMetrics(metrics);
+	    singleFontWidths = charWidths;
+	}
+    }
+
+    /**
+     * Checks if the whole text is laid out in the single font.
+     *
+     * @see #setSingleFont(java.awt.FontMetrics)
+     */
+    public boolean isSingleFont() {
+	return singleFontWidths != null;
+    }
+
+    /**
+     * Finds the index at which the line is broken at the word boundary,
+     * when the scanning runs across the right edge at the specified
+     * ending index. The line is broken before the last word of the line,
+     * as the words are separated by the word <code>BreakIterator</code>
+     * for the locale, unless the last word begins at the beginning of the
+     * line or is a space.
+     * <p>
+     * The white spaces are looked up backwards over the characters, and
+     * only the last word after the white spaces is given to the iterator
+     * that is reused for the lines, because a word boundary always
+     * follows the white spaces.
+     *
+     * @param  begin the beginning index of the line, inclusive.
+     * @param  end   the index at which the scanning runs across the right
+     *               edge.
+     * @return the index at which the line is broken, or <code>-1</code>
+     *         if the line should be broken at the <code>end</code>.
+     */
+    protected int findWordBreak(int begin, int end) {
+	breakChars = null;
+	int wordBegin = end;
+	while (wordBegin > begin && !isBreakSpace(breakCharAt(wordBegin - 1)))
+	    --wordBegin;
+	int start = -1;
+	if (wordBegin == end) { // the line ends with the white spaces
+	    start = end - 1;
+	    while (start > begin && isBreakSpace(breakCharAt(start - 1)))
+		--start;
+	    if (start > begin && isBreakJoiner(breakCharAt(start - 1))) {
+		start = -1;
+		wordBegin = begin;
+	    }
+	}
+	else if (wordBegin > begin && isBreakJoiner(breakCharAt(wordBegin))) {
+	    wordBegin = begin;
+	}
+	if (start < 0) {
+	    // the characters that may be joined to the white spaces are
+	    // given to the iterator with the whole line.
+	    BreakIterator boundary = getWordInstance();
+	    boundary.setText(
+		text.getCharacterIterator(wordBegin, end, wordBegin));
+	    boundary.last();
+	    start = boundary.previous();
+	}
+	if (start <= begin || Character.isSpaceChar(breakCharAt(start)))
+	    return -1;
+	return start;
+    }
+
+    /**
+     * Returns the character at the specified index for the word breaking,
+     * from the chunk of the characters, or the null character if the
+     * index is out of range.
+     */
+    protected final char breakCharAt(int index) {
+	int cb = breakChunk[CharStorage.CHUNK_BEGIN];
+	if (breakChars == null ||
+	    index < cb || index >= breakChunk[CharStorage.CHUNK_END])
+	{
+	    if (index < 0 || index >= text.length())
+		return '\u0000';
+	    breakChars = text.getCharChunk(index, 0, text.length(), breakChunk);
+	}
+	return breakChars[index + breakChunk[CharStorage.CHUNK_OFFSET]];
+    }
+
+    /**
+     * Returns the word break iterator for the locale. The iterator is
+     * cloned from the prototype for the locale.
+     */
+    protected BreakIterator getWordInstance() {
+	if (wordBreaker == null) {
+	    BreakIterator proto = (BreakIterator)wordBreakers.get(locale);
+	    if (proto == null) {
+		proto = BreakIterator.getWordInstance(locale);
+		wordBreakers.put(locale, proto);
+	    }
+	    synchronized (proto) {
+		wordBreaker = (BreakIterator)proto.clone();
+	    }
+	}
+	return wordBreaker;
+    }
+
+    /**
+     * Tests if the specified character is a white space that is separated
+     * from the words by the word breaking, i.e., a space separator or a
+     * tab.
+     */
+    static protected final boolean isBreakSpace(char c) {
+	if (c < 128)
+	    return (c == ' ' || c == '\t');
+	return (Character.getType(c) == Character.SPACE_SEPARATOR);
+    }
+
+    /**
+     * Tests if the specified character may be joined to the white spaces
+     * before it by the word breaking, i.e., a line separator or a
+     * character that is ignored by the word breaking.
+     */
+    static protected final boolean isBreakJoiner(char c) {
+	switch (c) {
+	case '\r':
+	case '\n':
+	case '\f':
+	case '\u2028':
+	case '\u2029':
+	    return true;
+	}
+	if (c < 128)
+	    return false;
+	switch (Character.getType(c)) {
+	case Character.NON_SPACING_MARK:
+	case Character.ENCLOSING_MARK:
+	case Character.COMBINING_SPACING_MARK:
+	case Character.FORMAT:
+	    return true;
+	}
+	return false;
+    }
+
+
     /**
      * Draws a line.
      *
@@ -713,7 +1259,7 @@ public class TextScanner {
 	int offX = offset.x;
 	int offY = offset.y;
 	int drawY = lineHeight - baseline;
-	char chars[] = text.getCharArray();
+	int length = text.length();
 
 	lineBegin = lastIndex = beginIndex;
 	lineEnd = endIndex;
@@ -721,23 +1267,50 @@ public class TextScanner {
 	leftMargin = leftMgn;
 	rightMargin = Integer.MAX_VALUE;
 	tabWidth = tabW;
+	TextColorMap colorMap = text.getColorMap();
+	Color textColor = null;
 
       outer:
 	for (;;) {
-	    int rStart = lastIndex - text.getRunOffsetAt(lastIndex);
-	    int rEnd   = lastIndex + text.getRunLengthAt(lastIndex);
+	    styleCursor.seek(lastIndex);
+	    int rStart = styleCursor.runStart;
+	    int rEnd   = styleCursor.runEnd;
 	    runEnd = (rEnd > endIndex ? endIndex : rEnd);
-	    TextStyle tStyle = text.getTextStyleAt(lastIndex);
+	    if (lastIndex >= runEnd) {
+		lastCondition = END_OF_RUN;
+		break outer;
+	    }
+	    Color color = null;
+	    if (colorMap != null) {
+		// draws the characters of the same color at once
+		runEnd = colorMap.getColorRunEnd(lastIndex, runEnd);
+		color = colorMap.getColorAt(lastIndex);
+	    }
+	    // scans the run in chunks of the text
+	    char chars[] = text.getCharChunk(lastIndex, lastIndex,
+					     Math.min(runEnd, length), chunk);
+	    runEnd = chunk[CharStorage.CHUNK_END];
+	    int off = chunk[CharStorage.CHUNK_OFFSET];
+	    TextStyle tStyle = (TextStyle)styleCursor.value;
 	    setFontMetrics(tStyle.getFontMetrics());
+	    if (color != null) {
+		if (textColor == null) textColor = g.getColor();
+		g.setColor(color);
+	    }
+	    else if (textColor != null) {
+		g.setColor(textColor);
+	    }
 	  inner:
 	    for (;;) {
 		int drawIndex = lastIndex;
 		int drawX = destX;
-		lastCondition = scanChars(lastIndex, runEnd, chars, rightMargin,
-					  stops);
+		lastCondition = scanChars(lastIndex + off, runEnd + off, chars,
+					  rightMargin, stops);
+		lastIndex -= off;
 		//if (destX > drawX) {
 		if (lastIndex > drawIndex) {
-		    tStyle.drawText(g, chars, drawIndex, lastIndex - drawIndex,
+		    tStyle.drawText(g, chars, drawIndex + off,
+				       lastIndex - drawIndex,
 				       drawIndex == rStart, lastIndex == rEnd,
 				       drawX + offX, offY,
 				       destX - drawX, lineHeight, drawY);
@@ -760,6 +1333,7 @@ public class TextScanner {
 		}
 	    }
 	}
+	if (textColor != null) g.setColor(textColor);
     }
 
 
@@ -876,7 +1450,13 @@ public class TextScanner {
 	    return new int[]{ beginIndex, startX };
 	}
 
-	char chars[] = text.getCharArray();
+	int length = text.length();
+
+	if (singleFontWidths != null) {
+	    return singleFontLinePositionAt(point.x, startX, beginIndex,
+					    Math.min(endIndex, length),
+					    leftMgn, tabW, stops);
+	}
 
 	lineBegin = lastIndex = beginIndex;
 	lineEnd = endIndex;
@@ -887,13 +1467,24 @@ public class TextScanner {
 
       outer:
 	for (;;) {
-	    runEnd = lastIndex + text.getRunLengthAt(lastIndex);
+	    styleCursor.seek(lastIndex);
+	    runEnd = styleCursor.runEnd;
 	    if (runEnd > endIndex) runEnd = endIndex;
-	    setFontMetrics(text.getTextStyleAt(lastIndex).getFontMetrics());
+	    if (lastIndex >= runEnd) {
+		lastCondition = END_OF_RUN;
+		break outer;
+	    }
+	    // scans the run in chunks of the text
+	    char chars[] = text.getCharChunk(lastIndex, lastIndex,
+					     Math.min(runEnd, length), chunk);
+	    runEnd = chunk[CharStorage.CHUNK_END];
+	    int off = chunk[CharStorage.CHUNK_OFFSET];
+	    setFontMetrics(((TextStyle)styleCursor.value).getFontMetrics());
 	  inner:
 	    for (;;) {
-		lastCondition = scanChars(lastIndex, runEnd, chars, rightMargin,
-					  stops);
+		lastCondition = scanChars(lastIndex + off, runEnd + off, chars,
+					  rightMargin, stops);
+		lastIndex -= off;
 		int answer = doTextPositionStop(lastCondition);
 		if (answer < 0) { // END_OF_RUN
 		    if (lastIndex >= endIndex) {
@@ -914,6 +1505,83 @@ public class TextScanner {
 	return new int[]{ lastIndex, destX };
     }
 
+    /**
+     * Computes the positin of the character in the line that is laid out
+     * in the single font, without traversing the text style runs.
+     *
+     * @param  rightX     the x position of the character in the text.
+     * @param  startX     the starting x position to scan.
+     * @param  beginIndex the beginning index of a line where the character
+     *                    is in.
+     * @param  endIndex   the ending index of a line where the character is in.
+     * @param  leftMgn    the left margin of a line.
+     * @param  tabW       the tab width used to scan.
+     * @param  stops      the stop conditions for scanning.
+     * @return the computed index and x position of the character.
+     * @see    #setSingleFont(java.awt.FontMetrics)
+     */
+    protected int[] singleFontLinePositionAt(int rightX, int startX,
+					     int beginIndex, int endIndex,
+					     int leftMgn, int tabW,
+					     int stops[])
+    {
+	lineBegin = beginIndex;
+	lineEnd = endIndex;
+	leftMargin = leftMgn;
+	rightMargin = rightX;
+	tabWidth = tabW;
+	setFontMetrics(singleFontWidths.getFontMetrics());
+	lastCondition = END_OF_RUN;
+
+	int x = startX;
+	int index = beginIndex;
+
+      outer:
+	while (index < endIndex) {
+	    char chars[] = text.getCharChunk(index, index, endIndex, chunk);
+	    int cEnd = chunk[CharStorage.CHUNK_END];
+	    int off = chunk[CharStorage.CHUNK_OFFSET];
+	    for (; index < cEnd; index++) {
+		char ch = chars[index + off];
+		int newX;
+		if (ch >= 256) {
+		    newX = (ch == Text.ATTACHMENT_CHAR ?
+				x : x + singleFontWidths.charWidth(ch));
+		}
+		else {
+		    switch (stops[ch]) {
+		    case TAB:
+			newX = nextTab(x);
+			break;
+		    case CHAR_NOT_IN_FONT:
+			newX = x + notInFontCharWidth;
+			break;
+		    case LINE_SEPARATOR:
+		    case LINE_BREAK:
+			lastCondition = stops[ch];
+			break outer;
+		    default:
+			newX = x + widths[ch];
+			break;
+		    }
+		}
+		if (newX > rightX) {
+		    lastCondition = CROSSED_X;
+		    int cw = (ch == '\t' ? newX - x : charWidth(ch));
+		    if (cw > 0 && (rightX - x) * 2 > cw) {
+			++index;
+			x += cw;
+		    }
+		    break outer;
+		}
+		x = newX;
+	    }
+	}
+	lastIndex = index;
+	destX = x;
+	return new int[]{ lastIndex, destX };
+    }
+
     /**
      * Sets the character displayed instead of a character that is not
      * defined in the current font.
@@ -944,11 +1612,8 @@ public class TextScanner {
     {
 	if (ch < 256)
 	    return widths[ch];
-	else {
-	    //charWidth() returns incorrect value with large font on Windows
-	    //return metrics.charWidth(ch);
-	    return metrics.charsWidth(new char[]{ ch }, 0, 1);
-	}
+	else
+	    return charWidths.charWidth(ch);
     }
 
     /**
@@ -998,6 +1663,53 @@ public class TextScanner {
     }
 
 
+    /**
+     * Returns the x position after the characters of the line being laid
+     * out from the specified beginning index to the specified ending
+     * index, summing the advances in the same way as the line is scanned
+     * and as the line is laid out with the measurement of the paragraph.
+     *
+     * @param  begin the beginning index of the line.
+     * @param  end   the ending index, exclusive.
+     * @return the x position after the characters.
+     */
+    protected int advanceLine(int begin, int end) {
+	int stops[] = lineStops;
+	int x = lineStartX;
+	int rEnd = begin;
+	for (int i = begin; i < end; i++) {
+	    if (i >= rEnd) {
+		styleCursor.seek(i);
+		rEnd = styleCursor.runEnd;
+		setFontMetrics(
+			((TextStyle)styleCursor.value).getFontMetrics());
+	    }
+	    char c = text.getChar(i);
+	    if (c == Text.ATTACHMENT_CHAR) {
+		TextAttachment ta = text.getAttachmentAt(i);
+		if (ta != null)
+		    x += ta.getSize().width;
+	    }
+	    else if (c >= 256) {
+		x += charWidths.charWidth(c);
+	    }
+	    else {
+		switch (stops[c]) {
+		case TAB:
+		    x = nextTab(x);
+		    break;
+		case CHAR_NOT_IN_FONT:
+		    x += notInFontCharWidth;
+		    break;
+		default:
+		    x += widths[c];
+		    break;
+		}
+	    }
+	}
+	return x;
+    }
+
     /**
      * Handles the stop condition for breaking text into a line.
      *
@@ -1038,52 +1750,30 @@ public class TextScanner {
 
 	    if (lineWrap == RichTextStyle.WORD_WRAP) // check word wrap
 	    {
-	    BreakIterator boundary = BreakIterator.getWordInstance(locale);
-	    boundary.setText(
-		text.getCharacterIterator(lineBegin, lineEnd, lineBegin));
-	    char chars[] = text.getCharArray();
-	    int end = boundary.last();
-	    int start = boundary.previous();
-	    if (start > lineBegin && start != BreakIterator.DONE) {
-		if (Character.isSpaceChar(chars[start])) {
-		    if (start < lineEnd) {
-			start = BreakIterator.DONE;
-		    }
-		    else {
-			start = boundary.previous();
-		    }
-		}
-	    }
-	    if (start > lineBegin && start != BreakIterator.DONE) {
-		int i = lastIndex - 1;
-		int offset = text.getRunOffsetAt(i);
-		boolean metricsChanged = false;
-		for (; i >= start; --i) {
-		    if (offset-- < 0) {
-			offset = text.getRunOffsetAt(i);
-			setFontMetrics(text.getTextStyleAt(i).getFontMetrics());
-			metricsChanged = true;
-		    }
-		    char c = chars[i];
-		    if (c == Text.ATTACHMENT_CHAR) {
+	    int start = findWordBreak(lineBegin, lineEnd);
+	    if (start > lineBegin) {
+		for (int i = lastIndex - 1; i >= start; --i) {
+		    if (text.getChar(i) == Text.ATTACHMENT_CHAR) {
 			start = i + 1;
 			break;
 		    }
-		    else if (c == '\t')
-			destX = prevTab(destX);
-		    else
-			destX -= charWidth(c);
 		}
+		styleCursor.seek(lastIndex);
+		boolean metricsChanged = (start < styleCursor.runStart);
+		// the x position can not be stepped back over a tab, so
+		// that the advances are summed from the beginning again.
+		destX = advanceLine(lineBegin, start);
 		lineEnd = start;
 
 		if (metricsChanged) { // recompute lineHeight and baseline
 		    lineHeight = baseline = 0;
-		    i = lineBegin;
+		    styleCursor.seek(lineBegin);
 		    do {
-			setFontMetrics(text.getTextStyleAt(i).getFontMetrics());
+			setFontMetrics(
+			    ((TextStyle)styleCursor.value).getFontMetrics());
 		    	lineHeight = Math.max(lineHeight, metrics.getHeight());
 		    	baseline = Math.max(baseline, metrics.getDescent());
-		    } while ((i += text.getRunLengthAt(i)) < start);
+		    } while (styleCursor.runEnd < start && styleCursor.next());
 		}
 	    }
 	    }
@@ -1370,16 +2060,18 @@ public class TextScanner {
      * stop condition defined in the <code>stops</code>.
      * <p>
      * This operation is efficient even if all characters in the array
-     * are larger than 256.
+     * are larger than 256, because the widths of the characters are
+     * looked up in the widths cached for the current font.
      *
      * @param  begin      the beginning index of scanning. (inclusive)
      * @param  end        the ending index of scanning. (exclusive)
      * @param  chars      the array of characters to be scanned.
      * @param  rightX     the right edge for scanning.
      * @param  stops      the stop conditions for scanning.
-     * @param  bufferSize the buffer size for calling
-     *                    FontMetrics#charsWidth(char[], int, int)
+     * @param  bufferSize not used. The characters larger than 256 are
+     *                    no longer measured in a buffer.
      * @return the stop condition.
+     * @see    jp.kyasu.graphics.CharWidths
      */
     protected final int fastScanChars(int begin,
 				      int end,
@@ -1388,57 +2080,40 @@ public class TextScanner {
 				      int stops[],
 				      int bufferSize)
     {
-	int mbCount = 0;
-	int i = begin;
-	for (;;) {
+	int widths[] = this.widths;
+	CharWidths charWidths = this.charWidths;
+	int x = destX;
+	for (int i = begin; i < end; i++) {
+	    char ch = chars[i];
 	    int newDestX;
-	    char ch;
-	    if (i >= end) {
-		if (mbCount == 0) {
-		    lastIndex = end;
-		    return END_OF_RUN;
-		}
-		// fall through
-	    }
-	    else if ((ch = chars[i]) < 256) {
-		if (mbCount == 0) {
-		    int stop;
-		    if ((stop = stops[ch]) < 0) {
-			// if (stop == IGNORE) continue;
-			lastIndex = i;
-			return stop;
-		    }
-		    newDestX = destX + widths[ch];
-		    if (newDestX > rightX) {
-			lastIndex = i;
-			return CROSSED_X;
-		    }
-		    destX = newDestX;
-		    ++i;
-		    continue;
+	    if (ch < 256) {
+		int stop;
+		if ((stop = stops[ch]) < 0) {
+		    // if (stop == IGNORE) continue;
+		    destX = x;
+		    lastIndex = i;
+		    return stop;
 		}
-		// fall through
+		newDestX = x + widths[ch];
 	    }
 	    else if (ch == Text.ATTACHMENT_CHAR) { // attachment character
-		if (mbCount == 0) {
-		    lastIndex = i;
-		    return ATTACHMENT;
-		}
-		// fall through
+		destX = x;
+		lastIndex = i;
+		return ATTACHMENT;
 	    }
-	    else if (mbCount < bufferSize) {
-		++mbCount;
-		++i;
-		continue;
+	    else {
+		newDestX = x + charWidths.charWidth(ch);
 	    }
-	    newDestX = destX + metrics.charsWidth(chars, i - mbCount, mbCount);
 	    if (newDestX > rightX) {
-		fastScanCharsForMultiBytes(i - mbCount, i, chars, rightX);
+		destX = x;
+		lastIndex = i;
 		return CROSSED_X;
 	    }
-	    destX = newDestX;
-	    mbCount = 0;
+	    x = newDestX;
 	}
+	destX = x;
+	lastIndex = end;
+	return END_OF_RUN;
     }
 
     /**
@@ -1588,7 +2263,10 @@ public class TextScanner {
      */
     protected void setFontMetrics(FontMetrics metrics) {
 	this.metrics = metrics;
-	widths = metrics.getWidths();
+	if (charWidths == null || charWidths.getFontMetrics() != metrics) {
+	    charWidths = ExtendedFont.getCharWidths(metrics);
+	}
+	widths = charWidths.getWidths();
 	if (tabWidth <= 0) {
 	    tabWidth = richTextStyle.getTabWidth();
 	}
@@ -1630,4 +2308,71 @@ public class TextScanner {
     protected int prevTab(int x) {
 	return x - ((x - leftMargin) % tabWidth);
     }
+
+
+    public static void main(String argv[]) {
+	// The lines must be broken at the same indices as the lines broken
+	// with the word iterator over the whole line.
+	String words[] = {
+	    "hello", "world", "don't", "3.14", "1,000", "e-mail", "x.y",
+	    "a1", "_id", "$5", "50%", "(", ")", ",", ".", "'", "\"", "-",
+	    " ", "  ", "\t", "\u00a0", "\u3000", "\r", "\u2028",
+	    "\u00e9t\u00e9", "x\u0301", "\u0301", "\u200b", "\u00ad",
+	    "\u65e5\u672c\u8a9e", "\u3053\u308c\u306f",
+	    "\u30ab\u30bf\u30ab\u30ca", "\u3001", "\u3002", "\u300c",
+	    "\u300d", "\uff08", "\u30fc", "\u0e20\u0e32\u0e29\u0e32",
+	};
+	java.util.Random random = new java.util.Random(1);
+	Locale locale = Locale.getDefault();
+	BreakIterator boundary = BreakIterator.getWordInstance(locale);
+	int errors = 0;
+	for (int n = 0; n < 20000; n++) {
+	    StringBuffer buffer = new StringBuffer();
+	    for (int i = random.nextInt(12); i >= 0; i--) {
+		buffer.append(words[random.nextInt(words.length)]);
+	    }
+	    String str = buffer.toString();
+	    int begin = random.nextInt(str.length());
+	    int end = begin + 1 + random.nextInt(str.length() - begin);
+	    boundary.setText(
+		new java.text.StringCharacterIterator(str, begin, end, begin));
+	    boundary.last();
+	    int start = boundary.previous();
+	    if (start <= begin || Character.isSpaceChar(str.charAt(start)))
+		start = -1;
+	    RichText richText =
+		new RichText(str, RichTextStyle.DEFAULT_DOCUMENT_STYLE);
+	    TextScanner scanner =
+		new TextScanner(richText, RichTextStyle.WORD_WRAP, locale);
+	    if (scanner.findWordBreak(begin, end) != start) {
+		System.out.println("findWordBreak() ERROR: " + n);
+		++errors;
+	    }
+	}
+	System.out.println(errors + " errors");
+
+	// lays out a long text in the word wrap and the character wrap.
+	StringBuffer buffer = new StringBuffer();
+	while (buffer.length() < 600000) {
+	    buffer.append(words[random.nextInt(7)]);
+	    buffer.append(random.nextInt(12) == 0 ? "\n" : " ");
+	}
+	RichText richText = new RichText(buffer.toString(),
+					 RichTextStyle.DEFAULT_DOCUMENT_STYLE);
+	for (int n = 0; n < 3; n++) {
+	    TextLayout layout =
+		new TextLayout(richText, RichTextStyle.WORD_WRAP, locale);
+	    TextLayout charLayout =
+		new TextLayout(richText, RichTextStyle.CHAR_WRAP, locale);
+	    long start = System.currentTimeMillis();
+	    layout.setWidth(300);
+	    long middle = System.currentTimeMillis();
+	    charLayout.setWidth(300);
+	    long stop = System.currentTimeMillis();
+	    System.out.println(richText.length() + " chars, " +
+			       layout.getLineCount() + " lines: WORD_WRAP " +
+			       (middle - start) + " ms, CHAR_WRAP " +
+			       (stop - middle) + " ms");
+	}
+    }
 }
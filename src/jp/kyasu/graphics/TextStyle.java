@@ -23,6 +23,7 @@
 package jp.kyasu.graphics;
 
 import jp.kyasu.awt.AWTResources;
+import jp.kyasu.util.InternPool;
 
 import java.awt.AWTEventMulticaster;
 import java.awt.Color;
@@ -53,6 +54,9 @@ public class TextStyle implements Cloneable, java.io.Serializable {
     protected ClickableTextAction action;
 
 
+    /** The pool of the canonical text styles. */
+    static private final InternPool StylePool = new InternPool();
+
     /**
      * The default text style constant.
      */
@@ -363,6 +367,45 @@ public class TextStyle implements Cloneable, java.io.Serializable {
 	return false;
     }
 
+    /**
+     * Returns the canonical text style that equals to this text style.
+     * The equal text styles interned share one instance and one extended
+     * font, so that the text style arrays of the texts hold the styles
+     * once and merge the runs by identity. The canonical text styles are
+     * weakly pooled, and must not be modified.
+     * <p>
+     * A subclass that adds the attributes not compared by
+     * <code>equals()</code> is not interned.
+     *
+     * @return the canonical text style.
+     * @see    #isInternable()
+     */
+    public TextStyle intern() {
+	if (!isInternable())
+	    return this;
+	TextStyle style = (TextStyle)StylePool.get(this);
+	if (style != null)
+	    return style;
+	style = this;
+	ExtendedFont font = exFont.intern();
+	if (font != exFont) {
+	    style = (TextStyle)clone();
+	    style.exFont = font;
+	}
+	return (TextStyle)StylePool.intern(style);
+    }
+
+    /**
+     * Checks if this text style can be interned, i.e., all attributes
+     * of this text style are compared by <code>equals()</code>. A
+     * subclass should override this method to be interned.
+     *
+     * @see #intern()
+     */
+    protected boolean isInternable() {
+	return (getClass() == TextStyle.class);
+    }
+
     /**
      * Compares font attributes and action attributes of two text styles
      * for equality.
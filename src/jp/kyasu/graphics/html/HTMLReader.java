@@ -1490,12 +1490,13 @@ public class HTMLReader implements SGMLParserListener, java.io.Serializable {
 
     /** Sets the current text style. */
     protected void setTextStyle(TextStyle textStyle) {
-	context.currentTextStyle = textStyle;
+	context.currentTextStyle = textStyle.intern();
     }
 
     /** Modifies the current text style. */
     protected void modifyTextStyle(TextStyleModifier modifier) {
-	context.currentTextStyle = modifier.modify(context.currentTextStyle);
+	context.currentTextStyle =
+			modifier.modify(context.currentTextStyle).intern();
     }
 
     /** Returns the current paragraph style. */
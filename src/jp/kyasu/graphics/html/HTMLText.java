@@ -33,11 +33,11 @@ import jp.kyasu.graphics.TextStyle;
 import jp.kyasu.graphics.TextStyleModifier;
 import jp.kyasu.graphics.TextAttachment;
 import jp.kyasu.graphics.text.TextChange;
+import jp.kyasu.util.SortedIntMap;
 
 import java.awt.Color;
 import java.net.URL;
 import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Vector;
 
 /**
@@ -286,18 +286,16 @@ public class HTMLText extends RichText {
      * document.
      */
     public String[] getAllAnchorNames() {
-	Hashtable attachments = text.getAttachments();
+	SortedIntMap attachments = text.getAttachmentMap();
 	if (attachments == null)
 	    return new String[0];
 	Vector vector = new Vector();
-	Enumeration ke = attachments.keys();
-	Enumeration ve = attachments.elements();
-	while (ke.hasMoreElements()) {
-	    TextAttachment ta = (TextAttachment)ve.nextElement();
+	int len = attachments.size();
+	for (int i = 0; i < len; i++) {
+	    TextAttachment ta = (TextAttachment)attachments.valueAt(i);
 	    if (ta.getVisualizable() instanceof VAnchor) {
 		vector.addElement(((VAnchor)ta.getVisualizable()).getName());
 	    }
-	    ke.nextElement();
 	}
 	String names[] = new String[vector.size()];
 	int index = 0;
@@ -316,19 +314,17 @@ public class HTMLText extends RichText {
      *         if the target anchor (reference) does not exist.
      */
     public int getAnchorIndex(String name) {
-	Hashtable attachments = text.getAttachments();
+	SortedIntMap attachments = text.getAttachmentMap();
 	if (attachments == null)
 	    return -1;
-	Enumeration ke = attachments.keys();
-	Enumeration ve = attachments.elements();
-	while (ke.hasMoreElements()) {
-	    TextAttachment ta = (TextAttachment)ve.nextElement();
+	int len = attachments.size();
+	for (int i = 0; i < len; i++) {
+	    TextAttachment ta = (TextAttachment)attachments.valueAt(i);
 	    if (ta.getVisualizable() instanceof VAnchor) {
 		if (name.equals(((VAnchor)ta.getVisualizable()).getName())) {
-		    return ((Integer)ke.nextElement()).intValue();
+		    return attachments.keyAt(i);
 		}
 	    }
-	    ke.nextElement();
 	}
 	return -1;
     }
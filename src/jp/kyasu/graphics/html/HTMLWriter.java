@@ -23,6 +23,7 @@
 package jp.kyasu.graphics.html;
 
 import jp.kyasu.graphics.*;
+import jp.kyasu.util.RunArrayCursor;
 
 import java.awt.Color;
 import java.awt.Font;
@@ -384,10 +385,11 @@ public class HTMLWriter implements java.io.Serializable {
     {
 	boolean firstData = true;
 	int index = begin;
+	RunArrayCursor cursor = text.textStyleCursor();
 	while (index < end) {
-	    TextStyle textStyle = text.getTextStyleAt(index);
-	    int runEnd = index + text.getRunLengthAt(index);
-	    if (runEnd > end) runEnd = end;
+	    cursor.seek(index);
+	    TextStyle textStyle = (TextStyle)cursor.value;
+	    int runEnd = (cursor.runEnd > end ? end : cursor.runEnd);
 	    Vector tags = writeFontTags(baseStyle, textStyle);
 	    writeData(index, runEnd, text, firstData);
 	    for (Enumeration e = tags.elements(); e.hasMoreElements(); ) {
@@ -0,0 +1,408 @@
+/*
+ * CharStorage.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.util;
+
+/**
+ * The <code>CharStorage</code> class is the abstract base class for the
+ * growable sequences of characters that store the string of the
+ * <code>jp.kyasu.graphics.Text</code>.
+ * <p>
+ * The characters of a storage need not be contiguous in memory. The
+ * characters are accessed in chunks with the
+ * <code>getChunk(int, int, int, int[])</code> method, that returns the
+ * array buffer containing the character at the specified index and
+ * stores the range of the chunk and the offset into the array buffer.
+ * For example:
+ * <pre>
+ *     int chunk[] = new int[3];
+ *     int i = begin;
+ *     while (i < end) {
+ *         char array[] = storage.getChunk(i, begin, end, chunk);
+ *         for (; i < chunk[1]; i++) {
+ *             char c = array[i + chunk[2]];
+ *             ...
+ *         }
+ *     }
+ * </pre>
+ *
+ * @see 	jp.kyasu.util.GapCharArray
+ * @see 	jp.kyasu.util.RopeCharArray
+ *
+ * @version 	16 Oct 2026
+ */
+public abstract class CharStorage implements Cloneable, java.io.Serializable {
+    /**
+     * The number of times this storage has been modified or its buffer
+     * has been rearranged. The chunks returned by
+     * <code>getChunk(int, int, int, int[])</code> are valid while this
+     * count is unchanged.
+     */
+    transient protected int modCount = 0;
+
+
+    /**
+     * The index in the chunk information where the beginning index of
+     * the chunk (inclusive) is stored.
+     */
+    static public final int CHUNK_BEGIN  = 0;
+
+    /**
+     * The index in the chunk information where the ending index of
+     * the chunk (exclusive) is stored.
+     */
+    static public final int CHUNK_END    = 1;
+
+    /**
+     * The index in the chunk information where the offset from the
+     * index of the storage to the index of the array buffer is stored.
+     */
+    static public final int CHUNK_OFFSET = 2;
+
+
+    /**
+     * Returns the number of times this storage has been modified or its
+     * buffer has been rearranged.
+     *
+     * @return the modification count of this storage.
+     */
+    public final int getModCount() {
+	return modCount;
+    }
+
+    /**
+     * Returns the length of this storage.
+     *
+     * @return the length of this storage.
+     */
+    public abstract int length();
+
+    /**
+     * Returns the size of this storage.
+     *
+     * @return the size of this storage.
+     */
+    public final int size() {
+	return length();
+    }
+
+    /**
+     * Tests if this storage has no characters.
+     *
+     * @return <code>true</code> if this storage has no characters;
+     *         <code>false</code> otherwise.
+     */
+    public final boolean isEmpty() {
+	return length() == 0;
+    }
+
+    /**
+     * Returns an array buffer whose components from <code>0</code> to
+     * <code>length()-1</code> are the characters of this storage.
+     * An application should not modify the returned array.
+     *
+     * @return the array buffer of this storage.
+     */
+    public abstract char[] getArray();
+
+    /**
+     * Returns an array buffer whose components from <code>begin</code>
+     * to <code>end-1</code> are the characters of this storage at the
+     * same indices. The returned array is valid until this storage is
+     * modified. An application should not modify the returned array.
+     *
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @return the array buffer of this storage.
+     */
+    public abstract char[] getArray(int begin, int end);
+
+    /**
+     * Tests if <code>getArray(begin, end)</code> can return the array
+     * buffer without moving or copying the characters.
+     *
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @return <code>true</code> if the range is contiguous;
+     *         <code>false</code> otherwise.
+     */
+    public abstract boolean isContiguous(int begin, int end);
+
+    /**
+     * Returns the array buffer that contains the character at the
+     * specified index, without moving or copying the characters.
+     * The range of the chunk, that is restricted to the specified
+     * <code>begin</code> and <code>end</code>, and the offset from the
+     * index of this storage to the index of the array buffer are stored
+     * into the specified chunk information, i.e., the character at
+     * <code>i</code> (<code>chunk[CHUNK_BEGIN] &lt;= i &lt;
+     * chunk[CHUNK_END]</code>) is <code>array[i + chunk[CHUNK_OFFSET]]</code>.
+     * The returned array is valid until this storage is modified.
+     * An application should not modify the returned array.
+     *
+     * @param  index the index of the character.
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @param  chunk the array of three integers into which the chunk
+     *               information is stored.
+     * @return the array buffer that contains the character.
+     * @exception ArrayIndexOutOfBoundsException if the <code>index</code>
+     *            is not in the range.
+     */
+    public abstract char[] getChunk(int index, int begin, int end,
+				    int chunk[]);
+
+    /**
+     * Returns an array of characters whose length is trimmed to be this
+     * storage's current length.
+     *
+     * @return an array of characters.
+     */
+    public char[] getTrimmedArray() {
+	int count = length();
+	char trimmedArray[] = new char[count];
+	getChars(0, count, trimmedArray, 0);
+	return trimmedArray;
+    }
+
+    /**
+     * Returns the character at the specified index.
+     *
+     * @param  index an index into this storage.
+     * @return the character at the specified index.
+     */
+    public abstract char getChar(int index);
+
+    /**
+     * Sets the character at the specified index of this storage to be
+     * the specified character.
+     *
+     * @param index the specified index.
+     * @param c     the specified character.
+     */
+    public abstract void setChar(int index, char c);
+
+    /**
+     * Copies characters from this storage into the destination character
+     * array.
+     *
+     * @param srcBegin index of the first character to copy (inclusive).
+     * @param srcEnd   index after the last character to copy (exclusive).
+     * @param dst      the destination array.
+     * @param dstBegin the start offset in the destination array.
+     */
+    public abstract void getChars(int srcBegin, int srcEnd,
+				  char dst[], int dstBegin);
+
+    /**
+     * Sets the length of this storage. If the new length is greater than
+     * the current length, new <code>'\0'</code> characters are added to
+     * the end of this storage.
+     *
+     * @param newLength the new length of this storage.
+     */
+    public abstract void setLength(int newLength);
+
+    /**
+     * Returns the index of the first occurrence of the specified
+     * character, starting the search at the specified index.
+     *
+     * @param  c         a character.
+     * @param  fromIndex the index to start the search from.
+     * @return the index of the first occurrence of the character, or
+     *         <code>-1</code> if the character does not occur.
+     */
+    public int indexOf(char c, int fromIndex) {
+	int count = length();
+	if (fromIndex < 0) {
+	    fromIndex = 0;
+	}
+	int chunk[] = new int[3];
+	int i = fromIndex;
+	while (i < count) {
+	    char array[] = getChunk(i, i, count, chunk);
+	    int offset = chunk[CHUNK_OFFSET];
+	    for (int end = chunk[CHUNK_END]; i < end; i++) {
+		if (array[i + offset] == c)
+		    return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified
+     * character, searching backward starting at the specified index.
+     *
+     * @param  c         a character.
+     * @param  fromIndex the index to start the search from.
+     * @return the index of the last occurrence of the character, or
+     *         <code>-1</code> if the character does not occur.
+     */
+    public int lastIndexOf(char c, int fromIndex) {
+	int count = length();
+	int chunk[] = new int[3];
+	int i = (fromIndex >= count ? count - 1 : fromIndex);
+	while (i >= 0) {
+	    char array[] = getChunk(i, 0, i + 1, chunk);
+	    int offset = chunk[CHUNK_OFFSET];
+	    for (int begin = chunk[CHUNK_BEGIN]; i >= begin; --i) {
+		if (array[i + offset] == c)
+		    return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Removes all characters from this storage.
+     */
+    public abstract void removeAll();
+
+    /**
+     * Removes the characters from the specified <code>offset</code>.
+     *
+     * @param offset the start index of the characters to be removed.
+     * @param size   the number of the characters to be removed.
+     */
+    public void remove(int offset, int size) {
+	replace(offset, offset + size, new char[0], 0, 0);
+    }
+
+    /**
+     * Returns a new storage that is a substorage of this storage.
+     *
+     * @param  begin the beginning index, inclusive.
+     * @param  end   the ending index, exclusive.
+     * @return the substorage.
+     */
+    public abstract CharStorage subarray(int begin, int end);
+
+    /**
+     * Appends the character to this storage.
+     *
+     * @param  c a character.
+     * @return this storage.
+     */
+    public CharStorage append(char c) {
+	return replace(length(), length(), new char[]{ c }, 0, 1);
+    }
+
+    /**
+     * Appends the characters of the <code>string</code> from the specified
+     * <code>begin</code> index to the specified <code>endIndex-1</code> index.
+     *
+     * @param  str   a string.
+     * @param  begin the beginning index of the string, inclusive.
+     * @param  end   the ending index of the string, exclusive.
+     * @return this storage.
+     */
+    public CharStorage append(String str, int begin, int end) {
+	char carray[] = new char[end - begin];
+	str.getChars(begin, end, carray, 0);
+	return replace(length(), length(), carray, 0, carray.length);
+    }
+
+    /**
+     * Appends the characters of the array object to this storage.
+     *
+     * @param  carray an array of characters.
+     * @param  begin  the beginning index of the character array, inclusive.
+     * @param  end    the ending index of the character array, exclusive.
+     * @return this storage.
+     */
+    public CharStorage append(char carray[], int begin, int end) {
+	return replace(length(), length(), carray, begin, end);
+    }
+
+    /**
+     * Appends the characters of the specified storage to this storage.
+     *
+     * @param  storage a <code>CharStorage</code> object.
+     * @return this storage.
+     */
+    public CharStorage append(CharStorage storage) {
+	return replace(length(), length(), storage);
+    }
+
+    /**
+     * Inserts the characters of the specified storage to this storage
+     * from the specified <code>offset</code>.
+     *
+     * @param  offset  the start index of the characters to be inserted.
+     * @param  storage a <code>CharStorage</code> object.
+     * @return this storage.
+     */
+    public CharStorage insert(int offset, CharStorage storage) {
+	return replace(offset, offset, storage);
+    }
+
+    /**
+     * Replaces the characters of this storage with the characters of the
+     * specified storage.
+     *
+     * @param  begin   the beginning index to replace, inclusive.
+     * @param  end     the ending index to replace, exclusive.
+     * @param  storage a replacement <code>CharStorage</code> object.
+     * @return this storage.
+     */
+    public abstract CharStorage replace(int begin, int end,
+					CharStorage storage);
+
+    /**
+     * Replaces the characters of this storage with the characters of the
+     * specified character array.
+     *
+     * @param  begin  the beginning index to replace, inclusive.
+     * @param  end    the ending index to replace, exclusive.
+     * @param  carray an array of characters.
+     * @param  rBegin the beginning index of the replacement, inclusive.
+     * @param  rEnd   the ending index of the replacement, exclusive.
+     * @return this storage.
+     */
+    public abstract CharStorage replace(int begin, int end, char carray[],
+					int rBegin, int rEnd);
+
+    /**
+     * Returns a clone of this storage.
+     *
+     * @return a clone of this storage.
+     */
+    public Object clone() {
+	try {
+	    return super.clone();
+	}
+	catch (CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+
+    /**
+     * Returns a string representation of this storage.
+     *
+     * @return a string representation of this storage.
+     */
+    public String toString() {
+	return new String(getTrimmedArray());
+    }
+}
@@ -0,0 +1,602 @@
+/*
+ * GapCharArray.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.util;
+
+/**
+ * The <code>GapCharArray</code> class implements a growable array of
+ * characters with a gap (a gap buffer). Unlike <code>VArray</code>, the
+ * unused capacity of the array is kept at the last edit point, so that
+ * the successive insertions and removals around the same position cost
+ * O(1) amortized, instead of shifting the whole tail of the array.
+ * <p>
+ * The characters are stored in the array buffer as follows:
+ * <pre>
+ *     [0, gapStart)                 the characters before the gap.
+ *     [gapStart, gapEnd)            the gap (unused).
+ *     [gapEnd, array.length)        the characters after the gap.
+ * </pre>
+ * The <code>getArray()</code> method moves the gap to the end of the
+ * array, and the <code>getArray(int, int)</code> method moves the gap
+ * just after the specified range only if the gap lies in the range, so
+ * that the characters in the range can be accessed directly with the
+ * logical indices. The <code>getChunk(int, int, int, int[])</code>
+ * method returns the characters before or after the gap without moving
+ * the gap.
+ *
+ * @see 	jp.kyasu.util.CharStorage
+ * @see 	jp.kyasu.util.VArray
+ *
+ * @version 	16 Oct 2026
+ */
+public class GapCharArray extends CharStorage {
+    /**
+     * The array buffer into which the characters and the gap are stored.
+     */
+    protected char array[];
+
+    /**
+     * The beginning index of the gap in the array buffer (inclusive).
+     */
+    protected int gapStart;
+
+    /**
+     * The ending index of the gap in the array buffer (exclusive).
+     */
+    protected int gapEnd;
+
+    /**
+     * The maximum amount by which the capacity of the array is
+     * automatically incremented when its size becomes greater than
+     * its capacity.
+     *
+     * @see jp.kyasu.util.VArray#maxCapacityIncrement
+     */
+    protected int maxCapacityIncrement;
+
+
+    /**
+     * The default maximum amount by which the capacity of the
+     * array is automatically incremented.
+     */
+    static protected final int DEFAULT_MAX_CAPACITY_INCREMENT = (64 * 1024);
+
+
+    /**
+     * Constructs an empty array.
+     */
+    public GapCharArray() {
+	this(16);
+    }
+
+    /**
+     * Constructs an empty array with the specified initial capacity.
+     *
+     * @param initialCapacity the initial capacity of the array.
+     */
+    public GapCharArray(int initialCapacity) {
+	this(initialCapacity, DEFAULT_MAX_CAPACITY_INCREMENT);
+    }
+
+    /**
+     * Constructs an empty array with the specified initial capacity
+     * and the maximum capacity increment size.
+     *
+     * @param initialCapacity      the initial capacity of the array.
+     * @param maxCapacityIncrement the maximum amount by which the capacity
+     *                             is increased when the array overflows.
+     */
+    public GapCharArray(int initialCapacity, int maxCapacityIncrement) {
+	this.array = new char[initialCapacity];
+	this.gapStart = 0;
+	this.gapEnd = initialCapacity;
+	this.maxCapacityIncrement = maxCapacityIncrement;
+    }
+
+    /**
+     * Constructs an array with the specified array buffer. The
+     * characters of the array buffer from <code>0</code> to
+     * <code>length-1</code> become the contents of the array, and
+     * the rest of the array buffer becomes the gap.
+     *
+     * @param array                the buffer of the array.
+     * @param length               the length of the array.
+     * @param maxCapacityIncrement the maximum amount by which the capacity
+     *                             is increased when the array overflows.
+     */
+    public GapCharArray(char array[], int length, int maxCapacityIncrement) {
+	if (array == null)
+	    throw new NullPointerException();
+	if (length < 0 || length > array.length)
+	    throw new ArrayIndexOutOfBoundsException(length);
+	this.array = array;
+	this.gapStart = length;
+	this.gapEnd = array.length;
+	this.maxCapacityIncrement = maxCapacityIncrement;
+    }
+
+    /**
+     * Constructs an array with the contents of the string and the
+     * maximum capacity increment size.
+     *
+     * @param string               a string.
+     * @param maxCapacityIncrement the maximum amount by which the capacity
+     *                             is increased when the array overflows.
+     */
+    public GapCharArray(String string, int maxCapacityIncrement) {
+	if (string == null)
+	    throw new NullPointerException();
+	int length = string.length();
+	this.array = new char[length];
+	string.getChars(0, length, this.array, 0);
+	this.gapStart = length;
+	this.gapEnd = length;
+	this.maxCapacityIncrement = maxCapacityIncrement;
+    }
+
+    /**
+     * Constructs an array with the contents of the <code>VArray</code>
+     * object of <code>char</code>. The buffer of the <code>VArray</code>
+     * is shared.
+     *
+     * @param varray a <code>VArray</code> object of <code>char</code>.
+     */
+    public GapCharArray(VArray varray) {
+	this((char[])varray.getArray(), varray.length(),
+	     varray.maxCapacityIncrement);
+    }
+
+
+    /**
+     * Returns the buffer of this array whose components from
+     * <code>0</code> to <code>length()-1</code> are the characters of
+     * this array, by moving the gap to the end of the buffer.
+     * An application should not modify the returned array.
+     *
+     * @return the buffer of this array.
+     */
+    public final char[] getArray() {
+	moveGap(length());
+	return array;
+    }
+
+    /**
+     * Returns the buffer of this array whose components from
+     * <code>begin</code> to <code>end-1</code> are the characters of
+     * this array at the same indices. The gap is moved only if it lies
+     * in the specified range, and it is always moved towards the end,
+     * so that the ranges returned before by this method remain valid
+     * until this array is modified.
+     * An application should not modify the returned array.
+     *
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @return the buffer of this array.
+     * @exception ArrayIndexOutOfBoundsException if the <code>begin</code>
+     *            or the <code>end</code> is out of range.
+     */
+    public final char[] getArray(int begin, int end) {
+	if ((begin < 0) || (end > length()) || (begin > end)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	if (!isContiguous(begin, end)) {
+	    moveGap(end);
+	}
+	return array;
+    }
+
+    /**
+     * Tests if the characters of this array from <code>begin</code> to
+     * <code>end-1</code> can be accessed with the logical indices in the
+     * array buffer, i.e., the gap does not lie before <code>end</code>.
+     *
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @return <code>true</code> if the range is contiguous in the array
+     *         buffer; <code>false</code> otherwise.
+     */
+    public final boolean isContiguous(int begin, int end) {
+	return gapStart >= end || gapStart == gapEnd;
+    }
+
+    /**
+     * Returns the array buffer that contains the character at the
+     * specified index, without moving the gap. The chunk is the
+     * characters before the gap or the characters after the gap.
+     *
+     * @see jp.kyasu.util.CharStorage#getChunk(int, int, int, int[])
+     */
+    public final char[] getChunk(int index, int begin, int end, int chunk[]) {
+	if (index < begin || index >= end || begin < 0 || end > length()) {
+	    throw new ArrayIndexOutOfBoundsException(index);
+	}
+	if (index < gapStart) {
+	    chunk[CHUNK_BEGIN]  = begin;
+	    chunk[CHUNK_END]    = (end < gapStart ? end : gapStart);
+	    chunk[CHUNK_OFFSET] = 0;
+	}
+	else {
+	    chunk[CHUNK_BEGIN]  = (begin > gapStart ? begin : gapStart);
+	    chunk[CHUNK_END]    = end;
+	    chunk[CHUNK_OFFSET] = gapEnd - gapStart;
+	}
+	return array;
+    }
+
+    /**
+     * Returns the length of this array.
+     *
+     * @return the length of this array.
+     */
+    public final int length() {
+	return array.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * Returns the character at the specified index.
+     *
+     * @param  index an index into this array.
+     * @return the character at the specified index.
+     * @exception ArrayIndexOutOfBoundsException if the <code>index</code>
+     *            is out of range.
+     */
+    public final char getChar(int index) {
+	if (index < 0 || index >= length()) {
+	    throw new ArrayIndexOutOfBoundsException(index);
+	}
+	return array[index < gapStart ? index : index + (gapEnd - gapStart)];
+    }
+
+    /**
+     * Sets the character at the specified index of this array to be
+     * the specified character.
+     *
+     * @param index the specified index.
+     * @param c     the specified character.
+     * @exception ArrayIndexOutOfBoundsException if the <code>index</code>
+     *            is out of range.
+     */
+    public final void setChar(int index, char c) {
+	if (index < 0 || index >= length()) {
+	    throw new ArrayIndexOutOfBoundsException(index);
+	}
+	array[index < gapStart ? index : index + (gapEnd - gapStart)] = c;
+    }
+
+    /**
+     * Copies characters from this array into the destination character
+     * array.
+     *
+     * @param srcBegin index of the first character to copy (inclusive).
+     * @param srcEnd   index after the last character to copy (exclusive).
+     * @param dst      the destination array.
+     * @param dstBegin the start offset in the destination array.
+     * @exception ArrayIndexOutOfBoundsException if the <code>srcBegin</code>
+     *            or the <code>srcEnd</code> is out of range.
+     */
+    public final void getChars(int srcBegin, int srcEnd,
+			       char dst[], int dstBegin)
+    {
+	if ((srcBegin < 0) || (srcEnd > length()) || (srcBegin > srcEnd)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	if (srcBegin < gapStart) {
+	    int end = (srcEnd < gapStart ? srcEnd : gapStart);
+	    System.arraycopy(array, srcBegin, dst, dstBegin, end - srcBegin);
+	    dstBegin += end - srcBegin;
+	    srcBegin = end;
+	}
+	if (srcBegin < srcEnd) {
+	    int gap = gapEnd - gapStart;
+	    System.arraycopy(array, srcBegin + gap, dst, dstBegin,
+			     srcEnd - srcBegin);
+	}
+    }
+
+    /**
+     * Sets the length of this array. If the new length is greater than
+     * the current length, new <code>'\0'</code> characters are added to
+     * the end of this array.
+     *
+     * @param newLength the new length of this array.
+     */
+    public final void setLength(int newLength) {
+	int count = length();
+	if (newLength < 0) {
+	    throw new ArrayIndexOutOfBoundsException(newLength);
+	}
+	moveGap(count);
+	++modCount;
+	if (newLength > count) {
+	    ensureGap(newLength - count);
+	    for (int i = count; i < newLength; i++) {
+		array[i] = '\0';
+	    }
+	}
+	gapStart = newLength;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified
+     * character, starting the search at the specified index.
+     *
+     * @param  c         a character.
+     * @param  fromIndex the index to start the search from.
+     * @return the index of the first occurrence of the character, or
+     *         <code>-1</code> if the character does not occur.
+     */
+    public final int indexOf(char c, int fromIndex) {
+	int count = length();
+	if (fromIndex < 0) {
+	    fromIndex = 0;
+	}
+	int i = fromIndex;
+	for (int end = (gapStart < count ? gapStart : count); i < end; i++) {
+	    if (array[i] == c)
+		return i;
+	}
+	int gap = gapEnd - gapStart;
+	for (; i < count; i++) {
+	    if (array[i + gap] == c)
+		return i;
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified
+     * character, searching backward starting at the specified index.
+     *
+     * @param  c         a character.
+     * @param  fromIndex the index to start the search from.
+     * @return the index of the last occurrence of the character, or
+     *         <code>-1</code> if the character does not occur.
+     */
+    public final int lastIndexOf(char c, int fromIndex) {
+	int count = length();
+	int i = (fromIndex >= count ? count - 1 : fromIndex);
+	int gap = gapEnd - gapStart;
+	for (; i >= gapStart; --i) {
+	    if (array[i + gap] == c)
+		return i;
+	}
+	for (; i >= 0; --i) {
+	    if (array[i] == c)
+		return i;
+	}
+	return -1;
+    }
+
+    /**
+     * Removes all characters from this array.
+     */
+    public final void removeAll() {
+	++modCount;
+	gapStart = 0;
+	gapEnd = array.length;
+    }
+
+    /**
+     * Removes the characters from the specified <code>offset</code>.
+     * The gap is moved to the <code>offset</code>.
+     *
+     * @param offset the start index of the characters to be removed.
+     * @param size   the number of the characters to be removed.
+     * @exception ArrayIndexOutOfBoundsException if the <code>offset</code>
+     *            or the <code>size</code> were invalid.
+     */
+    public final void remove(int offset, int size) {
+	if ((offset < 0) || (size < 0) || (offset + size > length())) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	moveGap(offset);
+	++modCount;
+	gapEnd += size;
+    }
+
+    /**
+     * Returns a new array that is a subarray of this array.
+     *
+     * @param  begin the beginning index, inclusive.
+     * @param  end   the ending index, exclusive.
+     * @return the subarray.
+     */
+    public final CharStorage subarray(int begin, int end) {
+	if ((begin < 0) || (end > length()) || (begin > end)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	char sub[] = new char[end - begin];
+	getChars(begin, end, sub, 0);
+	return new GapCharArray(sub, sub.length, maxCapacityIncrement);
+    }
+
+    /**
+     * Appends the character to this array.
+     *
+     * @param  c a character.
+     * @return this array.
+     */
+    public final CharStorage append(char c) {
+	moveGap(length());
+	ensureGap(1);
+	++modCount;
+	array[gapStart++] = c;
+	return this;
+    }
+
+    /**
+     * Appends the characters of the <code>string</code> from the specified
+     * <code>begin</code> index to the specified <code>endIndex-1</code> index.
+     *
+     * @param  str   a string.
+     * @param  begin the beginning index of the string, inclusive.
+     * @param  end   the ending index of the string, exclusive.
+     * @return this array.
+     */
+    public final CharStorage append(String str, int begin, int end) {
+	int len = end - begin;
+	moveGap(length());
+	ensureGap(len);
+	++modCount;
+	str.getChars(begin, end, array, gapStart);
+	gapStart += len;
+	return this;
+    }
+
+    /**
+     * Appends the characters of the array object to this array.
+     *
+     * @param  carray an array of characters.
+     * @param  begin  the beginning index of the character array, inclusive.
+     * @param  end    the ending index of the character array, exclusive.
+     * @return this array.
+     */
+    public final CharStorage append(char carray[], int begin, int end) {
+	return replace(length(), length(), carray, begin, end);
+    }
+
+    /**
+     * Replaces the characters of this array with the characters of the
+     * specified storage. The gap is moved to the end of the replacement.
+     *
+     * @param  begin   the beginning index to replace, inclusive.
+     * @param  end     the ending index to replace, exclusive.
+     * @param  storage a replacement <code>CharStorage</code> object.
+     * @return this array.
+     */
+    public final CharStorage replace(int begin, int end, CharStorage storage)
+    {
+	if (storage == this) {
+	    storage = (CharStorage)storage.clone();
+	}
+	int rLength = storage.length();
+	prepareReplace(begin, end, rLength);
+	storage.getChars(0, rLength, array, gapStart);
+	gapStart += rLength;
+	return this;
+    }
+
+    /**
+     * Replaces the characters of this array with the characters of the
+     * specified character array. The gap is moved to the end of the
+     * replacement.
+     *
+     * @param  begin  the beginning index to replace, inclusive.
+     * @param  end    the ending index to replace, exclusive.
+     * @param  carray an array of characters.
+     * @param  rBegin the beginning index of the replacement, inclusive.
+     * @param  rEnd   the ending index of the replacement, exclusive.
+     * @return this array.
+     */
+    public final CharStorage replace(int begin, int end, char carray[],
+				     int rBegin, int rEnd)
+    {
+	if ((rBegin < 0) || (rEnd > carray.length) || (rBegin > rEnd)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	int rLength = rEnd - rBegin;
+	prepareReplace(begin, end, rLength);
+	System.arraycopy(carray, rBegin, array, gapStart, rLength);
+	gapStart += rLength;
+	return this;
+    }
+
+    /**
+     * Returns a clone of this array. The gap of the clone is trimmed.
+     *
+     * @return a clone of this array.
+     */
+    public Object clone() {
+	GapCharArray ga = (GapCharArray)super.clone();
+	int count = length();
+	ga.array = new char[count];
+	getChars(0, count, ga.array, 0);
+	ga.gapStart = ga.gapEnd = count;
+	return ga;
+    }
+
+    /**
+     * Removes the characters from <code>begin</code> to <code>end-1</code>,
+     * and makes the gap at <code>begin</code> whose size is at least
+     * <code>rLength</code>.
+     */
+    protected final void prepareReplace(int begin, int end, int rLength) {
+	if ((begin < 0) || (end > length()) || (begin > end)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	moveGap(end);
+	++modCount;
+	gapStart = begin;
+	ensureGap(rLength);
+    }
+
+    /**
+     * Moves the gap to the specified logical index.
+     */
+    protected final void moveGap(int index) {
+	if (index != gapStart && gapStart != gapEnd) {
+	    ++modCount;
+	}
+	if (index < gapStart) {
+	    int len = gapStart - index;
+	    System.arraycopy(array, index, array, gapEnd - len, len);
+	    gapStart -= len;
+	    gapEnd -= len;
+	}
+	else if (index > gapStart) {
+	    int len = index - gapStart;
+	    System.arraycopy(array, gapEnd, array, gapStart, len);
+	    gapStart += len;
+	    gapEnd += len;
+	}
+    }
+
+    /**
+     * Increases the size of the gap, if necessary, to ensure that it
+     * can hold at least the number of characters specified by the
+     * argument.
+     */
+    protected final void ensureGap(int minimumGap) {
+	int gap = gapEnd - gapStart;
+	if (minimumGap <= gap)
+	    return;
+	int capacity = array.length;
+	int count = capacity - gap;
+	int capacityIncrement = capacity;
+	if (maxCapacityIncrement > 0 &&
+	    capacityIncrement > maxCapacityIncrement)
+	{
+	    capacityIncrement = maxCapacityIncrement;
+	}
+	int newCapacity = capacity + capacityIncrement;
+	if (count + minimumGap > newCapacity) {
+	    newCapacity = count + minimumGap;
+	}
+	++modCount;
+	char newArray[] = new char[newCapacity];
+	int tail = capacity - gapEnd;
+	System.arraycopy(array, 0, newArray, 0, gapStart);
+	System.arraycopy(array, gapEnd, newArray, newCapacity - tail, tail);
+	array = newArray;
+	gapEnd = newCapacity - tail;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * InternPool.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.util;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * The <code>InternPool</code> class implements a pool of the canonical
+ * instances of the immutable objects, like <code>String.intern()</code>.
+ * The equal objects interned in the pool share one instance, so that
+ * they occupy the memory once and they are compared by identity at
+ * first.
+ * <p>
+ * The instances are weakly referenced from the pool, so that an instance
+ * is removed from the pool when it is no longer used elsewhere.
+ *
+ * @see 	jp.kyasu.graphics.TextStyle#intern()
+ * @see 	jp.kyasu.graphics.ExtendedFont#intern()
+ * @see 	jp.kyasu.graphics.ParagraphStyle#intern()
+ *
+ * @version 	16 Oct 2026
+ */
+public class InternPool {
+    /** The map from the instance to the weak reference to itself. */
+    protected WeakHashMap map;
+
+
+    /**
+     * Constructs an empty pool.
+     */
+    public InternPool() {
+	map = new WeakHashMap();
+    }
+
+
+    /**
+     * Returns the canonical instance that equals to the specified object,
+     * or <code>null</code> if there is no such instance in this pool.
+     *
+     * @param  obj the object.
+     * @return the canonical instance, or <code>null</code>.
+     */
+    public synchronized Object get(Object obj) {
+	WeakReference ref = (WeakReference)map.get(obj);
+	return (ref == null ? null : ref.get());
+    }
+
+    /**
+     * Returns the canonical instance that equals to the specified object.
+     * If there is no such instance in this pool, the specified object is
+     * added to this pool and is returned. The object must not be modified
+     * after it is added.
+     *
+     * @param  obj the object.
+     * @return the canonical instance.
+     */
+    public synchronized Object intern(Object obj) {
+	if (obj == null)
+	    throw new NullPointerException();
+	WeakReference ref = (WeakReference)map.get(obj);
+	if (ref != null) {
+	    Object canonical = ref.get();
+	    if (canonical != null)
+		return canonical;
+	}
+	map.put(obj, new WeakReference(obj));
+	return obj;
+    }
+
+    /**
+     * Returns the number of the instances in this pool.
+     */
+    public synchronized int size() {
+	return map.size();
+    }
+
+    /**
+     * Removes all instances from this pool.
+     */
+    public synchronized void clear() {
+	map.clear();
+    }
+}
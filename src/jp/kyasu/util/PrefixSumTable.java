@@ -0,0 +1,991 @@
+/*
+ * PrefixSumTable.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.util;
+
+/**
+ * The <code>PrefixSumTable</code> class implements a growable table of
+ * rows of <code>int</code> values. The first <code>sumColumns</code>
+ * columns of the table are <i>extents</i>, i.e., non-negative lengths
+ * such as the number of characters or the height of a line, and the
+ * table answers the sum of the extents of the preceding rows (the
+ * <i>offset</i> of a row) and the row at an offset. The other columns
+ * are plain attributes.
+ * <p>
+ * The rows are stored in blocks of at most <code>BLOCK_SIZE</code> rows.
+ * A block stores the offsets of its rows relative to the beginning of
+ * the block, and the totals of the blocks are indexed by binary indexed
+ * (Fenwick) trees. Thus replacing rows, changing an extent, computing an
+ * offset, and searching an offset cost O(log n + BLOCK_SIZE), and the
+ * offsets of the following rows need not be corrected. Accessing the
+ * rows sequentially costs O(1) for each row.
+ * <p>
+ * A full block is packed column by column into one, two or four bytes
+ * per value, relative to the minimum value of the column in the block,
+ * or into no bytes if the values of the column are in an arithmetic
+ * progression. For the lines of a text, whose offsets and attributes
+ * vary little within a block, the packed table takes less than a half
+ * of the memory of the plain <code>int</code> values.
+ * <p>
+ * A constant can be added to all values of an attribute column in O(1)
+ * with the <code>add(int, int)</code> method.
+ *
+ * @version 	16 Oct 2026
+ */
+public class PrefixSumTable implements Cloneable, java.io.Serializable {
+    /** The number of columns. */
+    protected int columns;
+
+    /** The number of extent columns, that are the first columns. */
+    protected int sumColumns;
+
+    /** The values added to the stored values of the attribute columns. */
+    protected int bases[];
+
+    /** The blocks of the rows. */
+    protected PrefixSumBlock blocks[];
+
+    /** The number of the blocks. */
+    protected int blockCount;
+
+    /** The number of the rows. */
+    protected int count;
+
+    /** The totals of the extent columns. */
+    protected int totals[];
+
+    /**
+     * The binary indexed trees of the blocks. <code>blockTree[0]</code>
+     * indexes the number of rows of the blocks, and
+     * <code>blockTree[1 + c]</code> indexes the totals of the extent
+     * column <code>c</code> of the blocks.
+     */
+    transient protected int blockTree[][];
+
+    /**
+     * The number of the leading blocks that are indexed by
+     * <code>blockTree</code>.
+     */
+    transient protected int indexedBlocks;
+
+    /** The index of the cached block, or <code>-1</code>. */
+    transient protected int cacheBlock;
+
+    /** The index of the first row of the cached block. */
+    transient protected int cacheRow;
+
+    /** The offsets of the first row of the cached block. */
+    transient protected int cacheSums[];
+
+
+    /**
+     * The maximum number of rows in a block.
+     */
+    static public final int BLOCK_SIZE = 256;
+
+
+    /**
+     * Constructs an empty table with the specified number of columns and
+     * the number of extent columns.
+     *
+     * @param columns    the number of columns.
+     * @param sumColumns the number of extent columns, that are the first
+     *                   <code>sumColumns</code> columns.
+     */
+    public PrefixSumTable(int columns, int sumColumns) {
+	if (columns <= 0 || sumColumns < 0 || sumColumns > columns)
+	    throw new IllegalArgumentException("improper columns");
+	this.columns    = columns;
+	this.sumColumns = sumColumns;
+	bases  = new int[columns];
+	totals = new int[sumColumns];
+	blocks = new PrefixSumBlock[4];
+	blockCount = 0;
+	count = 0;
+	blockTree = null;
+	indexedBlocks = 0;
+	cacheBlock = -1;
+	cacheSums = null;
+    }
+
+
+    /**
+     * Returns the number of columns of this table.
+     */
+    public final int getColumnCount() {
+	return columns;
+    }
+
+    /**
+     * Returns the number of extent columns of this table.
+     */
+    public final int getSumColumnCount() {
+	return sumColumns;
+    }
+
+    /**
+     * Returns the number of rows of this table.
+     */
+    public final int size() {
+	return count;
+    }
+
+    /**
+     * Tests if this table has no rows.
+     */
+    public final boolean isEmpty() {
+	return count == 0;
+    }
+
+    /**
+     * Returns the value at the specified row and column.
+     *
+     * @param  row    the index of the row.
+     * @param  column the index of the column.
+     * @return the value at the specified row and column.
+     * @exception ArrayIndexOutOfBoundsException if an invalid index was
+     *            given.
+     */
+    public final int get(int row, int column) {
+	int r = locate(row);
+	PrefixSumBlock block = blocks[cacheBlock];
+	if (column < sumColumns) {
+	    return (r + 1 < block.count ? block.get(r + 1, column) :
+					  block.sums[column])
+		   - block.get(r, column);
+	}
+	return block.get(r, column) + bases[column];
+    }
+
+    /**
+     * Sets the value at the specified row and column.
+     *
+     * @param  row    the index of the row.
+     * @param  column the index of the column.
+     * @param  value  the value; it should not be negative for an extent
+     *                column.
+     * @exception ArrayIndexOutOfBoundsException if an invalid index was
+     *            given.
+     * @exception IllegalArgumentException if the value of an extent column
+     *            is negative.
+     */
+    public final void set(int row, int column, int value) {
+	int r = locate(row);
+	int b = cacheBlock;
+	PrefixSumBlock block = blocks[b];
+	boolean packed = (block.data == null);
+	if (column >= sumColumns) {
+	    int v = value - bases[column];
+	    if (block.get(r, column) == v)
+		return;
+	    block.unpack();
+	    block.data[r * columns + column] = v;
+	    block.minValid = false;
+	    if (packed) block.pack();
+	    return;
+	}
+	if (value < 0)
+	    throw new IllegalArgumentException("negative extent");
+	int delta = value - ((r + 1 < block.count ? block.get(r + 1, column) :
+						    block.sums[column])
+			     - block.get(r, column));
+	if (delta == 0)
+	    return;
+	block.unpack();
+	int end = block.count * columns;
+	for (int i = (r + 1) * columns + column; i < end; i += columns) {
+	    block.data[i] += delta;
+	}
+	if (packed) block.pack();
+	block.sums[column] += delta;
+	totals[column] += delta;
+	updateBlockTree(1 + column, b, delta);
+	// the offsets of the cached block are not changed.
+    }
+
+    /**
+     * Returns the sum of the values of the extent column in the rows
+     * preceding the specified row.
+     *
+     * @param  row    the index of the row, <code>0 &lt;= row &lt;=
+     *                size()</code>.
+     * @param  column the index of the extent column.
+     * @return the offset of the row.
+     * @exception ArrayIndexOutOfBoundsException if an invalid index was
+     *            given.
+     */
+    public final int sum(int row, int column) {
+	if (column >= sumColumns)
+	    throw new ArrayIndexOutOfBoundsException(column);
+	if (row == count)
+	    return totals[column];
+	int r = locate(row);
+	return cacheSums[column] + blocks[cacheBlock].get(r, column);
+    }
+
+    /**
+     * Returns the sum of all values of the extent column.
+     *
+     * @param  column the index of the extent column.
+     * @return the sum of all values of the extent column.
+     */
+    public final int total(int column) {
+	return totals[column];
+    }
+
+    /**
+     * Returns the last row whose offset of the extent column is less than
+     * or equal to the specified value. If the value is less than
+     * <code>0</code>, returns <code>0</code>.
+     *
+     * @param  column the index of the extent column.
+     * @param  value  the value to search for.
+     * @return the index of the row; <code>-1</code> if this table is empty.
+     */
+    public final int search(int column, int value) {
+	if (column >= sumColumns)
+	    throw new ArrayIndexOutOfBoundsException(column);
+	if (count == 0)
+	    return -1;
+	if (value >= totals[column])
+	    return count - 1;
+	if (value < 0)
+	    return 0;
+	ensureBlockTree();
+	int tree[] = blockTree[1 + column];
+	int n = blockCount;
+	int pos = 0;
+	int rem = value;
+	for (int step = highestBit(n); step > 0; step >>= 1) {
+	    int next = pos + step;
+	    if (next <= n && tree[next] <= rem) {
+		pos = next;
+		rem -= tree[next];
+	    }
+	}
+	// pos < n, because value < totals[column].
+	setCache(pos, prefix(blockTree[0], pos));
+	PrefixSumBlock block = blocks[pos];
+	int low = 0;
+	int high = block.count - 1;
+	while (low < high) {
+	    int mid = (low + high + 1) >> 1;
+	    if (block.get(mid, column) <= rem)
+		low = mid;
+	    else
+		high = mid - 1;
+	}
+	return cacheRow + low;
+    }
+
+    /**
+     * Returns the minimum value of the attribute column.
+     *
+     * @param  column the index of the attribute column.
+     * @return the minimum value of the attribute column;
+     *         <code>Integer.MAX_VALUE</code> if this table is empty.
+     */
+    public final int minimum(int column) {
+	if (column < sumColumns)
+	    throw new ArrayIndexOutOfBoundsException(column);
+	if (count == 0)
+	    return Integer.MAX_VALUE;
+	int min = Integer.MAX_VALUE;
+	for (int b = 0; b < blockCount; b++) {
+	    PrefixSumBlock block = blocks[b];
+	    if (!block.minValid)
+		block.computeMinimums(sumColumns);
+	    if (block.mins[column] < min)
+		min = block.mins[column];
+	}
+	return min + bases[column];
+    }
+
+    /**
+     * Adds the specified value to all values of the attribute column.
+     *
+     * @param column the index of the attribute column.
+     * @param delta  the value to be added.
+     */
+    public final void add(int column, int delta) {
+	if (column < sumColumns)
+	    throw new ArrayIndexOutOfBoundsException(column);
+	bases[column] += delta;
+    }
+
+    /**
+     * Appends the row to this table.
+     *
+     * @param  row the values of the row, whose length is the number of
+     *             columns.
+     * @exception IllegalArgumentException if the value of an extent column
+     *            is negative.
+     */
+    public final void append(int row[]) {
+	int b = blockCount - 1;
+	PrefixSumBlock block = (b >= 0 ? blocks[b] : null);
+	if (block == null || block.count >= BLOCK_SIZE) {
+	    block = new PrefixSumBlock(columns, sumColumns, 4);
+	    insertBlocks(blockCount, new PrefixSumBlock[]{ block }, 1);
+	    ++b;
+	}
+	block.ensureCapacity(block.count + 1);
+	int i = block.count * columns;
+	for (int c = 0; c < sumColumns; c++) {
+	    int v = row[c];
+	    if (v < 0)
+		throw new IllegalArgumentException("negative extent");
+	    block.data[i + c] = block.sums[c];
+	    block.sums[c] += v;
+	    totals[c] += v;
+	    updateBlockTree(1 + c, b, v);
+	}
+	for (int c = sumColumns; c < columns; c++) {
+	    block.data[i + c] = row[c] - bases[c];
+	}
+	block.minValid = false;
+	if (++block.count >= BLOCK_SIZE) {
+	    block.pack();
+	}
+	++count;
+	updateBlockTree(0, b, 1);
+    }
+
+    /**
+     * Appends the rows of the specified table to this table.
+     *
+     * @param table the table to be appended.
+     */
+    public final void append(PrefixSumTable table) {
+	replace(count, count, table);
+    }
+
+    /**
+     * Replaces the rows of this table with the rows of the specified table.
+     *
+     * @param  begin the beginning index of the rows to replace, inclusive.
+     * @param  end   the ending index of the rows to replace, exclusive.
+     * @param  table a replacement table, or <code>null</code> to remove
+     *               the rows.
+     * @exception ArrayIndexOutOfBoundsException if an invalid index was
+     *            given.
+     * @exception IllegalArgumentException if the columns of the table do
+     *            not match.
+     */
+    public final void replace(int begin, int end, PrefixSumTable table) {
+	if (begin < 0 || end > count || begin > end)
+	    throw new ArrayIndexOutOfBoundsException();
+	if (table != null &&
+	    (table.columns != columns || table.sumColumns != sumColumns))
+	{
+	    throw new IllegalArgumentException("columns mismatch");
+	}
+	int n = (table == null ? 0 : table.count);
+	if (n == 0 && begin == end)
+	    return;
+
+	// The blocks from fb to lb (inclusive) are rebuilt.
+	int fb, fbRow, lb, lbEnd;
+	if (blockCount == 0) {
+	    fb = fbRow = 0;
+	    lb = -1;
+	    lbEnd = 0;
+	}
+	else {
+	    if (begin < count) {
+		locate(begin);
+	    }
+	    else {
+		locate(count - 1);
+	    }
+	    fb = cacheBlock;
+	    fbRow = cacheRow;
+	    locate(end > begin ? end - 1 : (begin < count ? begin : count - 1));
+	    lb = cacheBlock;
+	    lbEnd = cacheRow + blocks[lb].count;
+	    int rows = (begin - fbRow) + n + (lbEnd - end);
+	    if (rows < BLOCK_SIZE / 2) {
+		// merges the small block with the neighbor.
+		if (lb + 1 < blockCount) {
+		    lbEnd += blocks[++lb].count;
+		}
+		else if (fb > 0) {
+		    fbRow -= blocks[--fb].count;
+		}
+	    }
+	}
+
+	int rows = (begin - fbRow) + n + (lbEnd - end);
+	int tmp[] = new int[rows * columns];
+	copyRows(fbRow, begin, tmp, 0);
+	if (n > 0) {
+	    table.copyRows(0, n, tmp, (begin - fbRow) * columns);
+	}
+	copyRows(end, lbEnd, tmp, (begin - fbRow + n) * columns);
+
+	int newCount = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	PrefixSumBlock newBlocks[] = new PrefixSumBlock[newCount];
+	int offset = 0;
+	for (int k = 0; k < newCount; k++) {
+	    int size = (rows - offset) / (newCount - k);
+	    newBlocks[k] = buildBlock(tmp, offset, size);
+	    offset += size;
+	}
+
+	for (int b = fb; b <= lb; b++) {
+	    for (int c = 0; c < sumColumns; c++) {
+		totals[c] -= blocks[b].sums[c];
+	    }
+	}
+	for (int k = 0; k < newCount; k++) {
+	    for (int c = 0; c < sumColumns; c++) {
+		totals[c] += newBlocks[k].sums[c];
+	    }
+	}
+	removeBlocks(fb, lb + 1);
+	insertBlocks(fb, newBlocks, newCount);
+	count += n - (end - begin);
+    }
+
+    /**
+     * Removes the rows of this table.
+     *
+     * @param begin the beginning index of the rows to remove, inclusive.
+     * @param end   the ending index of the rows to remove, exclusive.
+     */
+    public final void remove(int begin, int end) {
+	replace(begin, end, null);
+    }
+
+    /**
+     * Removes all rows from this table.
+     */
+    public final void removeAll() {
+	blocks = new PrefixSumBlock[4];
+	blockCount = 0;
+	count = 0;
+	for (int c = 0; c < columns; c++) {
+	    bases[c] = 0;
+	}
+	for (int c = 0; c < sumColumns; c++) {
+	    totals[c] = 0;
+	}
+	indexedBlocks = 0;
+	cacheBlock = -1;
+    }
+
+    /**
+     * Returns a new table that contains the specified rows of this table.
+     *
+     * @param  begin the beginning index of the rows, inclusive.
+     * @param  end   the ending index of the rows, exclusive.
+     * @return the new table.
+     */
+    public final PrefixSumTable subtable(int begin, int end) {
+	if (begin < 0 || end > count || begin > end)
+	    throw new ArrayIndexOutOfBoundsException();
+	PrefixSumTable table = new PrefixSumTable(columns, sumColumns);
+	if (begin == end)
+	    return table;
+	int n = end - begin;
+	int tmp[] = new int[n * columns];
+	copyRows(begin, end, tmp, 0);
+	int offset = 0;
+	while (offset < n) {
+	    int size = Math.min(BLOCK_SIZE, n - offset);
+	    PrefixSumBlock block = table.buildBlock(tmp, offset, size);
+	    table.insertBlocks(table.blockCount,
+			       new PrefixSumBlock[]{ block }, 1);
+	    for (int c = 0; c < sumColumns; c++) {
+		table.totals[c] += block.sums[c];
+	    }
+	    offset += size;
+	}
+	table.count = n;
+	return table;
+    }
+
+    /**
+     * Returns a clone of this table.
+     */
+    public Object clone() {
+	try {
+	    PrefixSumTable table = (PrefixSumTable)super.clone();
+	    table.bases  = (int[])bases.clone();
+	    table.totals = (int[])totals.clone();
+	    table.blocks = new PrefixSumBlock[Math.max(blockCount, 4)];
+	    for (int b = 0; b < blockCount; b++) {
+		table.blocks[b] = (PrefixSumBlock)blocks[b].clone();
+	    }
+	    table.blockTree = null;
+	    table.indexedBlocks = 0;
+	    table.cacheBlock = -1;
+	    table.cacheSums = null;
+	    return table;
+	}
+	catch (CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+
+
+    /**
+     * Locates the block that contains the specified row, and returns the
+     * index of the row in the block. The block is cached.
+     */
+    protected final int locate(int row) {
+	if (row < 0 || row >= count)
+	    throw new ArrayIndexOutOfBoundsException(row);
+	if (cacheSums == null) {
+	    cacheSums = new int[sumColumns];
+	    cacheBlock = -1;
+	}
+	int b = cacheBlock;
+	if (b >= 0 && row >= cacheRow) {
+	    PrefixSumBlock block = blocks[b];
+	    int blockEnd = cacheRow + block.count;
+	    if (row < blockEnd) {
+		return row - cacheRow;
+	    }
+	    if (b + 1 < blockCount && row < blockEnd + blocks[b + 1].count) {
+		for (int c = 0; c < sumColumns; c++) {
+		    cacheSums[c] += block.sums[c];
+		}
+		cacheBlock = b + 1;
+		cacheRow = blockEnd;
+		return row - blockEnd;
+	    }
+	}
+	ensureBlockTree();
+	int tree[] = blockTree[0];
+	int n = blockCount;
+	int pos = 0;
+	int rem = row;
+	for (int step = highestBit(n); step > 0; step >>= 1) {
+	    int next = pos + step;
+	    if (next <= n && tree[next] <= rem) {
+		pos = next;
+		rem -= tree[next];
+	    }
+	}
+	setCache(pos, row - rem);
+	return rem;
+    }
+
+    /**
+     * Caches the specified block whose first row is the specified row.
+     */
+    protected final void setCache(int b, int firstRow) {
+	if (cacheSums == null)
+	    cacheSums = new int[sumColumns];
+	cacheBlock = b;
+	cacheRow = firstRow;
+	for (int c = 0; c < sumColumns; c++) {
+	    cacheSums[c] = prefix(blockTree[1 + c], b);
+	}
+    }
+
+    /**
+     * Copies the rows from <code>begin</code> to <code>end-1</code> into
+     * the specified array, with the extents and the attribute values.
+     */
+    protected final void copyRows(int begin, int end, int dst[], int off) {
+	while (begin < end) {
+	    int r = locate(begin);
+	    PrefixSumBlock block = blocks[cacheBlock];
+	    int n = Math.min(block.count - r, end - begin);
+	    for (int k = 0; k < n; k++, r++) {
+		for (int c = 0; c < sumColumns; c++) {
+		    dst[off + c] = (r + 1 < block.count ?
+					block.get(r + 1, c) :
+					block.sums[c])
+				   - block.get(r, c);
+		}
+		for (int c = sumColumns; c < columns; c++) {
+		    dst[off + c] = block.get(r, c) + bases[c];
+		}
+		off += columns;
+	    }
+	    begin += n;
+	}
+    }
+
+    /**
+     * Builds a block from the <code>n</code> rows from the
+     * <code>offset</code>-th row in the specified array.
+     */
+    protected final PrefixSumBlock buildBlock(int src[], int offset, int n) {
+	PrefixSumBlock block = new PrefixSumBlock(columns, sumColumns, n);
+	int data[] = block.data;
+	int sums[] = block.sums;
+	int i = 0;
+	int j = offset * columns;
+	for (int k = 0; k < n; k++) {
+	    for (int c = 0; c < sumColumns; c++) {
+		int v = src[j + c];
+		if (v < 0)
+		    throw new IllegalArgumentException("negative extent");
+		data[i + c] = sums[c];
+		sums[c] += v;
+	    }
+	    for (int c = sumColumns; c < columns; c++) {
+		data[i + c] = src[j + c] - bases[c];
+	    }
+	    i += columns;
+	    j += columns;
+	}
+	block.count = n;
+	block.pack();
+	return block;
+    }
+
+    /**
+     * Inserts the blocks at the specified index.
+     */
+    protected final void insertBlocks(int index, PrefixSumBlock newBlocks[],
+				      int n)
+    {
+	if (n == 0)
+	    return;
+	if (blockCount + n > blocks.length) {
+	    PrefixSumBlock newArray[] =
+		new PrefixSumBlock[Math.max(blocks.length * 2, blockCount + n)];
+	    System.arraycopy(blocks, 0, newArray, 0, blockCount);
+	    blocks = newArray;
+	}
+	System.arraycopy(blocks, index, blocks, index + n, blockCount - index);
+	System.arraycopy(newBlocks, 0, blocks, index, n);
+	blockCount += n;
+	invalidateBlockTree(index);
+    }
+
+    /**
+     * Removes the blocks from <code>begin</code> to <code>end-1</code>.
+     */
+    protected final void removeBlocks(int begin, int end) {
+	if (begin >= end)
+	    return;
+	System.arraycopy(blocks, end, blocks, begin, blockCount - end);
+	for (int b = blockCount - (end - begin); b < blockCount; b++) {
+	    blocks[b] = null;
+	}
+	blockCount -= (end - begin);
+	invalidateBlockTree(begin);
+    }
+
+    /**
+     * Ensures that all blocks are indexed by <code>blockTree</code>.
+     * Only the blocks from <code>indexedBlocks</code> are indexed again.
+     */
+    protected final void ensureBlockTree() {
+	int n = blockCount;
+	if (blockTree == null || blockTree[0].length <= n) {
+	    int newTree[][] = new int[1 + sumColumns][n + (n >> 1) + 1];
+	    if (blockTree != null) {
+		for (int t = 0; t <= sumColumns; t++) {
+		    System.arraycopy(blockTree[t], 0, newTree[t], 0,
+				     Math.min(blockTree[t].length,
+					      indexedBlocks + 1));
+		}
+	    }
+	    else {
+		indexedBlocks = 0;
+	    }
+	    blockTree = newTree;
+	}
+	int k = indexedBlocks;
+	if (k >= n) {
+	    indexedBlocks = n;
+	    return;
+	}
+	for (int t = 0; t <= sumColumns; t++) {
+	    int tree[] = blockTree[t];
+	    int i, j;
+	    for (i = k + 1; i <= n; i++) {
+		PrefixSumBlock block = blocks[i - 1];
+		tree[i] = (t == 0 ? block.count : block.sums[t - 1]);
+	    }
+	    // adds the valid nodes whose parents are invalid
+	    for (i = k; i > 0; i -= (i & -i)) {
+		if ((j = i + (i & -i)) <= n)
+		    tree[j] += tree[i];
+	    }
+	    for (i = k + 1; i <= n; i++) {
+		if ((j = i + (i & -i)) <= n)
+		    tree[j] += tree[i];
+	    }
+	}
+	indexedBlocks = n;
+    }
+
+    /**
+     * Updates the specified tree for the change of the specified block.
+     */
+    protected final void updateBlockTree(int t, int b, int delta) {
+	if (blockTree == null)
+	    return;
+	int tree[] = blockTree[t];
+	int n = indexedBlocks;
+	for (int i = b + 1; i <= n; i += (i & -i)) {
+	    tree[i] += delta;
+	}
+    }
+
+    /**
+     * Invalidates the trees from the specified block, and the cache.
+     */
+    protected final void invalidateBlockTree(int b) {
+	if (b < indexedBlocks)
+	    indexedBlocks = b;
+	cacheBlock = -1;
+    }
+
+    /**
+     * Returns the sum of the first <code>k</code> values indexed by the
+     * specified tree.
+     */
+    static final int prefix(int tree[], int k) {
+	int sum = 0;
+	for (int i = k; i > 0; i -= (i & -i)) {
+	    sum += tree[i];
+	}
+	return sum;
+    }
+
+    /**
+     * Returns the highest one bit of the specified positive value.
+     */
+    static final int highestBit(int n) {
+	int bit = 1;
+	while ((bit << 1) > 0 && (bit << 1) <= n) {
+	    bit <<= 1;
+	}
+	return bit;
+    }
+}
+
+
+/**
+ * The block of the rows of the <code>PrefixSumTable</code>.
+ * <p>
+ * A block is <i>packed</i> when it is full or built at once: each column
+ * is stored as the differences from the minimum value of the column in
+ * the block, in one, two or four bytes, or as no bytes if the column is
+ * an arithmetic progression, e.g., the offsets of the rows with a
+ * constant extent. A packed block is unpacked into <code>data</code>
+ * while it is modified.
+ */
+class PrefixSumBlock implements Cloneable, java.io.Serializable {
+    /** The number of columns. */
+    int columns;
+
+    /** The number of rows in the block. */
+    int count;
+
+    /**
+     * The values of the rows, or <code>null</code> if the block is packed;
+     * the value at row <code>r</code> and column <code>c</code> is
+     * <code>data[r * columns + c]</code>. The value of an extent column is
+     * the offset from the beginning of the block.
+     */
+    int data[];
+
+    /** The packed values of the one byte columns, or <code>null</code>. */
+    byte packedBytes[];
+
+    /** The packed values of the two byte columns, or <code>null</code>. */
+    char packedChars[];
+
+    /** The packed values of the four byte columns, or <code>null</code>. */
+    int packedInts[];
+
+    /**
+     * The packing of the columns; <code>packInfo[c * 3]</code> is the
+     * minimum value of the column <code>c</code>,
+     * <code>packInfo[c * 3 + 1]</code> is the step of an arithmetic
+     * column, and <code>packInfo[c * 3 + 2]</code> is the offset of the
+     * column in the packed values of its width.
+     */
+    int packInfo[];
+
+    /**
+     * The number of bytes of a packed value of the columns, or
+     * <code>0</code> for an arithmetic column.
+     */
+    byte packWidths[];
+
+    /** The totals of the extent columns in the block. */
+    int sums[];
+
+    /** The minimum stored values of the attribute columns. */
+    int mins[];
+
+    /** True if <code>mins</code> is valid. */
+    boolean minValid;
+
+
+    PrefixSumBlock(int columns, int sumColumns, int capacity) {
+	this.columns = columns;
+	count    = 0;
+	data     = new int[Math.max(capacity, 1) * columns];
+	sums     = new int[sumColumns];
+	mins     = null;
+	minValid = false;
+    }
+
+    /** Returns the stored value at the specified row and column. */
+    final int get(int r, int c) {
+	if (data != null)
+	    return data[r * columns + c];
+	int p = c * 3;
+	switch (packWidths[c]) {
+	case 0:
+	    return packInfo[p] + r * packInfo[p + 1];
+	case 1:
+	    return packInfo[p] + (packedBytes[packInfo[p + 2] + r] & 0xff);
+	case 2:
+	    return packInfo[p] + packedChars[packInfo[p + 2] + r];
+	default:
+	    return packInfo[p] + packedInts[packInfo[p + 2] + r];
+	}
+    }
+
+    final void ensureCapacity(int rows) {
+	unpack();
+	if (data.length >= rows * columns)
+	    return;
+	int newRows = Math.min(Math.max(data.length / columns * 2, rows),
+			       PrefixSumTable.BLOCK_SIZE);
+	int newData[] = new int[newRows * columns];
+	System.arraycopy(data, 0, newData, 0, count * columns);
+	data = newData;
+    }
+
+    /** Packs the values of the columns. */
+    final void pack() {
+	if (data == null)
+	    return;
+	int n = count;
+	int info[] = new int[columns * 3];
+	byte widths[] = new byte[columns];
+	int sizes[] = new int[5];
+	for (int c = 0; c < columns; c++) {
+	    int min = Integer.MAX_VALUE;
+	    int max = Integer.MIN_VALUE;
+	    boolean arithmetic = true;
+	    int step = (n > 1 ? data[columns + c] - data[c] : 0);
+	    for (int r = 0, i = c; r < n; r++, i += columns) {
+		int v = data[i];
+		if (v < min) min = v;
+		if (v > max) max = v;
+		if (v != data[c] + r * step) arithmetic = false;
+	    }
+	    int w;
+	    if (arithmetic)
+		w = 0;
+	    else if (max - min >= 0 && max - min <= 0xff)
+		w = 1;
+	    else if (max - min >= 0 && max - min <= 0xffff)
+		w = 2;
+	    else
+		w = 4;
+	    info[c * 3]     = (w == 0 ? (n > 0 ? data[c] : 0) : min);
+	    info[c * 3 + 1] = step;
+	    info[c * 3 + 2] = sizes[w];
+	    widths[c] = (byte)w;
+	    if (w > 0) sizes[w] += n;
+	}
+	byte bytes[] = (sizes[1] > 0 ? new byte[sizes[1]] : null);
+	char chars[] = (sizes[2] > 0 ? new char[sizes[2]] : null);
+	int ints[]   = (sizes[4] > 0 ? new int[sizes[4]] : null);
+	for (int c = 0; c < columns; c++) {
+	    int w = widths[c];
+	    int min = info[c * 3];
+	    int j = info[c * 3 + 2];
+	    if (w == 0)
+		continue;
+	    for (int r = 0, i = c; r < n; r++, i += columns, j++) {
+		int v = data[i] - min;
+		switch (w) {
+		case 1:  bytes[j] = (byte)v; break;
+		case 2:  chars[j] = (char)v; break;
+		default: ints[j]  = v;       break;
+		}
+	    }
+	}
+	packedBytes = bytes;
+	packedChars = chars;
+	packedInts  = ints;
+	packInfo    = info;
+	packWidths  = widths;
+	data = null;
+    }
+
+    /** Unpacks the values of the columns into <code>data</code>. */
+    final void unpack() {
+	if (data != null)
+	    return;
+	int newData[] = new int[Math.max(count, 1) * columns];
+	for (int r = 0, i = 0; r < count; r++) {
+	    for (int c = 0; c < columns; c++) {
+		newData[i++] = get(r, c);
+	    }
+	}
+	data = newData;
+	packedBytes = null;
+	packedChars = null;
+	packedInts  = null;
+	packInfo = null;
+	packWidths = null;
+    }
+
+    final void computeMinimums(int sumColumns) {
+	if (mins == null)
+	    mins = new int[columns];
+	for (int c = sumColumns; c < columns; c++) {
+	    int min = Integer.MAX_VALUE;
+	    for (int r = 0; r < count; r++) {
+		int v = get(r, c);
+		if (v < min)
+		    min = v;
+	    }
+	    mins[c] = min;
+	}
+	minValid = true;
+    }
+
+    public Object clone() {
+	try {
+	    PrefixSumBlock block = (PrefixSumBlock)super.clone();
+	    block.data = (data == null ? null : (int[])data.clone());
+	    // the packed values are never modified.
+	    block.sums = (int[])sums.clone();
+	    block.mins = (mins == null ? null : (int[])mins.clone());
+	    return block;
+	}
+	catch (CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+}
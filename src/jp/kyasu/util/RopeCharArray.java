@@ -0,0 +1,586 @@
+/*
+ * RopeCharArray.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.util;
+
+/**
+ * The <code>RopeCharArray</code> class implements a growable sequence of
+ * characters as a rope, i.e., a height balanced (AVL) binary tree whose
+ * leaves hold chunks of characters.
+ * <p>
+ * The nodes of the tree are never modified once constructed, so that the
+ * insertion, the removal, and the <code>subarray()</code> cost
+ * O(log n), and the <code>clone()</code> costs O(1) by sharing the tree.
+ * The clones and the subarrays share the chunks of characters with
+ * this rope. The rope is suitable for very large documents, whose
+ * snapshots (e.g., for undo) must not copy the whole characters.
+ * <p>
+ * The characters of a rope are not contiguous in memory. The characters
+ * should be accessed in chunks with the
+ * <code>getChunk(int, int, int, int[])</code> method. The
+ * <code>getArray()</code> method flattens the rope into an array, which
+ * is cached until the rope is modified.
+ *
+ * @see 	jp.kyasu.util.CharStorage
+ *
+ * @version 	16 Oct 2026
+ */
+public class RopeCharArray extends CharStorage {
+    /** The root of the tree, or <code>null</code> if empty. */
+    protected RopeNode root;
+
+    /** The flattened characters, or <code>null</code> if not cached. */
+    transient protected char flat[];
+
+
+    /**
+     * The maximum length of the chunk of characters in a leaf.
+     */
+    static protected final int LEAF_SIZE = 1024;
+
+
+    /**
+     * Constructs an empty rope.
+     */
+    public RopeCharArray() {
+	root = null;
+    }
+
+    /**
+     * Constructs a rope with the contents of the string.
+     *
+     * @param string a string.
+     */
+    public RopeCharArray(String string) {
+	char array[] = new char[string.length()];
+	string.getChars(0, array.length, array, 0);
+	root = RopeNode.build(array, 0, array.length);
+    }
+
+    /**
+     * Constructs a rope with the contents of the specified storage.
+     *
+     * @param storage a <code>CharStorage</code> object.
+     */
+    public RopeCharArray(CharStorage storage) {
+	root = toNode(storage, 0, storage.length());
+    }
+
+    /**
+     * Constructs a rope with the specified root of the tree.
+     */
+    protected RopeCharArray(RopeNode root) {
+	this.root = root;
+    }
+
+
+    /**
+     * Returns the length of this rope.
+     *
+     * @return the length of this rope.
+     */
+    public final int length() {
+	return (root == null ? 0 : root.length);
+    }
+
+    /**
+     * Returns an array whose components from <code>0</code> to
+     * <code>length()-1</code> are the characters of this rope.
+     * The array is cached until this rope is modified.
+     * An application should not modify the returned array.
+     *
+     * @return the array of the characters of this rope.
+     */
+    public final char[] getArray() {
+	if (flat == null) {
+	    int count = length();
+	    flat = new char[count];
+	    getChars(0, count, flat, 0);
+	}
+	return flat;
+    }
+
+    /**
+     * Returns an array whose components from <code>begin</code> to
+     * <code>end-1</code> are the characters of this rope at the same
+     * indices. This operation flattens the rope as
+     * <code>getArray()</code> does.
+     *
+     * @see jp.kyasu.util.CharStorage#getArray(int, int)
+     */
+    public final char[] getArray(int begin, int end) {
+	if ((begin < 0) || (end > length()) || (begin > end)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	return getArray();
+    }
+
+    /**
+     * Tests if <code>getArray(begin, end)</code> can return the array
+     * without flattening this rope.
+     *
+     * @see jp.kyasu.util.CharStorage#isContiguous(int, int)
+     */
+    public final boolean isContiguous(int begin, int end) {
+	return flat != null;
+    }
+
+    /**
+     * Returns the chunk of characters in the leaf that contains the
+     * character at the specified index. This operation costs O(log n).
+     *
+     * @see jp.kyasu.util.CharStorage#getChunk(int, int, int, int[])
+     */
+    public final char[] getChunk(int index, int begin, int end, int chunk[]) {
+	if (index < begin || index >= end || begin < 0 || end > length()) {
+	    throw new ArrayIndexOutOfBoundsException(index);
+	}
+	RopeNode node = root;
+	int start = 0;
+	while (node.left != null) {
+	    int leftLength = node.left.length;
+	    if (index < start + leftLength) {
+		node = node.left;
+	    }
+	    else {
+		start += leftLength;
+		node = node.right;
+	    }
+	}
+	int limit = start + node.length;
+	chunk[CHUNK_BEGIN]  = (begin > start ? begin : start);
+	chunk[CHUNK_END]    = (end < limit ? end : limit);
+	chunk[CHUNK_OFFSET] = node.offset - start;
+	return node.data;
+    }
+
+    /**
+     * Returns the character at the specified index. This operation costs
+     * O(log n).
+     *
+     * @param  index an index into this rope.
+     * @return the character at the specified index.
+     */
+    public final char getChar(int index) {
+	if (index < 0 || index >= length()) {
+	    throw new ArrayIndexOutOfBoundsException(index);
+	}
+	RopeNode node = root;
+	while (node.left != null) {
+	    int leftLength = node.left.length;
+	    if (index < leftLength) {
+		node = node.left;
+	    }
+	    else {
+		index -= leftLength;
+		node = node.right;
+	    }
+	}
+	return node.data[node.offset + index];
+    }
+
+    /**
+     * Sets the character at the specified index of this rope to be
+     * the specified character. This operation costs O(log n).
+     *
+     * @param index the specified index.
+     * @param c     the specified character.
+     */
+    public final void setChar(int index, char c) {
+	if (index < 0 || index >= length()) {
+	    throw new ArrayIndexOutOfBoundsException(index);
+	}
+	replace(index, index + 1, new char[]{ c }, 0, 1);
+    }
+
+    /**
+     * Copies characters from this rope into the destination character
+     * array.
+     *
+     * @see jp.kyasu.util.CharStorage#getChars(int, int, char[], int)
+     */
+    public final void getChars(int srcBegin, int srcEnd,
+			       char dst[], int dstBegin)
+    {
+	if ((srcBegin < 0) || (srcEnd > length()) || (srcBegin > srcEnd)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	if (srcBegin < srcEnd) {
+	    RopeNode.getChars(root, srcBegin, srcEnd, dst, dstBegin);
+	}
+    }
+
+    /**
+     * Sets the length of this rope.
+     *
+     * @see jp.kyasu.util.CharStorage#setLength(int)
+     */
+    public final void setLength(int newLength) {
+	int count = length();
+	if (newLength < 0) {
+	    throw new ArrayIndexOutOfBoundsException(newLength);
+	}
+	if (newLength < count) {
+	    setRoot(RopeNode.prefix(root, newLength));
+	}
+	else if (newLength > count) {
+	    char zeros[] = new char[newLength - count];
+	    replace(count, count, zeros, 0, zeros.length);
+	}
+    }
+
+    /**
+     * Removes all characters from this rope.
+     */
+    public final void removeAll() {
+	setRoot(null);
+    }
+
+    /**
+     * Returns a new rope that is a subrope of this rope. The subrope
+     * shares the chunks of characters with this rope. This operation
+     * costs O(log n).
+     *
+     * @param  begin the beginning index, inclusive.
+     * @param  end   the ending index, exclusive.
+     * @return the subrope.
+     */
+    public final CharStorage subarray(int begin, int end) {
+	if ((begin < 0) || (end > length()) || (begin > end)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	return new RopeCharArray(RopeNode.prefix(RopeNode.suffix(root, begin),
+						 end - begin));
+    }
+
+    /**
+     * Replaces the characters of this rope with the characters of the
+     * specified storage. If the storage is a rope, the replacement shares
+     * the tree of the storage. This operation costs O(log n) plus the
+     * length of the replacement if the storage is not a rope.
+     *
+     * @see jp.kyasu.util.CharStorage#replace(int, int, jp.kyasu.util.CharStorage)
+     */
+    public final CharStorage replace(int begin, int end, CharStorage storage)
+    {
+	if ((begin < 0) || (end > length()) || (begin > end)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	return replace(begin, end, toNode(storage, 0, storage.length()));
+    }
+
+    /**
+     * Replaces the characters of this rope with the characters of the
+     * specified character array. The characters are copied.
+     *
+     * @see jp.kyasu.util.CharStorage#replace(int, int, char[], int, int)
+     */
+    public final CharStorage replace(int begin, int end, char carray[],
+				     int rBegin, int rEnd)
+    {
+	if ((begin < 0) || (end > length()) || (begin > end)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	if ((rBegin < 0) || (rEnd > carray.length) || (rBegin > rEnd)) {
+	    throw new ArrayIndexOutOfBoundsException();
+	}
+	return replace(begin, end, RopeNode.build(carray, rBegin, rEnd));
+    }
+
+    /**
+     * Returns a clone of this rope. The clone shares the tree with this
+     * rope. This operation costs O(1).
+     *
+     * @return a clone of this rope.
+     */
+    public Object clone() {
+	RopeCharArray rope = (RopeCharArray)super.clone();
+	rope.flat = null;
+	return rope;
+    }
+
+    /**
+     * Replaces the characters from <code>begin</code> to <code>end-1</code>
+     * with the characters of the specified tree.
+     */
+    protected final CharStorage replace(int begin, int end, RopeNode node) {
+	RopeNode head = RopeNode.prefix(root, begin);
+	RopeNode tail = RopeNode.suffix(root, end);
+	setRoot(RopeNode.join(RopeNode.join(head, node), tail));
+	return this;
+    }
+
+    /**
+     * Sets the root of the tree, and discards the flattened characters.
+     */
+    protected final void setRoot(RopeNode node) {
+	root = node;
+	flat = null;
+	++modCount;
+    }
+
+    /**
+     * Returns the tree of the characters of the specified storage.
+     */
+    protected final RopeNode toNode(CharStorage storage, int begin, int end) {
+	if (storage instanceof RopeCharArray) {
+	    RopeNode node = ((RopeCharArray)storage).root;
+	    return RopeNode.prefix(RopeNode.suffix(node, begin), end - begin);
+	}
+	int length = end - begin;
+	char carray[] = new char[length < LEAF_SIZE ? LEAF_SIZE : length];
+	storage.getChars(begin, end, carray, 0);
+	return RopeNode.wrap(carray, length);
+    }
+}
+
+
+/**
+ * The node of the tree of the <code>RopeCharArray</code>. A node is
+ * either a leaf that holds a chunk of characters, or a branch that
+ * holds two subtrees. A node is never modified once constructed.
+ * <p>
+ * The chunk of characters of a leaf may be shared by the other leaves.
+ * The <code>fill</code> of a leaf holds the number of components of the
+ * chunk array used by any leaf, so that a leaf whose chunk ends at the
+ * <code>fill</code> can be extended in place.
+ */
+final
+class RopeNode implements java.io.Serializable {
+    final RopeNode left;
+    final RopeNode right;
+    final char data[];
+    final int offset;
+    final int fill[];
+    final int length;
+    final int height;
+
+    RopeNode(char data[], int offset, int length, int fill[]) {
+	this.left   = null;
+	this.right  = null;
+	this.data   = data;
+	this.offset = offset;
+	this.fill   = fill;
+	this.length = length;
+	this.height = 0;
+    }
+
+    RopeNode(RopeNode left, RopeNode right) {
+	this.left   = left;
+	this.right  = right;
+	this.data   = null;
+	this.offset = 0;
+	this.fill   = null;
+	this.length = left.length + right.length;
+	this.height = Math.max(left.height, right.height) + 1;
+    }
+
+    static int height(RopeNode node) {
+	return (node == null ? -1 : node.height);
+    }
+
+    /**
+     * Builds a balanced tree of the characters. The characters are copied.
+     */
+    static RopeNode build(char carray[], int begin, int end) {
+	int length = end - begin;
+	if (length <= 0)
+	    return null;
+	char copy[] = new char[length < RopeCharArray.LEAF_SIZE ?
+					RopeCharArray.LEAF_SIZE : length];
+	System.arraycopy(carray, begin, copy, 0, length);
+	return wrap(copy, length);
+    }
+
+    /**
+     * Builds a balanced tree of the first <code>length</code> characters
+     * of the array owned by the tree.
+     */
+    static RopeNode wrap(char carray[], int length) {
+	if (length <= 0)
+	    return null;
+	if (length <= RopeCharArray.LEAF_SIZE)
+	    return new RopeNode(carray, 0, length, new int[]{ length });
+	return buildShared(carray, 0, length);
+    }
+
+    /**
+     * Builds a balanced tree of the characters. The characters are
+     * shared, and must not be modified.
+     */
+    static RopeNode buildShared(char carray[], int begin, int end) {
+	int length = end - begin;
+	if (length <= 0)
+	    return null;
+	if (length <= RopeCharArray.LEAF_SIZE)
+	    return new RopeNode(carray, begin, length, null);
+	int leaves = (length + RopeCharArray.LEAF_SIZE - 1) /
+						RopeCharArray.LEAF_SIZE;
+	int mid = begin + (leaves / 2) * RopeCharArray.LEAF_SIZE;
+	return new RopeNode(buildShared(carray, begin, mid),
+			    buildShared(carray, mid, end));
+    }
+
+    /**
+     * Concatenates two trees. This operation costs O(|h(l) - h(r)|).
+     */
+    static RopeNode join(RopeNode l, RopeNode r) {
+	if (l == null || l.length == 0)
+	    return r;
+	if (r == null || r.length == 0)
+	    return l;
+	if (l.left == null && r.left == null) {
+	    RopeNode leaf = joinLeaves(l, r);
+	    if (leaf != null)
+		return leaf;
+	}
+	int hl = l.height;
+	int hr = r.height;
+	if (hl > hr + 1) {
+	    return balance(l.left, join(l.right, r));
+	}
+	else if (hr > hl + 1) {
+	    return balance(join(l, r.left), r.right);
+	}
+	else {
+	    return new RopeNode(l, r);
+	}
+    }
+
+    /**
+     * Merges two small leaves, or returns <code>null</code> if the merged
+     * leaf becomes too large. If the chunk of the left leaf ends at the
+     * fill of the chunk array, the characters of the right leaf are
+     * appended in place.
+     */
+    static RopeNode joinLeaves(RopeNode l, RopeNode r) {
+	int length = l.length + r.length;
+	if (length > RopeCharArray.LEAF_SIZE)
+	    return null;
+	int fill[] = l.fill;
+	if (fill != null &&
+	    l.offset + l.length == fill[0] &&
+	    fill[0] + r.length <= l.data.length)
+	{
+	    System.arraycopy(r.data, r.offset, l.data, fill[0], r.length);
+	    fill[0] += r.length;
+	    return new RopeNode(l.data, l.offset, length, fill);
+	}
+	char data[] = new char[RopeCharArray.LEAF_SIZE];
+	System.arraycopy(l.data, l.offset, data, 0, l.length);
+	System.arraycopy(r.data, r.offset, data, l.length, r.length);
+	return new RopeNode(data, 0, length, new int[]{ length });
+    }
+
+    /**
+     * Constructs a branch of two trees whose heights differ at most two,
+     * with a rotation if needed.
+     */
+    static RopeNode balance(RopeNode l, RopeNode r) {
+	int hl = height(l);
+	int hr = height(r);
+	if (l == null)
+	    return r;
+	if (r == null)
+	    return l;
+	if (hl > hr + 1) {
+	    if (height(l.left) >= height(l.right)) {
+		return new RopeNode(l.left, join(l.right, r));
+	    }
+	    else {
+		RopeNode x = l.right;
+		return new RopeNode(join(l.left, x.left), join(x.right, r));
+	    }
+	}
+	else if (hr > hl + 1) {
+	    if (height(r.right) >= height(r.left)) {
+		return new RopeNode(join(l, r.left), r.right);
+	    }
+	    else {
+		RopeNode x = r.left;
+		return new RopeNode(join(l, x.left), join(x.right, r.right));
+	    }
+	}
+	return new RopeNode(l, r);
+    }
+
+    /**
+     * Returns the tree of the first <code>index</code> characters.
+     */
+    static RopeNode prefix(RopeNode node, int index) {
+	if (node == null || index <= 0)
+	    return null;
+	if (index >= node.length)
+	    return node;
+	if (node.left == null)
+	    return new RopeNode(node.data, node.offset, index, node.fill);
+	int leftLength = node.left.length;
+	if (index <= leftLength)
+	    return prefix(node.left, index);
+	return join(node.left, prefix(node.right, index - leftLength));
+    }
+
+    /**
+     * Returns the tree of the characters from <code>index</code>.
+     */
+    static RopeNode suffix(RopeNode node, int index) {
+	if (node == null || index >= node.length)
+	    return null;
+	if (index <= 0)
+	    return node;
+	if (node.left == null)
+	    return new RopeNode(node.data, node.offset + index,
+				node.length - index, node.fill);
+	int leftLength = node.left.length;
+	if (index >= leftLength)
+	    return suffix(node.right, index - leftLength);
+	return join(suffix(node.left, index), node.right);
+    }
+
+    /**
+     * Copies the characters of the tree into the destination array.
+     */
+    static void getChars(RopeNode node, int begin, int end,
+			 char dst[], int dstBegin)
+    {
+	while (node.left != null) {
+	    int leftLength = node.left.length;
+	    if (end <= leftLength) {
+		node = node.left;
+	    }
+	    else if (begin >= leftLength) {
+		begin -= leftLength;
+		end -= leftLength;
+		node = node.right;
+	    }
+	    else {
+		getChars(node.left, begin, leftLength, dst, dstBegin);
+		dstBegin += leftLength - begin;
+		begin = 0;
+		end -= leftLength;
+		node = node.right;
+	    }
+	}
+	System.arraycopy(node.data, node.offset + begin, dst, dstBegin,
+			 end - begin);
+    }
+}
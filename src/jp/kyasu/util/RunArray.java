@@ -27,6 +27,14 @@ import java.util.Enumeration;
 /**
  * The <code>RunArray</code> class implements a space-efficient growable
  * array that tends to be constant over long runs of the possible indices.
+ * <p>
+ * The run at the specified index is found in O(log runs) with the prefix
+ * sum index (a Fenwick tree) of the run lengths, so that the random
+ * access to the array that has many runs (e.g., the text styles of a
+ * syntax colored text) is efficient. The index is maintained lazily;
+ * the changes of the run lengths update the index in O(log runs), and
+ * the insertions and removals of the runs invalidate the index from
+ * the first changed run.
  *
  * @version 	17 Jun 1998
  * @author 	Kazuki YASUMATSU
@@ -61,6 +69,27 @@ public class RunArray implements Cloneable, java.io.Serializable {
      */
     protected int cacheRunStart;
 
+    /**
+     * The prefix sum index (a Fenwick tree) of <code>runs</code>. The
+     * <code>runTree[i]</code> (<code>i &gt;= 1</code>) is the sum of the
+     * run lengths from <code>i-(i&amp;-i)</code> to <code>i-1</code>.
+     */
+    transient protected int runTree[];
+
+    /**
+     * The number of the leading runs whose prefix sum index is valid,
+     * i.e., <code>runTree[1]</code> to <code>runTree[indexedRuns]</code>
+     * are valid.
+     */
+    transient protected int indexedRuns;
+
+    /**
+     * The number of times this array has been modified.
+     *
+     * @see jp.kyasu.util.RunArrayCursor
+     */
+    transient protected int modCount;
+
 
     /**
      * Constructs an empty array.
@@ -193,6 +222,16 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	return new RunArrayEnumerator(this, begin, end);
     }
 
+    /**
+     * Returns a cursor that traverses the runs of this array.
+     *
+     * @return a cursor that traverses the runs of this array.
+     * @see    jp.kyasu.util.RunArrayCursor
+     */
+    public final RunArrayCursor cursor() {
+	return new RunArrayCursor(this);
+    }
+
     /**
      * Returns the component type of this array.
      *
@@ -236,10 +275,8 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	if (begin == end) {
 	    return (Object[])values.subarray(0, 0).getTrimmedArray();
 	}
-	int runAndOffset[] = getRunAndOffset(begin);
-	int bRun = runAndOffset[0];
-	runAndOffset = getRunAndOffset(end - 1);
-	int eRun = runAndOffset[0];
+	int bRun = findRun(begin);
+	int eRun = findRun(end - 1);
 	return (Object[])values.subarray(bRun, eRun + 1).getTrimmedArray();
     }
 
@@ -258,9 +295,7 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	if (values.count == 1) {
 	    return values.get(0);
 	}
-	int runAndOffset[] = getRunAndOffset(index);
-	int run = runAndOffset[0];
-	return values.get(run);
+	return values.get(findRun(index));
     }
 
     /**
@@ -279,10 +314,8 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	if (runs.count == 1) {
 	    return runs.getInt(0) - index;
 	}
-	int runAndOffset[] = getRunAndOffset(index);
-	int run = runAndOffset[0];
-	int offset = runAndOffset[1];
-	return runs.getInt(run) - offset;
+	int run = findRun(index);
+	return runs.getInt(run) - (index - cacheRunStart);
     }
 
     /**
@@ -301,8 +334,8 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	if (runs.count == 1) {
 	    return index;
 	}
-	int runAndOffset[] = getRunAndOffset(index);
-	return runAndOffset[1];
+	findRun(index);
+	return index - cacheRunStart;
     }
 
     /**
@@ -342,11 +375,13 @@ public class RunArray implements Cloneable, java.io.Serializable {
      * Removes all components from this array and sets its length to zero.
      */
     public final void removeAll() {
+	++modCount;
 	runs.removeAll();
 	values.removeAll();
 	count = 0;
 	cacheRunIndex = 0;
 	cacheRunStart = 0;
+	indexedRuns = 0;
     }
 
     /**
@@ -408,12 +443,10 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	    return new RunArray();
 	}
 
-	int runAndOffset[] = getRunAndOffset(beginIndex);
-	int bRun    = runAndOffset[0];
-	int bOffset = runAndOffset[1];
-	runAndOffset = getRunAndOffset(endIndex - 1);
-	int eRun    = runAndOffset[0];
-	int eOffset = runAndOffset[1];
+	int bRun    = findRun(beginIndex);
+	int bOffset = beginIndex - cacheRunStart;
+	int eRun    = findRun(endIndex - 1);
+	int eOffset = (endIndex - 1) - cacheRunStart;
 	VArray subRuns   = runs.subarray(bRun, eRun + 1);
 	VArray subValues = values.subarray(bRun, eRun + 1);
 	if (bRun == eRun) {
@@ -438,14 +471,16 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	if (array.count == 0) {
 	    return this;
 	}
+	++modCount;
 	if (count == 0) {
 	    copyFrom(array);
 	    return this;
 	}
 
 	int last = runs.count - 1;
-	if (values.get(last).equals(array.values.get(0))) {
+	if (equalValues(values.get(last), array.values.get(0))) {
 	    runs.setInt(last, runs.getInt(last) + array.runs.getInt(0));
+	    updateRunTree(last, array.runs.getInt(0));
 	    if (array.runs.count > 1) {
 		runs.append(array.runs, 1, array.runs.count);
 		values.append(array.values, 1, array.values.count);
@@ -467,9 +502,11 @@ public class RunArray implements Cloneable, java.io.Serializable {
      * @return this array.
      */
     public final RunArray append(Object obj) {
+	++modCount;
 	int last = runs.count - 1;
-	if (last >= 0 && values.get(last).equals(obj)) {
+	if (last >= 0 && equalValues(values.get(last), obj)) {
 	    runs.setInt(last, runs.getInt(last) + 1);
+	    updateRunTree(last, 1);
 	}
 	else {
 	    runs.append(1);
@@ -490,9 +527,11 @@ public class RunArray implements Cloneable, java.io.Serializable {
      * @return this array.
      */
     public final RunArray append(int length, Object defObj) {
+	++modCount;
 	int last = runs.count - 1;
 	if (last >= 0) {
 	    runs.setInt(last, runs.getInt(last) + length);
+	    updateRunTree(last, length);
 	}
 	else {
 	    runs.append(length);
@@ -539,13 +578,17 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	if (begin == end && array.count == 0) {
 	    return this;
 	}
+	if (array.count == 0 && array.runs.count > 0) {
+	    // an empty array may have a run of zero length.
+	    array = new RunArray();
+	}
+	++modCount;
 
 	if ((begin == 0 && end == count) || count == 0) { // replace all
 	    copyFrom(array);
 	    return this;
 	}
 
-	int runAndOffset[];
 	int bRun    = -1;
 	int bOffset = 0;
 	int eRun    = -1;
@@ -553,19 +596,25 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	int saveCacheRunIndex = 0;
 	int saveCacheRunStart = 0;
 	if (begin > 0) {
-	    runAndOffset = getRunAndOffset(begin - 1);
+	    bRun    = findRun(begin - 1);
+	    bOffset = (begin - 1) - cacheRunStart;
 	    saveCacheRunIndex = cacheRunIndex;
 	    saveCacheRunStart = cacheRunStart;
-	    bRun    = runAndOffset[0];
-	    bOffset = runAndOffset[1];
 	}
 	if (end < count) {
-	    runAndOffset = getRunAndOffset(end);
-	    eRun    = runAndOffset[0];
-	    eOffset = runAndOffset[1];
+	    eRun    = findRun(end);
+	    eOffset = end - cacheRunStart;
 	}
 
+	int runCount = runs.count;
 	replace(bRun, bOffset, eRun, eOffset, array.runs, array.values);
+	if (bRun >= 0 && bRun == eRun && runs.count == runCount) {
+	    // only the length of the run changed
+	    updateRunTree(bRun, array.count - (end - begin));
+	}
+	else {
+	    invalidateRunTree(bRun < 0 ? 0 : bRun);
+	}
 
 	count += array.count - (end - begin);
 	cacheRunIndex = saveCacheRunIndex;
@@ -604,6 +653,8 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	    ra.count  = count;
 	    ra.cacheRunIndex = cacheRunIndex;
 	    ra.cacheRunStart = cacheRunStart;
+	    ra.runTree = null;
+	    ra.indexedRuns = 0;
 	    return ra;
 	}
 	catch (CloneNotSupportedException e) {
@@ -614,29 +665,123 @@ public class RunArray implements Cloneable, java.io.Serializable {
 
     /** Returns the run length and the run offset at the specified index. */
     protected final int[] getRunAndOffset(int index) {
-	int runIndex, limit, offset, runStart, runLength;
+	int runIndex = findRun(index);
+	return new int[]{ runIndex, index - cacheRunStart };
+    }
 
-	if (index >= cacheRunStart) {
-	    runIndex = cacheRunIndex;
-	    runStart = cacheRunStart;
+    /**
+     * Returns the index of the run at the specified index. The index of
+     * the run and the starting index of the run are cached into
+     * <code>cacheRunIndex</code> and <code>cacheRunStart</code>.
+     * This operation costs O(1) if the run is the cached run or the next
+     * run; otherwise O(log runs).
+     */
+    protected final int findRun(int index) {
+	int limit = runs.count - 1;
+	int iruns[] = (int[])runs.array;
+	int runIndex = cacheRunIndex;
+	int runStart = cacheRunStart;
+	if (index >= runStart && runIndex <= limit) {
+	    int runEnd = runStart + iruns[runIndex];
+	    if (index < runEnd || runIndex == limit) {
+		return runIndex;
+	    }
+	    if (index < runEnd + iruns[runIndex + 1]) {
+		cacheRunIndex = runIndex + 1;
+		cacheRunStart = runEnd;
+		return runIndex + 1;
+	    }
 	}
-	else {
-	    runIndex = 0;
-	    runStart = 0;
+
+	ensureRunTree();
+	int tree[] = runTree;
+	int step = 1;
+	while ((step << 1) <= limit + 1) {
+	    step <<= 1;
 	}
-	limit = runs.count - 1;
-	offset = index - runStart;
-	int iruns[] = (int[])runs.array;
-	while (runIndex < limit &&
-	       (runLength = iruns[runIndex]) <= offset)
-	{
-	    offset -= runLength;
-	    runIndex++;
-	    runStart += runLength;
+	runIndex = 0;
+	int offset = index;
+	for (; step > 0; step >>= 1) {
+	    int next = runIndex + step;
+	    if (next <= limit + 1 && tree[next] <= offset) {
+		runIndex = next;
+		offset -= tree[next];
+	    }
+	}
+	if (runIndex > limit) { // the index is over the count
+	    runIndex = limit;
+	    offset += iruns[limit];
 	}
 	cacheRunIndex = runIndex;
-	cacheRunStart = runStart;
-	return new int[]{ runIndex, offset };
+	cacheRunStart = index - offset;
+	return runIndex;
+    }
+
+    /**
+     * Makes the prefix sum index of <code>runs</code> valid. This
+     * operation costs proportional to the number of the runs from
+     * the first invalidated run.
+     */
+    protected final void ensureRunTree() {
+	int n = runs.count;
+	if (runTree == null || runTree.length <= n) {
+	    int newTree[] = new int[n + (n >> 1) + 1];
+	    if (runTree != null) {
+		System.arraycopy(runTree, 0, newTree, 0,
+				 Math.min(runTree.length, indexedRuns + 1));
+	    }
+	    runTree = newTree;
+	}
+	int k = indexedRuns;
+	if (k >= n) {
+	    indexedRuns = n;
+	    return;
+	}
+	int tree[] = runTree;
+	int iruns[] = (int[])runs.array;
+	int i, j;
+	for (i = k + 1; i <= n; i++) {
+	    tree[i] = iruns[i - 1];
+	}
+	// adds the valid nodes whose parents are invalid
+	for (i = k; i > 0; i -= (i & -i)) {
+	    if ((j = i + (i & -i)) <= n)
+		tree[j] += tree[i];
+	}
+	for (i = k + 1; i <= n; i++) {
+	    if ((j = i + (i & -i)) <= n)
+		tree[j] += tree[i];
+	}
+	indexedRuns = n;
+    }
+
+    /**
+     * Updates the prefix sum index of <code>runs</code> for the change
+     * of the length of the specified run.
+     */
+    protected final void updateRunTree(int runIndex, int delta) {
+	int n = indexedRuns;
+	for (int i = runIndex + 1; i <= n; i += (i & -i)) {
+	    runTree[i] += delta;
+	}
+    }
+
+    /**
+     * Invalidates the prefix sum index of <code>runs</code> from the
+     * specified run.
+     */
+    protected final void invalidateRunTree(int runIndex) {
+	if (runIndex < indexedRuns)
+	    indexedRuns = runIndex;
+    }
+
+    /**
+     * Tests if the values of two runs are equal, so that the runs are
+     * merged. The identical values, such as the interned styles, are not
+     * compared by <code>equals()</code>.
+     */
+    static protected final boolean equalValues(Object v1, Object v2) {
+	return (v1 == v2 || v1.equals(v2));
     }
 
     /**
@@ -672,7 +817,7 @@ public class RunArray implements Cloneable, java.io.Serializable {
 		    values.remove(0, eRun);
 		}
 	    }
-	    else if (rValues.get(rrCount - 1).equals(values.get(eRun))) {
+	    else if (equalValues(rValues.get(rrCount - 1), values.get(eRun))) {
 		// merge
 		runs.setInt(eRun, eCount + rRuns.getInt(rrCount - 1));
 		if (rrCount == 1) {
@@ -702,7 +847,7 @@ public class RunArray implements Cloneable, java.io.Serializable {
 		    values.remove(bRun + 1, rcount - (bRun + 1));
 		}
 	    }
-	    else if (values.get(bRun).equals(rValues.get(0))) {
+	    else if (equalValues(values.get(bRun), rValues.get(0))) {
 		// merge
 		runs.setInt(bRun, bOffset + 1 + rRuns.getInt(0));
 		if (rrCount == 1) {
@@ -734,7 +879,7 @@ public class RunArray implements Cloneable, java.io.Serializable {
 		runs.setInt(bRun, bCount + eCount);
 	    }
 	    else {
-		if (bRun+1 < eRun && values.get(bRun).equals(values.get(eRun)))
+		if (bRun+1 < eRun && equalValues(values.get(bRun), values.get(eRun)))
 		{
 		    // merge
 		    runs.setInt(bRun, bCount + eCount);
@@ -755,9 +900,11 @@ public class RunArray implements Cloneable, java.io.Serializable {
 
 	if (bRun == eRun) {
 	    Object val = values.get(bRun);
-	    boolean headEqual = val.equals(rValues.get(0));
+	    boolean headEqual = equalValues(val, rValues.get(0));
 	    boolean tailEqual =
-		(rrCount == 1 ? headEqual : val.equals(rValues.get(rrCount-1)));
+		(rrCount == 1 ?
+			headEqual :
+			equalValues(val, rValues.get(rrCount - 1)));
 	    if (headEqual) {
 		if (tailEqual) {
 		    if (rrCount == 1) {
@@ -815,8 +962,9 @@ public class RunArray implements Cloneable, java.io.Serializable {
 	    }
 	}
 	else {
-	    boolean headEqual = values.get(bRun).equals(rValues.get(0));
-	    boolean tailEqual = values.get(eRun).equals(rValues.get(rrCount-1));
+	    boolean headEqual = equalValues(values.get(bRun), rValues.get(0));
+	    boolean tailEqual =
+		equalValues(values.get(eRun), rValues.get(rrCount - 1));
 	    if (headEqual) {
 		if (tailEqual) {
 		    if (rrCount == 1) {
@@ -827,7 +975,7 @@ public class RunArray implements Cloneable, java.io.Serializable {
 		    else { // rrCount >= 2
 			runs.setInt(bRun, bCount + rRuns.getInt(0));
 			runs.setInt(eRun, eCount + rRuns.getInt(rrCount - 1));
-			if (rrCount > 2) {
+			if (rrCount > 2 || bRun + 1 < eRun) {
 			    runs.replace(bRun + 1, eRun, rRuns, 1, rrCount - 1);
 			    values.replace(bRun+1, eRun, rValues, 1, rrCount-1);
 			}
@@ -859,11 +1007,13 @@ public class RunArray implements Cloneable, java.io.Serializable {
 
     /** Copies into the contents of this array from the specified array. */
     protected final void copyFrom(RunArray array) {
+	++modCount;
 	runs.replace(0, runs.count, array.runs);
 	values.replace(0, values.count, array.values);
 	count = array.count;
 	cacheRunIndex = array.cacheRunIndex;
 	cacheRunStart = array.cacheRunStart;
+	indexedRuns = 0;
     }
 
 
@@ -1024,8 +1174,8 @@ class RunArrayEnumerator implements Enumeration {
     RunArrayEnumerator(RunArray run, int begin, int end) {
 	this.run = run;
 	if (begin < end) {
-	    runIndex = run.getRunAndOffset(begin)[0];
-	    runLimit = run.getRunAndOffset(end - 1)[0];
+	    runIndex = run.findRun(begin);
+	    runLimit = run.findRun(end - 1);
 	}
 	else {
 	    runIndex = 0;
@@ -0,0 +1,173 @@
+/*
+ * RunArrayCursor.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.util;
+
+/**
+ * The <code>RunArrayCursor</code> class implements a reusable cursor
+ * that traverses the runs of a <code>RunArray</code>. The cursor is
+ * positioned at a run with the <code>seek()</code> method and is advanced
+ * to the next run with the <code>next()</code> method; the range and the
+ * value of the current run are stored in the public fields. For example:
+ * <pre>
+ *     RunArrayCursor cursor = runArray.cursor();
+ *     cursor.seek(begin);
+ *     do {
+ *         int runEnd = Math.min(cursor.runEnd, end);
+ *         ... cursor.value ...
+ *     } while (cursor.runEnd < end && cursor.next());
+ * </pre>
+ * Seeking the index in the current run or in the next run costs O(1),
+ * and neither operation allocates any object. If the run array is
+ * modified, the next <code>seek()</code> searches the run again.
+ *
+ * @see 	jp.kyasu.util.RunArray
+ *
+ * @version 	16 Oct 2026
+ */
+public class RunArrayCursor {
+    /** The run array to be traversed. */
+    protected RunArray array;
+
+    /** The index of the current run, or <code>-1</code> if not positioned. */
+    protected int runIndex;
+
+    /** The modification count of the run array when positioned. */
+    protected int modCount;
+
+    /** The beginning index of the current run, inclusive. */
+    public int runStart;
+
+    /** The ending index of the current run, exclusive. */
+    public int runEnd;
+
+    /** The value of the current run. */
+    public Object value;
+
+
+    /**
+     * Constructs a cursor over the specified run array.
+     *
+     * @param array the run array to be traversed.
+     */
+    public RunArrayCursor(RunArray array) {
+	setRunArray(array);
+    }
+
+
+    /**
+     * Returns the run array traversed by this cursor.
+     *
+     * @return the run array traversed by this cursor.
+     */
+    public final RunArray getRunArray() {
+	return array;
+    }
+
+    /**
+     * Sets the run array traversed by this cursor, and resets this cursor.
+     *
+     * @param array the run array to be traversed.
+     */
+    public final void setRunArray(RunArray array) {
+	if (array == null)
+	    throw new NullPointerException();
+	this.array = array;
+	reset();
+    }
+
+    /**
+     * Resets this cursor, so that this cursor is not positioned.
+     */
+    public final void reset() {
+	runIndex = -1;
+	runStart = runEnd = 0;
+	value = null;
+    }
+
+    /**
+     * Positions this cursor at the run that contains the specified index.
+     *
+     * @param     index an index into the run array.
+     * @exception ArrayIndexOutOfBoundsException if an invalid index was
+     *            given.
+     */
+    public final void seek(int index) {
+	if (index < 0 || index >= array.count) {
+	    throw new ArrayIndexOutOfBoundsException(index);
+	}
+	if (runIndex >= 0 && modCount == array.modCount && index >= runStart) {
+	    if (index < runEnd) {
+		return;
+	    }
+	    if (runIndex + 1 < array.runs.count &&
+		index < runEnd + ((int[])array.runs.array)[runIndex + 1])
+	    {
+		next();
+		return;
+	    }
+	}
+	runIndex = array.findRun(index);
+	runStart = array.cacheRunStart;
+	runEnd   = runStart + ((int[])array.runs.array)[runIndex];
+	value    = ((Object[])array.values.array)[runIndex];
+	modCount = array.modCount;
+    }
+
+    /**
+     * Advances this cursor to the next run.
+     *
+     * @return <code>true</code> if this cursor is advanced to the next run;
+     *         <code>false</code> if this cursor is at the last run or is
+     *         not positioned.
+     */
+    public final boolean next() {
+	if (runIndex < 0 || modCount != array.modCount ||
+	    runIndex + 1 >= array.runs.count)
+	{
+	    return false;
+	}
+	++runIndex;
+	runStart = runEnd;
+	runEnd  += ((int[])array.runs.array)[runIndex];
+	value    = ((Object[])array.values.array)[runIndex];
+	return true;
+    }
+
+    /**
+     * Moves this cursor back to the previous run.
+     *
+     * @return <code>true</code> if this cursor is moved to the previous run;
+     *         <code>false</code> if this cursor is at the first run or is
+     *         not positioned.
+     */
+    public final boolean previous() {
+	if (runIndex <= 0 || modCount != array.modCount) {
+	    return false;
+	}
+	--runIndex;
+	runEnd    = runStart;
+	runStart -= ((int[])array.runs.array)[runIndex];
+	value     = ((Object[])array.values.array)[runIndex];
+	return true;
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * SortedIntMap.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+package jp.kyasu.util;
+
+import java.util.Hashtable;
+
+/**
+ * The <code>SortedIntMap</code> class implements a map whose keys are
+ * <code>int</code> values kept in ascending order. The map is used for
+ * objects attached to the positions of a sequence, such as the text
+ * attachments of the <code>jp.kyasu.graphics.Text</code>.
+ * <p>
+ * The keys are stored in an array of <code>int</code> without boxing,
+ * and a key is searched with the binary search. When the sequence is
+ * edited, the keys after the edit point are shifted with the
+ * <code>shift()</code> method. The shift is applied lazily: the map
+ * remembers a pending delta for the keys after a split point, and the
+ * subsequent shifts only adjust the keys between the old and the new
+ * split point. Thus the successive edits around the same position cost
+ * O(log n).
+ *
+ * @version 	16 Oct 2026
+ */
+public class SortedIntMap implements Cloneable, java.io.Serializable {
+    /**
+     * The array buffer into which the keys are stored. The keys from
+     * <code>shiftIndex</code> are stored without the pending delta.
+     */
+    protected int keys[];
+
+    /**
+     * The array buffer into which the values are stored.
+     */
+    protected Object values[];
+
+    /**
+     * The number of entries in the map.
+     */
+    protected int count;
+
+    /**
+     * The index of the first entry whose key is not added the pending
+     * delta.
+     */
+    protected int shiftIndex;
+
+    /**
+     * The pending delta that should be added to the keys from
+     * <code>shiftIndex</code>.
+     */
+    protected int shiftDelta;
+
+
+    /**
+     * Constructs an empty map.
+     */
+    public SortedIntMap() {
+	this(4);
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity.
+     *
+     * @param initialCapacity the initial capacity of the map.
+     */
+    public SortedIntMap(int initialCapacity) {
+	if (initialCapacity <= 0)
+	    initialCapacity = 1;
+	keys       = new int[initialCapacity];
+	values     = new Object[initialCapacity];
+	count      = 0;
+	shiftIndex = 0;
+	shiftDelta = 0;
+    }
+
+
+    /**
+     * Returns the number of entries in this map.
+     *
+     * @return the number of entries in this map.
+     */
+    public final int size() {
+	return count;
+    }
+
+    /**
+     * Tests if this map has no entries.
+     *
+     * @return <code>true</code> if this map has no entries;
+     *         <code>false</code> otherwise.
+     */
+    public final boolean isEmpty() {
+	return count == 0;
+    }
+
+    /**
+     * Returns the key of the entry at the specified position. The entries
+     * are ordered by their keys.
+     *
+     * @param  i the position of the entry, <code>0 &lt;= i &lt; size()</code>.
+     * @return the key of the entry.
+     */
+    public final int keyAt(int i) {
+	if (i >= count)
+	    throw new ArrayIndexOutOfBoundsException(i);
+	return (i < shiftIndex ? keys[i] : keys[i] + shiftDelta);
+    }
+
+    /**
+     * Returns the value of the entry at the specified position. The
+     * entries are ordered by their keys.
+     *
+     * @param  i the position of the entry, <code>0 &lt;= i &lt; size()</code>.
+     * @return the value of the entry.
+     */
+    public final Object valueAt(int i) {
+	if (i >= count)
+	    throw new ArrayIndexOutOfBoundsException(i);
+	return values[i];
+    }
+
+    /**
+     * Sets the value of the entry at the specified position.
+     *
+     * @param i     the position of the entry, <code>0 &lt;= i &lt; size()</code>.
+     * @param value the value.
+     */
+    public final void setValueAt(int i, Object value) {
+	if (i >= count)
+	    throw new ArrayIndexOutOfBoundsException(i);
+	if (value == null)
+	    throw new NullPointerException();
+	values[i] = value;
+    }
+
+    /**
+     * Returns the position of the first entry whose key is greater than
+     * or equal to the specified key.
+     *
+     * @param  key the key.
+     * @return the position of the first entry whose key is greater than or
+     *         equal to the key; <code>size()</code> if there is no such entry.
+     */
+    public final int ceilingIndex(int key) {
+	int low = 0;
+	int high = count;
+	while (low < high) {
+	    int mid = (low + high) >> 1;
+	    int k = (mid < shiftIndex ? keys[mid] : keys[mid] + shiftDelta);
+	    if (k < key)
+		low = mid + 1;
+	    else
+		high = mid;
+	}
+	return low;
+    }
+
+    /**
+     * Returns the position of the entry with the specified key.
+     *
+     * @param  key the key.
+     * @return the position of the entry; <code>-1</code> if this map does
+     *         not contain the key.
+     */
+    public final int indexOf(int key) {
+	int i = ceilingIndex(key);
+	return (i < count && keyAt(i) == key ? i : -1);
+    }
+
+    /**
+     * Tests if this map contains the specified key.
+     *
+     * @param  key the key.
+     * @return <code>true</code> if this map contains the key;
+     *         <code>false</code> otherwise.
+     */
+    public final boolean containsKey(int key) {
+	return indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped.
+     *
+     * @param  key the key.
+     * @return the value to which the key is mapped; <code>null</code> if
+     *         this map does not contain the key.
+     */
+    public final Object get(int key) {
+	if (count == 0)
+	    return null;
+	int i = indexOf(key);
+	return (i < 0 ? null : values[i]);
+    }
+
+    /**
+     * Maps the specified key to the specified value.
+     *
+     * @param  key   the key.
+     * @param  value the value.
+     * @return the previous value of the key; <code>null</code> if this map
+     *         did not contain the key.
+     */
+    public Object put(int key, Object value) {
+	if (value == null)
+	    throw new NullPointerException();
+	int i = ceilingIndex(key);
+	if (i < count && keyAt(i) == key) {
+	    Object old = values[i];
+	    values[i] = value;
+	    return old;
+	}
+	ensureCapacity(count + 1);
+	if (i < count) {
+	    System.arraycopy(keys,   i, keys,   i + 1, count - i);
+	    System.arraycopy(values, i, values, i + 1, count - i);
+	}
+	if (i < shiftIndex) {
+	    keys[i] = key;
+	    ++shiftIndex;
+	}
+	else {
+	    keys[i] = key - shiftDelta;
+	}
+	values[i] = value;
+	++count;
+	return null;
+    }
+
+    /**
+     * Removes the specified key from this map.
+     *
+     * @param  key the key.
+     * @return the value of the removed key; <code>null</code> if this map
+     *         did not contain the key.
+     */
+    public Object remove(int key) {
+	int i = indexOf(key);
+	if (i < 0)
+	    return null;
+	Object old = values[i];
+	removeEntries(i, i + 1);
+	return old;
+    }
+
+    /**
+     * Removes the keys in the specified range from this map.
+     *
+     * @param begin the beginning key of the range, inclusive.
+     * @param end   the ending key of the range, exclusive.
+     */
+    public void removeRange(int begin, int end) {
+	if (count == 0 || begin >= end)
+	    return;
+	int b = ceilingIndex(begin);
+	int e = ceilingIndex(end);
+	if (b < e)
+	    removeEntries(b, e);
+    }
+
+    /**
+     * Removes all entries from this map.
+     */
+    public void removeAll() {
+	for (int i = 0; i < count; i++) {
+	    values[i] = null;
+	}
+	count      = 0;
+	shiftIndex = 0;
+	shiftDelta = 0;
+    }
+
+    /**
+     * Adds the specified delta to the keys that are greater than or equal
+     * to the specified key. The order of the keys should not be changed
+     * by the shift, i.e., if the delta is negative, the keys in the range
+     * from <code>from+delta</code> to <code>from-1</code> should have been
+     * removed.
+     *
+     * @param from  the smallest key to be shifted.
+     * @param delta the delta to be added.
+     */
+    public void shift(int from, int delta) {
+	if (delta == 0 || count == 0)
+	    return;
+	int i = ceilingIndex(from);
+	if (i < shiftIndex) {
+	    // keys[i..shiftIndex) are stored with their current values.
+	    for (int j = i; j < shiftIndex; j++) {
+		keys[j] += delta;
+	    }
+	}
+	else {
+	    // keys[shiftIndex..i) are stored without the pending delta.
+	    for (int j = shiftIndex; j < i; j++) {
+		keys[j] += shiftDelta;
+	    }
+	    shiftIndex = i;
+	}
+	shiftDelta += delta;
+    }
+
+    /**
+     * Returns a new map that contains the entries whose keys are in the
+     * specified range. The keys of the new map are translated by the
+     * specified delta.
+     *
+     * @param  begin the beginning key of the range, inclusive.
+     * @param  end   the ending key of the range, exclusive.
+     * @param  delta the delta to be added to the keys of the new map.
+     * @return the new map.
+     */
+    public SortedIntMap submap(int begin, int end, int delta) {
+	int b = ceilingIndex(begin);
+	int e = (begin < end ? ceilingIndex(end) : b);
+	SortedIntMap map = new SortedIntMap(e - b);
+	for (int i = b; i < e; i++) {
+	    map.keys[i - b]   = keyAt(i) + delta;
+	    map.values[i - b] = values[i];
+	}
+	map.count = e - b;
+	map.shiftIndex = map.count;
+	return map;
+    }
+
+    /**
+     * Returns a hashtable that contains the entries of this map. The keys
+     * of the hashtable are <code>Integer</code> objects.
+     *
+     * @return a hashtable that contains the entries of this map.
+     */
+    public Hashtable toHashtable() {
+	Hashtable table = new Hashtable(Math.max(11, count * 2));
+	for (int i = 0; i < count; i++) {
+	    table.put(new Integer(keyAt(i)), values[i]);
+	}
+	return table;
+    }
+
+    /**
+     * Returns a hashcode for this map.
+     */
+    public int hashCode() {
+	int h = count;
+	for (int i = 0; i < count; i++) {
+	    h = (h * 31) + keyAt(i);
+	}
+	return h;
+    }
+
+    /**
+     * Compares two Objects for equality.
+     *
+     * @param  anObject the reference object with which to compare.
+     * @return <code>true</code> if this map has the same entries as the
+     *         anObject argument; <code>false</code> otherwise.
+     */
+    public boolean equals(Object anObject) {
+	if (this == anObject)
+	    return true;
+	if (anObject == null)
+	    return false;
+	if (anObject instanceof SortedIntMap) {
+	    SortedIntMap map = (SortedIntMap)anObject;
+	    if (count != map.count)
+		return false;
+	    for (int i = 0; i < count; i++) {
+		if (keyAt(i) != map.keyAt(i) || !values[i].equals(map.values[i]))
+		    return false;
+	    }
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Returns a clone of this map. The values are not cloned.
+     *
+     * @return a clone of this map.
+     */
+    public Object clone() {
+	try {
+	    SortedIntMap map = (SortedIntMap)super.clone();
+	    map.keys   = new int[Math.max(count, 1)];
+	    map.values = new Object[Math.max(count, 1)];
+	    for (int i = 0; i < count; i++) {
+		map.keys[i] = keyAt(i);
+	    }
+	    System.arraycopy(values, 0, map.values, 0, count);
+	    map.shiftIndex = count;
+	    map.shiftDelta = 0;
+	    return map;
+	}
+	catch (CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+
+    /**
+     * Returns a string representation of this map.
+     */
+    public String toString() {
+	StringBuffer buffer = new StringBuffer();
+	buffer.append(getClass().getName() + "[{");
+	for (int i = 0; i < count; i++) {
+	    if (i > 0)
+		buffer.append(", ");
+	    buffer.append(keyAt(i));
+	    buffer.append('=');
+	    buffer.append(values[i]);
+	}
+	buffer.append("}]");
+	return buffer.toString();
+    }
+
+
+    /**
+     * Removes the entries at the positions from <code>b</code> to
+     * <code>e-1</code>.
+     */
+    protected void removeEntries(int b, int e) {
+	int n = e - b;
+	if (e < count) {
+	    System.arraycopy(keys,   e, keys,   b, count - e);
+	    System.arraycopy(values, e, values, b, count - e);
+	}
+	for (int i = count - n; i < count; i++) {
+	    values[i] = null;
+	}
+	count -= n;
+	if (shiftIndex >= e)
+	    shiftIndex -= n;
+	else if (shiftIndex > b)
+	    shiftIndex = b;
+	if (count == 0) {
+	    shiftIndex = 0;
+	    shiftDelta = 0;
+	}
+    }
+
+    /**
+     * Increases the capacity of this map, if necessary, to ensure that
+     * it can hold at least the specified number of entries.
+     */
+    protected void ensureCapacity(int minCapacity) {
+	int oldCapacity = keys.length;
+	if (minCapacity <= oldCapacity)
+	    return;
+	int newCapacity = Math.max(oldCapacity * 2, minCapacity);
+	int newKeys[] = new int[newCapacity];
+	Object newValues[] = new Object[newCapacity];
+	System.arraycopy(keys,   0, newKeys,   0, count);
+	System.arraycopy(values, 0, newValues, 0, count);
+	keys   = newKeys;
+	values = newValues;
+    }
+}
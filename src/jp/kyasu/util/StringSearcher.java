@@ -0,0 +1,322 @@
+/*
+ * StringSearcher.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.util;
+
+/**
+ * The <code>StringSearcher</code> class searches a character array for
+ * the occurrences of a pattern with the Boyer-Moore-Horspool algorithm.
+ * The pattern is compiled once into a table of the shifts, so that the
+ * search skips the characters that can not be a part of an occurrence
+ * and examines about <code>n/m</code> characters of the text at best,
+ * where <code>n</code> is the length of the text and <code>m</code> is
+ * the length of the pattern.
+ * <p>
+ * If the case is ignored, the pattern is folded in advance and each
+ * character of the text is folded once when it is examined. Two
+ * characters are equal ignoring case if
+ * <code>Character.toLowerCase(Character.toUpperCase(c))</code> of them
+ * are equal, as in <code>String.equalsIgnoreCase()</code>.
+ *
+ * @see 	jp.kyasu.graphics.Text#indexOf(boolean, java.lang.String, int)
+ * @see 	jp.kyasu.graphics.Text#lastIndexOf(boolean, java.lang.String, int)
+ *
+ * @version 	16 Oct 2026
+ */
+public class StringSearcher {
+    /** The pattern, folded if the case is ignored. */
+    protected char pattern[];
+
+    /** True if the case is ignored. */
+    protected boolean ignoreCase;
+
+    /**
+     * The shifts of the forward search, indexed by the lower byte of
+     * the character under the last character of the pattern.
+     */
+    protected int shifts[];
+
+    /**
+     * The shifts of the backward search, indexed by the lower byte of
+     * the character under the first character of the pattern.
+     */
+    protected int backShifts[];
+
+
+    /** The folded Latin-1 characters. */
+    static private final char FOLDED_LATIN1[] = new char[256];
+
+    static {
+	for (int c = 0; c < 256; c++) {
+	    FOLDED_LATIN1[c] = foldCase0((char)c);
+	}
+    }
+
+
+    /**
+     * Constructs a searcher for the specified pattern.
+     *
+     * @param pattern    the pattern to search for.
+     * @param ignoreCase if <code>true</code>, ignore case when comparing
+     *                   characters.
+     */
+    public StringSearcher(String pattern, boolean ignoreCase) {
+	this(pattern.toCharArray(), 0, pattern.length(), ignoreCase);
+    }
+
+    /**
+     * Constructs a searcher for the specified characters.
+     *
+     * @param array      the array of the characters to search for.
+     * @param offset     the start offset of the characters.
+     * @param length     the number of the characters.
+     * @param ignoreCase if <code>true</code>, ignore case when comparing
+     *                   characters.
+     */
+    public StringSearcher(char array[], int offset, int length,
+			  boolean ignoreCase)
+    {
+	if (offset < 0 || length < 0 || offset + length > array.length)
+	    throw new ArrayIndexOutOfBoundsException();
+	this.ignoreCase = ignoreCase;
+	pattern = new char[length];
+	for (int i = 0; i < length; i++) {
+	    char c = array[offset + i];
+	    pattern[i] = (ignoreCase ? foldCase(c) : c);
+	}
+	shifts = new int[256];
+	backShifts = new int[256];
+	int shift = Math.max(length, 1);
+	for (int i = 0; i < 256; i++) {
+	    shifts[i] = shift;
+	    backShifts[i] = shift;
+	}
+	// the collisions of the lower bytes only make the shifts shorter.
+	for (int i = 0; i < length - 1; i++) {
+	    shifts[pattern[i] & 0xff] = length - 1 - i;
+	}
+	for (int i = length - 1; i > 0; i--) {
+	    backShifts[pattern[i] & 0xff] = i;
+	}
+    }
+
+
+    /**
+     * Returns the folded case of the specified character, that is,
+     * <code>Character.toLowerCase(Character.toUpperCase(c))</code>.
+     *
+     * @param  c the character.
+     * @return the folded character.
+     */
+    static public final char foldCase(char c) {
+	return (c < 256 ? FOLDED_LATIN1[c] : foldCase0(c));
+    }
+
+    static private char foldCase0(char c) {
+	return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Returns the length of the pattern.
+     */
+    public final int length() {
+	return pattern.length;
+    }
+
+    /**
+     * Tests if this searcher ignores case.
+     */
+    public final boolean isIgnoreCase() {
+	return ignoreCase;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the pattern in the
+     * specified range of the character array.
+     *
+     * @param  text  the array of the characters to be searched.
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @return the index of the first character of the first occurrence,
+     *         or <code>-1</code> if the pattern does not occur.
+     */
+    public int indexOf(char text[], int begin, int end) {
+	int m = pattern.length;
+	if (m == 0)
+	    return (begin <= end ? begin : -1);
+	char p[] = pattern;
+	int shift[] = shifts;
+	char last = p[m - 1];
+	int i = begin + m - 1;
+	if (ignoreCase) {
+	    while (i < end) {
+		char c = foldCase(text[i]);
+		if (c == last) {
+		    int s = i - m + 1;
+		    int j = m - 2;
+		    while (j >= 0 && foldCase(text[s + j]) == p[j])
+			--j;
+		    if (j < 0)
+			return s;
+		}
+		i += shift[c & 0xff];
+	    }
+	}
+	else {
+	    while (i < end) {
+		char c = text[i];
+		if (c == last) {
+		    int s = i - m + 1;
+		    int j = m - 2;
+		    while (j >= 0 && text[s + j] == p[j])
+			--j;
+		    if (j < 0)
+			return s;
+		}
+		i += shift[c & 0xff];
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the pattern in the
+     * specified range of the character array.
+     *
+     * @param  text  the array of the characters to be searched.
+     * @param  begin the beginning index of the range, inclusive.
+     * @param  end   the ending index of the range, exclusive.
+     * @return the index of the first character of the last occurrence,
+     *         or <code>-1</code> if the pattern does not occur.
+     */
+    public int lastIndexOf(char text[], int begin, int end) {
+	int m = pattern.length;
+	if (m == 0)
+	    return (begin <= end ? end : -1);
+	char p[] = pattern;
+	int shift[] = backShifts;
+	char first = p[0];
+	int s = end - m;
+	if (ignoreCase) {
+	    while (s >= begin) {
+		char c = foldCase(text[s]);
+		if (c == first) {
+		    int j = 1;
+		    while (j < m && foldCase(text[s + j]) == p[j])
+			++j;
+		    if (j == m)
+			return s;
+		}
+		s -= shift[c & 0xff];
+	    }
+	}
+	else {
+	    while (s >= begin) {
+		char c = text[s];
+		if (c == first) {
+		    int j = 1;
+		    while (j < m && text[s + j] == p[j])
+			++j;
+		    if (j == m)
+			return s;
+		}
+		s -= shift[c & 0xff];
+	    }
+	}
+	return -1;
+    }
+
+
+    public static void main(String argv[]) {
+	// searches a multi-megabyte text for a word that occurs only near
+	// the end, and checks the result with the naive search. The backward
+	// search starts before the word, and scans the whole text.
+	int size = (argv.length > 0 ? Integer.parseInt(argv[0]) : 8) << 20;
+	String words[] = {
+	    "public ", "static ", "void ", "main", "(", "String ", "argv",
+	    "[]) {\n", "\tint ", "i = 0;\n", "return ", "null", "}\n",
+	};
+	java.util.Random random = new java.util.Random(1);
+	StringBuffer buffer = new StringBuffer(size + 64);
+	while (buffer.length() < size) {
+	    buffer.append(words[random.nextInt(words.length)]);
+	}
+	int expected = buffer.length();
+	buffer.append("SearchedWord");
+	buffer.append(words[0]);
+	jp.kyasu.graphics.Text text =
+			new jp.kyasu.graphics.Text(buffer.toString());
+	char chars[] = buffer.toString().toCharArray();
+
+	String patterns[] = { "SearchedWord", "searchedword" };
+	for (int n = 0; n < 3; n++) {
+	    for (int k = 0; k < patterns.length; k++) {
+		boolean ignoreCase = (k == 1);
+		char p[] = patterns[k].toCharArray();
+
+		long start = System.currentTimeMillis();
+		int naive = -1;
+	      test:
+		for (int i = 0; i <= chars.length - p.length; i++) {
+		    for (int j = 0; j < p.length; j++) {
+			char c1 = chars[i + j];
+			char c2 = p[j];
+			if (c1 == c2)
+			    continue;
+			if (ignoreCase) {
+			    char u1 = Character.toUpperCase(c1);
+			    char u2 = Character.toUpperCase(c2);
+			    if (u1 == u2)
+				continue;
+			    if (Character.toLowerCase(u1) ==
+						Character.toLowerCase(u2))
+				continue;
+			}
+			continue test;
+		    }
+		    naive = i;
+		    break;
+		}
+		long middle = System.currentTimeMillis();
+		int index = text.indexOf(ignoreCase, patterns[k], 0);
+		long stop = System.currentTimeMillis();
+		int last = text.lastIndexOf(ignoreCase, patterns[k],
+					    expected - 1);
+		long lastStop = System.currentTimeMillis();
+
+		if (index != expected || naive != expected ||
+		    last != -1)
+		{
+		    System.out.println("indexOf() ERROR: " + index + ", " +
+				       naive + ", " + last);
+		}
+		System.out.println(text.length() + " chars" +
+				   (ignoreCase ? ", ignore case" : "") +
+				   ": naive " + (middle - start) +
+				   " ms, indexOf " + (stop - middle) +
+				   " ms, lastIndexOf " + (lastStop - stop) +
+				   " ms");
+	    }
+	}
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * StringSet.java
+ *
+ * Copyright (c) 1997, 1998 Kazuki YASUMATSU.  All Rights Reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose and without fee or royalty is hereby
+ * granted, provided that both the above copyright notice and this
+ * permission notice appear in all copies of the software and
+ * documentation or portions thereof, including modifications, that you
+ * make.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS," AND COPYRIGHT HOLDERS MAKE NO
+ * REPRESENTATIONS OR WARRANTIES, EXPRESS OR IMPLIED. BY WAY OF EXAMPLE,
+ * BUT NOT LIMITATION, COPYRIGHT HOLDERS MAKE NO REPRESENTATIONS OR
+ * WARRANTIES OF MERCHANTABILITY OR FITNESS FOR ANY PARTICULAR PURPOSE OR
+ * THAT THE USE OF THE SOFTWARE OR DOCUMENTATION WILL NOT INFRINGE ANY
+ * THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER RIGHTS.
+ * COPYRIGHT HOLDERS WILL BEAR NO LIABILITY FOR ANY USE OF THIS SOFTWARE
+ * OR DOCUMENTATION.
+ */
+
+
+package jp.kyasu.util;
+
+import java.util.Enumeration;
+
+/**
+ * The <code>StringSet</code> class implements an immutable set of strings
+ * that is looked up by a range of an array of characters, without creating
+ * a string. The strings are stored in an open addressing hash table.
+ *
+ * @see 	jp.kyasu.util.Set
+ *
+ * @version 	16 Oct 2026
+ */
+public class StringSet implements java.io.Serializable {
+    /** The characters of the strings, indexed by the hash slots. */
+    protected char table[][];
+
+    /** The hash codes of the strings, indexed by the hash slots. */
+    protected int hashes[];
+
+    /** The number of the strings. */
+    protected int size;
+
+
+    /**
+     * Constructs a set of the specified strings.
+     *
+     * @param strings the strings.
+     */
+    public StringSet(String strings[]) {
+	int capacity = 4;
+	while (capacity < strings.length * 2) {
+	    capacity <<= 1;
+	}
+	table  = new char[capacity][];
+	hashes = new int[capacity];
+	size   = 0;
+	for (int i = 0; i < strings.length; i++) {
+	    add(strings[i].toCharArray());
+	}
+    }
+
+    /**
+     * Constructs a set of the strings in the specified set.
+     *
+     * @param set the set of the strings.
+     */
+    public StringSet(Set set) {
+	this(toArray(set));
+    }
+
+
+    /**
+     * Returns the number of the strings in this set.
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * Tests if the specified string is in this set.
+     *
+     * @param  str the string.
+     * @return <code>true</code> if the string is in this set.
+     */
+    public boolean contains(String str) {
+	return contains(str.toCharArray(), 0, str.length());
+    }
+
+    /**
+     * Tests if the string of the specified range of the array of
+     * characters is in this set.
+     *
+     * @param  buf   the array of characters.
+     * @param  begin the beginning index of the string, inclusive.
+     * @param  end   the ending index of the string, exclusive.
+     * @return <code>true</code> if the string is in this set.
+     */
+    public boolean contains(char buf[], int begin, int end) {
+	int hash = hashCode(buf, begin, end);
+	int mask = table.length - 1;
+	int length = end - begin;
+	for (int i = hash & mask; table[i] != null; i = (i + 1) & mask) {
+	    if (hashes[i] != hash || table[i].length != length)
+		continue;
+	    char chars[] = table[i];
+	    int j = 0;
+	    while (j < length && chars[j] == buf[begin + j]) {
+		++j;
+	    }
+	    if (j == length)
+		return true;
+	}
+	return false;
+    }
+
+
+    /** Adds the string to the table. */
+    protected void add(char chars[]) {
+	if (contains(chars, 0, chars.length))
+	    return;
+	int hash = hashCode(chars, 0, chars.length);
+	int mask = table.length - 1;
+	int i = hash & mask;
+	while (table[i] != null) {
+	    i = (i + 1) & mask;
+	}
+	table[i]  = chars;
+	hashes[i] = hash;
+	++size;
+    }
+
+    /** Returns the hash code of the string, as <code>String</code>. */
+    static protected int hashCode(char buf[], int begin, int end) {
+	int hash = 0;
+	for (int i = begin; i < end; i++) {
+	    hash = 31 * hash + buf[i];
+	}
+	// spreads the higher bits to the lower bits
+	return hash ^ (hash >>> 16);
+    }
+
+    /** Returns the strings in the set. */
+    static protected String[] toArray(Set set) {
+	String strings[] = new String[set.size()];
+	int i = 0;
+	for (Enumeration e = set.elements(); e.hasMoreElements(); ) {
+	    strings[i++] = (String)e.nextElement();
+	}
+	return strings;
+    }
+
+
+    public static void main(String argv[]) {
+	String words[] = {
+	    "abstract", "boolean", "break", "class", "for", "if", "int",
+	    "return", "static", "void", "while", "x", "index", "length",
+	    "buffer", "i", "forEach", "classes", "returns", "voids",
+	};
+	Set set = new Set();
+	for (int i = 0; i < 11; i++) {
+	    set.add(words[i]);
+	}
+	StringSet stringSet = new StringSet(set);
+	if (stringSet.size() != set.size()) {
+	    System.out.println("size() ERROR!");
+	}
+	char buf[] = new char[1024];
+	int begins[] = new int[words.length];
+	int pos = 0;
+	for (int i = 0; i < words.length; i++) {
+	    begins[i] = pos;
+	    words[i].getChars(0, words[i].length(), buf, pos);
+	    pos += words[i].length() + 1;
+	}
+	for (int i = 0; i < words.length; i++) {
+	    int end = begins[i] + words[i].length();
+	    if (stringSet.contains(buf, begins[i], end) !=
+							set.contains(words[i]))
+	    {
+		System.out.println("contains() ERROR: " + words[i]);
+	    }
+	}
+
+	// looks up the words in the buffer, as a tokenizer does.
+	int count = (argv.length > 0 ? Integer.parseInt(argv[0]) : 1000000);
+	String str = new String(buf, 0, pos);
+	for (int n = 0; n < 2; n++) {
+	    long start = System.currentTimeMillis();
+	    int found = 0;
+	    for (int k = 0; k < count; k++) {
+		int i = k % words.length;
+		int end = begins[i] + words[i].length();
+		if (set.contains(str.substring(begins[i], end))) ++found;
+	    }
+	    long middle = System.currentTimeMillis();
+	    for (int k = 0; k < count; k++) {
+		int i = k % words.length;
+		int end = begins[i] + words[i].length();
+		if (stringSet.contains(buf, begins[i], end)) --found;
+	    }
+	    long stop = System.currentTimeMillis();
+	    if (found != 0) {
+		System.out.println("lookup ERROR!");
+	    }
+	    System.out.println(count + " lookups: Set " + (middle - start) +
+			       " ms, StringSet " + (stop - middle) + " ms");
+	}
+    }
+}